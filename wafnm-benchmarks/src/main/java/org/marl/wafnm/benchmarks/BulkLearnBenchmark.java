@@ -0,0 +1,69 @@
+package org.marl.wafnm.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+/** Measures learning a model of new propositions at once.
+ *
+ * <p>The model is built before each invocation, out of the measurement,
+ * and the time is reported per learned proposition. Learned propositions
+ * are forgotten after each iteration.
+ *
+ * @author kr1s
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BulkLearnBenchmark extends WorldState {
+
+	public static final int BULK_SIZE = 1000;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected int next;
+	protected Model someKnowledge;
+
+	@Setup(Level.Invocation)
+	public void buildKnowledge()
+	{
+		someKnowledge = ModelFactory.createDefaultModel();
+		Resource sem = someKnowledge.createResource(sems[0]);
+		Property likes = someKnowledge.createProperty(LIKES);
+		for (int k = 0 ; k < BULK_SIZE ; k++) {
+			sem.addProperty(likes, someKnowledge.createResource(WORLD + "liked" + next++));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BULK_SIZE)
+	public long learnBulk() {
+		return frame.learn(someKnowledge);
+	}
+
+	@TearDown(Level.Iteration)
+	public void forgetChanges() {
+		frame.forget(sems[0], LIKES, null);
+	}
+}
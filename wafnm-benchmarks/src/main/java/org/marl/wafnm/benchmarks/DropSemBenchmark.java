@@ -0,0 +1,46 @@
+package org.marl.wafnm.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures dropping a sem, which is created and linked to another sem
+ * before each invocation, out of the measurement.
+ *
+ * @author kr1s
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DropSemBenchmark extends WorldState {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected String sem;
+
+	@Setup(Level.Invocation)
+	public void createSem()
+	{
+		sem = frame.createSem(DOG, "dog", "a dog", "en");
+		frame.learn(sems[0], KNOWS, sem);
+	}
+
+	@Benchmark
+	public long dropSem() {
+		return frame.dropSem(sem);
+	}
+}
@@ -0,0 +1,46 @@
+package org.marl.wafnm.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures forgetting a single proposition, which is learned before each
+ * invocation, out of the measurement.
+ *
+ * @author kr1s
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForgetBenchmark extends WorldState {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected String liked;
+
+	@Setup(Level.Invocation)
+	public void learnProposition()
+	{
+		liked = WORLD + "liked";
+		frame.learn(sems[0], LIKES, liked);
+	}
+
+	@Benchmark
+	public long forget() {
+		return frame.forget(sems[0], LIKES, liked);
+	}
+}
@@ -0,0 +1,52 @@
+package org.marl.wafnm.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hp.hpl.jena.rdf.model.Statement;
+
+/** Measures the frame queries.
+ *
+ * <p>Each invocation looks up the next sem of the frame, so that
+ * lookups are spread over the whole frame.
+ *
+ * @author kr1s
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameReadBenchmark extends WorldState {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected int next;
+
+	@Benchmark
+	public boolean knows() {
+		return frame.knows(sems[next++ % sems.length]);
+	}
+
+	@Benchmark
+	public boolean knowsUnknown() {
+		return frame.knows(unknownSems[next++ % unknownSems.length]);
+	}
+
+	@Benchmark
+	public List<Statement> resolveSem() {
+		return frame.resolveSem(sems[next++ % sems.length]);
+	}
+}
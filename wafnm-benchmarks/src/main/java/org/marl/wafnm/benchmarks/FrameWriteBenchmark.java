@@ -0,0 +1,81 @@
+package org.marl.wafnm.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.marl.wafnm.core.api.IFrame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures the frame changes that add knowledge.
+ *
+ * <p>Added frames, sems and propositions are removed after each
+ * iteration, so that the frame size does not drift from its parameter
+ * across iterations.
+ *
+ * @author kr1s
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameWriteBenchmark extends WorldState {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected int next;
+	protected List<String> createdFrames = new ArrayList<String>();
+	protected List<String> createdSems = new ArrayList<String>();
+
+	@Benchmark
+	public IFrame createFrame()
+	{
+		IFrame created = frameManager.createFrame(null);
+		createdFrames.add(created.getURI());
+
+		return created;
+	}
+
+	@Benchmark
+	public String createSem()
+	{
+		String sem = frame.createSem(DOG, "dog", "a dog", "en");
+		createdSems.add(sem);
+
+		return sem;
+	}
+
+	@Benchmark
+	public long learn() {
+		return frame.learn(sems[0], LIKES, WORLD + "liked" + next++);
+	}
+
+	@TearDown(Level.Iteration)
+	public void forgetChanges()
+	{
+		for (String frameUri : createdFrames) {
+			frameManager.removeFrame(frameUri);
+		}
+		createdFrames.clear();
+
+		for (String sem : createdSems) {
+			frame.dropSem(sem);
+		}
+		createdSems.clear();
+
+		frame.forget(sems[0], LIKES, null);
+	}
+}
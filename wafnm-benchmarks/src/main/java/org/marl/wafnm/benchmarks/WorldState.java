@@ -0,0 +1,104 @@
+package org.marl.wafnm.benchmarks;
+
+import org.marl.wafnm.core.api.IFrame;
+import org.marl.wafnm.core.impl.MemFrameManager;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import com.hp.hpl.jena.ontology.OntModelSpec;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+/** Builds the world benchmarks run against: a frame of a given size, which
+ * binds a given count of other frames of the same size.
+ *
+ * <p>The frame is created with a small vocabulary, so that inferring frames
+ * have some typing to infer. Each of its sems is a dog, with a label, a
+ * comment, and a link to the next sem: the frame holds four propositions
+ * per sem.
+ *
+ * @author kr1s
+ *
+ */
+public abstract class WorldState {
+
+	public static final String VOCABULARY = "http://example.org/vocabulary#";
+	public static final String WORLD = "http://example.org/world#";
+
+	public static final String DOG = VOCABULARY + "Dog";
+	public static final String ANIMAL = VOCABULARY + "Animal";
+	public static final String KNOWS = VOCABULARY + "knows";
+	public static final String LIKES = VOCABULARY + "likes";
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Parameters
+
+	// count of propositions of the frame, and of each bound frame
+	@Param({ "1000", "10000" })
+	public int frameSize;
+
+	@Param({ "0", "4" })
+	public int boundFrames;
+
+	// the name of an OntModelSpec constant
+	@Param({ "OWL_MEM_RDFS_INF", "OWL_MEM" })
+	public String inference;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected MemFrameManager frameManager;
+	protected IFrame frame;
+	protected Model vocabulary;
+
+	// sems of the frame, and sems no frame knows
+	protected String[] sems;
+	protected String[] unknownSems;
+
+	@Setup(Level.Trial)
+	public void buildWorld() throws Exception
+	{
+		frameManager = new MemFrameManager(
+				(OntModelSpec) OntModelSpec.class.getField(inference).get(null));
+
+		vocabulary = ModelFactory.createDefaultModel();
+		vocabulary.add(vocabulary.createResource(DOG),
+				RDFS.subClassOf,
+				vocabulary.createResource(ANIMAL));
+
+		frame = frameManager.createFrame(vocabulary);
+		sems = populate(frame);
+
+		for (int k = 0 ; k < boundFrames ; k++)
+		{
+			IFrame boundFrame = frameManager.createFrame(null);
+			populate(boundFrame);
+			frame.bindKnowledge(boundFrame.getURI());
+		}
+
+		unknownSems = new String[sems.length];
+		for (int k = 0 ; k < unknownSems.length ; k++) {
+			unknownSems[k] = WORLD + "unknown" + k;
+		}
+	}
+
+	/** Fills a frame with sems, up to the frame size.
+	 *
+	 * @param f The frame.
+	 *
+	 * @return The created sems.
+	 */
+	protected String[] populate(IFrame f)
+	{
+		String[] created = new String[Math.max(1, frameSize / 4)];
+		for (int k = 0 ; k < created.length ; k++) {
+			created[k] = f.createSem(DOG, "dog " + k, "a dog", "en");
+		}
+		for (int k = 0 ; k < created.length ; k++) {
+			f.learn(created[k], KNOWS, created[(k + 1) % created.length]);
+		}
+
+		return created;
+	}
+}
@@ -0,0 +1,21 @@
+package org.marl.wafnm.core.api;
+
+/** Selects the propositions a frame exports.
+ * 
+ * @see IFrame#export(java.nio.channels.WritableByteChannel, String, FrameContent, boolean)
+ * 
+ * @author kr1s
+ *
+ */
+public enum FrameContent {
+
+	/** The propositions the frame was told. */
+	ASSERTED,
+	
+	/** The propositions the reasoner of the frame derives, and which the
+	 * frame was not told. */
+	INFERRED,
+	
+	/** Both asserted and inferred propositions. */
+	ALL
+}
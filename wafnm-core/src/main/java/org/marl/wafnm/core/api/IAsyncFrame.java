@@ -0,0 +1,109 @@
+package org.marl.wafnm.core.api;
+
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+
+/** Manages the knowledge of a frame, without blocking the caller.
+ * 
+ * <p>This is the asynchronous counterpart of {@link IFrame}: each operation
+ * returns at once, and completes its future with the value the synchronous
+ * operation answers, or exceptionally with the exception it throws.
+ * 
+ * <p>Changes are applied one at a time, in the order they were submitted.
+ * Queries run concurrently, and are not ordered with respect to pending
+ * changes: a client that wants to read its own change should chain the
+ * query on the change future.
+ * 
+ * @author kr1s
+ *
+ */
+public interface IAsyncFrame {
+
+	/** Answers this frame URI.
+	 * 
+	 * @return The URI.
+	 */
+	public String getURI() ;
+	
+	/** Answers the frame this frame submits operations to.
+	 * 
+	 * @return The synchronous frame.
+	 */
+	public IFrame getFrame() ;
+	
+	/** @see IFrame#size() */
+	public CompletableFuture<Long> size() ;
+	
+	/** @see IFrame#find(String) */
+	public CompletableFuture<Resource> find(String semUri) ;
+	
+	/** @see IFrame#knows(String) */
+	public CompletableFuture<Boolean> knows(String semUri);
+	
+	/** @see IFrame#resolveSem(String) */
+	public CompletableFuture<List<Statement>> resolveSem(String semUri);
+	
+	/** @see IFrame#visitSem(String, IStatementVisitor, long, long) */
+	public CompletableFuture<Long> visitSem(String semUri, 
+			IStatementVisitor visitor, 
+			long offset, 
+			long limit);
+	
+	/** @see IFrame#resolveSmallWorld(String) */
+	public CompletableFuture<List<Statement>> resolveSmallWorld(String query);
+	
+	/** @see IFrame#visitSmallWorld(String, IStatementVisitor) */
+	public CompletableFuture<Long> visitSmallWorld(String query, IStatementVisitor visitor);
+	
+	/** @see IFrame#snapshot() */
+	public CompletableFuture<IFrame> snapshot();
+	
+	/** @see IFrame#export(WritableByteChannel, String, FrameContent, boolean) */
+	public CompletableFuture<Long> export(WritableByteChannel out, 
+			String lang, 
+			FrameContent content, 
+			boolean withBoundKnowledge);
+	
+	/** @see IFrame#bindKnowledge(String) */
+	public CompletableFuture<Long> bindKnowledge(String frameUri) ;
+	
+	/** @see IFrame#unbindKnowledge(String) */
+	public CompletableFuture<Long> unbindKnowledge(String frameUri) ;
+	
+	/** @see IFrame#createSem(String, String, String, String) */
+	public CompletableFuture<String> createSem(String typeUri,
+			String label,
+			String comment,
+			String lang);
+	
+	/** @see IFrame#dropSem(String) */
+	public CompletableFuture<Long> dropSem(String semUri);
+	
+	/** @see IFrame#learn(Model) */
+	public CompletableFuture<Long> learn(Model someKnowledge);
+	
+	/** @see IFrame#learn(InputStream, String) */
+	public CompletableFuture<Long> learn(InputStream in, String lang);
+	
+	/** @see IFrame#learn(String, String, String) */
+	public CompletableFuture<Long> learn(String subjectSemUri, 
+			String propositionTypeUri, 
+			String objectSemUri);
+	
+	/** @see IFrame#forget(Model) */
+	public CompletableFuture<Long> forget(Model someKnowledge);
+	
+	/** @see IFrame#forget(String, String, String) */
+	public CompletableFuture<Long> forget(String subjectSemUri, 
+			String propositionTypeUri, 
+			String objectSemUri);
+	
+	/** @see IFrame#freeze() */
+	public CompletableFuture<Long> freeze();
+}
@@ -0,0 +1,93 @@
+package org.marl.wafnm.core.api;
+
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/** Creates and manage frames, without blocking the caller.
+ * 
+ * <p>This is the asynchronous counterpart of {@link IFrameManager}: each
+ * operation returns at once, and completes its future when done. Failures
+ * complete the future exceptionally, with the exception the synchronous
+ * operation would have thrown.
+ *  
+ * @author kr1s
+ *
+ */
+public interface IAsyncFrameManager {
+
+	/** Retrieves a frame by its URI.
+	 * 
+	 * @param uri The requested frame URI.
+	 * 
+	 * @return The corresponding frame, or <code>null</code> if this manager
+	 * is unaware of this frame.
+	 */
+	public CompletableFuture<IAsyncFrame> getFrame(String uri) ;
+	
+	/** Asks this manager to create a new frame.
+	 * 
+	 * @param baseOntology The ontology that represents the initial knowledge 
+	 * for this frame. May be <code>null</code>.
+	 * 
+	 * @return The created frame.
+	 */
+	public CompletableFuture<IAsyncFrame> createFrame(Model baseOntology);
+	
+	/** Asks this manager to create a new frame, with a given inference
+	 * profile.
+	 * 
+	 * @param baseOntology The ontology that represents the initial knowledge 
+	 * for this frame. May be <code>null</code>.
+	 * @param profile How the frame infers propositions.
+	 * 
+	 * @return The created frame.
+	 */
+	public CompletableFuture<IAsyncFrame> createFrame(Model baseOntology, InferenceProfile profile);
+	
+	/** Asks this manager to fork a frame, once the changes already
+	 * submitted to the frame are applied.
+	 * 
+	 * @param uri The URI of the frame to fork.
+	 * 
+	 * @return The fork.
+	 * 
+	 * @see IFrameManager#forkFrame(String)
+	 */
+	public CompletableFuture<IAsyncFrame> forkFrame(String uri);
+	
+	/** Asks this manager to apply the changes of a fork to its parent, once
+	 * the changes already submitted to the fork are applied.
+	 * 
+	 * @param forkUri The URI of the fork.
+	 * 
+	 * @return The count of propositions the parent learned or forgot.
+	 * 
+	 * @see IFrameManager#mergeFrame(String)
+	 */
+	public CompletableFuture<Long> mergeFrame(String forkUri);
+	
+	/** Asks a this manager to forget a frame forever.
+	 * 
+	 * <p>The frame is removed once its queued changes are applied.
+	 * 
+	 * @param uri The frame to remove.
+	 * 
+	 * @return Completed once the frame is removed.
+	 */
+	public CompletableFuture<Void> removeFrame(String uri);
+
+	/** Answers a list containing the frames managed by this container.
+	 *   
+	 * @return The managed frames list.
+	 */
+	public CompletableFuture<List<IAsyncFrame>> listFrames();
+
+	/** Answers the number of managed frames.
+	 * 
+	 * @return The managed frames' count.
+	 */
+	public CompletableFuture<Long> size();
+}
@@ -1,10 +1,14 @@
 package org.marl.wafnm.core.api;
 
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
 import java.util.List;
 
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
 
 /** A <i>frame</i> is a graph of relations between semantic individuals 
  * (<i>sem</i>).
@@ -58,6 +62,8 @@ public interface IFrame {
 	/** Answers the count of all propositions known by this frame, including
 	 * taxonomy statements and referenced frames.
 	 * 
+	 * <p>Propositions inferred by this frame are not counted.
+	 * 
 	 * @return The number of statements in this graph.
 	 */
 	public long size() ;
@@ -78,7 +84,8 @@ public interface IFrame {
 	 * 
 	 * @param frameUri  The URI of the referenced frame.
 	 * 
-	 * @return The count of learned propositions.
+	 * @return The count of learned propositions, that is the referenced frame 
+	 * size, or <code>0</code> if it was already bound.
 	 */
 	public long bindKnowledge(String frameUri) ;
 
@@ -112,6 +119,34 @@ public interface IFrame {
 	 */
 	public List<Statement> resolveSem(String semUri);
 	
+	/** Streams all known propositions that accept a given sem as subject 
+	 * or object.
+	 * 
+	 * <p>Propositions are read lazily from the frame graph while iterating. 
+	 * The caller should close the iterator when not exhausted.
+	 * 
+	 * @param semUri The sem URI.
+	 * 
+	 * @return An iterator on the mini-graph centered on the requested sem.
+	 */
+	public StmtIterator streamSem(String semUri);
+
+	/** Visits known propositions that accept a given sem as subject 
+	 * or object.
+	 * 
+	 * @param semUri The sem URI.
+	 * @param visitor The visitor that will receive the propositions.
+	 * @param offset The count of propositions to skip before the first 
+	 * visited one.
+	 * @param limit The maximum count of visited propositions.
+	 * 
+	 * @return The count of visited propositions.
+	 */
+	public long visitSem(String semUri, 
+			IStatementVisitor visitor, 
+			long offset, 
+			long limit);
+	
 	/** Answers all known propositions  that belongs to the "small world"
 	 * defined by the requested query.
 	 * 
@@ -124,6 +159,18 @@ public interface IFrame {
 	 */
 	public List<Statement> resolveSmallWorld(String query);
 	
+	/** Visits all known propositions that belongs to the "small world"
+	 * defined by the requested query, as they are resolved.
+	 * 
+	 * @param query A query describing a small world.
+	 * @param visitor The visitor that will receive the propositions.
+	 * 
+	 * @return The count of visited propositions.
+	 * 
+	 * @see #resolveSmallWorld(String)
+	 */
+	public long visitSmallWorld(String query, IStatementVisitor visitor);
+	
 	/** Creates a new sem within this frame.
 	 * 
 	 * <p>The frame is responsible for generating the sem URI.
@@ -161,14 +208,39 @@ public interface IFrame {
 	 */
 	public long learn(Model someKnowledge);
 	
+	/** Let this frame learn a large set of propositions.
+	 * 
+	 * <p>The propositions are imported into this frame in batches, and 
+	 * inference is only run once all of them have been learned.
+	 * 
+	 * @param someKnowledge The propositions to learn.
+	 * 
+	 * @return The count of learned statements.
+	 */
+	public long learn(Iterator<Statement> someKnowledge);
+	
+	/** Let this frame learn a large set of serialized propositions.
+	 * 
+	 * <p>The propositions are imported into this frame in batches, while 
+	 * being parsed, and inference is only run once all of them have been
+	 * learned.
+	 * 
+	 * @param in The serialized propositions.
+	 * @param lang The serialization language name, such as 
+	 * <code>N-TRIPLES</code> or <code>TURTLE</code>.
+	 * 
+	 * @return The count of learned statements.
+	 */
+	public long learn(InputStream in, String lang);
+	
 	/** Let this frame learn a proposition.
 	 * 
 	 * @param subjectSemUri The subject URI.
 	 * @param propositionTypeUri The proposition kind.
 	 * @param objectSemUri The object URI.
 	 * 
-	 * @return The count of learned propositions, which may be greater than one
-	 * when using inference.
+	 * @return The count of learned propositions: <code>0</code> when this frame
+	 * already managed this proposition, <code>1</code> otherwise.
 	 */
 	public long learn(String subjectSemUri,
 			String propositionTypeUri,
@@ -196,4 +268,70 @@ public interface IFrame {
 	public long forget(String subjectSemUri,
 			String propositionTypeUri,
 			String objectSemUri);
+	
+	/** Freezes this frame: the propositions it manages are compacted into a
+	 * read-only storage, and any later attempt to create, drop, learn or 
+	 * forget propositions fails with an <code>IllegalStateException</code>.
+	 * 
+	 * <p>Frozen frames may still bind, and unbind, other frames knowledge.
+	 * Freezing a frozen frame has no effect.
+	 * 
+	 * @return The count of propositions managed by this frame.
+	 */
+	public long freeze();
+	
+	/** Answers whether this frame is frozen.
+	 * 
+	 * @return <code>true</code> if this frame rejects changes.
+	 */
+	public boolean isFrozen();
+
+	/** Answers an immutable, point-in-time view of this frame, including the
+	 * knowledge it binds.
+	 *
+	 * <p>A snapshot is not affected by the later changes of this frame, nor
+	 * of the frames it binds, and can be read while these frames change. It
+	 * holds asserted propositions only, and rejects any change with an
+	 * <code>IllegalStateException</code>.
+	 *
+	 * @return The snapshot.
+	 */
+	public IFrame snapshot();
+
+	/** Writes the propositions known by this frame to a channel, without 
+	 * materializing them.
+	 * 
+	 * <p>Propositions are written through a bounded buffer, so that exporting
+	 * a frame of any size takes constant memory. Readers of this frame are 
+	 * not blocked by an export.
+	 * 
+	 * @param out The channel, which is not closed.
+	 * @param lang The serialization language: either <code>N-TRIPLES</code>,
+	 * or <code>WAFNM-BINARY</code>, the compact binary encoding of this 
+	 * library.
+	 * @param content The exported propositions.
+	 * @param withBoundKnowledge Whether the asserted propositions of the 
+	 * frames this frame binds are exported too.
+	 * 
+	 * @return The count of exported propositions.
+	 */
+	public long export(WritableByteChannel out, 
+			String lang, 
+			FrameContent content, 
+			boolean withBoundKnowledge);
+
+	/** Prepares a SPARQL query against the propositions known by this frame.
+	 * 
+	 * <p>Parsed and optimized queries are cached, and shared by all frames, 
+	 * so that preparing the same query again is cheap.
+	 * 
+	 * @param query A <code>SELECT</code>, <code>CONSTRUCT</code> or 
+	 * <code>ASK</code> query.
+	 * 
+	 * @return The prepared query.
+	 * 
+	 * @throws IllegalArgumentException if the query is not valid, or of 
+	 * another form.
+	 */
+	public IPreparedQuery prepareQuery(String query);
 }
@@ -37,4 +37,16 @@ public interface IFrameFactory {
 	 */
 	public IFrame createFrame(String uri, Model baseOntology);
 
+	/** Creates a frame with a given inference profile.
+	 * 
+	 * @param uri An URI identifier. This should not be <code>null</code>
+	 * and should stand as a unique identifier for the intended scope.
+	 * @param baseOntology The ontology that represent the initial knowledge 
+	 * (vocabulary, corpus, ...) for this frame. May be <code>null</code>.
+	 * @param profile How the frame infers propositions.
+	 * 
+	 * @return The created frame.
+	 */
+	public IFrame createFrame(String uri, Model baseOntology, InferenceProfile profile);
+
 }
@@ -53,6 +53,46 @@ public interface IFrameManager {
 	 */
 	public IFrame createFrame(Model baseOntology);
 	
+	/** Asks this manager to create a new frame, with a given inference
+	 * profile.
+	 * 
+	 * <p>The manager is responsible for generating the frame URI.
+	 * 
+	 * @param baseOntology The ontology that represents the initial knowledge 
+	 * (vocabulary, corpus, ...) for this frame. May be <code>null</code>.
+	 * @param profile How the frame infers propositions.
+	 * 
+	 * @return The created frame.
+	 */
+	public IFrame createFrame(Model baseOntology, InferenceProfile profile);
+	
+	/** Asks this manager to fork a frame.
+	 * 
+	 * <p>The fork reads the propositions of its parent, and infers as its
+	 * parent does, but its changes only apply to itself. Forking does not
+	 * copy the parent propositions: a fork is discarded by 
+	 * {@link #removeFrame(String) removing} it, or applied to its parent by
+	 * {@link #mergeFrame(String) merging} it.
+	 * 
+	 * <p>The parent changes remain visible to the fork, unless the fork
+	 * changed the same propositions. Removing the parent removes its forks.
+	 * 
+	 * @param uri The URI of the frame to fork.
+	 * 
+	 * @return The fork.
+	 */
+	public IFrame forkFrame(String uri);
+	
+	/** Asks this manager to apply the changes of a fork to its parent, at
+	 * once, and to remove the fork.
+	 * 
+	 * @param forkUri The URI of a frame answered by 
+	 * {@link #forkFrame(String)}.
+	 * 
+	 * @return The count of propositions the parent learned or forgot.
+	 */
+	public long mergeFrame(String forkUri);
+	
 	/** Asks a this manager to forget a frame forever.
 	 * 
 	 * <p>Once a frame is removed, any associated graph or node may be released
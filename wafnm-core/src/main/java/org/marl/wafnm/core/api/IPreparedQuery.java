@@ -0,0 +1,64 @@
+package org.marl.wafnm.core.api;
+
+import com.hp.hpl.jena.query.QuerySolution;
+
+/** A SPARQL query prepared against a frame, which may be run many times.
+ * 
+ * <p>The query is parsed and optimized once, when prepared. Each run only 
+ * substitutes the given bindings into the optimized query, and streams its
+ * results to a visitor while holding the frame read lock.
+ * 
+ * <p>A prepared query may be run by several threads at once.
+ * 
+ * @author kr1s
+ *
+ */
+public interface IPreparedQuery {
+
+	/** Answers the text of this query.
+	 * 
+	 * @return The SPARQL query.
+	 */
+	public String getQueryString();
+	
+	/** Runs a <code>SELECT</code> query.
+	 * 
+	 * @param bindings The values of some query variables, or 
+	 * <code>null</code>.
+	 * @param visitor The visitor of the solutions.
+	 * 
+	 * @return The count of visited solutions.
+	 * 
+	 * @throws IllegalStateException if this is not a <code>SELECT</code> 
+	 * query.
+	 */
+	public long select(QuerySolution bindings, ISolutionVisitor visitor);
+	
+	/** Runs a <code>CONSTRUCT</code> query.
+	 * 
+	 * <p>Propositions are not deduplicated: a proposition constructed from 
+	 * several solutions is visited several times.
+	 * 
+	 * @param bindings The values of some query variables, or 
+	 * <code>null</code>.
+	 * @param visitor The visitor of the constructed propositions.
+	 * 
+	 * @return The count of visited propositions.
+	 * 
+	 * @throws IllegalStateException if this is not a <code>CONSTRUCT</code> 
+	 * query.
+	 */
+	public long construct(QuerySolution bindings, IStatementVisitor visitor);
+	
+	/** Runs an <code>ASK</code> query.
+	 * 
+	 * @param bindings The values of some query variables, or 
+	 * <code>null</code>.
+	 * 
+	 * @return Whether the query has a solution.
+	 * 
+	 * @throws IllegalStateException if this is not an <code>ASK</code> 
+	 * query.
+	 */
+	public boolean ask(QuerySolution bindings);
+}
@@ -0,0 +1,20 @@
+package org.marl.wafnm.core.api;
+
+import com.hp.hpl.jena.query.QuerySolution;
+
+/** Receives the solutions of a query, as they are streamed by a frame.
+ * 
+ * @author kr1s
+ *
+ */
+public interface ISolutionVisitor {
+
+	/** Visits a solution.
+	 * 
+	 * @param solution The solution, which is only valid during the visit.
+	 * 
+	 * @return <code>true</code> to go on with the next solution, 
+	 * <code>false</code> to stop the visit.
+	 */
+	public boolean visit(QuerySolution solution);
+}
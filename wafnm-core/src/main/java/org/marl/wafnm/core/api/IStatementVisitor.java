@@ -0,0 +1,23 @@
+package org.marl.wafnm.core.api;
+
+import com.hp.hpl.jena.rdf.model.Statement;
+
+/** Receives propositions streamed by a frame.
+ * 
+ * <p>A visitor lets a frame client process propositions as they are 
+ * resolved, without the frame building an intermediate collection.
+ * 
+ * @author kr1s
+ *
+ */
+public interface IStatementVisitor {
+
+	/** Visits a proposition.
+	 * 
+	 * @param proposition The resolved proposition.
+	 * 
+	 * @return <code>true</code> to go on with the next proposition, 
+	 * <code>false</code> to stop the visit.
+	 */
+	public boolean visit(Statement proposition);
+}
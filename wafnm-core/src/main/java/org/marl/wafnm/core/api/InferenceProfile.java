@@ -0,0 +1,33 @@
+package org.marl.wafnm.core.api;
+
+/** Selects how a frame infers propositions from the ones it was told.
+ *
+ * <p>All RDFS profiles derive the propositions entailed by the
+ * sub-property, sub-class, domain and range propositions. Profiles differ
+ * by when inferences are computed, which trades write latency for query
+ * latency.
+ *
+ * @see IFrameManager#createFrame(com.hp.hpl.jena.rdf.model.Model, InferenceProfile)
+ *
+ * @author kr1s
+ *
+ */
+public enum InferenceProfile {
+
+	/** The frame infers nothing: queries only answer the propositions the
+	 * frame was told. */
+	NONE,
+
+	/** The default reasoner of the factory, which infers again from all
+	 * propositions on the first query after each change. */
+	RDFS,
+
+	/** Inferences are materialized as propositions are learned: learning a
+	 * proposition only derives its consequences, and forgetting one only
+	 * retracts the inferences that depended on it. Queries do not infer. */
+	RDFS_INCREMENTAL,
+
+	/** Inferences are computed by queries, backward from their patterns, and
+	 * nothing is inferred on writes. */
+	RDFS_LAZY
+}
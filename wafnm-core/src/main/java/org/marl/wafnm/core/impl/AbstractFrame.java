@@ -1,25 +1,66 @@
 package org.marl.wafnm.core.impl;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.marl.wafnm.core.api.FrameContent;
 import org.marl.wafnm.core.api.IFrame;
 import org.marl.wafnm.core.api.IFrameManager;
+import org.marl.wafnm.core.api.IPreparedQuery;
+import org.marl.wafnm.core.api.IStatementVisitor;
 
+import com.hp.hpl.jena.graph.Factory;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphUtil;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.TripleMatch;
 import com.hp.hpl.jena.ontology.OntModel;
+import com.hp.hpl.jena.ontology.OntModelSpec;
 import com.hp.hpl.jena.ontology.OntResource;
 import com.hp.hpl.jena.rdf.model.Model;
-import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.rdf.model.Statement;
 import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.rdf.model.impl.StmtIteratorImpl;
+import com.hp.hpl.jena.reasoner.BaseInfGraph;
+import com.hp.hpl.jena.reasoner.InfGraph;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.Filter;
+import com.hp.hpl.jena.util.iterator.Map1;
+import com.hp.hpl.jena.util.iterator.WrappedIterator;
+import com.hp.hpl.jena.vocabulary.OWL;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.hp.hpl.jena.vocabulary.RDFS;
+import com.hp.hpl.jena.vocabulary.XSD;
 
 /** Base implementation for frames.
  * 
  * <p>This is abstract as it does not provide any mechanism to initialize the
  * {@link IFrameManager <i>frame manager</i>} dependency. 
  * 
+ * <p>Frames are thread-safe: queries run concurrently, while changes are
+ * exclusive. Iterators answered by {@link #streamSem(String)} are not
+ * protected though, and clients that iterate while other threads change
+ * the frame should rather use {@link #visitSem(String, IStatementVisitor, long, long)}.
+ * 
  * @author kr1s
  *
  */
@@ -29,6 +70,50 @@ public abstract class AbstractFrame implements IFrame {
 	// State
 	protected String frameUri;
 	protected OntModel frameModel;
+	protected Set<String> boundFrames = new LinkedHashSet<String>();
+	
+	// counts the propositions managed by this frame
+	protected GraphSizeCounter frameCounter;
+	
+	// counts the propositions managed by the frames this frame binds, in turn
+	protected BoundSizeCounter boundCounter = new BoundSizeCounter();
+	
+	// summarizes the propositions managed by this frame, for binding frames
+	protected GraphSummary frameSummary;
+	
+	// indexes the nodes mentioned by the propositions managed by this frame
+	protected MembershipIndex frameMembers;
+	
+	// whether this frame model holds knowledge the membership indexes miss
+	protected volatile boolean foreignKnowledge;
+	
+	// caches the propositions about the sems this frame resolves
+	protected SemCache semCache;
+	
+	// plans of the prepared queries, shared with other frames
+	protected QueryPlanCache queryPlans = QueryPlanCache.getShared();
+	
+	// the propositions of bound frames, routed by their summaries
+	protected RoutedUnion boundKnowledge;
+	protected Model boundModel;
+	
+	// the frames that bind this frame, which inferences depend on it
+	protected List<AbstractFrame> binders = new CopyOnWriteArrayList<AbstractFrame>();
+	
+	// many readers, or a single writer
+	protected ReadWriteLock frameLock;
+	
+	// allocates the URIs of the sems created by this frame
+	protected UriAllocator semAllocator;
+	
+	// guarded by the frame lock
+	protected boolean frozen;
+	
+	// the propositions inferred when frozen, which are no longer reasoned
+	protected volatile Model frozenInference;
+	
+	// whether the reasoner may have to be prepared again, since last change
+	protected volatile boolean inferenceStale = true;
 	
 	/////////////////////////////////////////////////////////////////////////////////////////////
 	// Dependencies
@@ -38,13 +123,46 @@ public abstract class AbstractFrame implements IFrame {
 	// Enforce implementation to provide a mechanism to initialize dependencies.
 	protected AbstractFrame(String frameUri, OntModel frameModel)
 	{
-		if ( (frameUri == null) ||(frameModel == null)  )
+		this(frameUri, frameModel, new ReentrantReadWriteLock());
+	}
+	
+	/** Constructor for frames which graphs share a back-end that does not
+	 * support concurrent readers and writers: such frames should share the 
+	 * same lock.
+	 * 
+	 * @param frameUri
+	 * @param frameModel
+	 * @param frameLock
+	 */
+	protected AbstractFrame(String frameUri, OntModel frameModel, ReadWriteLock frameLock)
+	{
+		if ( (frameUri == null) ||(frameModel == null) || (frameLock == null) )
 		{
 			throw new IllegalArgumentException();
 		}
 		
 		this.frameUri = frameUri;
 		this.frameModel = frameModel;
+		this.frameCounter = new GraphSizeCounter(getBaseGraph()) {
+			@Override
+			protected void shifted(long delta) {
+				shiftBinders(delta);
+			}
+			
+			@Override
+			protected void staled() {
+				staleBinders();
+			}
+		};
+		this.frameLock = frameLock;
+		this.boundKnowledge = new RoutedUnion(frameLock);
+		this.boundModel = ModelFactory.createModelForGraph(boundKnowledge);
+		this.frameSummary = new GraphSummary(getBaseGraph(), frameLock);
+		this.semAllocator = new UriAllocator(frameUri, 0);
+		this.semCache = new SemCache(getBaseGraph(), SemCache.DEFAULT_CAPACITY, 
+				frameModel.getGraph() instanceof InfGraph);
+		this.frameMembers = new MembershipIndex(getBaseGraph(), frameLock);
+		checkForeignKnowledge();
 	}
 	
 	/////////////////////////////////////////////////////////////////////////////////////////////
@@ -62,115 +180,481 @@ public abstract class AbstractFrame implements IFrame {
 		return frameModel;
 	}
 
+	/** {@inheritDoc}
+	 * 
+	 * <p>This count is maintained as propositions are learned and forgotten,
+	 * and does not include inferred propositions. Frames bound along several
+	 * paths, or binding each other, are counted once. The bound frames are 
+	 * only walked once their count is stale, or to count bound frames of 
+	 * other implementations.
+	 */
 	@Override
-	public long size() {
-		return frameModel.size();
+	public long size() 
+	{
+		frameLock.readLock().lock();
+		try {
+			long n = frameCounter.get() + countBound();
+		
+			if (foreignKnowledge)
+			{
+				for (String boundUri : boundFrames) 
+				{
+					IFrame otherFrame = frameManager.getFrame(boundUri);
+					if ( (otherFrame != null) && ! (otherFrame instanceof AbstractFrame) ) {
+						n += otherFrame.size();
+					}
+				}
+			}
+		
+			return n;
+		}
+		finally {
+			frameLock.readLock().unlock();
+		}
 	}
 
 	@Override
-	public Resource find(String semUri) {
-		if (knows(semUri)) {
-			return frameModel.getResource(semUri);
+	public Resource find(String semUri)
+	{
+		frameLock.readLock().lock();
+		try {
+			if (knows(semUri)) {
+				return frameModel.getResource(semUri);
+			}
+			return null;
+		}
+		finally {
+			frameLock.readLock().unlock();
 		}
-		return null;
 	}
 
 	@Override
 	public long bindKnowledge(String frameUri) 
 	{
-		long n0 = frameModel.size();
 		IFrame otherFrame = frameManager.getFrame(frameUri);
 		
-		if (otherFrame != null) {
-			frameModel.addSubModel(otherFrame.getModel());
+		if (otherFrame == null) {
+			return 0;
+		}
+		if (otherFrame == this) {
+			throw new IllegalArgumentException("A frame cannot bind itself: " + frameUri);
+		}
+		
+		long n = 0;
+		Lock[] locks = lockWith(otherFrame);
+		try {
+			if (! boundFrames.add(frameUri)) {
+				return 0;
+			}
+			addKnowledge(otherFrame);
+			n = countKnown(otherFrame, excluding(this));
+		}
+		finally {
+			unlock(locks);
 		}
 		
-		return (frameModel.size() - n0);
+		rebindBinders();
+		return n;
 	}
 
 	@Override
 	public long unbindKnowledge(String frameUri) 
 	{
-		long n0 = frameModel.size();
 		IFrame otherFrame = frameManager.getFrame(frameUri);
 		
-		if (otherFrame != null) {
-			frameModel.removeSubModel(otherFrame.getModel());
+		if ( (otherFrame == null) || (otherFrame == this) ) {
+			return 0;
+		}
+		
+		long n = 0;
+		Lock[] locks = lockWith(otherFrame);
+		try {
+			if (! boundFrames.remove(frameUri)) {
+				return 0;
+			}
+			removeKnowledge(otherFrame);
+			n = countKnown(otherFrame, excluding(this));
+		}
+		finally {
+			unlock(locks);
 		}
 		
-		return (n0 - frameModel.size());
+		rebindBinders();
+		return n;
 	}
 
+	/** {@inheritDoc}
+	 * 
+	 * <p>This is answered by the {@link MembershipIndex} of this frame, and 
+	 * of the frames it binds. The model is only looked up for vocabulary
+	 * terms, which inference may introduce, and when this frame holds 
+	 * models that are not indexed.
+	 */
 	@Override
-	public boolean knows(String semUri) {
-		return frameModel.containsResource(frameModel.getResource(semUri));
+	public boolean knows(String semUri)
+	{
+		frameLock.readLock().lock();
+		try {
+			Node sem = NodeFactory.createURI(semUri);
+			if (mentions(sem) || boundKnowledge.mentions(sem) || mentionsInferred(sem)) {
+				return true;
+			}
+			
+			if (foreignKnowledge || isVocabulary(semUri)) {
+				return frameModel.containsResource(frameModel.getResource(semUri));
+			}
+			return false;
+		}
+		finally {
+			frameLock.readLock().unlock();
+		}
+	}
+
+	/** Answers whether some proposition known by this frame may match a 
+	 * pattern, without reading any proposition.
+	 * 
+	 * <p>Patterns are checked against the {@link GraphSummary} of this frame
+	 * and of the frames it binds. As inference only derives propositions 
+	 * about the nodes a frame mentions, and about vocabulary terms, the 
+	 * patterns of inferring frames are checked against their 
+	 * {@link MembershipIndex} instead.
+	 * 
+	 * @param s The subject, or <code>Node.ANY</code>.
+	 * @param p The predicate, or <code>Node.ANY</code>.
+	 * @param o The object, or <code>Node.ANY</code>.
+	 * 
+	 * @return <code>false</code> if no proposition matches the pattern.
+	 */
+	public boolean mayMatch(Node s, Node p, Node o)
+	{
+		if (foreignKnowledge) {
+			return true;
+		}
+		
+		if ( (frameModel.getGraph() instanceof InfGraph) || (frozenInference != null) ) {
+			return mayMention(s) && mayMention(p) && mayMention(o);
+		}
+		
+		Triple m = Triple.createMatch(s, p, o);
+		return frameSummary.mayMatch(m) || ! boundKnowledge.route(m).isEmpty();
+	}
+	
+	private boolean mayMention(Node node)
+	{
+		if ( (node == null) || ! node.isConcrete() ) {
+			return true;
+		}
+		
+		return (node.isURI() && isVocabulary(node.getURI())) 
+				|| ! Boolean.FALSE.equals(indexedMention(node)) 
+				|| boundKnowledge.mentions(node)
+				|| mentionsInferred(node);
+	}
+	
+	// frozen inferences may mention the nodes of frames unbound since
+	private boolean mentionsInferred(Node node)
+	{
+		Model inferred = frozenInference;
+		return (inferred != null) && GraphUtil.containsNode(inferred.getGraph(), node);
+	}
+	
+	/** Visits the known propositions that match a pattern.
+	 * 
+	 * @param s The subject, or <code>Node.ANY</code>.
+	 * @param p The predicate, or <code>Node.ANY</code>.
+	 * @param o The object, or <code>Node.ANY</code>.
+	 * @param visitor The visitor.
+	 * @param limit The maximum count of propositions to visit.
+	 * 
+	 * @return The count of visited propositions.
+	 */
+	public long visitMatching(Node s, Node p, Node o, IStatementVisitor visitor, long limit)
+	{
+		frameLock.readLock().lock();
+		try {
+			if ( (visitor == null) || (limit < 0) ) {
+				throw new IllegalArgumentException();
+			}
+			
+			ExtendedIterator<Statement> iterOnProps = frameModel.getGraph().find(s, p, o)
+				.mapWith(new Map1<Triple, Statement>() {
+					@Override
+					public Statement map1(Triple t) {
+						return frameModel.asStatement(t);
+					}
+				});
+			
+			return visit(new StmtIteratorImpl(iterOnProps), visitor, 0, limit);
+		}
+		finally {
+			frameLock.readLock().unlock();
+		}
 	}
 
+	/** {@inheritDoc}
+	 * 
+	 * <p>Resolved propositions are cached until a proposition about the sem
+	 * changes, in this frame or in the frames it binds: see {@link SemCache}.
+	 */
 	@Override
 	public List<Statement> resolveSem(String semUri) 
 	{
-		List<Statement> smallWorld = new ArrayList<Statement>();
+		frameLock.readLock().lock();
+		try {
+			Node sem = NodeFactory.createURI(semUri);
+			List<Statement> smallWorld = semCache.get(sem);
+			
+			if (smallWorld == null) 
+			{
+				long stamp = semCache.stamp();
+				smallWorld = new ArrayList<Statement>();
+				visit(streamSem(semUri), collector(smallWorld), 0, Long.MAX_VALUE);
+				semCache.put(sem, smallWorld, stamp);
+			}
+			
+			return new ArrayList<Statement>(smallWorld);
+		}
+		finally {
+			frameLock.readLock().unlock();
+		}
+	}
+	
+	/** Answers the count of frames this frame binds.
+	 * 
+	 * @return The binding fan-out.
+	 */
+	public int getBoundFrameCount()
+	{
+		frameLock.readLock().lock();
+		try {
+			return boundFrames.size();
+		}
+		finally {
+			frameLock.readLock().unlock();
+		}
+	}
+	
+	/** Prepares the reasoner of this frame, unless it is up to date, so that
+	 * the inference cost is not charged to the next query.
+	 * 
+	 * <p>This does not lock, unless this frame changed since last prepared.
+	 * 
+	 * @return The time spent inferring, in nanoseconds, or 0 if the 
+	 * reasoner was up to date.
+	 */
+	public long prepareInference()
+	{
+		if (! inferenceStale) {
+			return 0;
+		}
 		
-		if (knows(semUri)) 
-		{
-			StmtIterator iterOnProps = frameModel.listStatements(
-					frameModel.getResource(semUri),
-					null,
-					(RDFNode) null);
-			smallWorld.addAll(iterOnProps.toList());
+		frameLock.readLock().lock();
+		try {
+			inferenceStale = false;
+			Graph frameGraph = frameModel.getGraph();
+			if ( ! (frameGraph instanceof InfGraph) 
+					|| ( (frameGraph instanceof BaseInfGraph) 
+						&& ((BaseInfGraph) frameGraph).isPrepared() )
+					|| ( (frameGraph instanceof OntologyClosureGraph) 
+						&& ((OntologyClosureGraph) frameGraph).isPrepared() )
+					|| ( (frameGraph instanceof ForkInferenceGraph) 
+						&& ((ForkInferenceGraph) frameGraph).isPrepared() ) ) {
+				return 0;
+			}
 			
-			iterOnProps = frameModel.listStatements(
-					null,
-					null,
-					frameModel.getResource(semUri));
-			smallWorld.addAll(iterOnProps.toList());
+			long start = System.nanoTime();
+			((InfGraph) frameGraph).prepare();
+			return Math.max(1, System.nanoTime() - start);
+		}
+		finally {
+			frameLock.readLock().unlock();
 		}
+	}
+	
+	/** Answers the cache of the propositions about the sems this frame 
+	 * resolves, and its statistics.
+	 * 
+	 * @return The sem cache.
+	 */
+	public SemCache getSemCache() {
+		return semCache;
+	}
+
+	@Override
+	public StmtIterator streamSem(String semUri) 
+	{
+		return streamSem(frameModel, semUri);
+	}
+
+	@Override
+	public long visitSem(String semUri, 
+			IStatementVisitor visitor, 
+			long offset, 
+			long limit) 
+	{
+		frameLock.readLock().lock();
+		try {
+			if ( (visitor == null) || (offset < 0) || (limit < 0) ) {
+				throw new IllegalArgumentException();
+			}
 		
-		return smallWorld;
+			return visit(streamSem(semUri), visitor, offset, limit);
+		}
+		finally {
+			frameLock.readLock().unlock();
+		}
 	}
 
+	/** {@inheritDoc}
+	 * 
+	 * <p>The query syntax and the small world expansion are described by
+	 * {@link SmallWorldQuery} and {@link SmallWorldResolver}.
+	 */
 	@Override
 	public List<Statement> resolveSmallWorld(String query) 
 	{
-		//FIXME: not implemented
 		List<Statement> smallWorld = new ArrayList<Statement>();
+		visitSmallWorld(query, collector(smallWorld));
+		
 		return smallWorld;
 	}
 
+	@Override
+	public long visitSmallWorld(String query, IStatementVisitor visitor) 
+	{
+		frameLock.readLock().lock();
+		try {
+			if (visitor == null) {
+				throw new IllegalArgumentException();
+			}
+		
+			return new SmallWorldResolver(frameModel, SmallWorldQuery.parse(query))
+				.resolve(visitor);
+		}
+		finally {
+			frameLock.readLock().unlock();
+		}
+	}
+
 	@Override
 	public String createSem(String semTypeUri, 
 			String label,
 			String comment, 
 			String lang)
 	{
-		String semUri = FrameUtils.generateUri(frameUri);  
-		OntResource sem = frameModel.createOntResource(semUri);
-		sem.setRDFType(frameModel.getResource(semTypeUri));
-		sem.addLabel(label, lang);
-		sem.addComment(comment, lang);
+		beginChange();
+		try {
+			String semUri = semAllocator.next();
+			OntResource sem = frameModel.createOntResource(semUri);
+			sem.setRDFType(frameModel.getResource(semTypeUri));
+			sem.addLabel(label, lang);
+			sem.addComment(comment, lang);
 		
-		return sem.getURI();
+			return sem.getURI();
+		}
+		finally {
+			endChange();
+		}
 	}
 
 	@Override
 	public long dropSem(String semUri) 
 	{
-		long n0 = frameModel.size();
+		beginChange();
+		try {
+			Node sem = NodeFactory.createURI(semUri);
 		
-		if (knows(semUri)) {
-			frameModel.removeAll(frameModel.getResource(semUri), null, null);
-		}
+			List<Triple> dropped = getBaseGraph().find(sem, Node.ANY, Node.ANY).toList();
+			for (Triple t : getBaseGraph().find(Node.ANY, Node.ANY, sem).toList()) {
+				if (! sem.equals(t.getSubject())) {
+					dropped.add(t);
+				}
+			}
 		
-		return (n0 - frameModel.size());
+			return forgetAsserted(dropped);
+		}
+		finally {
+			endChange();
+		}
 	}
 
 	@Override
 	public long learn(Model someKnowledge) 
 	{
-		long n0 = frameModel.size();
-		frameModel.add(someKnowledge);
+		beginChange();
+		try {
+			Graph baseGraph = getBaseGraph();
+			Graph frameGraph = frameModel.getGraph();
+			long n = 0;
+		
+			ExtendedIterator<Triple> iterOnTriples = someKnowledge.getGraph().find(Triple.ANY);
+			try {
+				while (iterOnTriples.hasNext()) 
+				{
+					Triple t = iterOnTriples.next();
+					if (! baseGraph.contains(t)) {
+						frameGraph.add(t);
+						n++;
+					}
+				}
+			}
+			finally {
+				iterOnTriples.close();
+			}
+		
+			return n;
+		}
+		finally {
+			endChange();
+		}
+	}
+
+	@Override
+	public long learn(Iterator<Statement> someKnowledge) 
+	{
+		beginChange();
+		try {
+			if (someKnowledge == null) {
+				throw new IllegalArgumentException();
+			}
+		
+			long n = new BulkLoader(getBaseGraph()).load(
+					WrappedIterator.create(someKnowledge).mapWith(
+							new Map1<Statement, Triple>() {
+								@Override
+								public Triple map1(Statement s) {
+									return s.asTriple();
+								}
+							}));
+			rebindInference();
+		
+			return n;
+		}
+		finally {
+			endChange();
+		}
+	}
+
+	@Override
+	public long learn(InputStream in, String lang) 
+	{
+		beginChange();
+		try {
+			Lang rdfLang = lang != null ? RDFLanguages.nameToLang(lang) : null;
+			if (rdfLang == null) {
+				throw new IllegalArgumentException("Unknown language: " + lang);
+			}
 		
-		return (frameModel.size() - n0);
+			try {
+				return new BulkLoader(getBaseGraph()).load(in, frameUri, rdfLang);
+			}
+			finally {
+				rebindInference();
+			}
+		}
+		finally {
+			endChange();
+		}
 	}
 
 	@Override
@@ -178,23 +662,51 @@ public abstract class AbstractFrame implements IFrame {
 			String propositionTypeUri,
 			String objectSemUri) 
 	{
-		long n0 = frameModel.size();
+		beginChange();
+		try {
+			Triple t = Triple.create(NodeFactory.createURI(subjectSemUri),
+					NodeFactory.createURI(propositionTypeUri),
+					NodeFactory.createURI(objectSemUri));
 		
-		frameModel.add(frameModel.getResource(subjectSemUri),
-				frameModel.getProperty(propositionTypeUri),
-				frameModel.getResource(objectSemUri) );
+			if (getBaseGraph().contains(t)) {
+				return 0;
+			}
 		
-		return (frameModel.size() - n0);
+			frameModel.getGraph().add(t);
+			return 1;
+		}
+		finally {
+			endChange();
+		}
 	}
 
 	@Override
 	public long forget(Model someKnowledge) 
 	{
-		long n0 = frameModel.size();
+		beginChange();
+		try {
+			Graph baseGraph = getBaseGraph();
+			List<Triple> forgotten = new ArrayList<Triple>();
 		
-		frameModel.removeSubModel(someKnowledge);
+			ExtendedIterator<Triple> iterOnTriples = someKnowledge.getGraph().find(Triple.ANY);
+			try {
+				while (iterOnTriples.hasNext()) 
+				{
+					Triple t = iterOnTriples.next();
+					if (baseGraph.contains(t)) {
+						forgotten.add(t);
+					}
+				}
+			}
+			finally {
+				iterOnTriples.close();
+			}
 		
-		return (n0 -frameModel.size());
+			return forgetAsserted(forgotten);
+		}
+		finally {
+			endChange();
+		}
 	}
 
 	@Override
@@ -202,24 +714,935 @@ public abstract class AbstractFrame implements IFrame {
 			String propositionTypeUri,
 			String objectSemUri) 
 	{
-		long n0 = frameModel.size();
+		beginChange();
+		try {
+			Node subject = subjectSemUri != null ? 
+					NodeFactory.createURI(subjectSemUri) : Node.ANY;
+			Node predicate = propositionTypeUri != null ?  
+					NodeFactory.createURI(propositionTypeUri) : Node.ANY;
+			Node object = objectSemUri != null ? 
+					NodeFactory.createURI(objectSemUri) : Node.ANY;
+				
+			return forgetAsserted(getBaseGraph()
+					.find(subject, predicate, object).toList());
+		}
+		finally {
+			endChange();
+		}
+	}
+
+	/** {@inheritDoc}
+	 * 
+	 * <p>The propositions in-memory frames infer are materialized into a
+	 * frozen graph, which their model then holds as a sub-model, instead of
+	 * inferring: the inferences of frozen frames are not rebuilt on the 
+	 * heap. Knowledge they bind later on, and changes of the frames they 
+	 * bind, are not reasoned over. The inference state of other frames is
+	 * rebuilt when next queried.
+	 */
+	@Override
+	public long freeze() 
+	{
+		frameLock.writeLock().lock();
+		try {
+			if (! frozen) 
+			{
+				EncodedGraph inferred = materializeInference();
+				freezeBaseGraph();
+				if (inferred != null) {
+					freezeModel(inferred);
+				}
+				else {
+					frameModel.rebind();
+				}
+				frozen = true;
+			}
+			
+			return frameCounter.get();
+		}
+		finally {
+			frameLock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean isFrozen() 
+	{
+		frameLock.readLock().lock();
+		try {
+			return frozen;
+		}
+		finally {
+			frameLock.readLock().unlock();
+		}
+	}
+
+	/** {@inheritDoc}
+	 * 
+	 * <p>The propositions of in-memory frames are versioned from their first
+	 * snapshot on, which takes the frame read lock: later snapshots take no
+	 * lock, and share the propositions of the frame last published version.
+	 * Propositions of other frames are copied under their read lock.
+	 * 
+	 * <p>Bound frames versions are taken one after the other, so that a
+	 * snapshot may not match a single point in time across frames.
+	 */
+	@Override
+	public IFrame snapshot() 
+	{
+		List<Graph> boundVersions = new ArrayList<Graph>();
+		for (AbstractFrame frame : collectBoundFrames()) {
+			boundVersions.add(frame.currentVersion());
+		}
 		
-		Resource subject = (subjectSemUri != null) && knows(subjectSemUri)  ? 
-				 frameModel.getResource(subjectSemUri)
-						: null;
+		return new FrameSnapshot(frameUri, currentVersion(), boundVersions);
+	}
+
+	/** {@inheritDoc}
+	 * 
+	 * <p>Prepared queries run against the frame model, including inferred
+	 * and bound propositions.
+	 */
+	@Override
+	public IPreparedQuery prepareQuery(String query) 
+	{
+		return new PreparedQuery(queryPlans.get(query), frameModel, frameLock.readLock());
+	}
+
+	/** {@inheritDoc}
+	 * 
+	 * <p>Asserted propositions of in-memory frames are read from their last
+	 * published version, as snapshots do, without holding any lock. Other
+	 * asserted propositions, and inferred ones, are read under the read lock
+	 * of their frame, which only blocks writers.
+	 * 
+	 * <p>The reasoner of this frame already derives propositions from the 
+	 * knowledge it binds: exporting bound knowledge only adds the asserted
+	 * propositions of bound frames.
+	 */
+	@Override
+	public long export(WritableByteChannel out, 
+			String lang, 
+			FrameContent content, 
+			boolean withBoundKnowledge) 
+	{
+		if (content == null) {
+			throw new IllegalArgumentException();
+		}
 		
-		Resource object = (objectSemUri != null) && knows(objectSemUri)  ?
-				 frameModel.getResource(objectSemUri)
-						: null;
+		try {
+			FrameExporter exporter = new FrameExporter(out, lang);
+			
+			if (content != FrameContent.INFERRED) 
+			{
+				exportAsserted(exporter);
+				if (withBoundKnowledge) 
+				{
+					for (AbstractFrame frame : collectBoundFrames()) {
+						frame.exportAsserted(exporter);
+					}
+				}
+			}
+			if (content != FrameContent.ASSERTED) {
+				exportInferred(exporter);
+			}
+			
+			return exporter.finish();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot export frame: " + frameUri, e);
+		}
+	}
+
+	// bound frames, and the frames they bind, each once
+	private List<AbstractFrame> collectBoundFrames()
+	{
+		List<AbstractFrame> frames = new ArrayList<AbstractFrame>();
+		Set<AbstractFrame> visited = new HashSet<AbstractFrame>();
+		visited.add(this);
+		collectFrames(boundKnowledge.boundFrames, visited, frames);
 		
-		Property predicate = propositionTypeUri != null ?  
-				frameModel.getProperty(propositionTypeUri) : null;
-				
-		frameModel.remove(frameModel.createStatement(subject, 
-				predicate, 
-				object) );
+		return frames;
+	}
+
+	private static void collectFrames(List<AbstractFrame> frames,
+			Set<AbstractFrame> visited,
+			List<AbstractFrame> collected)
+	{
+		for (AbstractFrame frame : frames)
+		{
+			if (visited.add(frame))
+			{
+				collected.add(frame);
+				collectFrames(frame.boundKnowledge.boundFrames, visited, collected);
+			}
+		}
+	}
+
+	/** Answers the count of propositions managed by a frame, and by the 
+	 * frames it binds in turn, as they are routed by {@link RoutedUnion}: 
+	 * each frame is counted once.
+	 * 
+	 * @param frame The frame.
+	 * @param visited The frames already counted, which are not counted again.
+	 * 
+	 * @return The count of propositions.
+	 */
+	protected static long countKnown(IFrame frame, Set<AbstractFrame> visited)
+	{
+		if (! (frame instanceof AbstractFrame)) {
+			return frame.size();
+		}
+		
+		List<AbstractFrame> frames = new ArrayList<AbstractFrame>();
+		collectFrames(Collections.singletonList((AbstractFrame) frame), visited, frames);
+		
+		long n = 0;
+		for (AbstractFrame counted : frames) {
+			n += counted.frameCounter.get();
+		}
+		return n;
+	}
+
+	/** Answers the count of propositions managed by the frames this frame
+	 * binds, and by the frames they bind in turn, each counted once.
+	 * 
+	 * <p>This should be called under the frame read lock.
+	 */
+	private long countBound()
+	{
+		long n = boundCounter.get();
+		if (n != GraphSizeCounter.STALE) {
+			return n;
+		}
+		
+		long stamp = boundCounter.stamp();
+		n = 0;
+		for (AbstractFrame frame : collectBoundFrames()) {
+			n += frame.frameCounter.get();
+		}
+		boundCounter.set(n, stamp);
+		return n;
+	}
+	
+	/** Shifts the bound counts of the frames that bind this frame, in turn,
+	 * by the change of its own count.
+	 */
+	private void shiftBinders(long delta)
+	{
+		if (binders.isEmpty()) {
+			return;
+		}
+		
+		List<AbstractFrame> frames = new ArrayList<AbstractFrame>();
+		collectBinders(binders, excluding(this), frames);
+		for (AbstractFrame frame : frames) {
+			frame.boundCounter.shift(delta);
+		}
+	}
+	
+	/** Leaves stale the bound counts of the frames that bind this frame, in
+	 * turn.
+	 */
+	private void staleBinders()
+	{
+		if (binders.isEmpty()) {
+			return;
+		}
+		
+		List<AbstractFrame> frames = new ArrayList<AbstractFrame>();
+		collectBinders(binders, excluding(this), frames);
+		for (AbstractFrame frame : frames) {
+			frame.boundCounter.stale();
+		}
+	}
+
+	private static Set<AbstractFrame> excluding(AbstractFrame frame)
+	{
+		Set<AbstractFrame> visited = new HashSet<AbstractFrame>();
+		visited.add(frame);
+		return visited;
+	}
+
+	/** Exports the propositions managed by this frame.
+	 * 
+	 * @param exporter The exporter.
+	 * 
+	 * @throws IOException if the export channel fails.
+	 */
+	protected void exportAsserted(FrameExporter exporter) throws IOException
+	{
+		Graph baseGraph = getBaseGraph();
+		if ( (baseGraph instanceof EncodedGraph) || (baseGraph instanceof SpillableGraph) ) 
+		{
+			exporter.write(currentVersion().find(Triple.ANY));
+			return;
+		}
+		
+		frameLock.readLock().lock();
+		try {
+			exporter.write(baseGraph.find(Triple.ANY));
+		}
+		finally {
+			frameLock.readLock().unlock();
+		}
+	}
+
+	/** Exports the propositions inferred by this frame, which are neither
+	 * managed by this frame, nor by the frames it binds.
+	 * 
+	 * @param exporter The exporter.
+	 * 
+	 * @throws IOException if the export channel fails.
+	 */
+	protected void exportInferred(FrameExporter exporter) throws IOException
+	{
+		Graph frameGraph = frameModel.getGraph();
+		if (! (frameGraph instanceof InfGraph)) {
+			return;
+		}
+		
+		frameLock.readLock().lock();
+		try {
+			final Graph baseGraph = getBaseGraph();
+			exporter.write(frameGraph.find(Triple.ANY)
+					.filterDrop(new Filter<Triple>() {
+						@Override
+						public boolean accept(Triple t) {
+							return baseGraph.contains(t) || boundKnowledge.contains(t);
+						}
+					}));
+		}
+		finally {
+			frameLock.readLock().unlock();
+		}
+	}
+
+	/** Answers the last published version of the propositions managed by 
+	 * this frame.
+	 * 
+	 * @return An immutable graph.
+	 */
+	protected Graph currentVersion()
+	{
+		Graph baseGraph = getBaseGraph();
+		
+		GraphVersion version = publishedVersion();
+		if (version != null) {
+			return version;
+		}
+		
+		frameLock.readLock().lock();
+		try {
+			if (baseGraph instanceof EncodedGraph) {
+				return ((EncodedGraph) baseGraph).startVersioning();
+			}
+			if (baseGraph instanceof SpillableGraph) {
+				return ((SpillableGraph) baseGraph).startVersioning();
+			}
+			
+			Graph copy = Factory.createGraphMem();
+			GraphUtil.addInto(copy, baseGraph);
+			return copy;
+		}
+		finally {
+			frameLock.readLock().unlock();
+		}
+	}
+
+	// the last published version of the propositions, if any
+	private GraphVersion publishedVersion()
+	{
+		Graph baseGraph = getBaseGraph();
+		
+		if (baseGraph instanceof EncodedGraph) {
+			return ((EncodedGraph) baseGraph).getVersion();
+		}
+		if (baseGraph instanceof SpillableGraph) {
+			return ((SpillableGraph) baseGraph).getVersion();
+		}
+		return null;
+	}
+
+	/** Answers whether the propositions managed by this frame mention a
+	 * node, without reading them.
+	 * 
+	 * @param node The node.
+	 * 
+	 * @return Whether the node is mentioned, or <code>null</code> if the
+	 * {@link MembershipIndex} of this frame cannot tell.
+	 */
+	protected Boolean indexedMention(Node node) {
+		return frameMembers.contains(node);
+	}
+
+	/** Answers whether the propositions managed by this frame mention a 
+	 * node, from the {@link MembershipIndex} of this frame when it can tell.
+	 * 
+	 * <p>The caller should hold the lock of this frame.
+	 * 
+	 * @param node The node.
+	 * 
+	 * @return <code>true</code> if the node is mentioned.
+	 */
+	protected boolean mentions(Node node)
+	{
+		Boolean mentioned = indexedMention(node);
+		if (mentioned != null) {
+			return mentioned;
+		}
+		return GraphUtil.containsNode(getBaseGraph(), node);
+	}
+
+	/** Answers whether the propositions managed by this frame mention a 
+	 * node, as read by the frames that bind it: see 
+	 * {@link #findPublished(TripleMatch)}.
+	 * 
+	 * @param node The node.
+	 * 
+	 * @return <code>true</code> if the node is mentioned.
+	 */
+	protected boolean mentionsPublished(Node node)
+	{
+		Boolean mentioned = indexedMention(node);
+		if (mentioned != null) {
+			return mentioned;
+		}
+		
+		GraphVersion version = publishedVersion();
+		if (version != null) {
+			return GraphUtil.containsNode(version, node);
+		}
+		
+		frameLock.readLock().lock();
+		try {
+			return GraphUtil.containsNode(getBaseGraph(), node);
+		}
+		finally {
+			frameLock.readLock().unlock();
+		}
+	}
+
+	/** Answers the propositions managed by this frame that match a pattern,
+	 * as read by the frames that bind it.
+	 * 
+	 * <p>Propositions are read from the last published version of this
+	 * frame, without any lock, once versioned. Otherwise, the matching 
+	 * propositions are copied under the read lock of this frame, so that
+	 * binding frames never iterate them while they change.
+	 * 
+	 * @param m The triple pattern.
+	 * 
+	 * @return The matching propositions.
+	 */
+	protected ExtendedIterator<Triple> findPublished(TripleMatch m)
+	{
+		GraphVersion version = publishedVersion();
+		if (version != null) {
+			return version.find(m);
+		}
+		
+		frameLock.readLock().lock();
+		try {
+			return WrappedIterator.create(getBaseGraph().find(m).toList().iterator());
+		}
+		finally {
+			frameLock.readLock().unlock();
+		}
+	}
+
+	/** Starts versioning the propositions managed by this frame, when held
+	 * in memory, so that the frames binding it read them without its lock.
+	 */
+	protected void startVersioning()
+	{
+		Graph baseGraph = getBaseGraph();
+		if ( (baseGraph instanceof EncodedGraph) || (baseGraph instanceof SpillableGraph) ) {
+			currentVersion();
+		}
+	}
+
+	/** Compacts the graph of the propositions managed by this frame, once
+	 * frozen.
+	 * 
+	 * <p>In-memory graphs are moved into an off-heap index, while other
+	 * graphs are left as is.
+	 */
+	protected void freezeBaseGraph()
+	{
+		Graph baseGraph = getBaseGraph();
+		
+		if (baseGraph instanceof EncodedGraph) {
+			((EncodedGraph) baseGraph).freeze();
+		}
+		else if (baseGraph instanceof SpillableGraph) {
+			((SpillableGraph) baseGraph).freeze();
+		}
+	}
+
+	/** Releases the state derived from the propositions managed by this
+	 * frame, once they are spilled: the membership index, the summary and
+	 * the cached neighbourhoods are read again from the reloaded
+	 * propositions when next used.
+	 * 
+	 * <p>This should be called under the frame write lock.
+	 */
+	void releaseDerived()
+	{
+		frameMembers.release();
+		frameSummary.release();
+		semCache.clear();
+	}
+
+	/** Materializes the propositions this frame infers, but for the ones
+	 * it manages and binds, as {@link FrameImage} does.
+	 * 
+	 * @return The frozen inferred propositions, or <code>null</code> if 
+	 * this frame does not infer, or does not encode its propositions.
+	 */
+	protected EncodedGraph materializeInference()
+	{
+		Graph baseGraph = getBaseGraph();
+		Graph frameGraph = frameModel.getGraph();
+		NodeDictionary nodeDictionary = null;
+		if (baseGraph instanceof EncodedGraph) {
+			nodeDictionary = ((EncodedGraph) baseGraph).getNodeDictionary();
+		}
+		else if (baseGraph instanceof SpillableGraph) {
+			nodeDictionary = ((SpillableGraph) baseGraph).getNodeDictionary();
+		}
+		if ( (nodeDictionary == null) || ! (frameGraph instanceof InfGraph) ) {
+			return null;
+		}
+		
+		// inference graphs may answer a triple several times, which is added once
+		EncodedGraph inferred = new EncodedGraph(nodeDictionary);
+		ExtendedIterator<Triple> iterOnTriples = frameGraph.find(Triple.ANY);
+		try {
+			while (iterOnTriples.hasNext()) 
+			{
+				Triple t = iterOnTriples.next();
+				if (! baseGraph.contains(t) && ! boundKnowledge.contains(t)) {
+					inferred.add(t);
+				}
+			}
+		}
+		finally {
+			iterOnTriples.close();
+		}
+		
+		inferred.freeze();
+		return inferred;
+	}
+	
+	/** Replaces the inferring model of this frame by a model which holds
+	 * the materialized inferences, over the same propositions and bound 
+	 * frames.
+	 * 
+	 * <p>Queries prepared before keep reading the previous model.
+	 * 
+	 * @param inferred The frozen inferred propositions.
+	 */
+	protected void freezeModel(EncodedGraph inferred)
+	{
+		OntModel frozenModel = ModelFactory.createOntologyModel(OntModelSpec.OWL_MEM, 
+				frameModel.getBaseModel());
+		for (OntModel subModel : frameModel.listSubModels(false).toList()) {
+			frozenModel.addSubModel(subModel.getBaseModel());
+		}
+		frozenInference = ModelFactory.createModelForGraph(inferred);
+		frozenModel.addSubModel(frozenInference);
+		
+		// the deductions are released once the inference graph stops following the frame
+		Graph frameGraph = frameModel.getGraph();
+		if (frameGraph instanceof IncrementalRdfsGraph) {
+			((IncrementalRdfsGraph) frameGraph).detach();
+		}
+		else if (frameGraph instanceof OntologyClosureGraph) {
+			((OntologyClosureGraph) frameGraph).detach();
+		}
+		frameModel = frozenModel;
+		semCache.clear();
+	}
+
+	/** Invalidates the inferences of this frame, after its base graph was
+	 * changed in bulk.
+	 * 
+	 * <p>Incremental inference graphs follow the changes of the base graph,
+	 * and are left as is.
+	 */
+	protected void rebindInference()
+	{
+		if (! (frameModel.getGraph() instanceof IncrementalRdfsGraph)) {
+			frameModel.rebind();
+		}
+	}
+
+	/** Rejects changes to a frozen frame.
+	 * 
+	 * @throws IllegalStateException if this frame is frozen.
+	 */
+	protected void checkNotFrozen()
+	{
+		if (frozen) {
+			throw new IllegalStateException("Frame is frozen: " + frameUri);
+		}
+	}
+
+	/** Takes this frame write lock, before a change.
+	 * 
+	 * @throws IllegalStateException if this frame is frozen.
+	 */
+	protected void beginChange()
+	{
+		frameLock.writeLock().lock();
+		try {
+			checkNotFrozen();
+		}
+		catch (RuntimeException e) {
+			frameLock.writeLock().unlock();
+			throw e;
+		}
+	}
+	
+	/** Publishes a change to snapshots, and releases this frame write lock.
+	 */
+	protected void endChange()
+	{
+		inferenceStale = true;
+		try {
+			Graph baseGraph = getBaseGraph();
+			
+			if (baseGraph instanceof EncodedGraph) {
+				((EncodedGraph) baseGraph).commit();
+			}
+			else if (baseGraph instanceof SpillableGraph) {
+				((SpillableGraph) baseGraph).commit();
+			}
+		}
+		finally {
+			frameLock.writeLock().unlock();
+		}
+	}
+
+	/** Removes propositions managed by this frame, one at a time, so that
+	 * the frame counter is kept exact.
+	 * 
+	 * @param forgotten Propositions that belong to this frame base graph.
+	 * 
+	 * @return The count of forgotten propositions.
+	 */
+	protected long forgetAsserted(List<Triple> forgotten)
+	{
+		Graph frameGraph = frameModel.getGraph();
+		for (Triple t : forgotten) {
+			frameGraph.delete(t);
+		}
+		
+		return forgotten.size();
+	}
+
+	/** Adds the knowledge of another frame to this frame model.
+	 * 
+	 * <p>The propositions of frames implemented by this class are routed
+	 * through the {@link RoutedUnion} of this frame. Other frames models
+	 * are added as sub-models.
+	 * 
+	 * @param otherFrame The bound frame.
+	 */
+	protected void addKnowledge(IFrame otherFrame)
+	{
+		if (! (otherFrame instanceof AbstractFrame)) {
+			frameModel.addSubModel(otherFrame.getModel());
+		}
+		else if (boundKnowledge.bind((AbstractFrame) otherFrame)) {
+			frameModel.addSubModel(boundModel);
+		}
+		else {
+			frameModel.rebind();
+		}
+		
+		if (otherFrame instanceof AbstractFrame) 
+		{
+			AbstractFrame frame = (AbstractFrame) otherFrame;
+			frame.binders.add(this);
+			frame.semCache.addDependent(semCache);
+			boundCounter.stale();
+			staleBinders();
+			if (frame.frameLock != frameLock) {
+				// bound propositions are then read from published versions
+				frame.startVersioning();
+			}
+		}
+		semCache.clear();
+		checkForeignKnowledge();
+		inferenceStale = true;
+	}
+	
+	/** Removes the knowledge of another frame from this frame model.
+	 * 
+	 * @param otherFrame The unbound frame.
+	 */
+	protected void removeKnowledge(IFrame otherFrame)
+	{
+		if (! (otherFrame instanceof AbstractFrame)) {
+			frameModel.removeSubModel(otherFrame.getModel());
+		}
+		else if (boundKnowledge.unbind((AbstractFrame) otherFrame)) {
+			frameModel.removeSubModel(boundModel);
+		}
+		else {
+			frameModel.rebind();
+		}
+		
+		if (otherFrame instanceof AbstractFrame) 
+		{
+			AbstractFrame frame = (AbstractFrame) otherFrame;
+			frame.binders.remove(this);
+			frame.semCache.removeDependent(semCache);
+			boundCounter.stale();
+			staleBinders();
+		}
+		semCache.clear();
+		checkForeignKnowledge();
+		inferenceStale = true;
+	}
+	
+	/** Invalidates the inferences of the frames that bind this frame, and of
+	 * the frames that bind them in turn, once the knowledge this frame binds
+	 * changed.
+	 * 
+	 * <p>Each binder is rebound under its own write lock, once the locks of
+	 * the change are released, so that no other frame lock is held.
+	 */
+	protected void rebindBinders()
+	{
+		Set<AbstractFrame> visited = excluding(this);
+		List<AbstractFrame> frames = new ArrayList<AbstractFrame>();
+		collectBinders(binders, visited, frames);
+		
+		for (AbstractFrame frame : frames) 
+		{
+			frame.frameLock.writeLock().lock();
+			try {
+				// bound knowledge is not followed by incremental inference
+				frame.frameModel.rebind();
+				frame.semCache.clear();
+				frame.inferenceStale = true;
+			}
+			finally {
+				frame.frameLock.writeLock().unlock();
+			}
+		}
+	}
+	
+	private static void collectBinders(List<AbstractFrame> frames,
+			Set<AbstractFrame> visited,
+			List<AbstractFrame> collected)
+	{
+		for (AbstractFrame frame : frames)
+		{
+			if (visited.add(frame))
+			{
+				collected.add(frame);
+				collectBinders(frame.binders, visited, collected);
+			}
+		}
+	}
+	
+	/** Checks whether this frame model holds sub-models, such as imported
+	 * ontologies or other frames models, that are not routed through the
+	 * {@link RoutedUnion} of this frame, and thus not indexed.
+	 */
+	protected void checkForeignKnowledge()
+	{
+		boolean foreign = false;
+		for (OntModel subModel : frameModel.listSubModels(true).toList()) 
+		{
+			Graph subGraph = subModel.getBaseModel().getGraph();
+			foreign |= (subGraph != boundKnowledge) 
+					&& ( (frozenInference == null) || (subGraph != frozenInference.getGraph()) );
+		}
+		foreignKnowledge = foreign;
+	}
+	
+	/** Answers whether a URI belongs to the RDF, RDFS, OWL or XML Schema
+	 * vocabularies, which terms may be mentioned by inferred propositions
+	 * only.
+	 * 
+	 * @param uri The URI.
+	 * 
+	 * @return <code>true</code> for vocabulary terms.
+	 */
+	protected static boolean isVocabulary(String uri)
+	{
+		return uri.startsWith(RDF.getURI())
+				|| uri.startsWith(RDFS.getURI())
+				|| uri.startsWith(OWL.NS)
+				|| uri.startsWith(XSD.getURI());
+	}
+
+	/** Takes this frame write lock, and another frame read lock.
+	 * 
+	 * <p>Locks are always taken in the frames URI order, so that two frames 
+	 * binding each other concurrently cannot deadlock.
+	 * 
+	 * @param otherFrame The other frame.
+	 * 
+	 * @return The taken locks, to be released via {@link #unlock(Lock[])}.
+	 */
+	protected Lock[] lockWith(IFrame otherFrame)
+	{
+		Lock writeLock = frameLock.writeLock();
+		
+		if (! (otherFrame instanceof AbstractFrame)
+				|| (((AbstractFrame) otherFrame).frameLock == frameLock) ) 
+		{
+			writeLock.lock();
+			return new Lock[] { writeLock };
+		}
+		
+		Lock readLock = ((AbstractFrame) otherFrame).frameLock.readLock();
+		Lock[] locks = otherFrame.getURI().compareTo(frameUri) < 0 ?
+				new Lock[] { readLock, writeLock } 
+				: new Lock[] { writeLock, readLock };
+		
+		locks[0].lock();
+		try {
+			locks[1].lock();
+		}
+		catch (RuntimeException e) {
+			locks[0].unlock();
+			throw e;
+		}
+		
+		return locks;
+	}
+	
+	/** Releases locks, in reverse order.
+	 * 
+	 * @param locks The locks to release.
+	 */
+	protected static void unlock(Lock[] locks)
+	{
+		for (int k = locks.length - 1 ; k >= 0 ; k--) {
+			locks[k].unlock();
+		}
+	}
+
+	/** Releases this frame resources, once no reader nor writer uses it.
+	 * 
+	 * <p>The frame should not be used anymore afterwards.
+	 */
+	protected void close()
+	{
+		frameLock.writeLock().lock();
+		try {
+			for (AbstractFrame frame : boundKnowledge.boundFrames) {
+				frame.binders.remove(this);
+				frame.semCache.removeDependent(semCache);
+			}
+			frameCounter.detach();
+			frameSummary.detach();
+			frameMembers.detach();
+			semCache.detach();
+			frameModel.close();
+		}
+		finally {
+			frameLock.writeLock().unlock();
+		}
+	}
+
+	/** Answers the graph of the propositions managed by this frame, without
+	 * inferred nor referenced propositions.
+	 * 
+	 * @return The frame base graph.
+	 */
+	protected Graph getBaseGraph()
+	{
+		return frameModel.getBaseModel().getGraph();
+	}
+
+	/** Answers a visitor that collects all visited propositions.
+	 * 
+	 * @param propositions The list the visited propositions are appended to.
+	 * 
+	 * @return The collecting visitor.
+	 */
+	protected static IStatementVisitor collector(final List<Statement> propositions)
+	{
+		return new IStatementVisitor() {
+			@Override
+			public boolean visit(Statement proposition) {
+				return propositions.add(proposition);
+			}
+		};
+	}
+
+	/** Answers the propositions of a model about a sem, as subject then as
+	 * object.
+	 * 
+	 * @param model The model.
+	 * @param semUri The sem URI.
+	 * 
+	 * @return An iterator over the propositions.
+	 */
+	protected static StmtIterator streamSem(Model model, String semUri)
+	{
+		final Resource sem = model.getResource(semUri);
+		
+		ExtendedIterator<Statement> iterOnProps = model.listStatements(
+				sem,
+				null,
+				(RDFNode) null)
+			.andThen(model.listStatements(
+				null,
+				null,
+				sem)
+				// self references already came as subject
+				.filterDrop(new Filter<Statement>() {
+					@Override
+					public boolean accept(Statement s) {
+						return sem.equals(s.getSubject());
+					}
+				}));
+		
+		return new StmtIteratorImpl(iterOnProps);
+	}
+	
+	/** Visits a page of propositions, and closes their iterator.
+	 * 
+	 * @param iterOnProps The propositions.
+	 * @param visitor The visitor.
+	 * @param offset The count of propositions to skip.
+	 * @param limit The maximum count of propositions to visit.
+	 * 
+	 * @return The count of visited propositions.
+	 */
+	protected static long visit(StmtIterator iterOnProps, 
+			IStatementVisitor visitor, 
+			long offset, 
+			long limit)
+	{
+		long visited = 0;
+		try {
+			for (long k = 0; (k < offset) && iterOnProps.hasNext(); k++) {
+				iterOnProps.next();
+			}
+		
+			while ( (visited < limit) && iterOnProps.hasNext() ) 
+			{
+				visited++;
+				if (! visitor.visit(iterOnProps.next())) {
+					break;
+				}
+			}
+		}
+		finally {
+			iterOnProps.close();
+		}
 		
-		return (n0 - frameModel.size());
+		return visited;
 	}
 
 	/////////////////////////////////////////////////////////////////////////////////////////////
@@ -0,0 +1,400 @@
+package org.marl.wafnm.core.impl;
+
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+
+import org.marl.wafnm.core.api.FrameContent;
+import org.marl.wafnm.core.api.IAsyncFrame;
+import org.marl.wafnm.core.api.IFrame;
+import org.marl.wafnm.core.api.IStatementVisitor;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+
+/** Implements an asynchronous frame over a synchronous one, as answered by
+ * {@link AsyncFrameManager}.
+ *
+ * <p>Queries run on the executor, concurrently. Changes are queued into the
+ * mailbox of this frame, which a single task at a time drains: callers
+ * never wait for the frame lock.
+ *
+ * <p>Consecutive queued propositions changes are applied as one batch,
+ * under a single hold of the write lock of frames implemented by
+ * {@link AbstractFrame}, and the reasoner is then prepared once for the
+ * whole batch, rather than by the queries interleaved between changes.
+ * Binding changes, and freezing, are applied alone, as they lock other
+ * frames too.
+ *
+ * @author kr1s
+ *
+ */
+public class AsyncFrame implements IAsyncFrame {
+
+	// bounds the time queries wait for a batch
+	public static final int MAX_BATCH_SIZE = 1024;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected Queue<Change<?>> mailbox = new ConcurrentLinkedQueue<Change<?>>();
+	protected AtomicBoolean draining = new AtomicBoolean();
+	protected AtomicLong changeCount = new AtomicLong();
+	protected AtomicLong batchCount = new AtomicLong();
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected IFrame frame;
+	protected Executor executor;
+
+	/** Creates an asynchronous frame.
+	 *
+	 * @param frame The frame operations are submitted to.
+	 * @param executor The executor that runs them.
+	 */
+	AsyncFrame(IFrame frame, Executor executor)
+	{
+		if ( (frame == null) || (executor == null) ) {
+			throw new IllegalArgumentException();
+		}
+
+		this.frame = frame;
+		this.executor = executor;
+	}
+
+	/** Answers the count of changes applied so far.
+	 *
+	 * @return The change count.
+	 */
+	public long getChangeCount() {
+		return changeCount.get();
+	}
+
+	/** Answers the count of batches the changes were applied in.
+	 *
+	 * @return The batch count.
+	 */
+	public long getBatchCount() {
+		return batchCount.get();
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															IAsyncFrame
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public String getURI() {
+		return frame.getURI();
+	}
+
+	@Override
+	public IFrame getFrame() {
+		return frame;
+	}
+
+	@Override
+	public CompletableFuture<Long> size() {
+		return CompletableFuture.supplyAsync(() -> frame.size(), executor);
+	}
+
+	@Override
+	public CompletableFuture<Resource> find(String semUri) {
+		return CompletableFuture.supplyAsync(() -> frame.find(semUri), executor);
+	}
+
+	@Override
+	public CompletableFuture<Boolean> knows(String semUri) {
+		return CompletableFuture.supplyAsync(() -> frame.knows(semUri), executor);
+	}
+
+	@Override
+	public CompletableFuture<List<Statement>> resolveSem(String semUri) {
+		return CompletableFuture.supplyAsync(() -> frame.resolveSem(semUri), executor);
+	}
+
+	@Override
+	public CompletableFuture<Long> visitSem(String semUri,
+			IStatementVisitor visitor,
+			long offset,
+			long limit) {
+		return CompletableFuture.supplyAsync(
+				() -> frame.visitSem(semUri, visitor, offset, limit), executor);
+	}
+
+	@Override
+	public CompletableFuture<List<Statement>> resolveSmallWorld(String query) {
+		return CompletableFuture.supplyAsync(() -> frame.resolveSmallWorld(query), executor);
+	}
+
+	@Override
+	public CompletableFuture<Long> visitSmallWorld(String query, IStatementVisitor visitor) {
+		return CompletableFuture.supplyAsync(() -> frame.visitSmallWorld(query, visitor), executor);
+	}
+
+	@Override
+	public CompletableFuture<IFrame> snapshot() {
+		return CompletableFuture.supplyAsync(() -> frame.snapshot(), executor);
+	}
+
+	@Override
+	public CompletableFuture<Long> export(WritableByteChannel out,
+			String lang,
+			FrameContent content,
+			boolean withBoundKnowledge) {
+		return CompletableFuture.supplyAsync(
+				() -> frame.export(out, lang, content, withBoundKnowledge), executor);
+	}
+
+	@Override
+	public CompletableFuture<Long> bindKnowledge(String frameUri) {
+		return submit(false, () -> frame.bindKnowledge(frameUri));
+	}
+
+	@Override
+	public CompletableFuture<Long> unbindKnowledge(String frameUri) {
+		return submit(false, () -> frame.unbindKnowledge(frameUri));
+	}
+
+	@Override
+	public CompletableFuture<String> createSem(String typeUri,
+			String label,
+			String comment,
+			String lang) {
+		return submit(true, () -> frame.createSem(typeUri, label, comment, lang));
+	}
+
+	@Override
+	public CompletableFuture<Long> dropSem(String semUri) {
+		return submit(true, () -> frame.dropSem(semUri));
+	}
+
+	@Override
+	public CompletableFuture<Long> learn(Model someKnowledge) {
+		return submit(true, () -> frame.learn(someKnowledge));
+	}
+
+	@Override
+	public CompletableFuture<Long> learn(InputStream in, String lang) {
+		return submit(true, () -> frame.learn(in, lang));
+	}
+
+	@Override
+	public CompletableFuture<Long> learn(String subjectSemUri,
+			String propositionTypeUri,
+			String objectSemUri) {
+		return submit(true, () -> frame.learn(subjectSemUri, propositionTypeUri, objectSemUri));
+	}
+
+	@Override
+	public CompletableFuture<Long> forget(Model someKnowledge) {
+		return submit(true, () -> frame.forget(someKnowledge));
+	}
+
+	@Override
+	public CompletableFuture<Long> forget(String subjectSemUri,
+			String propositionTypeUri,
+			String objectSemUri) {
+		return submit(true, () -> frame.forget(subjectSemUri, propositionTypeUri, objectSemUri));
+	}
+
+	@Override
+	public CompletableFuture<Long> freeze() {
+		return submit(false, () -> frame.freeze());
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															Mailbox
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	/** Queues a change into the mailbox of this frame.
+	 *
+	 * @param batchable Whether the change may be applied along with other
+	 * changes, under the same hold of the frame write lock.
+	 * @param change The change.
+	 *
+	 * @return Completed once the change is applied.
+	 */
+	<T> CompletableFuture<T> submit(boolean batchable, Supplier<T> change)
+	{
+		Change<T> queued = new Change<T>(batchable, change);
+		mailbox.add(queued);
+		schedule();
+
+		return queued.future;
+	}
+
+	private void schedule()
+	{
+		if (draining.compareAndSet(false, true))
+		{
+			try {
+				executor.execute(this::drain);
+			}
+			catch (RuntimeException e) {
+				draining.set(false);
+				throw e;
+			}
+		}
+	}
+
+	private void drain()
+	{
+		List<Change<?>> batch = nextBatch();
+		Throwable failure = null;
+		try {
+			if (! batch.isEmpty())
+			{
+				apply(batch);
+				batchCount.incrementAndGet();
+				changeCount.addAndGet(batch.size());
+			}
+		}
+		catch (Throwable e) {
+			failure = e;
+			throw e;
+		}
+		finally {
+			// completed out of the lock, as callbacks may run at once, and
+			// even if the batch failed, so that no future is left pending
+			for (Change<?> change : batch) {
+				change.complete(failure);
+			}
+			draining.set(false);
+			if (! mailbox.isEmpty()) {
+				schedule();
+			}
+		}
+	}
+
+	// this task is the only consumer of the mailbox
+	private List<Change<?>> nextBatch()
+	{
+		List<Change<?>> batch = new ArrayList<Change<?>>();
+		Change<?> first = mailbox.poll();
+		if (first == null) {
+			return batch;
+		}
+
+		batch.add(first);
+		if (first.batchable)
+		{
+			Change<?> next = mailbox.peek();
+			while ( (next != null) && next.batchable && (batch.size() < MAX_BATCH_SIZE) )
+			{
+				batch.add(mailbox.poll());
+				next = mailbox.peek();
+			}
+		}
+
+		return batch;
+	}
+
+	private void apply(List<Change<?>> batch)
+	{
+		if ( ! (frame instanceof AbstractFrame) || ! batch.get(0).batchable )
+		{
+			for (Change<?> change : batch) {
+				change.apply();
+			}
+			return;
+		}
+
+		AbstractFrame batchedFrame = (AbstractFrame) frame;
+		Lock writeLock = batchedFrame.frameLock.writeLock();
+		writeLock.lock();
+		try {
+			for (Change<?> change : batch) {
+				change.apply();
+			}
+		}
+		finally {
+			writeLock.unlock();
+		}
+		// the batch is journaled as a single group
+		if (batchedFrame instanceof BaseFrame) {
+			((BaseFrame) batchedFrame).syncJournal();
+		}
+		batchedFrame.prepareInference();
+	}
+
+	/** Holds a queued change, and its outcome until the future is completed.
+	 */
+	static class Change<T> {
+
+		final boolean batchable;
+		final Supplier<T> change;
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		T result;
+		Throwable failure;
+		boolean applied;
+
+		Change(boolean batchable, Supplier<T> change)
+		{
+			this.batchable = batchable;
+			this.change = change;
+		}
+
+		void apply()
+		{
+			applied = true;
+			try {
+				result = change.get();
+			}
+			catch (Throwable e) {
+				failure = e;
+			}
+		}
+
+		/** Completes the future of this change with its outcome.
+		 *
+		 * @param batchFailure The failure of the batch, which fails this
+		 * change unless it was applied, or <code>null</code>.
+		 */
+		void complete(Throwable batchFailure)
+		{
+			if (failure != null) {
+				future.completeExceptionally(failure);
+			}
+			else if (applied) {
+				future.complete(result);
+			}
+			else {
+				future.completeExceptionally(batchFailure != null ? batchFailure
+						: new IllegalStateException("Change was not applied"));
+			}
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															POJO
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public int hashCode() {
+		return frame.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (obj != null && obj instanceof IAsyncFrame)
+		{
+			return (obj.hashCode() == hashCode());
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return frame.toString();
+	}
+}
@@ -0,0 +1,244 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.marl.wafnm.core.api.IAsyncFrame;
+import org.marl.wafnm.core.api.IAsyncFrameManager;
+import org.marl.wafnm.core.api.IFrame;
+import org.marl.wafnm.core.api.IFrameManager;
+import org.marl.wafnm.core.api.InferenceProfile;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/** Submits the operations of a frame manager, and of its frames, to an
+ * executor.
+ *
+ * <p>Each frame retrieved through this manager is wrapped into an
+ * {@link AsyncFrame}, which applies its changes from its own mailbox. The
+ * executor only runs short tasks, and never waits for another task: on
+ * JVMs that provide them, an executor that starts a virtual thread per
+ * task is a good fit.
+ *
+ * @author kr1s
+ *
+ */
+public class AsyncFrameManager implements IAsyncFrameManager {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected ConcurrentMap<String, AsyncFrame> asyncFrames
+		= new ConcurrentHashMap<String, AsyncFrame>();
+
+	// the executor this manager created, if any
+	protected ExecutorService ownExecutor;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected IFrameManager frameManager;
+	protected Executor executor;
+
+	/** Creates an asynchronous manager, which runs operations on a pool of
+	 * daemon threads, released by {@link #close()}.
+	 *
+	 * @param frameManager The manager operations are submitted to.
+	 */
+	public AsyncFrameManager(IFrameManager frameManager)
+	{
+		this(frameManager, Executors.newCachedThreadPool(new DaemonThreadFactory()));
+		this.ownExecutor = (ExecutorService) executor;
+	}
+
+	/** Creates an asynchronous manager.
+	 *
+	 * @param frameManager The manager operations are submitted to.
+	 * @param executor The executor that runs operations.
+	 */
+	public AsyncFrameManager(IFrameManager frameManager, Executor executor)
+	{
+		if ( (frameManager == null) || (executor == null) ) {
+			throw new IllegalArgumentException();
+		}
+
+		this.frameManager = frameManager;
+		this.executor = executor;
+	}
+
+	/** Answers the manager operations are submitted to.
+	 *
+	 * @return The frame manager.
+	 */
+	public IFrameManager getFrameManager() {
+		return frameManager;
+	}
+
+	/** Releases the threads this manager created, once the submitted
+	 * operations are done.
+	 *
+	 * <p>An executor given to this manager is left to its owner.
+	 */
+	public void close()
+	{
+		if (ownExecutor != null) {
+			ownExecutor.shutdown();
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 													IAsyncFrameManager
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public CompletableFuture<IAsyncFrame> getFrame(String uri) {
+		return CompletableFuture.supplyAsync(() -> async(frameManager.getFrame(uri)), executor);
+	}
+
+	@Override
+	public CompletableFuture<IAsyncFrame> createFrame(Model baseOntology) {
+		return CompletableFuture.supplyAsync(() -> async(frameManager.createFrame(baseOntology)), executor);
+	}
+
+	@Override
+	public CompletableFuture<IAsyncFrame> createFrame(Model baseOntology, InferenceProfile profile) {
+		return CompletableFuture.supplyAsync(() -> async(frameManager.createFrame(baseOntology, profile)), executor);
+	}
+
+	@Override
+	public CompletableFuture<IAsyncFrame> forkFrame(String uri)
+	{
+		AsyncFrame asyncFrame = asyncFrames.get(uri);
+		if (asyncFrame == null) {
+			return CompletableFuture.supplyAsync(() -> async(frameManager.forkFrame(uri)), executor);
+		}
+
+		// queued after the changes already submitted to the parent
+		return asyncFrame.submit(false, () -> async(frameManager.forkFrame(uri)));
+	}
+
+	@Override
+	public CompletableFuture<Long> mergeFrame(String forkUri)
+	{
+		AsyncFrame asyncFrame = asyncFrames.get(forkUri);
+		if (asyncFrame == null)
+		{
+			return CompletableFuture.supplyAsync(() -> {
+				long n = frameManager.mergeFrame(forkUri);
+				asyncFrames.remove(forkUri);
+				return n;
+			}, executor);
+		}
+
+		// queued after the changes already submitted to the fork
+		return asyncFrame.submit(false, () -> {
+			long n = frameManager.mergeFrame(forkUri);
+			asyncFrames.remove(forkUri, asyncFrame);
+			return n;
+		});
+	}
+
+	@Override
+	public CompletableFuture<Void> removeFrame(String uri)
+	{
+		AsyncFrame asyncFrame = asyncFrames.get(uri);
+		if (asyncFrame == null)
+		{
+			return CompletableFuture.runAsync(() -> {
+				frameManager.removeFrame(uri);
+				asyncFrames.remove(uri);
+			}, executor);
+		}
+
+		// queued after the changes already submitted to the frame
+		return asyncFrame.submit(false, () -> {
+			try {
+				frameManager.removeFrame(uri);
+				return null;
+			}
+			finally {
+				asyncFrames.remove(uri, asyncFrame);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<List<IAsyncFrame>> listFrames()
+	{
+		return CompletableFuture.supplyAsync(() -> {
+			List<IAsyncFrame> frames = new ArrayList<IAsyncFrame>();
+			for (IFrame frame : frameManager.listFrames()) {
+				frames.add(async(frame));
+			}
+			return frames;
+		}, executor);
+	}
+
+	@Override
+	public CompletableFuture<Long> size() {
+		return CompletableFuture.supplyAsync(() -> frameManager.size(), executor);
+	}
+
+	// wraps a frame, keeping a single mailbox per frame
+	private IAsyncFrame async(IFrame frame)
+	{
+		if (frame == null) {
+			return null;
+		}
+
+		AsyncFrame asyncFrame = asyncFrames.get(frame.getURI());
+		if (asyncFrame == null)
+		{
+			asyncFrame = new AsyncFrame(frame, executor);
+			AsyncFrame previous = asyncFrames.putIfAbsent(frame.getURI(), asyncFrame);
+			if (previous != null) {
+				return previous;
+			}
+		}
+
+		return asyncFrame;
+	}
+
+	/** Names the threads of the pool of a manager.
+	 */
+	static class DaemonThreadFactory implements ThreadFactory {
+
+		private static final AtomicInteger poolCount = new AtomicInteger();
+
+		private final int pool = poolCount.incrementAndGet();
+		private final AtomicInteger threadCount = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r)
+		{
+			Thread t = new Thread(r, "wafnm-async-" + pool + "-" + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 													POJO
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public int hashCode() {
+		return frameManager.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return frameManager.equals(obj);
+	}
+
+	@Override
+	public String toString() {
+		return frameManager.toString();
+	}
+}
@@ -1,7 +1,11 @@
 package org.marl.wafnm.core.impl;
 
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 import org.marl.wafnm.core.api.IFrame;
 import org.marl.wafnm.core.api.IFrameManager;
+import org.marl.wafnm.core.api.InferenceProfile;
 
 import com.hp.hpl.jena.ontology.OntModel;
 
@@ -10,11 +14,23 @@ import com.hp.hpl.jena.ontology.OntModel;
  *  <p>The {@link IFrameManager <i>frame manager</i>} dependency
  *  should later be initialized via {@link #setFrameManager(IFrameManager)}.
  * 
+ *  <p>Frames given a {@link FrameJournal} record their bindings and 
+ *  freezing into it, and wait for the journal to be synced once a change
+ *  is complete.
+ * 
  * @author kr1s
  *
  */
 public class BaseFrame extends AbstractFrame implements IFrame {
 
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected InferenceProfile inferenceProfile = InferenceProfile.RDFS;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected FrameJournal frameJournal;
+
 	/** Constructor that initialize state.
 	 * 
 	 * @param frameUri
@@ -25,6 +41,18 @@ public class BaseFrame extends AbstractFrame implements IFrame {
 		super(frameUri, frameModel);
 	}
 
+	/** Constructor that initialize state, with a lock shared with other
+	 * frames.
+	 * 
+	 * @param frameUri
+	 * @param frameModel
+	 * @param frameLock
+	 */
+	BaseFrame(String frameUri, OntModel frameModel, ReadWriteLock frameLock)
+	{
+		super(frameUri, frameModel, frameLock);
+	}
+
 	/** Initialize the frame manager dependency.
 	 * 
 	 * @param frameManager A frame manager.
@@ -40,4 +68,144 @@ public class BaseFrame extends AbstractFrame implements IFrame {
 		
 		this.frameManager = frameManager;
 	}
+
+	/** Initialize the allocator of the sems created by this frame.
+	 * 
+	 * @param semAllocator An allocator that leases identifiers.
+	 */
+	void setSemAllocator(UriAllocator semAllocator)
+	{
+		this.semAllocator = semAllocator;
+	}
+
+	/** Answers the inference profile this frame was created with.
+	 * 
+	 * @return The inference profile.
+	 */
+	public InferenceProfile getInferenceProfile() {
+		return inferenceProfile;
+	}
+
+	/** Initialize the inference profile this frame was created with, as
+	 * recorded by frame managers.
+	 * 
+	 * @param inferenceProfile The inference profile of this frame model.
+	 */
+	void setInferenceProfile(InferenceProfile inferenceProfile)
+	{
+		this.inferenceProfile = inferenceProfile;
+	}
+
+	/** Initialize the journal of this frame changes.
+	 * 
+	 * @param frameJournal The journal, which already listens to this frame
+	 * base graph.
+	 */
+	void setFrameJournal(FrameJournal frameJournal)
+	{
+		this.frameJournal = frameJournal;
+	}
+
+	/** Restores a binding recorded by the frame manager, without recording
+	 * it again.
+	 * 
+	 * @param otherFrame The bound frame.
+	 */
+	void restoreKnowledge(IFrame otherFrame)
+	{
+		boundFrames.add(otherFrame.getURI());
+		addKnowledge(otherFrame);
+	}
+
+	/** Restores the frozen state recorded by the frame manager, without 
+	 * recording it again.
+	 */
+	void restoreFrozen()
+	{
+		frozen = true;
+	}
+
+	@Override
+	public long bindKnowledge(String frameUri) 
+	{
+		long n = super.bindKnowledge(frameUri);
+		if (frameJournal != null) {
+			frameJournal.sync();
+		}
+		
+		return n;
+	}
+
+	@Override
+	public long unbindKnowledge(String frameUri) 
+	{
+		long n = super.unbindKnowledge(frameUri);
+		if (frameJournal != null) {
+			frameJournal.sync();
+		}
+		
+		return n;
+	}
+
+	@Override
+	public long freeze() 
+	{
+		long n = super.freeze();
+		if (frameJournal != null) 
+		{
+			frameJournal.frameFrozen(getURI());
+			frameJournal.sync();
+		}
+		
+		return n;
+	}
+
+	@Override
+	protected void addKnowledge(IFrame otherFrame)
+	{
+		super.addKnowledge(otherFrame);
+		if (frameJournal != null) {
+			frameJournal.knowledgeBound(getURI(), otherFrame.getURI(), true);
+		}
+	}
+
+	@Override
+	protected void removeKnowledge(IFrame otherFrame)
+	{
+		super.removeKnowledge(otherFrame);
+		if (frameJournal != null) {
+			frameJournal.knowledgeBound(getURI(), otherFrame.getURI(), false);
+		}
+	}
+
+	/** {@inheritDoc}
+	 * 
+	 * <p>The journal is not synced while the change is nested in a batch
+	 * that holds the write lock, which then calls {@link #syncJournal()}
+	 * once the lock is released.
+	 */
+	@Override
+	protected void endChange()
+	{
+		super.endChange();
+		if ( (frameJournal != null) && ! isWriteLockedByCurrentThread() ) {
+			frameJournal.sync();
+		}
+	}
+
+	/** Makes the journaled changes of this frame durable, once a batch of
+	 * changes released the write lock.
+	 */
+	void syncJournal()
+	{
+		if (frameJournal != null) {
+			frameJournal.sync();
+		}
+	}
+
+	private boolean isWriteLockedByCurrentThread()
+	{
+		return (frameLock instanceof ReentrantReadWriteLock)
+				&& ((ReentrantReadWriteLock) frameLock).isWriteLockedByCurrentThread();
+	}
 }
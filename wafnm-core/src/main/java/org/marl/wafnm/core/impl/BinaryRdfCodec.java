@@ -0,0 +1,362 @@
+package org.marl.wafnm.core.impl;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.hp.hpl.jena.datatypes.RDFDatatype;
+import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.AnonId;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+/** Serializes graphs into a compact binary format.
+ *
+ * <p>Each node is written once, the first time it appears, and is then
+ * referenced by its position among the already written nodes. Positions
+ * and lengths are written as variable length integers, so that a triple
+ * which nodes are already known usually takes a few bytes.
+ *
+ * <p>Blank nodes keep their labels, so that a graph read back within the
+ * same JVM is identical to the written one.
+ *
+ * <p>Streams, as written by frame exports, do not start with their count
+ * of triples, but end with a marker. Their writer forgets the written
+ * nodes from time to time, and marks it, so that neither the writer nor
+ * the reader holds more than a bounded count of nodes.
+ *
+ * @author kr1s
+ *
+ */
+public class BinaryRdfCodec {
+
+	static final int MAGIC = 0x57464E42; // WFNB
+	static final int VERSION = 1;
+	static final int STREAM_VERSION = 2;
+
+	/** The name of this format, as a serialization language. */
+	public static final String LANG = "WAFNM-BINARY";
+
+	static final int URI = 'U';
+	static final int BLANK = 'B';
+	static final int LITERAL = 'L';
+	static final int RESET = 'R';
+	static final int END = 'E';
+
+	// count of nodes a stream writer remembers
+	static final int MAX_STREAM_NODES = 1 << 16;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private BinaryRdfCodec() {}
+
+	/** Writes all triples of a graph.
+	 *
+	 * @param graph The graph to write.
+	 * @param out The output stream, which is flushed but not closed.
+	 *
+	 * @return The count of written triples.
+	 *
+	 * @throws IOException if the output stream fails.
+	 */
+	public static long write(Graph graph, OutputStream out) throws IOException
+	{
+		DataOutputStream data = new DataOutputStream(out);
+		Map<Node, Integer> written = new HashMap<Node, Integer>();
+		long n = 0;
+
+		data.writeInt(MAGIC);
+		data.writeByte(VERSION);
+		writeVarLong(data, graph.size());
+
+		ExtendedIterator<Triple> iterOnTriples = graph.find(Triple.ANY);
+		try {
+			while (iterOnTriples.hasNext())
+			{
+				Triple t = iterOnTriples.next();
+				writeNode(data, t.getSubject(), written);
+				writeNode(data, t.getPredicate(), written);
+				writeNode(data, t.getObject(), written);
+				n++;
+			}
+		}
+		finally {
+			iterOnTriples.close();
+		}
+
+		data.flush();
+		return n;
+	}
+
+	/** Reads triples into a graph.
+	 *
+	 * @param in The input stream, which is not closed.
+	 * @param graph The graph the read triples are added to.
+	 *
+	 * @return The count of read triples.
+	 *
+	 * @throws IOException if the input stream fails, or is not valid.
+	 */
+	public static long read(InputStream in, Graph graph) throws IOException
+	{
+		DataInputStream data = new DataInputStream(in);
+		List<Node> read = new ArrayList<Node>();
+
+		if (data.readInt() != MAGIC) {
+			throw new IOException("Invalid binary graph");
+		}
+		int version = data.readByte();
+		if (version == STREAM_VERSION) {
+			return readStream(data, graph, read);
+		}
+		if (version != VERSION) {
+			throw new IOException("Invalid binary graph version: " + version);
+		}
+
+		long size = readVarLong(data);
+		for (long k = 0 ; k < size ; k++)
+		{
+			Node s = readNode(data, read);
+			Node p = readNode(data, read);
+			Node o = readNode(data, read);
+			graph.add(Triple.create(s, p, o));
+		}
+
+		return size;
+	}
+
+	private static long readStream(DataInputStream data, Graph graph, List<Node> read)
+			throws IOException
+	{
+		long n = 0;
+		while (true)
+		{
+			long ref = readVarLong(data);
+			if (ref == 0)
+			{
+				int kind = data.readByte();
+				if (kind == END) {
+					return n;
+				}
+				if (kind == RESET)
+				{
+					read.clear();
+					continue;
+				}
+				ref = readNewNode(data, kind, read);
+			}
+
+			Node s = node(ref, read);
+			Node p = readNode(data, read);
+			Node o = readNode(data, read);
+			graph.add(Triple.create(s, p, o));
+			n++;
+		}
+	}
+
+	/** Writes the header of a stream.
+	 *
+	 * @param data The output stream.
+	 *
+	 * @throws IOException if the output stream fails.
+	 */
+	static void writeStreamHeader(DataOutputStream data) throws IOException
+	{
+		data.writeInt(MAGIC);
+		data.writeByte(STREAM_VERSION);
+	}
+
+	/** Writes a triple to a stream, forgetting the written nodes once there
+	 * are too many of them.
+	 *
+	 * @param data The output stream.
+	 * @param t The triple.
+	 * @param written The written nodes.
+	 *
+	 * @throws IOException if the output stream fails.
+	 */
+	static void writeStreamTriple(DataOutputStream data, Triple t, Map<Node, Integer> written)
+			throws IOException
+	{
+		if (written.size() > MAX_STREAM_NODES - 3)
+		{
+			writeVarLong(data, 0);
+			data.writeByte(RESET);
+			written.clear();
+		}
+
+		writeNode(data, t.getSubject(), written);
+		writeNode(data, t.getPredicate(), written);
+		writeNode(data, t.getObject(), written);
+	}
+
+	/** Writes the end of a stream.
+	 *
+	 * @param data The output stream.
+	 *
+	 * @throws IOException if the output stream fails.
+	 */
+	static void writeStreamEnd(DataOutputStream data) throws IOException
+	{
+		writeVarLong(data, 0);
+		data.writeByte(END);
+	}
+
+	static void writeNode(DataOutputStream data, Node node, Map<Node, Integer> written)
+			throws IOException
+	{
+		Integer id = written.get(node);
+		if (id != null) {
+			writeVarLong(data, id + 1);
+			return;
+		}
+
+		written.put(node, written.size());
+		writeVarLong(data, 0);
+		writeTerm(data, node);
+	}
+
+	/** Writes a node on its own, without reference to the nodes written
+	 * before.
+	 *
+	 * @param data The output stream.
+	 * @param node A concrete node.
+	 *
+	 * @throws IOException if the output stream fails.
+	 */
+	static void writeTerm(DataOutputStream data, Node node) throws IOException
+	{
+		if (node.isURI())
+		{
+			data.writeByte(URI);
+			writeString(data, node.getURI());
+		}
+		else if (node.isBlank())
+		{
+			data.writeByte(BLANK);
+			writeString(data, node.getBlankNodeLabel());
+		}
+		else if (node.isLiteral())
+		{
+			String datatypeUri = node.getLiteralDatatypeURI();
+			data.writeByte(LITERAL);
+			writeString(data, node.getLiteralLexicalForm());
+			writeString(data, node.getLiteralLanguage());
+			writeString(data, datatypeUri != null ? datatypeUri : "");
+		}
+		else {
+			throw new IllegalArgumentException("Not a concrete node: " + node);
+		}
+	}
+
+	static Node readNode(DataInputStream data, List<Node> read) throws IOException
+	{
+		long ref = readVarLong(data);
+		if (ref == 0) {
+			ref = readNewNode(data, data.readByte(), read);
+		}
+		return node(ref, read);
+	}
+
+	// answers the reference of the read node
+	private static long readNewNode(DataInputStream data, int kind, List<Node> read)
+			throws IOException
+	{
+		read.add(readTerm(data, kind));
+		return read.size();
+	}
+
+	/** Reads a node written by {@link #writeTerm(DataOutputStream, Node)}.
+	 *
+	 * @param data The input stream.
+	 *
+	 * @return The read node.
+	 *
+	 * @throws IOException if the input stream fails, or is not valid.
+	 */
+	static Node readTerm(DataInputStream data) throws IOException {
+		return readTerm(data, data.readByte());
+	}
+
+	private static Node readTerm(DataInputStream data, int kind) throws IOException
+	{
+		Node node;
+		switch (kind)
+		{
+		case URI:
+			node = NodeFactory.createURI(readString(data));
+			break;
+		case BLANK:
+			node = NodeFactory.createAnon(AnonId.create(readString(data)));
+			break;
+		case LITERAL:
+			String lex = readString(data);
+			String lang = readString(data);
+			String datatypeUri = readString(data);
+			RDFDatatype datatype = datatypeUri.isEmpty() ?
+					null : TypeMapper.getInstance().getSafeTypeByName(datatypeUri);
+			node = NodeFactory.createLiteral(lex, lang, datatype);
+			break;
+		default:
+			throw new IOException("Invalid node kind: " + kind);
+		}
+		return node;
+	}
+
+	private static Node node(long ref, List<Node> read) throws IOException
+	{
+		if (ref > read.size()) {
+			throw new IOException("Invalid node reference: " + ref);
+		}
+		return read.get((int) (ref - 1));
+	}
+
+	static void writeString(DataOutputStream data, String s) throws IOException
+	{
+		byte[] bytes = s.getBytes(UTF8);
+		writeVarLong(data, bytes.length);
+		data.write(bytes);
+	}
+
+	static String readString(DataInputStream data) throws IOException
+	{
+		byte[] bytes = new byte[(int) readVarLong(data)];
+		data.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	static void writeVarLong(DataOutputStream data, long v) throws IOException
+	{
+		while ((v & ~0x7FL) != 0)
+		{
+			data.writeByte((int) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		data.writeByte((int) v);
+	}
+
+	static long readVarLong(DataInputStream data) throws IOException
+	{
+		long v = 0;
+		for (int shift = 0 ; shift < 64 ; shift += 7)
+		{
+			int b = data.readByte();
+			v |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return v;
+			}
+		}
+		throw new EOFException("Invalid variable length integer");
+	}
+}
@@ -0,0 +1,113 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Implements a Bloom filter over objects hash codes.
+ *
+ * <p>A filter answers whether an object may have been added: it never
+ * answers <code>false</code> for an added object, and answers
+ * <code>true</code> for other objects with a low probability, as long as
+ * no more than the expected count of objects have been added.
+ *
+ * <p>This implementation is thread-safe, and never blocks.
+ *
+ * @author kr1s
+ *
+ */
+public class BloomFilter {
+
+	// bits per expected object, and hashes per object, for about 1% of
+	// false positives
+	static final int BITS_PER_OBJECT = 10;
+	static final int HASHES = 7;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected AtomicLongArray bits;
+	protected long bitCount;
+	protected int capacity;
+	protected AtomicInteger count = new AtomicInteger();
+
+	/** Creates an empty filter.
+	 *
+	 * @param capacity The expected count of objects.
+	 */
+	public BloomFilter(int capacity)
+	{
+		if (capacity <= 0) {
+			throw new IllegalArgumentException();
+		}
+
+		int words = (int) Math.min((long) capacity * BITS_PER_OBJECT / 64 + 1, Integer.MAX_VALUE);
+		this.bits = new AtomicLongArray(words);
+		this.bitCount = 64L * words;
+		this.capacity = capacity;
+	}
+
+	/** Adds an object.
+	 *
+	 * @param o An object.
+	 */
+	public void add(Object o)
+	{
+		long h = mix(o.hashCode());
+		int h1 = (int) h;
+		int h2 = (int) (h >>> 32);
+
+		for (int k = 0 ; k < HASHES ; k++)
+		{
+			long bit = index(h1 + k * h2);
+			int word = (int) (bit >>> 6);
+			long mask = 1L << bit;
+
+			long w;
+			do {
+				w = bits.get(word);
+			}
+			while ( ((w & mask) == 0) && ! bits.compareAndSet(word, w, w | mask) );
+		}
+		count.incrementAndGet();
+	}
+
+	/** Answers whether an object may have been added.
+	 *
+	 * @param o An object.
+	 *
+	 * @return <code>false</code> if the object has never been added.
+	 */
+	public boolean mightContain(Object o)
+	{
+		long h = mix(o.hashCode());
+		int h1 = (int) h;
+		int h2 = (int) (h >>> 32);
+
+		for (int k = 0 ; k < HASHES ; k++)
+		{
+			long bit = index(h1 + k * h2);
+			if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Answers whether more objects than expected have been added, so that
+	 * false positives become frequent.
+	 *
+	 * @return <code>true</code> if this filter should be rebuilt larger.
+	 */
+	public boolean isSaturated() {
+		return count.get() > capacity;
+	}
+
+	private long index(int hash) {
+		return (hash & 0xFFFFFFFFL) % bitCount;
+	}
+
+	private static long mix(int hash)
+	{
+		long h = hash * 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 29);
+	}
+}
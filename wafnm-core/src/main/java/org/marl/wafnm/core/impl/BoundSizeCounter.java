@@ -0,0 +1,71 @@
+package org.marl.wafnm.core.impl;
+
+/** Maintains the count of propositions of the frames a frame binds, and of
+ * the frames they bind in turn, as their own counts change.
+ *
+ * <p>Each frame shifts the counters of the frames that bind it, directly or
+ * not, by the changes of its own count. Binding changes, and bulk changes
+ * of a bound frame, leave the count stale: it is then summed again from
+ * the bound frames when next requested, and only kept if the count was not
+ * shifted meanwhile.
+ *
+ * @author kr1s
+ *
+ */
+class BoundSizeCounter {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	// guarded by this counter
+	private long count = GraphSizeCounter.STALE;
+	private long changes;
+
+	/** Answers the count, unless stale.
+	 *
+	 * @return The count, or {@link GraphSizeCounter#STALE}.
+	 */
+	synchronized long get() {
+		return count;
+	}
+
+	/** Answers the stamp of the last change, to be given back when the
+	 * count summed since is {@link #set(long, long) set}.
+	 *
+	 * @return The change stamp.
+	 */
+	synchronized long stamp() {
+		return changes;
+	}
+
+	/** Sets the stale count, unless it changed since summed.
+	 *
+	 * @param n The summed count.
+	 * @param stamp The change stamp, as answered before summing.
+	 */
+	synchronized void set(long n, long stamp)
+	{
+		if ( (changes == stamp) && (count == GraphSizeCounter.STALE) ) {
+			count = n;
+		}
+	}
+
+	/** Shifts the count, by the change of the count of a bound frame.
+	 *
+	 * @param delta The change of the bound frame count.
+	 */
+	synchronized void shift(long delta)
+	{
+		if (count != GraphSizeCounter.STALE) {
+			count += delta;
+		}
+		changes++;
+	}
+
+	/** Leaves the count stale, until summed again.
+	 */
+	synchronized void stale()
+	{
+		count = GraphSizeCounter.STALE;
+		changes++;
+	}
+}
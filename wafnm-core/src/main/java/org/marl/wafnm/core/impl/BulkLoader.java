@@ -0,0 +1,261 @@
+package org.marl.wafnm.core.impl;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDFBase;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.impl.GraphWithPerform;
+
+/** Loads large sets of propositions into a graph.
+ *
+ * <p>Propositions are inserted in batches directly into the given graph,
+ * which should be the base graph of a frame: the caller is responsible for
+ * running inference once the whole set is loaded. Each batch is added at
+ * once, so that the graph listeners are notified of a single array of the
+ * propositions it did not already contain.
+ *
+ * <p>When loading from an input stream, parsing runs on a background thread
+ * while the calling thread inserts the parsed propositions, which are handed
+ * over a batch at a time.
+ *
+ * @author kr1s
+ *
+ */
+public class BulkLoader {
+
+	/** The default count of propositions inserted at once.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 10000;
+
+	// count of parsed batches waiting to be inserted
+	static final int PARSED_BATCHES = 2;
+
+	// ends the parsed batches
+	static final List<Triple> END = new ArrayList<Triple>(0);
+
+	// parsing threads, shared by all loaders
+	static final ExecutorService parsers = Executors.newCachedThreadPool(
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "wafnm-bulk-parser");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected Graph graph;
+	protected int batchSize;
+
+	/** Creates a loader with the default batch size.
+	 *
+	 * @param graph The graph to load propositions into.
+	 */
+	public BulkLoader(Graph graph)
+	{
+		this(graph, DEFAULT_BATCH_SIZE);
+	}
+
+	/** Creates a loader.
+	 *
+	 * @param graph The graph to load propositions into.
+	 * @param batchSize The count of propositions inserted at once.
+	 */
+	public BulkLoader(Graph graph, int batchSize)
+	{
+		if ( (graph == null) || (batchSize <= 0) ) {
+			throw new IllegalArgumentException();
+		}
+
+		this.graph = graph;
+		this.batchSize = batchSize;
+	}
+
+	/** Loads a set of propositions.
+	 *
+	 * @param propositions The propositions to load.
+	 *
+	 * @return The count of propositions the graph did not already contain.
+	 */
+	public long load(Iterator<Triple> propositions)
+	{
+		List<Triple> batch = new ArrayList<Triple>(batchSize);
+		long n = 0;
+
+		while (propositions.hasNext())
+		{
+			while ( (batch.size() < batchSize) && propositions.hasNext() ) {
+				batch.add(propositions.next());
+			}
+			n += insert(batch);
+			batch.clear();
+		}
+
+		return n;
+	}
+
+	/** Inserts the propositions of a batch that the graph does not already
+	 * contain, and notifies them at once, unless the graph cannot defer its
+	 * notifications.
+	 *
+	 * @return The count of inserted propositions.
+	 */
+	private int insert(List<Triple> batch)
+	{
+		if (! (graph instanceof GraphWithPerform))
+		{
+			int n = 0;
+			for (Triple t : batch)
+			{
+				if (! graph.contains(t)) {
+					graph.add(t);
+					n++;
+				}
+			}
+			return n;
+		}
+
+		GraphWithPerform performer = (GraphWithPerform) graph;
+		Triple[] inserted = new Triple[batch.size()];
+		int n = 0;
+		for (Triple t : batch)
+		{
+			if (! graph.contains(t)) {
+				performer.performAdd(t);
+				inserted[n++] = t;
+			}
+		}
+
+		if (n > 0) {
+			graph.getEventManager().notifyAddArray(graph, 
+					n < inserted.length ? Arrays.copyOf(inserted, n) : inserted);
+		}
+		return n;
+	}
+
+	/** Parses and loads a serialized set of propositions.
+	 *
+	 * @param in The input stream to parse.
+	 * @param base The base URI for relative URIs in the input.
+	 * @param lang The serialization language, such as
+	 * {@link org.apache.jena.riot.RDFLanguages#NTRIPLES} or
+	 * {@link org.apache.jena.riot.RDFLanguages#TURTLE}.
+	 *
+	 * @return The count of propositions the graph did not already contain.
+	 *
+	 * @throws IllegalArgumentException if the input is not valid; the
+	 * propositions parsed before the error are loaded anyway.
+	 */
+	public long load(final InputStream in, final String base, final Lang lang)
+	{
+		if ( (in == null) || (lang == null) ) {
+			throw new IllegalArgumentException();
+		}
+
+		final BlockingQueue<List<Triple>> parsed = 
+				new ArrayBlockingQueue<List<Triple>>(PARSED_BATCHES);
+		final Batching parser = new Batching(parsed);
+
+		Future<?> parsing = parsers.submit(new Runnable() {
+			@Override
+			public void run()
+			{
+				try {
+					RDFDataMgr.parse(parser, in, base, lang);
+				}
+				finally {
+					// let the loader reach the end of the stream
+					parser.finish();
+				}
+			}
+		});
+
+		try {
+			long n = 0;
+			for (List<Triple> batch = parsed.take() ; batch != END ; batch = parsed.take()) {
+				n += insert(batch);
+			}
+			parsing.get();
+
+			return n;
+		}
+		catch (ExecutionException e) {
+			throw new IllegalArgumentException("Invalid input", e.getCause());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while loading", e);
+		}
+		finally {
+			parsing.cancel(true);
+		}
+	}
+
+	/** Hands the parsed propositions over to the loader, a batch at a time.
+	 *
+	 * <p>Parsing stops if the loader gave up, which interrupts the parsing
+	 * thread.
+	 */
+	class Batching extends StreamRDFBase {
+
+		private final BlockingQueue<List<Triple>> parsed;
+		private List<Triple> batch = new ArrayList<Triple>(batchSize);
+		private boolean finished;
+
+		Batching(BlockingQueue<List<Triple>> parsed) {
+			this.parsed = parsed;
+		}
+
+		@Override
+		public void triple(Triple triple)
+		{
+			batch.add(triple);
+			if (batch.size() == batchSize)
+			{
+				hand(batch);
+				batch = new ArrayList<Triple>(batchSize);
+			}
+		}
+
+		@Override
+		public void finish()
+		{
+			if (! finished)
+			{
+				finished = true;
+				if (! batch.isEmpty()) {
+					hand(batch);
+				}
+				hand(END);
+			}
+		}
+
+		private void hand(List<Triple> handed)
+		{
+			try {
+				parsed.put(handed);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while parsing", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,528 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.TripleMatch;
+import com.hp.hpl.jena.graph.impl.GraphBase;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.NiceIterator;
+
+/** Implements an in-memory graph which stores node identifiers, encoded by
+ * a {@link NodeDictionary}, rather than nodes.
+ *
+ * <p>Triples are indexed by subject, by predicate and by object: each index
+ * maps a node identifier to the set of the other two identifiers, packed
+ * into a long value. Neither identifiers nor packed values are boxed.
+ *
+ * <p>Nodes are matched by term equality: unlike the default Jena in-memory
+ * graphs, finding a literal does not match other literals with the same
+ * value but a different lexical form.
+ *
+ * <p>Once {@link #freeze() frozen}, triples are moved into a
+ * {@link FrozenTripleIndex}, and the graph rejects any change, until it is
+ * {@link #thaw() thawed}.
+ *
+ * <p>Once {@link #startVersioning() versioned}, the net changes of this
+ * graph are also kept in a {@link GraphDelta}, and each {@link #commit()}
+ * publishes an immutable {@link GraphVersion} made of the last compacted
+ * triples and of a view of the delta. The delta is compacted into a new
+ * base when its entries outnumber the triples of the graph.
+ *
+ * <p>This graph is not thread-safe: as for other graphs, concurrent readers
+ * are allowed, but writers should be exclusive. Iterators fail if the graph
+ * changes, otherwise than through them, while they are used.
+ *
+ * @author kr1s
+ *
+ */
+public class EncodedGraph extends GraphBase {
+
+	static final int SPO = 0;
+	static final int POS = 1;
+	static final int OSP = 2;
+
+	// the minimum count of delta entries before the delta is compacted
+	static final int MIN_COMPACTION = 4096;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected IntHashMap<LongHashSet> subjects = new IntHashMap<LongHashSet>();
+	protected IntHashMap<LongHashSet> predicates = new IntHashMap<LongHashSet>();
+	protected IntHashMap<LongHashSet> objects = new IntHashMap<LongHashSet>();
+	protected int size;
+	protected int modCount;
+	protected volatile FrozenTripleIndex frozenIndex;
+
+	// changes since the base of the versions, null until versioned
+	protected GraphDelta delta;
+	protected FrozenTripleIndex versionBase;
+	protected volatile GraphVersion version;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected NodeDictionary nodeDictionary;
+
+	/** Creates an empty graph.
+	 *
+	 * @param nodeDictionary The dictionary that encodes nodes, which may be
+	 * shared with other graphs.
+	 */
+	public EncodedGraph(NodeDictionary nodeDictionary)
+	{
+		if (nodeDictionary == null) {
+			throw new IllegalArgumentException();
+		}
+
+		this.nodeDictionary = nodeDictionary;
+	}
+
+	/** Creates a frozen graph over an index.
+	 *
+	 * @param nodeDictionary The dictionary that encoded the indexed triples.
+	 * @param frozenIndex The triples of the graph.
+	 */
+	EncodedGraph(NodeDictionary nodeDictionary, FrozenTripleIndex frozenIndex)
+	{
+		this(nodeDictionary);
+
+		this.frozenIndex = frozenIndex;
+		this.size = frozenIndex.size();
+		this.version = new GraphVersion(nodeDictionary, frozenIndex, null);
+		this.subjects = null;
+		this.predicates = null;
+		this.objects = null;
+	}
+
+	/** Answers the dictionary that encodes nodes.
+	 *
+	 * @return The node dictionary.
+	 */
+	public NodeDictionary getNodeDictionary() {
+		return nodeDictionary;
+	}
+
+	/** Moves the triples of this graph into a read-only, off-heap index.
+	 *
+	 * <p>Freezing a frozen graph has no effect.
+	 */
+	public void freeze()
+	{
+		if (frozenIndex != null) {
+			return;
+		}
+
+		frozenIndex = new FrozenTripleIndex(nodeDictionary, encodedTriples(), size);
+		version = new GraphVersion(nodeDictionary, frozenIndex, null);
+		delta = null;
+		versionBase = null;
+		subjects = null;
+		predicates = null;
+		objects = null;
+		modCount++;
+	}
+
+	/** Moves the triples of this frozen graph back into the heap indexes,
+	 * so that it accepts changes again.
+	 *
+	 * <p>The graph is then versioned: the frozen index, which published
+	 * versions read, is the base of the following versions. Thawing a graph
+	 * that is not frozen has no effect.
+	 */
+	public synchronized void thaw()
+	{
+		FrozenTripleIndex index = frozenIndex;
+		if (index == null) {
+			return;
+		}
+
+		subjects = new IntHashMap<LongHashSet>();
+		predicates = new IntHashMap<LongHashSet>();
+		objects = new IntHashMap<LongHashSet>();
+		int[] triples = index.encodedTriples();
+		for (int k = 0 ; k < triples.length ; k += 3)
+		{
+			add(subjects, triples[k], triples[k + 1], triples[k + 2]);
+			add(predicates, triples[k + 1], triples[k + 2], triples[k]);
+			add(objects, triples[k + 2], triples[k], triples[k + 1]);
+		}
+
+		versionBase = index;
+		delta = new GraphDelta();
+		version = new GraphVersion(nodeDictionary, versionBase, delta.view());
+		frozenIndex = null;
+		modCount++;
+	}
+
+	/** Answers whether this graph is frozen.
+	 *
+	 * @return <code>true</code> if this graph rejects changes.
+	 */
+	public boolean isFrozen() {
+		return frozenIndex != null;
+	}
+
+	/** Starts logging the changes of this graph, so that versions of it are
+	 * published on {@link #commit()}.
+	 *
+	 * <p>This compacts the triples of this graph, and should not run
+	 * concurrently with writers. Starting a versioned graph has no effect.
+	 *
+	 * @return The current version.
+	 */
+	public synchronized GraphVersion startVersioning()
+	{
+		if (version == null)
+		{
+			versionBase = new FrozenTripleIndex(nodeDictionary, encodedTriples(), size, false);
+			delta = new GraphDelta();
+			version = new GraphVersion(nodeDictionary, versionBase, delta.view());
+		}
+		return version;
+	}
+
+	/** Publishes the changes made since the last commit as a new version,
+	 * unless this graph is not versioned.
+	 *
+	 * <p>This should be called by the writer of the changes, and takes a
+	 * constant time, but for the compaction of the delta, which is amortized
+	 * over as many changes as the graph has triples.
+	 *
+	 * <p>Compacted bases are held on the heap, so that they are accounted
+	 * for, and reclaimed, as the versions that read them.
+	 */
+	public void commit()
+	{
+		if ( (delta == null) || (delta.stamp() == version.delta.stamp) ) {
+			return;
+		}
+
+		if (delta.length() > Math.max(MIN_COMPACTION, size))
+		{
+			// previous versions keep the previous base and delta
+			versionBase = new FrozenTripleIndex(nodeDictionary, encodedTriples(), size, false);
+			delta = new GraphDelta();
+		}
+		version = new GraphVersion(nodeDictionary, versionBase, delta.view());
+	}
+
+	/** Answers the last published version of this graph.
+	 *
+	 * <p>This never blocks.
+	 *
+	 * @return The version, or <code>null</code> if this graph is neither
+	 * versioned nor frozen.
+	 */
+	public GraphVersion getVersion() {
+		return version;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															GraphBase
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public void performAdd(Triple t)
+	{
+		checkNotFrozen();
+
+		int s = nodeDictionary.encode(t.getSubject());
+		int p = nodeDictionary.encode(t.getPredicate());
+		int o = nodeDictionary.encode(t.getObject());
+
+		if (add(subjects, s, p, o))
+		{
+			add(predicates, p, o, s);
+			add(objects, o, s, p);
+			size++;
+			modCount++;
+			changed(s, p, o, GraphDelta.ADDED);
+		}
+	}
+
+	@Override
+	public void performDelete(Triple t)
+	{
+		checkNotFrozen();
+
+		int s = nodeDictionary.lookup(t.getSubject());
+		int p = nodeDictionary.lookup(t.getPredicate());
+		int o = nodeDictionary.lookup(t.getObject());
+
+		if ( (s == NodeDictionary.UNKNOWN)
+				|| (p == NodeDictionary.UNKNOWN)
+				|| (o == NodeDictionary.UNKNOWN) ) {
+			return;
+		}
+
+		if (remove(subjects, s, p, o))
+		{
+			remove(predicates, p, o, s);
+			remove(objects, o, s, p);
+			size--;
+			modCount++;
+			changed(s, p, o, GraphDelta.DELETED);
+		}
+	}
+
+	@Override
+	protected boolean graphBaseContains(Triple t)
+	{
+		if (! t.isConcrete()) {
+			return containsByFind(t);
+		}
+
+		int s = nodeDictionary.lookup(t.getSubject());
+		int p = nodeDictionary.lookup(t.getPredicate());
+		int o = nodeDictionary.lookup(t.getObject());
+
+		if ( (s == NodeDictionary.UNKNOWN)
+				|| (p == NodeDictionary.UNKNOWN)
+				|| (o == NodeDictionary.UNKNOWN) ) {
+			return false;
+		}
+
+		FrozenTripleIndex index = frozenIndex;
+		if (index != null) {
+			return index.contains(s, p, o);
+		}
+
+		LongHashSet pairs = subjects.get(s);
+		return (pairs != null) && pairs.contains(pack(p, o));
+	}
+
+	@Override
+	protected int graphBaseSize() {
+		return size;
+	}
+
+	@Override
+	protected ExtendedIterator<Triple> graphBaseFind(TripleMatch m)
+	{
+		int s = matchId(m.getMatchSubject());
+		int p = matchId(m.getMatchPredicate());
+		int o = matchId(m.getMatchObject());
+
+		if ( (s == NodeDictionary.UNKNOWN)
+				|| (p == NodeDictionary.UNKNOWN)
+				|| (o == NodeDictionary.UNKNOWN) ) {
+			return NiceIterator.emptyIterator();
+		}
+
+		FrozenTripleIndex index = frozenIndex;
+		if (index != null) {
+			return index.find(s, p, o);
+		}
+
+		if (s >= 0) {
+			return new EncodedIterator(SPO, single(subjects, s), p, o);
+		}
+		if (o >= 0) {
+			return new EncodedIterator(OSP, single(objects, o), s, p);
+		}
+		if (p >= 0) {
+			return new EncodedIterator(POS, single(predicates, p), o, s);
+		}
+		// keys are copied, so that removing triples while iterating works
+		return new EncodedIterator(SPO, subjects.keys(), p, o);
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															Encoding
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	private void checkNotFrozen()
+	{
+		if (frozenIndex != null) {
+			throw new IllegalStateException("Graph is frozen");
+		}
+	}
+
+	// answers the triples as consecutive subject, predicate and object identifiers
+	private int[] encodedTriples()
+	{
+		int[] triples = new int[3 * size];
+		int n = 0;
+		for (int slot = 0 ; slot < subjects.capacity() ; slot++)
+		{
+			int subject = subjects.key(slot);
+			if (subject < 0) {
+				continue;
+			}
+
+			LongHashSet pairs = subjects.value(slot);
+			for (int k = 0 ; k < pairs.capacity() ; k++)
+			{
+				long pair = pairs.slot(k);
+				if (pair >= 0)
+				{
+					triples[n++] = subject;
+					triples[n++] = first(pair);
+					triples[n++] = second(pair);
+				}
+			}
+		}
+		return triples;
+	}
+
+	private void changed(int s, int p, int o, int operation)
+	{
+		if (delta != null) {
+			delta.changed(s, p, o, operation);
+		}
+	}
+
+	static long pack(int first, int second) {
+		return ((long) first << 32) | (second & 0xFFFFFFFFL);
+	}
+
+	static int first(long pair) {
+		return (int) (pair >>> 32);
+	}
+
+	static int second(long pair) {
+		return (int) pair;
+	}
+
+	private static boolean add(IntHashMap<LongHashSet> index, int key, int first, int second)
+	{
+		LongHashSet pairs = index.get(key);
+		if (pairs == null)
+		{
+			pairs = new LongHashSet();
+			index.put(key, pairs);
+		}
+		return pairs.add(pack(first, second));
+	}
+
+	private static boolean remove(IntHashMap<LongHashSet> index, int key, int first, int second)
+	{
+		LongHashSet pairs = index.get(key);
+		if ( (pairs == null) || ! pairs.remove(pack(first, second)) ) {
+			return false;
+		}
+
+		if (pairs.isEmpty()) {
+			index.remove(key);
+		}
+		return true;
+	}
+
+	private static int[] single(IntHashMap<LongHashSet> index, int key) {
+		return index.containsKey(key) ? new int[] { key } : new int[0];
+	}
+
+	// answers the node identifier, a negative wildcard, or UNKNOWN
+	private int matchId(Node node)
+	{
+		if ( (node == null) || ! node.isConcrete() ) {
+			return -2;
+		}
+		return nodeDictionary.lookup(node);
+	}
+
+	/** Iterates over the triples of an index, for some keys, which match the
+	 * optionally given packed identifiers.
+	 */
+	private class EncodedIterator extends NiceIterator<Triple> {
+
+		private int order;
+		private int[] keys;
+		private int nextKey;
+		private int firstMatch;
+		private int secondMatch;
+		private int expectedModCount = modCount;
+
+		private int key;
+		private LongHashSet pairs;
+		private int slot;
+		private Triple next;
+		private Triple current;
+
+		EncodedIterator(int order, int[] keys, int firstMatch, int secondMatch)
+		{
+			this.order = order;
+			this.keys = keys;
+			this.firstMatch = firstMatch;
+			this.secondMatch = secondMatch;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			if (expectedModCount != modCount) {
+				throw new ConcurrentModificationException();
+			}
+
+			while (next == null)
+			{
+				if ( (pairs == null) || (slot == pairs.capacity()) )
+				{
+					if (nextKey == keys.length) {
+						return false;
+					}
+					key = keys[nextKey++];
+					pairs = index().get(key);
+					slot = 0;
+					continue;
+				}
+
+				long pair = pairs.slot(slot++);
+				if ( (pair >= 0)
+						&& ( (firstMatch < 0) || (first(pair) == firstMatch) )
+						&& ( (secondMatch < 0) || (second(pair) == secondMatch) ) ) {
+					next = decode(key, pair);
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public Triple next()
+		{
+			if (! hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			current = next;
+			next = null;
+			return current;
+		}
+
+		@Override
+		public void remove()
+		{
+			if (current == null) {
+				throw new IllegalStateException();
+			}
+
+			delete(current);
+			current = null;
+			expectedModCount = modCount;
+		}
+
+		private IntHashMap<LongHashSet> index()
+		{
+			switch (order) {
+			case SPO: return subjects;
+			case POS: return predicates;
+			default: return objects;
+			}
+		}
+
+		private Triple decode(int key, long pair)
+		{
+			Node k = nodeDictionary.decode(key);
+			Node a = nodeDictionary.decode(first(pair));
+			Node b = nodeDictionary.decode(second(pair));
+
+			switch (order) {
+			case SPO: return Triple.create(k, a, b);
+			case POS: return Triple.create(b, k, a);
+			default: return Triple.create(a, b, k);
+			}
+		}
+	}
+}
@@ -0,0 +1,318 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.marl.wafnm.core.api.IFrame;
+import org.marl.wafnm.core.api.IFrameManager;
+import org.marl.wafnm.core.api.InferenceProfile;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphEvents;
+import com.hp.hpl.jena.graph.GraphListener;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.ontology.OntModel;
+import com.hp.hpl.jena.ontology.OntModelSpec;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.reasoner.InfGraph;
+
+/** Implements a frame forked from another one, as answered by
+ * {@link IFrameManager#forkFrame(String)}.
+ *
+ * <p>A fork reads the propositions of its parent, as they change, through
+ * a {@link ForkGraph} that holds its own changes: forking copies neither
+ * the parent propositions nor its inferences. The fork infers as its parent
+ * does, sharing the closure of its base ontology, and binds the same
+ * knowledge.
+ *
+ * <p>The fork of a frame that infers incrementally reads the inferences of
+ * its parent, as prepared, and only derives from what it learns, through a
+ * {@link ForkInferenceGraph}. Once the fork forgets a proposition of its
+ * parent, or binds other knowledge, it infers again from all propositions,
+ * as forks of frames with other reasoners do.
+ *
+ * <p>A fork shares the lock of its parent, as it reads the parent graph.
+ * Its changes are not journaled, and are only applied to the parent once
+ * {@link #merge() merged}.
+ *
+ * @author kr1s
+ *
+ */
+public class ForkFrame extends BaseFrame {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected ForkGraph forkGraph;
+	protected GraphListener parentFollowing = new ParentFollowing();
+	protected boolean restoring;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected BaseFrame parent;
+
+	ForkFrame(String frameUri, OntModel frameModel, BaseFrame parent)
+	{
+		super(frameUri, frameModel, parent.frameLock);
+
+		this.parent = parent;
+		this.forkGraph = (ForkGraph) getBaseGraph();
+		forkGraph.getParent().getEventManager().register(parentFollowing);
+	}
+
+	/** Forks a frame.
+	 *
+	 * <p>Nothing is copied: this takes the same time whatever the size of
+	 * the parent.
+	 *
+	 * @param frameUri The URI of the fork.
+	 * @param parent The forked frame.
+	 *
+	 * @return The fork, which frame manager is not set.
+	 */
+	static ForkFrame fork(String frameUri, BaseFrame parent)
+	{
+		if ( (frameUri == null) || (parent == null) ) {
+			throw new IllegalArgumentException();
+		}
+
+		parent.frameLock.readLock().lock();
+		try {
+			ForkGraph forkGraph = new ForkGraph(parent.getBaseGraph());
+			OntModel forkModel = ModelFactory.createOntologyModel(
+					specify(parent, forkGraph), ModelFactory.createModelForGraph(forkGraph));
+
+			ForkFrame fork = new ForkFrame(frameUri, forkModel, parent);
+			fork.setInferenceProfile(parent.getInferenceProfile());
+			for (String boundUri : parent.boundFrames)
+			{
+				IFrame otherFrame = parent.frameManager != null ?
+						parent.frameManager.getFrame(boundUri) : null;
+				if (otherFrame != null) {
+					fork.restoreKnowledge(otherFrame);
+				}
+			}
+
+			return fork;
+		}
+		finally {
+			parent.frameLock.readLock().unlock();
+		}
+	}
+
+	/** Answers the specification of the model of a fork, which reasoner
+	 * infers as the parent one does, from the fork graph.
+	 */
+	private static OntModelSpec specify(BaseFrame parent, ForkGraph forkGraph)
+	{
+		OntModelSpec parentSpec = parent.frameModel.getSpecification();
+		Graph parentGraph = parent.frameModel.getGraph();
+
+		if (parentGraph instanceof IncrementalRdfsGraph)
+		{
+			OntModelSpec spec = new OntModelSpec(parentSpec);
+			spec.setReasoner(new ForkInferenceGraph.ForkReasoner(parentGraph,
+					new IncrementalRdfsReasoner(forkGraph), forkGraph));
+			return spec;
+		}
+		if (parentGraph instanceof OntologyClosureGraph)
+		{
+			OntologyClosureGraph closureGraph = (OntologyClosureGraph) parentGraph;
+			OntModelSpec spec = new OntModelSpec(parentSpec);
+			spec.setReasoner(closureGraph.isShared() ?
+					closureGraph.closure.getFrameReasoner(forkGraph)
+					: closureGraph.closure.reasoner);
+			return spec;
+		}
+
+		return parentSpec;
+	}
+
+	/** Answers the forked frame.
+	 *
+	 * @return The parent frame.
+	 */
+	public BaseFrame getParent() {
+		return parent;
+	}
+
+	/** Answers the first frame of the forks chain, which is not a fork.
+	 *
+	 * @return The origin frame.
+	 */
+	public BaseFrame getOrigin()
+	{
+		BaseFrame origin = parent;
+		while (origin instanceof ForkFrame) {
+			origin = ((ForkFrame) origin).parent;
+		}
+		return origin;
+	}
+
+	/** Applies the changes of this fork to its parent, at once.
+	 *
+	 * <p>The fork is left empty of changes.
+	 *
+	 * @return The count of propositions the parent learned or forgot.
+	 *
+	 * @throws IllegalStateException if the parent is frozen.
+	 */
+	long merge()
+	{
+		parent.beginChange();
+		try {
+			List<Triple> forgotten = forkGraph.getRemoved().find(Triple.ANY).toList();
+			List<Triple> learned = forkGraph.getAdded().find(Triple.ANY).toList();
+
+			long n = parent.forgetAsserted(forgotten);
+			Graph parentGraph = parent.frameModel.getGraph();
+			for (Triple t : learned) {
+				parentGraph.add(t);
+			}
+
+			return n + learned.size();
+		}
+		finally {
+			parent.endChange();
+		}
+	}
+
+	/** {@inheritDoc}
+	 *
+	 * <p>The knowledge bound by the parent is already in its inferences.
+	 */
+	@Override
+	void restoreKnowledge(IFrame otherFrame)
+	{
+		restoring = true;
+		try {
+			super.restoreKnowledge(otherFrame);
+		}
+		finally {
+			restoring = false;
+		}
+	}
+
+	@Override
+	protected void addKnowledge(IFrame otherFrame)
+	{
+		diverge();
+		super.addKnowledge(otherFrame);
+	}
+
+	@Override
+	protected void removeKnowledge(IFrame otherFrame)
+	{
+		diverge();
+		super.removeKnowledge(otherFrame);
+	}
+
+	/** Stops reading the inferences of the parent, once this fork binds
+	 * other knowledge than its parent does.
+	 */
+	private void diverge()
+	{
+		Graph frameGraph = frameModel.getGraph();
+		if (! restoring && (frameGraph instanceof ForkInferenceGraph)) {
+			((ForkInferenceGraph) frameGraph).diverge();
+		}
+	}
+
+	@Override
+	protected void close()
+	{
+		frameLock.writeLock().lock();
+		try {
+			forkGraph.getParent().getEventManager().unregister(parentFollowing);
+			super.close();
+			forkGraph.close();
+		}
+		finally {
+			frameLock.writeLock().unlock();
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															POJO
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public String toString() {
+		return new StringBuffer(frameUri).append(" (").append(size()).append(" @fork of ")
+				.append(parent.getURI()).append(")").toString();
+	}
+
+	/** Invalidates the inferences of this fork when its parent changes.
+	 *
+	 * <p>Changes are notified by the parent writer, which holds the lock
+	 * shared with this fork.
+	 */
+	class ParentFollowing implements GraphListener {
+
+		private void parentChanged()
+		{
+			if (frameModel.getGraph() instanceof InfGraph) {
+				rebindInference();
+			}
+			inferenceStale = true;
+		}
+
+		@Override
+		public void notifyAddTriple(Graph g, Triple t) {
+			parentChanged();
+		}
+
+		@Override
+		public void notifyAddArray(Graph g, Triple[] triples) {
+			parentChanged();
+		}
+
+		@Override
+		public void notifyAddList(Graph g, List<Triple> triples) {
+			parentChanged();
+		}
+
+		@Override
+		public void notifyAddIterator(Graph g, Iterator<Triple> it) {
+			parentChanged();
+		}
+
+		@Override
+		public void notifyAddGraph(Graph g, Graph added) {
+			parentChanged();
+		}
+
+		@Override
+		public void notifyDeleteTriple(Graph g, Triple t) {
+			parentChanged();
+		}
+
+		@Override
+		public void notifyDeleteList(Graph g, List<Triple> triples) {
+			parentChanged();
+		}
+
+		@Override
+		public void notifyDeleteArray(Graph g, Triple[] triples) {
+			parentChanged();
+		}
+
+		@Override
+		public void notifyDeleteIterator(Graph g, Iterator<Triple> it) {
+			parentChanged();
+		}
+
+		@Override
+		public void notifyDeleteGraph(Graph g, Graph removed) {
+			parentChanged();
+		}
+
+		@Override
+		public void notifyEvent(Graph source, Object value)
+		{
+			if (! GraphEvents.startRead.equals(value)
+					&& ! GraphEvents.finishRead.equals(value)) {
+				parentChanged();
+			}
+		}
+	}
+}
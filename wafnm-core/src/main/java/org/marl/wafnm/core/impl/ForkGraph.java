@@ -0,0 +1,257 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.Iterator;
+import java.util.List;
+
+import com.hp.hpl.jena.graph.Factory;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphEvents;
+import com.hp.hpl.jena.graph.GraphListener;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.TripleMatch;
+import com.hp.hpl.jena.graph.impl.GraphBase;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.Filter;
+
+/** Implements the propositions of a {@link ForkFrame}, as a delta over the
+ * propositions of its parent.
+ *
+ * <p>The delta holds the triples added to the parent ones, and the parent
+ * triples removed: creating a fork does not copy anything. The delta never
+ * holds an added triple the parent already has, nor a removed triple the
+ * parent does not have, so that the size of this graph is known without
+ * reading it.
+ *
+ * <p>The parent graph is read as it changes: its changes are notified to
+ * the listeners of this graph, unless the delta hides them. This graph
+ * should be guarded by the lock of the parent frame.
+ *
+ * @author kr1s
+ *
+ */
+public class ForkGraph extends GraphBase {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected Graph added = Factory.createGraphMem();
+	protected Graph removed = Factory.createGraphMem();
+	protected GraphListener following = new Following();
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected Graph parent;
+
+	/** Creates an empty delta over a graph.
+	 *
+	 * @param parent The propositions of the parent frame.
+	 */
+	public ForkGraph(Graph parent)
+	{
+		if (parent == null) {
+			throw new IllegalArgumentException();
+		}
+
+		this.parent = parent;
+		parent.getEventManager().register(following);
+	}
+
+	/** Answers the graph this delta applies to.
+	 *
+	 * @return The parent graph.
+	 */
+	public Graph getParent() {
+		return parent;
+	}
+
+	/** Answers the triples added to the parent ones.
+	 *
+	 * @return The added triples, which must not be changed.
+	 */
+	public Graph getAdded() {
+		return added;
+	}
+
+	/** Answers the parent triples removed.
+	 *
+	 * @return The removed triples, which must not be changed.
+	 */
+	public Graph getRemoved() {
+		return removed;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															GraphBase
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	protected ExtendedIterator<Triple> graphBaseFind(TripleMatch m)
+	{
+		ExtendedIterator<Triple> inherited = parent.find(m);
+		if (! removed.isEmpty())
+		{
+			inherited = inherited.filterDrop(new Filter<Triple>() {
+				@Override
+				public boolean accept(Triple t) {
+					return removed.contains(t);
+				}
+			});
+		}
+
+		return added.isEmpty() ? inherited : inherited.andThen(added.find(m));
+	}
+
+	@Override
+	protected boolean graphBaseContains(Triple t)
+	{
+		if (added.contains(t)) {
+			return true;
+		}
+		return ! removed.contains(t) && parent.contains(t);
+	}
+
+	@Override
+	protected int graphBaseSize() {
+		return parent.size() - removed.size() + added.size();
+	}
+
+	@Override
+	public void performAdd(Triple t)
+	{
+		if (removed.contains(t)) {
+			removed.delete(t);
+		}
+		else if (! parent.contains(t)) {
+			added.add(t);
+		}
+	}
+
+	@Override
+	public void performDelete(Triple t)
+	{
+		if (added.contains(t)) {
+			added.delete(t);
+		}
+		else if (parent.contains(t)) {
+			removed.add(t);
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		parent.getEventManager().unregister(following);
+		super.close();
+	}
+
+	/** Keeps the delta consistent with the parent graph, and notifies the
+	 * parent changes the delta does not hide.
+	 */
+	class Following implements GraphListener {
+
+		@Override
+		public void notifyAddTriple(Graph g, Triple t)
+		{
+			if (added.contains(t)) {
+				added.delete(t);
+			}
+			else if (! removed.contains(t)) {
+				getEventManager().notifyAddTriple(ForkGraph.this, t);
+			}
+		}
+
+		@Override
+		public void notifyAddArray(Graph g, Triple[] triples)
+		{
+			for (Triple t : triples) {
+				notifyAddTriple(g, t);
+			}
+		}
+
+		@Override
+		public void notifyAddList(Graph g, List<Triple> triples)
+		{
+			for (Triple t : triples) {
+				notifyAddTriple(g, t);
+			}
+		}
+
+		@Override
+		public void notifyAddIterator(Graph g, Iterator<Triple> it) {
+			// the iterator may have been consumed already
+			bulkChanged(GraphEvents.removeAll);
+		}
+
+		@Override
+		public void notifyAddGraph(Graph g, Graph other) {
+			bulkChanged(GraphEvents.removeAll);
+		}
+
+		@Override
+		public void notifyDeleteTriple(Graph g, Triple t)
+		{
+			// deletions of absent triples are notified too
+			if (parent.contains(t)) {
+				return;
+			}
+			if (removed.contains(t)) {
+				removed.delete(t);
+			}
+			else if (! added.contains(t)) {
+				getEventManager().notifyDeleteTriple(ForkGraph.this, t);
+			}
+		}
+
+		@Override
+		public void notifyDeleteList(Graph g, List<Triple> triples)
+		{
+			for (Triple t : triples) {
+				notifyDeleteTriple(g, t);
+			}
+		}
+
+		@Override
+		public void notifyDeleteArray(Graph g, Triple[] triples)
+		{
+			for (Triple t : triples) {
+				notifyDeleteTriple(g, t);
+			}
+		}
+
+		@Override
+		public void notifyDeleteIterator(Graph g, Iterator<Triple> it) {
+			bulkChanged(GraphEvents.removeAll);
+		}
+
+		@Override
+		public void notifyDeleteGraph(Graph g, Graph other) {
+			bulkChanged(GraphEvents.removeAll);
+		}
+
+		@Override
+		public void notifyEvent(Graph source, Object value)
+		{
+			if (! GraphEvents.startRead.equals(value)
+					&& ! GraphEvents.finishRead.equals(value)) {
+				bulkChanged(value);
+			}
+		}
+
+		private void bulkChanged(Object value)
+		{
+			// drops the delta entries the parent made redundant
+			for (Triple t : added.find(Triple.ANY).toList())
+			{
+				if (parent.contains(t)) {
+					added.delete(t);
+				}
+			}
+			for (Triple t : removed.find(Triple.ANY).toList())
+			{
+				if (! parent.contains(t)) {
+					removed.delete(t);
+				}
+			}
+			getEventManager().notifyEvent(ForkGraph.this, value);
+		}
+	}
+}
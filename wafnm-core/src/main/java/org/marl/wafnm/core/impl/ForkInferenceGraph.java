@@ -0,0 +1,388 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.Iterator;
+import java.util.List;
+
+import com.hp.hpl.jena.graph.Capabilities;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphListener;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.TripleMatch;
+import com.hp.hpl.jena.graph.impl.GraphBase;
+import com.hp.hpl.jena.graph.impl.WrappedGraph;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.reasoner.BaseInfGraph;
+import com.hp.hpl.jena.reasoner.Derivation;
+import com.hp.hpl.jena.reasoner.InfGraph;
+import com.hp.hpl.jena.reasoner.Reasoner;
+import com.hp.hpl.jena.reasoner.ReasonerException;
+import com.hp.hpl.jena.reasoner.ValidityReport;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.Filter;
+
+/** Implements the inference graph of a {@link ForkFrame}, layered over the
+ * inferences of its parent.
+ *
+ * <p>Until the fork forgets a proposition of its parent, or changes its
+ * bindings, this graph reads the parent inference graph, as the parent
+ * prepared it, and only derives the consequences of the propositions the
+ * fork learned, by the rules of {@link IncrementalRdfsGraph}: forking and
+ * querying does not infer again from the parent propositions.
+ *
+ * <p>The parent inferences cannot be retracted, so that the fork then
+ * delegates to an inference graph bound to the reasoner of its parent,
+ * which is prepared again from all the propositions of the fork. As for
+ * {@link OntologyClosureGraph}, the delegate is only replaced under the
+ * frame write lock, shared by the fork and its parent.
+ *
+ * @author kr1s
+ *
+ */
+public class ForkInferenceGraph extends WrappedGraph implements InfGraph {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected Graph data;
+	protected volatile boolean diverged;
+	protected GraphListener forgetting = new Forgetting();
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected Graph parentInference;
+	protected Reasoner reasoner;
+	protected Reasoner parentReasoner;
+	protected ForkGraph forkGraph;
+
+	/** Binds the propositions of a fork.
+	 *
+	 * @param parentInference The inference graph of the parent frame.
+	 * @param reasoner The reasoner answered as the one of this graph.
+	 * @param parentReasoner The reasoner the fork infers with once it
+	 * diverged from its parent.
+	 * @param data The propositions of the fork, and of its sub-models.
+	 * @param forkGraph The base graph of the fork.
+	 */
+	ForkInferenceGraph(Graph parentInference, Reasoner reasoner, Reasoner parentReasoner,
+			Graph data, ForkGraph forkGraph)
+	{
+		super(null);
+
+		this.parentInference = parentInference;
+		this.reasoner = reasoner;
+		this.parentReasoner = parentReasoner;
+		this.data = data;
+		this.forkGraph = forkGraph;
+		this.base = forkGraph.getRemoved().isEmpty() ? new Layered() : parentReasoner.bind(data);
+		this.diverged = ! forkGraph.getRemoved().isEmpty();
+		forkGraph.getRemoved().getEventManager().register(forgetting);
+	}
+
+	/** Answers whether this graph still reads the inferences of the parent.
+	 *
+	 * @return <code>false</code> once the fork diverged from its parent.
+	 */
+	public boolean isLayered() {
+		return ! diverged;
+	}
+
+	/** Answers whether the delegate is prepared.
+	 *
+	 * @return <code>true</code> if queries will not prepare the delegate.
+	 */
+	public boolean isPrepared()
+	{
+		Graph delegate = base;
+		return ( (delegate instanceof BaseInfGraph) && ((BaseInfGraph) delegate).isPrepared() )
+				|| ( (delegate instanceof OntologyClosureGraph)
+					&& ((OntologyClosureGraph) delegate).isPrepared() );
+	}
+
+	/** Stops reading the inferences of the parent, as the fork no longer
+	 * knows what its parent knows.
+	 *
+	 * <p>This should be called under the frame write lock.
+	 */
+	void diverge()
+	{
+		if (diverged) {
+			return;
+		}
+
+		base.close();
+		base = parentReasoner.bind(data);
+		bud = null;
+		diverged = true;
+	}
+
+	private InfGraph delegate() {
+		return (InfGraph) base;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															InfGraph
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public Graph getRawGraph() {
+		return data;
+	}
+
+	@Override
+	public Reasoner getReasoner() {
+		return reasoner;
+	}
+
+	@Override
+	public void rebind(Graph data)
+	{
+		this.data = data;
+		base.close();
+		base = diverged ? parentReasoner.bind(data) : new Layered();
+		bud = null;
+	}
+
+	@Override
+	public void rebind()
+	{
+		// once diverged, an incremental delegate follows the fork itself
+		if (! diverged || ! (base instanceof IncrementalRdfsGraph)) {
+			delegate().rebind();
+		}
+	}
+
+	@Override
+	public void prepare() {
+		delegate().prepare();
+	}
+
+	@Override
+	public void reset() {
+		delegate().reset();
+	}
+
+	@Override
+	public Node getGlobalProperty(Node property) {
+		return delegate().getGlobalProperty(property);
+	}
+
+	@Override
+	public boolean testGlobalProperty(Node property) {
+		return delegate().testGlobalProperty(property);
+	}
+
+	@Override
+	public ValidityReport validate() {
+		return delegate().validate();
+	}
+
+	@Override
+	public ExtendedIterator<Triple> find(Node subject, Node property, Node object, Graph param) {
+		return delegate().find(subject, property, object, param);
+	}
+
+	@Override
+	public void setDerivationLogging(boolean logOn) {
+		delegate().setDerivationLogging(logOn);
+	}
+
+	@Override
+	public Iterator<Derivation> getDerivation(Triple triple) {
+		return delegate().getDerivation(triple);
+	}
+
+	@Override
+	public Graph getDeductionsGraph() {
+		return delegate().getDeductionsGraph();
+	}
+
+	@Override
+	public void close()
+	{
+		forkGraph.getRemoved().getEventManager().unregister(forgetting);
+		super.close();
+	}
+
+	/** Derives the consequences of the propositions the fork learned, from
+	 * all the propositions and inferences of its parent, which are already
+	 * closed under the rules.
+	 *
+	 * <p>Learned and forgotten propositions of the fork are followed on its
+	 * added triples.
+	 */
+	class Layered extends IncrementalRdfsGraph {
+
+		Layered() {
+			super(new LayeredData(), ForkInferenceGraph.this.reasoner, forkGraph.getAdded());
+		}
+
+		@Override
+		protected List<Triple> listSources() {
+			return forkGraph.getAdded().find(Triple.ANY).toList();
+		}
+	}
+
+	/** Reads the parent inferences, and the propositions the fork learned.
+	 *
+	 * <p>Changes are applied to the propositions of the fork.
+	 */
+	class LayeredData extends GraphBase {
+
+		@Override
+		protected ExtendedIterator<Triple> graphBaseFind(TripleMatch m)
+		{
+			ExtendedIterator<Triple> inherited = parentInference.find(m);
+			if (forkGraph.getAdded().isEmpty()) {
+				return inherited;
+			}
+
+			// the parent may infer what the fork learned
+			return inherited.andThen(forkGraph.getAdded().find(m).filterDrop(new Filter<Triple>() {
+				@Override
+				public boolean accept(Triple t) {
+					return parentInference.contains(t);
+				}
+			}));
+		}
+
+		@Override
+		protected boolean graphBaseContains(Triple t) {
+			return forkGraph.getAdded().contains(t) || parentInference.contains(t);
+		}
+
+		@Override
+		public void performAdd(Triple t) {
+			data.add(t);
+		}
+
+		@Override
+		public void performDelete(Triple t) {
+			data.delete(t);
+		}
+	}
+
+	/** Watches the fork for forgotten propositions of its parent.
+	 */
+	class Forgetting implements GraphListener {
+
+		@Override
+		public void notifyAddTriple(Graph g, Triple t) {
+			diverge();
+		}
+
+		@Override
+		public void notifyAddArray(Graph g, Triple[] triples) {
+			diverge();
+		}
+
+		@Override
+		public void notifyAddList(Graph g, List<Triple> triples) {
+			diverge();
+		}
+
+		@Override
+		public void notifyAddIterator(Graph g, Iterator<Triple> it) {
+			diverge();
+		}
+
+		@Override
+		public void notifyAddGraph(Graph g, Graph added) {
+			diverge();
+		}
+
+		@Override
+		public void notifyDeleteTriple(Graph g, Triple t) {
+		}
+
+		@Override
+		public void notifyDeleteList(Graph g, List<Triple> triples) {
+		}
+
+		@Override
+		public void notifyDeleteArray(Graph g, Triple[] triples) {
+		}
+
+		@Override
+		public void notifyDeleteIterator(Graph g, Iterator<Triple> it) {
+		}
+
+		@Override
+		public void notifyDeleteGraph(Graph g, Graph removed) {
+		}
+
+		@Override
+		public void notifyEvent(Graph source, Object value) {
+		}
+	}
+
+	/** Binds the models of forks to layered inference graphs.
+	 *
+	 * <p>Descriptions are delegated to the reasoner of the parent. Schemas
+	 * cannot be bound, as the fork infers from its parent inferences.
+	 */
+	static class ForkReasoner implements Reasoner {
+
+		private final Graph parentInference;
+		private final Reasoner parentReasoner;
+		private final ForkGraph forkGraph;
+
+		/** Creates the reasoner of a fork model.
+		 *
+		 * @param parentInference The inference graph of the parent frame.
+		 * @param parentReasoner The reasoner of the parent frame.
+		 * @param forkGraph The base graph of the fork.
+		 */
+		ForkReasoner(Graph parentInference, Reasoner parentReasoner, ForkGraph forkGraph)
+		{
+			this.parentInference = parentInference;
+			this.parentReasoner = parentReasoner;
+			this.forkGraph = forkGraph;
+		}
+
+		@Override
+		public InfGraph bind(Graph data) throws ReasonerException {
+			return new ForkInferenceGraph(parentInference, this, parentReasoner, data, forkGraph);
+		}
+
+		@Override
+		public Reasoner bindSchema(Graph tbox) throws ReasonerException {
+			throw new IllegalStateException("Cannot bind a schema to fork inference");
+		}
+
+		@Override
+		public Reasoner bindSchema(Model tbox) throws ReasonerException {
+			throw new IllegalStateException("Cannot bind a schema to fork inference");
+		}
+
+		@Override
+		public void setDerivationLogging(boolean logOn) {
+		}
+
+		@Override
+		public void setParameter(Property parameterUri, Object value) {
+			// the parent reasoner may be shared
+		}
+
+		@Override
+		public Model getReasonerCapabilities() {
+			return parentReasoner.getReasonerCapabilities();
+		}
+
+		@Override
+		public void addDescription(Model configSpec, Resource base) {
+			parentReasoner.addDescription(configSpec, base);
+		}
+
+		@Override
+		public boolean supportsProperty(Property property) {
+			return parentReasoner.supportsProperty(property);
+		}
+
+		@Override
+		public Capabilities getGraphCapabilities() {
+			return parentReasoner.getGraphCapabilities();
+		}
+	}
+}
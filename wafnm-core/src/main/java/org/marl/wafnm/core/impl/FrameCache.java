@@ -0,0 +1,303 @@
+package org.marl.wafnm.core.impl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** Keeps the propositions of the least recently used frames on disk, so that
+ * the propositions held in memory stay within a budget.
+ *
+ * <p>The budget is a count of propositions rather than a count of bytes, as
+ * the heap used by a graph is roughly proportional to its size.
+ *
+ * <p>Frames keep their identity when evicted: only their base graph, a
+ * {@link SpillableGraph}, is written to the spill directory, and is reloaded
+ * when next accessed. Frames that are being read or changed are never
+ * evicted, and bindings between frames are left untouched.
+ *
+ * <p>The inference state of evicted frames is also released, and is
+ * rebuilt when they are next queried. So are their membership index,
+ * summary and sem cache, which are built again from the reloaded
+ * propositions when next used.
+ *
+ * @author kr1s
+ *
+ */
+public class FrameCache {
+
+	/** The suffix of spill files.
+	 */
+	public static final String SPILL_FILE_SUFFIX = ".wfb";
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected File spillDirectory;
+	protected long budget;
+	protected ConcurrentMap<SpillableGraph, AbstractFrame> cachedFrames;
+	protected AtomicLong spillSequence = new AtomicLong();
+
+	// propositions held in memory by cached frames
+	protected AtomicLong residentSize = new AtomicLong();
+
+	// eviction is only attempted past this mark, which is raised while
+	// frames in use prevent the budget from being met
+	protected volatile long pressureMark;
+	protected Lock evictionLock = new ReentrantLock();
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Statistics
+	protected AtomicLong hits = new AtomicLong();
+	protected AtomicLong misses = new AtomicLong();
+	protected AtomicLong reloads = new AtomicLong();
+	protected AtomicLong reloadTime = new AtomicLong();
+	protected AtomicLong evictions = new AtomicLong();
+
+	/** Creates a cache.
+	 *
+	 * @param spillDirectory The directory evicted frames are written to,
+	 * which is created if needed.
+	 * @param budget The count of propositions that may be held in memory.
+	 */
+	public FrameCache(File spillDirectory, long budget)
+	{
+		if ( (spillDirectory == null) || (budget <= 0) ) {
+			throw new IllegalArgumentException();
+		}
+
+		spillDirectory.mkdirs();
+		if (! spillDirectory.isDirectory()) {
+			throw new IllegalArgumentException("Not a directory: " + spillDirectory);
+		}
+
+		this.spillDirectory = spillDirectory;
+		this.budget = budget;
+		this.pressureMark = budget;
+		this.cachedFrames = new ConcurrentHashMap<SpillableGraph, AbstractFrame>();
+	}
+
+	/** Answers the count of frame retrievals served from memory.
+	 *
+	 * @return The hits count.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/** Answers the count of frame retrievals that reloaded the frame.
+	 *
+	 * @return The misses count.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/** Answers the count of reloads, including the ones caused by accessing
+	 * an evicted frame without retrieving it first.
+	 *
+	 * @return The reloads count.
+	 */
+	public long getReloads() {
+		return reloads.get();
+	}
+
+	/** Answers the total time spent reloading frames.
+	 *
+	 * @return The reload time, in nanoseconds.
+	 */
+	public long getReloadTime() {
+		return reloadTime.get();
+	}
+
+	/** Answers the count of evictions.
+	 *
+	 * @return The evictions count.
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/** Answers the count of propositions held in memory by cached frames.
+	 *
+	 * @return The resident size.
+	 */
+	public long getResidentSize() {
+		return residentSize.get();
+	}
+
+	/** Answers the count of propositions that may be held in memory.
+	 *
+	 * @return The budget.
+	 */
+	public long getBudget() {
+		return budget;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															Frames
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	/** Creates an empty graph, to be used as the base graph of a frame.
+	 *
+	 * @param nodeDictionary The dictionary that encodes the graph nodes.
+	 *
+	 * @return A graph accounted by this cache.
+	 */
+	SpillableGraph createGraph(NodeDictionary nodeDictionary)
+	{
+		return new SpillableGraph(this, new File(spillDirectory,
+				"frame-" + spillSequence.incrementAndGet() + SPILL_FILE_SUFFIX),
+				nodeDictionary);
+	}
+
+	/** Makes a frame candidate for eviction.
+	 *
+	 * @param frame A frame which base graph has been created by this cache.
+	 */
+	void register(AbstractFrame frame)
+	{
+		cachedFrames.put((SpillableGraph) frame.getBaseGraph(), frame);
+	}
+
+	/** Releases a removed frame, and deletes its spill file.
+	 *
+	 * @param frame A registered frame.
+	 */
+	void unregister(AbstractFrame frame)
+	{
+		SpillableGraph graph = (SpillableGraph) frame.getBaseGraph();
+		if (cachedFrames.remove(graph) != null) {
+			residentSize.addAndGet(- graph.discard());
+		}
+	}
+
+	/** Accounts for a frame retrieval, reloading the frame if it has been
+	 * evicted.
+	 *
+	 * @param frame A registered frame.
+	 */
+	void touch(AbstractFrame frame)
+	{
+		SpillableGraph graph = (SpillableGraph) frame.getBaseGraph();
+		if (graph.isResident()) {
+			hits.incrementAndGet();
+		}
+		else {
+			misses.incrementAndGet();
+		}
+		graph.resident();
+	}
+
+	/** Accounts for a reloaded graph.
+	 *
+	 * @param graph The reloaded graph.
+	 * @param size The count of reloaded propositions.
+	 * @param nanos The time spent reloading.
+	 */
+	void reloaded(SpillableGraph graph, long size, long nanos)
+	{
+		reloads.incrementAndGet();
+		reloadTime.addAndGet(nanos);
+		resized(graph, size);
+	}
+
+	/** Accounts for propositions added to, or removed from, a graph held in
+	 * memory, and evicts frames if the budget is exceeded.
+	 *
+	 * @param graph The changed graph.
+	 * @param delta The count of added, or removed, propositions.
+	 */
+	void resized(SpillableGraph graph, long delta)
+	{
+		long n = residentSize.addAndGet(delta);
+
+		if (n <= budget) {
+			pressureMark = budget;
+		}
+		else if ( (n > pressureMark) && cachedFrames.containsKey(graph) ) {
+			evict(graph);
+		}
+	}
+
+	/** Evicts the least recently used frames, until the budget is met.
+	 *
+	 * <p>A single thread evicts at a time, and frames which lock cannot be
+	 * immediately taken are skipped.
+	 *
+	 * @param current The graph being accessed, which is never evicted.
+	 */
+	protected void evict(SpillableGraph current)
+	{
+		if (! evictionLock.tryLock()) {
+			return;
+		}
+		try {
+			List<SpillableGraph> candidates = new ArrayList<SpillableGraph>();
+			for (SpillableGraph graph : cachedFrames.keySet()) {
+				if ( (graph != current) && graph.isResident() ) {
+					candidates.add(graph);
+				}
+			}
+			// last accesses may change while sorting
+			final Map<SpillableGraph, Long> accesses = new HashMap<SpillableGraph, Long>();
+			for (SpillableGraph graph : candidates) {
+				accesses.put(graph, graph.getLastAccess());
+			}
+			Collections.sort(candidates, new Comparator<SpillableGraph>() {
+				@Override
+				public int compare(SpillableGraph g1, SpillableGraph g2) {
+					return Long.signum(accesses.get(g1) - accesses.get(g2));
+				}
+			});
+
+			for (SpillableGraph graph : candidates)
+			{
+				if (residentSize.get() <= budget) {
+					break;
+				}
+
+				AbstractFrame frame = cachedFrames.get(graph);
+				if ( (frame == null) || ! frame.frameLock.writeLock().tryLock() ) {
+					continue;
+				}
+				try {
+					if (cachedFrames.containsKey(graph) && graph.isResident())
+					{
+						residentSize.addAndGet(- graph.spill());
+						frame.frameModel.rebind();
+						frame.releaseDerived();
+						evictions.incrementAndGet();
+					}
+				}
+				finally {
+					frame.frameLock.writeLock().unlock();
+				}
+			}
+
+			long n = residentSize.get();
+			pressureMark = n > budget ? n + Math.max(1, budget / 16) : budget;
+		}
+		finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															POJO
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public String toString() {
+		return new StringBuffer(spillDirectory.getPath())
+			.append(" (").append(getResidentSize())
+			.append("/").append(getBudget()).append(")").toString();
+	}
+}
@@ -0,0 +1,199 @@
+package org.marl.wafnm.core.impl;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.jena.atlas.io.IndentedLineBuffer;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.out.NodeFormatter;
+import org.apache.jena.riot.out.NodeFormatterNT;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.util.iterator.ClosableIterator;
+
+/** Writes the triples exported by a frame to a channel, either as
+ * N-Triples or with {@link BinaryRdfCodec}.
+ *
+ * <p>Triples are encoded into a bounded buffer, which is drained into the
+ * channel each time it fills up: the exporter holds no triple, and only a
+ * bounded count of nodes.
+ *
+ * @author kr1s
+ *
+ */
+class FrameExporter {
+
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	static final byte[] END_OF_TRIPLE = " .\n".getBytes(BinaryRdfCodec.UTF8);
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	private DataOutputStream data;
+	private boolean binary;
+	private long count;
+
+	// N-Triples
+	private NodeFormatter formatter;
+	private IndentedLineBuffer line;
+
+	// binary
+	private Map<Node, Integer> written;
+
+	/** Creates an exporter, and writes the header of the stream.
+	 *
+	 * @param out The channel, which is not closed.
+	 * @param lang The serialization language.
+	 *
+	 * @throws IllegalArgumentException if the language is not supported.
+	 * @throws IOException if the channel fails.
+	 */
+	FrameExporter(WritableByteChannel out, String lang) throws IOException
+	{
+		if (out == null) {
+			throw new IllegalArgumentException();
+		}
+
+		if (BinaryRdfCodec.LANG.equals(lang))
+		{
+			binary = true;
+			written = new HashMap<Node, Integer>();
+		}
+		else
+		{
+			Lang rdfLang = lang != null ? RDFLanguages.nameToLang(lang) : null;
+			if (! RDFLanguages.NTRIPLES.equals(rdfLang)) {
+				throw new IllegalArgumentException("Unsupported export language: " + lang);
+			}
+			formatter = new NodeFormatterNT();
+			line = new IndentedLineBuffer();
+		}
+
+		data = new DataOutputStream(new ChannelOutputStream(out, BUFFER_SIZE));
+		if (binary) {
+			BinaryRdfCodec.writeStreamHeader(data);
+		}
+	}
+
+	/** Writes triples, and closes their iterator.
+	 *
+	 * @param triples The triples.
+	 *
+	 * @throws IOException if the channel fails.
+	 */
+	void write(Iterator<Triple> triples) throws IOException
+	{
+		try {
+			while (triples.hasNext()) {
+				write(triples.next());
+			}
+		}
+		finally {
+			if (triples instanceof ClosableIterator) {
+				((ClosableIterator<Triple>) triples).close();
+			}
+		}
+	}
+
+	/** Writes a triple.
+	 *
+	 * @param t The triple.
+	 *
+	 * @throws IOException if the channel fails.
+	 */
+	void write(Triple t) throws IOException
+	{
+		if (binary) {
+			BinaryRdfCodec.writeStreamTriple(data, t, written);
+		}
+		else
+		{
+			line.clear();
+			formatter.format(line, t.getSubject());
+			line.print(' ');
+			formatter.format(line, t.getPredicate());
+			line.print(' ');
+			formatter.format(line, t.getObject());
+			line.flush();
+			data.write(line.asString().getBytes(BinaryRdfCodec.UTF8));
+			data.write(END_OF_TRIPLE);
+		}
+		count++;
+	}
+
+	/** Writes the end of the stream, and drains the buffer into the channel.
+	 *
+	 * @return The count of written triples.
+	 *
+	 * @throws IOException if the channel fails.
+	 */
+	long finish() throws IOException
+	{
+		if (binary) {
+			BinaryRdfCodec.writeStreamEnd(data);
+		}
+		data.flush();
+
+		return count;
+	}
+
+	/** Buffers the bytes written to a channel.
+	 */
+	static class ChannelOutputStream extends OutputStream {
+
+		private final WritableByteChannel channel;
+		private final ByteBuffer buffer;
+
+		ChannelOutputStream(WritableByteChannel channel, int capacity)
+		{
+			this.channel = channel;
+			this.buffer = ByteBuffer.allocateDirect(capacity);
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			if (! buffer.hasRemaining()) {
+				drain();
+			}
+			buffer.put((byte) b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			while (len > 0)
+			{
+				if (! buffer.hasRemaining()) {
+					drain();
+				}
+				int n = Math.min(len, buffer.remaining());
+				buffer.put(b, off, n);
+				off += n;
+				len -= n;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			drain();
+		}
+
+		private void drain() throws IOException
+		{
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+}
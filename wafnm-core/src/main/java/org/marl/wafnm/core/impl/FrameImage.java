@@ -0,0 +1,447 @@
+package org.marl.wafnm.core.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.marl.wafnm.core.api.IFrame;
+import org.marl.wafnm.core.api.IFrameManager;
+import org.marl.wafnm.core.api.InferenceProfile;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.ontology.OntModel;
+import com.hp.hpl.jena.ontology.OntModelSpec;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+/** Reads an image of all the frames of a manager, as written by
+ * {@link #write(IFrameManager, File)}.
+ *
+ * <p>An image holds, for each frame, its URI, its inference profile, its
+ * asserted propositions, the propositions it infers, and the frames it
+ * binds. Propositions are stored as the sorted rows of a
+ * {@link FrozenTripleIndex}, followed by the table of all nodes and by a
+ * directory of the frames.
+ *
+ * <p>Opening an image only reads its directory. The node table is
+ * memory-mapped, and nodes are decoded as they are looked up: see
+ * {@link ImageNodeDictionary}. The propositions of a frame are
+ * memory-mapped when the frame is first opened, and are read from the file
+ * as they are looked up, without being decoded into the heap.
+ *
+ * <p>Frames opened from an image are frozen, and do not run inference:
+ * they answer the propositions inferred when the image was written.
+ * Knowledge they bind later on is not reasoned over. Their first change
+ * copies their propositions into the heap: see {@link ImageFrame}.
+ *
+ * @author kr1s
+ *
+ */
+public class FrameImage {
+
+	static final int MAGIC = 0x57464E49; // WFNI
+	static final int VERSION = 2;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected File file;
+	protected RandomAccessFile imageFile;
+	protected NodeDictionary nodeDictionary;
+	protected Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+	/** Opens an image.
+	 *
+	 * @param file The image file.
+	 *
+	 * @throws IllegalArgumentException if the file is not a valid image.
+	 * @throws IllegalStateException if the file cannot be read.
+	 */
+	public FrameImage(File file)
+	{
+		if (file == null) {
+			throw new IllegalArgumentException();
+		}
+		this.file = file;
+
+		try {
+			imageFile = new RandomAccessFile(file, "r");
+			if ( (imageFile.length() < 16)
+					|| (imageFile.readInt() != MAGIC)
+					|| (imageFile.readInt() != VERSION) ) {
+				imageFile.close();
+				throw new IllegalArgumentException("Invalid frame image: " + file);
+			}
+			long directoryOffset = imageFile.readLong();
+
+			FileInputStream directoryIn = new FileInputStream(file);
+			try {
+				directoryIn.getChannel().position(directoryOffset);
+				readDirectory(new DataInputStream(new BufferedInputStream(directoryIn, 1 << 16)));
+			}
+			finally {
+				directoryIn.close();
+			}
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot read frame image: " + file, e);
+		}
+	}
+
+	/** Answers the dictionary that encoded the propositions of this image.
+	 *
+	 * @return The node dictionary, which frames opened from this image
+	 * should share.
+	 */
+	public NodeDictionary getNodeDictionary() {
+		return nodeDictionary;
+	}
+
+	/** Answers the URIs of the frames of this image.
+	 *
+	 * @return The frame URIs, in the order they were written.
+	 */
+	public Set<String> getFrameUris() {
+		return Collections.unmodifiableSet(entries.keySet());
+	}
+
+	/** Releases the image file.
+	 *
+	 * <p>Frames already opened remain readable, while other frames cannot
+	 * be opened anymore.
+	 */
+	public void close()
+	{
+		try {
+			imageFile.close();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot close frame image: " + file, e);
+		}
+	}
+
+	/** Opens a frame of this image, without its bindings.
+	 *
+	 * @param frameUri The frame URI.
+	 *
+	 * @return The frozen frame, or <code>null</code> if the image does not
+	 * hold it.
+	 */
+	BaseFrame openFrame(String frameUri)
+	{
+		Entry entry = entries.get(frameUri);
+		if (entry == null) {
+			return null;
+		}
+
+		try {
+			Graph asserted = new EncodedGraph(nodeDictionary,
+					mapIndex(entry.assertedOffset, entry.assertedSize));
+			Model inferred = ModelFactory.createModelForGraph(new EncodedGraph(nodeDictionary,
+					mapIndex(entry.inferredOffset, entry.inferredSize)));
+
+			OntModel frameModel = ModelFactory.createOntologyModel(OntModelSpec.OWL_MEM,
+					ModelFactory.createModelForGraph(asserted));
+			frameModel.addSubModel(inferred);
+
+			BaseFrame frame = new ImageFrame(frameUri, frameModel, inferred);
+			frame.setInferenceProfile(entry.inferenceProfile);
+			frame.semAllocator.skipTo(entry.nextSemId);
+
+			return frame;
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot map frame image: " + file, e);
+		}
+	}
+
+	/** Answers the URIs of the frames a frame of this image binds.
+	 *
+	 * @param frameUri The frame URI.
+	 *
+	 * @return The bound frames URIs.
+	 */
+	List<String> getBindings(String frameUri)
+	{
+		Entry entry = entries.get(frameUri);
+		return entry != null ? entry.boundUris : Collections.<String>emptyList();
+	}
+
+	private FrozenTripleIndex mapIndex(long offset, int size) throws IOException {
+		return new FrozenTripleIndex(nodeDictionary, map(offset, 3L * 3 * 4 * size), size);
+	}
+
+	private ByteBuffer map(long offset, long length) throws IOException {
+		return imageFile.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, length);
+	}
+
+	private void readDirectory(DataInputStream in) throws IOException
+	{
+		for (int k = in.readInt() ; k > 0 ; k--)
+		{
+			Entry entry = new Entry();
+			String frameUri = BinaryRdfCodec.readString(in);
+			entry.inferenceProfile = InferenceProfile.valueOf(BinaryRdfCodec.readString(in));
+			entry.nextSemId = in.readLong();
+			entry.boundUris = new ArrayList<String>();
+			for (int b = in.readInt() ; b > 0 ; b--) {
+				entry.boundUris.add(BinaryRdfCodec.readString(in));
+			}
+			entry.assertedOffset = in.readLong();
+			entry.assertedSize = in.readInt();
+			entry.inferredOffset = in.readLong();
+			entry.inferredSize = in.readInt();
+
+			entries.put(frameUri, entry);
+		}
+
+		// the node table is followed by the offsets of the nodes, and by their hash table
+		int nodeCount = in.readInt();
+		long termsOffset = in.readLong();
+		int termsLength = in.readInt();
+		int slotCount = in.readInt();
+		nodeDictionary = new ImageNodeDictionary(nodeCount,
+				map(termsOffset, termsLength),
+				map(termsOffset + termsLength, 4L * (nodeCount + 1)).asIntBuffer(),
+				map(termsOffset + termsLength + 4L * (nodeCount + 1), 2 * 4L * slotCount).asIntBuffer());
+	}
+
+	/** Locates the propositions of a frame in the image.
+	 */
+	static class Entry {
+
+		InferenceProfile inferenceProfile;
+		long nextSemId;
+		List<String> boundUris;
+		long assertedOffset;
+		int assertedSize;
+		long inferredOffset;
+		int inferredSize;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															Writing
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	/** Writes an image of all the frames of a manager.
+	 *
+	 * <p>Each frame is written under its read lock, so that changes of
+	 * other frames are not blocked. Frames which implementation is unknown
+	 * are skipped.
+	 *
+	 * @param frameManager The frame manager.
+	 * @param file The image file, which is replaced.
+	 *
+	 * @return The count of written frames.
+	 *
+	 * @throws IllegalStateException if the image cannot be written.
+	 */
+	public static long write(IFrameManager frameManager, File file)
+	{
+		if ( (frameManager == null) || (file == null) ) {
+			throw new IllegalArgumentException();
+		}
+
+		NodeDictionary nodeDictionary = new NodeDictionary();
+		Map<AbstractFrame, Entry> written = new LinkedHashMap<AbstractFrame, Entry>();
+
+		try {
+			FileOutputStream fileOut = new FileOutputStream(file);
+			try {
+				DataOutputStream out = new DataOutputStream(
+						new BufferedOutputStream(fileOut, 1 << 16));
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				// patched once the directory is written
+				out.writeLong(0);
+				long position = 16;
+
+				for (IFrame f : frameManager.listFrames())
+				{
+					// forks are transient
+					if ( ! (f instanceof AbstractFrame) || (f instanceof ForkFrame) ) {
+						continue;
+					}
+					AbstractFrame frame = (AbstractFrame) f;
+					Entry entry = new Entry();
+
+					frame.frameLock.readLock().lock();
+					try {
+						entry.inferenceProfile = (frame instanceof BaseFrame) ?
+								((BaseFrame) frame).getInferenceProfile() : InferenceProfile.RDFS;
+						entry.nextSemId = frame.semAllocator.peek();
+						entry.boundUris = new ArrayList<String>(frame.boundFrames);
+
+						EncodedTriples asserted = new EncodedTriples(nodeDictionary);
+						EncodedTriples inferred = new EncodedTriples(nodeDictionary);
+						Graph baseGraph = frame.getBaseGraph();
+
+						ExtendedIterator<Triple> iterOnTriples = baseGraph.find(Triple.ANY);
+						try {
+							while (iterOnTriples.hasNext()) {
+								asserted.add(iterOnTriples.next());
+							}
+						}
+						finally {
+							iterOnTriples.close();
+						}
+
+						// inference graphs may answer a triple several times
+						Set<Triple> seen = new HashSet<Triple>();
+						iterOnTriples = frame.frameModel.getGraph().find(Triple.ANY);
+						try {
+							while (iterOnTriples.hasNext())
+							{
+								Triple t = iterOnTriples.next();
+								// bound propositions are read from the bound frames
+								if (! baseGraph.contains(t) 
+										&& ! frame.boundKnowledge.contains(t)
+										&& seen.add(t)) {
+									inferred.add(t);
+								}
+							}
+						}
+						finally {
+							iterOnTriples.close();
+						}
+
+						entry.assertedOffset = position;
+						entry.assertedSize = asserted.size;
+						position += asserted.index().write(out);
+
+						entry.inferredOffset = position;
+						entry.inferredSize = inferred.size;
+						position += inferred.index().write(out);
+					}
+					finally {
+						frame.frameLock.readLock().unlock();
+					}
+					written.put(frame, entry);
+				}
+
+				// identifiers are allocated in sequence, as the nodes are written
+				long termsOffset = position;
+				int nodeCount = nodeDictionary.size();
+				int[] termOffsets = new int[nodeCount + 1];
+				int slotCount = Integer.highestOneBit(Math.max(1, 2 * nodeCount - 1)) << 1;
+				int[] slots = new int[2 * slotCount];
+				ByteArrayOutputStream termBytes = new ByteArrayOutputStream();
+				DataOutputStream termOut = new DataOutputStream(termBytes);
+				long termsLength = 0;
+
+				for (int k = 0 ; k < nodeCount ; k++)
+				{
+					Node node = nodeDictionary.decode(k);
+					termBytes.reset();
+					BinaryRdfCodec.writeTerm(termOut, node);
+					termBytes.writeTo(out);
+					termOffsets[k] = (int) termsLength;
+					termsLength += termBytes.size();
+					if (termsLength > Integer.MAX_VALUE) {
+						throw new IllegalStateException("Too many nodes to write an image: " + nodeCount);
+					}
+
+					int hash = ImageNodeDictionary.termHash(node);
+					int slot = hash & (slotCount - 1);
+					while (slots[2 * slot] != 0) {
+						slot = (slot + 1) & (slotCount - 1);
+					}
+					slots[2 * slot] = k + 1;
+					slots[2 * slot + 1] = hash;
+				}
+				termOffsets[nodeCount] = (int) termsLength;
+				for (int offset : termOffsets) {
+					out.writeInt(offset);
+				}
+				for (int slot : slots) {
+					out.writeInt(slot);
+				}
+				position += termsLength + 4L * termOffsets.length + 4L * slots.length;
+
+				long directoryOffset = position;
+				out.writeInt(written.size());
+				for (Map.Entry<AbstractFrame, Entry> w : written.entrySet())
+				{
+					Entry entry = w.getValue();
+					BinaryRdfCodec.writeString(out, w.getKey().getURI());
+					BinaryRdfCodec.writeString(out, entry.inferenceProfile.name());
+					out.writeLong(entry.nextSemId);
+					out.writeInt(entry.boundUris.size());
+					for (String boundUri : entry.boundUris) {
+						BinaryRdfCodec.writeString(out, boundUri);
+					}
+					out.writeLong(entry.assertedOffset);
+					out.writeInt(entry.assertedSize);
+					out.writeLong(entry.inferredOffset);
+					out.writeInt(entry.inferredSize);
+				}
+
+				out.writeInt(nodeCount);
+				out.writeLong(termsOffset);
+				out.writeInt((int) termsLength);
+				out.writeInt(slotCount);
+				out.flush();
+
+				ByteBuffer patch = ByteBuffer.allocate(8);
+				patch.putLong(0, directoryOffset);
+				fileOut.getChannel().write(patch, 8);
+				fileOut.getChannel().force(true);
+			}
+			finally {
+				fileOut.close();
+			}
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot write frame image: " + file, e);
+		}
+
+		return written.size();
+	}
+
+	/** Accumulates encoded triples.
+	 */
+	private static class EncodedTriples {
+
+		NodeDictionary nodeDictionary;
+		int[] triples = new int[3 * 64];
+		int size;
+
+		EncodedTriples(NodeDictionary nodeDictionary) {
+			this.nodeDictionary = nodeDictionary;
+		}
+
+		void add(Triple t)
+		{
+			if (3 * size == triples.length) {
+				triples = Arrays.copyOf(triples, 2 * triples.length);
+			}
+			triples[3 * size] = nodeDictionary.encode(t.getSubject());
+			triples[3 * size + 1] = nodeDictionary.encode(t.getPredicate());
+			triples[3 * size + 2] = nodeDictionary.encode(t.getObject());
+			size++;
+		}
+
+		FrozenTripleIndex index() {
+			return new FrozenTripleIndex(nodeDictionary, triples, size);
+		}
+	}
+}
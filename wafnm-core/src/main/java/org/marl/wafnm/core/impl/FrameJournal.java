@@ -0,0 +1,1047 @@
+package org.marl.wafnm.core.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.marl.wafnm.core.api.IFrame;
+import org.marl.wafnm.core.api.InferenceProfile;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphEvents;
+import com.hp.hpl.jena.graph.GraphListener;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+/** Journals the changes of the frames of a {@link MemFrameManager}, so that
+ * they survive a crash.
+ *
+ * <p>A journal is a directory that holds a checkpoint, which is a compact
+ * image of all frames, and the segments written since. Segments are
+ * append-only sequences of records: frames creation, with their inference
+ * profile, removal, freezing and bindings, leases of sem identifiers, and
+ * the propositions added to, or removed from, frames base graphs. Propositions are recorded as asserted,
+ * so that recovery does not run inference until frames are next queried.
+ *
+ * <p>Opening a journal loads the checkpoint, replays the segments written
+ * since it was started, up to the first torn record, and writes a new
+ * checkpoint. Records are idempotent, so that writers are not blocked while
+ * a checkpoint is written: a checkpoint is started once the segments grow
+ * larger than a given size, by the writer which change crosses that size,
+ * or on demand.
+ *
+ * <p>Records are forced to disk according to a {@link SyncPolicy}. With
+ * {@link SyncPolicy#ALWAYS}, concurrent writers are committed as a group,
+ * by a single force of the journal.
+ *
+ * @author kr1s
+ *
+ */
+public class FrameJournal {
+
+	/** Tells when journal records are forced to disk.
+	 */
+	public enum SyncPolicy {
+
+		/** Each change is forced to disk before it returns.
+		 */
+		ALWAYS,
+
+		/** Each change is written to the system before it returns, and
+		 * forced to disk periodically.
+		 */
+		PERIODIC,
+
+		/** Each change is written to the system before it returns, but is
+		 * never forced: changes survive a process crash, but not a system
+		 * crash.
+		 */
+		NEVER
+	}
+
+	/** The default period of {@link SyncPolicy#PERIODIC} forces, in
+	 * milliseconds.
+	 */
+	public static final long DEFAULT_SYNC_INTERVAL = 1000;
+
+	/** The default size of the segments that starts a checkpoint, in bytes.
+	 */
+	public static final long DEFAULT_CHECKPOINT_SIZE = 64L << 20;
+
+	static final int MAGIC = 0x57464E43; // WFNC
+	static final int VERSION = 2;
+	// without inference profiles, which are then the default one
+	static final int VERSION_1 = 1;
+
+	static final int CREATE = 'C';
+	static final int REMOVE = 'R';
+	static final int BIND = 'B';
+	static final int UNBIND = 'U';
+	static final int FREEZE = 'F';
+	static final int LEASE = 'L';
+	static final int ADD = '+';
+	static final int DELETE = '-';
+	static final int DELETE_MATCHES = 'M';
+
+	static final String CHECKPOINT_FILE = "checkpoint";
+	static final String SEGMENT_PREFIX = "journal-";
+	static final String SEGMENT_SUFFIX = ".log";
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected File directory;
+	protected SyncPolicy syncPolicy;
+	protected long syncInterval;
+	protected long checkpointSize;
+
+	// the current segment, guarded by this journal
+	protected long segment;
+	protected FileOutputStream segmentFile;
+	protected DataOutputStream segmentOut;
+	protected Map<Node, Integer> segmentNodes;
+	protected long appended;
+	protected long segmentsSize;
+
+	// the record being written, guarded by this journal
+	protected ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+	protected DataOutputStream recordOut = new DataOutputStream(recordBytes);
+	protected CRC32 recordChecksum = new CRC32();
+
+	// the count of records forced to disk, guarded by the sync monitor
+	protected final Object syncMonitor = new Object();
+	protected long synced;
+	protected volatile IllegalStateException syncFailure;
+	protected Timer syncTimer;
+
+	protected Lock checkpointLock = new ReentrantLock();
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected MemFrameManager frameManager;
+
+	/** Creates a journal that forces each change to disk.
+	 *
+	 * @param directory The journal directory, which is created if needed.
+	 */
+	public FrameJournal(File directory)
+	{
+		this(directory, SyncPolicy.ALWAYS, DEFAULT_SYNC_INTERVAL, DEFAULT_CHECKPOINT_SIZE);
+	}
+
+	/** Creates a journal.
+	 *
+	 * <p>The journal is opened by the frame manager it is given to.
+	 *
+	 * @param directory The journal directory, which is created if needed.
+	 * @param syncPolicy Tells when records are forced to disk.
+	 * @param syncInterval The period of {@link SyncPolicy#PERIODIC} forces,
+	 * in milliseconds.
+	 * @param checkpointSize The size of the segments that starts a
+	 * checkpoint, in bytes.
+	 */
+	public FrameJournal(File directory, SyncPolicy syncPolicy, long syncInterval, long checkpointSize)
+	{
+		if ( (directory == null) || (syncPolicy == null)
+				|| (syncInterval <= 0) || (checkpointSize <= 0) ) {
+			throw new IllegalArgumentException();
+		}
+
+		this.directory = directory;
+		this.syncPolicy = syncPolicy;
+		this.syncInterval = syncInterval;
+		this.checkpointSize = checkpointSize;
+	}
+
+	/** Answers the journal directory.
+	 *
+	 * @return The directory.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/** Answers when records are forced to disk.
+	 *
+	 * @return The sync policy.
+	 */
+	public SyncPolicy getSyncPolicy() {
+		return syncPolicy;
+	}
+
+	/** Answers the count of records appended since this journal was opened.
+	 *
+	 * @return The count of records.
+	 */
+	public synchronized long getAppended() {
+		return appended;
+	}
+
+	/** Answers the count of records forced to disk since this journal was
+	 * opened.
+	 *
+	 * @return The count of records.
+	 */
+	public long getSynced()
+	{
+		synchronized (syncMonitor) {
+			return synced;
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															Lifecycle
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	/** Recovers the frames of a manager, and starts journaling their changes.
+	 *
+	 * @param frameManager The manager, which should not have any frame yet.
+	 *
+	 * @throws IllegalStateException if this journal is already open, or
+	 * cannot be read or written.
+	 */
+	void open(MemFrameManager frameManager)
+	{
+		if (this.frameManager != null) {
+			throw new IllegalStateException("Journal is already open: " + directory);
+		}
+		if (! directory.isDirectory() && ! directory.mkdirs()) {
+			throw new IllegalStateException("Cannot create journal: " + directory);
+		}
+		this.frameManager = frameManager;
+
+		try {
+			long first = 0;
+			File checkpointFile = new File(directory, CHECKPOINT_FILE);
+			if (checkpointFile.exists()) {
+				first = readCheckpoint(checkpointFile);
+			}
+
+			long last = first - 1;
+			for (long s : listSegments())
+			{
+				if (s >= first) {
+					replaySegment(s);
+				}
+				last = Math.max(last, s);
+			}
+
+			for (IFrame frame : frameManager.listFrames())
+			{
+				((BaseFrame) frame).frameModel.rebind();
+				attach((BaseFrame) frame);
+			}
+
+			synchronized (this)
+			{
+				segment = last + 1;
+				openSegment();
+			}
+			writeCheckpoint(segment);
+			deleteSegmentsBefore(segment);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot open journal: " + directory, e);
+		}
+
+		if (syncPolicy == SyncPolicy.PERIODIC)
+		{
+			syncTimer = new Timer("wafnm-journal-sync", true);
+			syncTimer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					try {
+						force(getAppended());
+					}
+					catch (IllegalStateException e) {
+						syncFailure = e;
+					}
+				}
+			}, syncInterval, syncInterval);
+		}
+	}
+
+	/** Forces all records to disk, and closes this journal.
+	 *
+	 * <p>Later changes of the frames are not journaled anymore.
+	 */
+	public void close()
+	{
+		if (syncTimer != null) {
+			syncTimer.cancel();
+		}
+
+		synchronized (syncMonitor)
+		{
+			synchronized (this)
+			{
+				if (segmentOut == null) {
+					return;
+				}
+				try {
+					closeSegment();
+				}
+				catch (IOException e) {
+					throw new IllegalStateException("Cannot close journal: " + directory, e);
+				}
+				synced = appended;
+			}
+		}
+	}
+
+	/** Makes the changes appended so far as durable as the sync policy
+	 * requires, and starts a checkpoint if the segments grew too large.
+	 *
+	 * <p>This should be called once a change is complete, without holding
+	 * any frame lock, so that concurrent changes are committed as a group.
+	 *
+	 * @throws IllegalStateException if the journal cannot be written.
+	 */
+	void sync()
+	{
+		IllegalStateException failure = syncFailure;
+		if (failure != null) {
+			throw failure;
+		}
+
+		long target;
+		boolean checkpointDue;
+		synchronized (this)
+		{
+			if (segmentOut == null) {
+				return;
+			}
+			target = appended;
+			checkpointDue = segmentsSize > checkpointSize;
+
+			if (syncPolicy != SyncPolicy.ALWAYS)
+			{
+				try {
+					segmentOut.flush();
+				}
+				catch (IOException e) {
+					throw new IllegalStateException("Cannot write journal: " + directory, e);
+				}
+			}
+		}
+
+		if (syncPolicy == SyncPolicy.ALWAYS) {
+			force(target);
+		}
+
+		if (checkpointDue && checkpointLock.tryLock())
+		{
+			try {
+				checkpoint();
+			}
+			finally {
+				checkpointLock.unlock();
+			}
+		}
+	}
+
+	/** Writes a checkpoint of all frames, and deletes the segments it makes
+	 * useless.
+	 *
+	 * <p>Writers are not blocked while the checkpoint is written, except by
+	 * the read lock taken on each frame while it is written.
+	 *
+	 * @throws IllegalStateException if the checkpoint cannot be written.
+	 */
+	public void checkpoint()
+	{
+		checkpointLock.lock();
+		try {
+			long first;
+			synchronized (syncMonitor)
+			{
+				synchronized (this)
+				{
+					if (segmentOut == null) {
+						throw new IllegalStateException("Journal is closed: " + directory);
+					}
+					closeSegment();
+					synced = appended;
+					segment++;
+					openSegment();
+					first = segment;
+				}
+			}
+
+			writeCheckpoint(first);
+			deleteSegmentsBefore(first);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot write checkpoint: " + directory, e);
+		}
+		finally {
+			checkpointLock.unlock();
+		}
+	}
+
+	// forces the records to disk, unless another writer did it already
+	private void force(long target)
+	{
+		synchronized (syncMonitor)
+		{
+			if (synced >= target) {
+				return;
+			}
+
+			long reached;
+			try {
+				synchronized (this)
+				{
+					if (segmentOut == null) {
+						return;
+					}
+					segmentOut.flush();
+					reached = appended;
+				}
+				// other writers keep on appending while the group is forced
+				segmentFile.getChannel().force(false);
+			}
+			catch (IOException e) {
+				throw new IllegalStateException("Cannot sync journal: " + directory, e);
+			}
+			synced = reached;
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															Records
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	/** Records the creation of a frame, with its initial propositions, and
+	 * journals its later changes.
+	 *
+	 * <p>The frame must be registered, and write locked until it is
+	 * journaled, so that a checkpoint that misses its creation record
+	 * writes the frame.
+	 *
+	 * @param frame The created frame.
+	 */
+	void frameCreated(BaseFrame frame)
+	{
+		synchronized (this)
+		{
+			try {
+				startRecord(CREATE, frame.getURI());
+				BinaryRdfCodec.writeString(recordOut, frame.getInferenceProfile().name());
+				endRecord();
+			}
+			catch (IOException e) {
+				throw new IllegalStateException("Cannot write journal: " + directory, e);
+			}
+
+			ExtendedIterator<Triple> iterOnTriples = frame.getBaseGraph().find(Triple.ANY);
+			try {
+				while (iterOnTriples.hasNext()) {
+					tripleChanged(ADD, frame.getURI(), iterOnTriples.next());
+				}
+			}
+			finally {
+				iterOnTriples.close();
+			}
+		}
+
+		attach(frame);
+	}
+
+	/** Records the removal of a frame.
+	 *
+	 * @param frameUri The removed frame URI.
+	 */
+	synchronized void frameRemoved(String frameUri)
+	{
+		startRecord(REMOVE, frameUri);
+		endRecord();
+	}
+
+	/** Records that a frame was frozen.
+	 *
+	 * @param frameUri The frozen frame URI.
+	 */
+	synchronized void frameFrozen(String frameUri)
+	{
+		startRecord(FREEZE, frameUri);
+		endRecord();
+	}
+
+	/** Records that a frame binds, or does not bind anymore, the knowledge
+	 * of another frame.
+	 *
+	 * @param frameUri The binding frame URI.
+	 * @param boundUri The bound frame URI.
+	 * @param bound Whether the knowledge is bound, or unbound.
+	 */
+	synchronized void knowledgeBound(String frameUri, String boundUri, boolean bound)
+	{
+		try {
+			startRecord(bound ? BIND : UNBIND, frameUri);
+			BinaryRdfCodec.writeString(recordOut, boundUri);
+			endRecord();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot write journal: " + directory, e);
+		}
+	}
+
+	/** Records a lease of sem identifiers.
+	 *
+	 * @param frameUri The frame URI.
+	 * @param limit The new lease limit.
+	 */
+	synchronized void semLeased(String frameUri, long limit)
+	{
+		try {
+			startRecord(LEASE, frameUri);
+			BinaryRdfCodec.writeVarLong(recordOut, limit);
+			endRecord();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot write journal: " + directory, e);
+		}
+	}
+
+	private synchronized void tripleChanged(int type, String frameUri, Triple t)
+	{
+		try {
+			startRecord(type, frameUri);
+			BinaryRdfCodec.writeNode(recordOut, t.getSubject(), segmentNodes);
+			BinaryRdfCodec.writeNode(recordOut, t.getPredicate(), segmentNodes);
+			BinaryRdfCodec.writeNode(recordOut, t.getObject(), segmentNodes);
+			endRecord();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot write journal: " + directory, e);
+		}
+	}
+
+	private synchronized void triplesRemoved(String frameUri, Triple pattern)
+	{
+		Node[] nodes = { pattern.getSubject(), pattern.getPredicate(), pattern.getObject() };
+		try {
+			startRecord(DELETE_MATCHES, frameUri);
+			int concrete = 0;
+			for (int k = 0 ; k < 3 ; k++) {
+				if (nodes[k].isConcrete()) {
+					concrete |= 1 << k;
+				}
+			}
+			recordOut.writeByte(concrete);
+			for (Node node : nodes) {
+				if (node.isConcrete()) {
+					BinaryRdfCodec.writeNode(recordOut, node, segmentNodes);
+				}
+			}
+			endRecord();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot write journal: " + directory, e);
+		}
+	}
+
+	private void startRecord(int type, String frameUri)
+	{
+		if (segmentOut == null) {
+			throw new IllegalStateException("Journal is closed: " + directory);
+		}
+
+		recordBytes.reset();
+		try {
+			recordOut.writeByte(type);
+			BinaryRdfCodec.writeString(recordOut, frameUri);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot write journal: " + directory, e);
+		}
+	}
+
+	// frames the record with its length and checksum, to detect torn records
+	private void endRecord()
+	{
+		try {
+			recordOut.flush();
+			recordChecksum.reset();
+			recordChecksum.update(recordBytes.toByteArray(), 0, recordBytes.size());
+
+			segmentOut.writeInt(recordBytes.size());
+			recordBytes.writeTo(segmentOut);
+			segmentOut.writeInt((int) recordChecksum.getValue());
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot write journal: " + directory, e);
+		}
+
+		appended++;
+		segmentsSize += recordBytes.size() + 8;
+	}
+
+	/** Journals the changes of a frame: its sem leases, and the propositions
+	 * added to and removed from its base graph.
+	 *
+	 * @param frame The journaled frame.
+	 */
+	private void attach(final BaseFrame frame)
+	{
+		final String frameUri = frame.getURI();
+
+		frame.setSemAllocator(new UriAllocator(frameUri,
+				frame.semAllocator.peek(),
+				UriAllocator.DEFAULT_LEASE_SIZE) {
+			@Override
+			protected void lease(long limit) {
+				semLeased(frameUri, limit);
+			}
+		});
+		frame.getBaseGraph().getEventManager().register(new FrameListener(frameUri));
+		frame.setFrameJournal(this);
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															Files
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	private void openSegment() throws IOException
+	{
+		File file = segmentFile(segment);
+		segmentFile = new FileOutputStream(file, true);
+		segmentOut = new DataOutputStream(new BufferedOutputStream(segmentFile, 1 << 16));
+		segmentNodes = new HashMap<Node, Integer>();
+		segmentsSize = 0;
+
+		if (file.length() == 0) {
+			segmentOut.writeInt(MAGIC);
+			segmentOut.writeByte(VERSION);
+		}
+	}
+
+	private void closeSegment() throws IOException
+	{
+		segmentOut.flush();
+		segmentFile.getChannel().force(false);
+		segmentOut.close();
+		segmentOut = null;
+		segmentFile = null;
+		segmentNodes = null;
+	}
+
+	private File segmentFile(long s) {
+		return new File(directory, SEGMENT_PREFIX + s + SEGMENT_SUFFIX);
+	}
+
+	private List<Long> listSegments()
+	{
+		List<Long> segments = new ArrayList<Long>();
+		String[] names = directory.list();
+		if (names != null)
+		{
+			for (String name : names)
+			{
+				if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+				{
+					try {
+						segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+								name.length() - SEGMENT_SUFFIX.length())));
+					}
+					catch (NumberFormatException e) {
+						// not a segment
+					}
+				}
+			}
+		}
+
+		Collections.sort(segments);
+		return segments;
+	}
+
+	private void deleteSegmentsBefore(long first)
+	{
+		for (long s : listSegments()) {
+			if (s < first) {
+				segmentFile(s).delete();
+			}
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															Checkpoint
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	private void writeCheckpoint(long first) throws IOException
+	{
+		File tmpFile = new File(directory, CHECKPOINT_FILE + ".tmp");
+		FileOutputStream file = new FileOutputStream(tmpFile);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeLong(first);
+			out.writeLong(MemFrameManager.frameAllocator.peek());
+
+			for (IFrame f : frameManager.listFrames())
+			{
+				if (f instanceof ForkFrame) {
+					continue;
+				}
+				BaseFrame frame = (BaseFrame) f;
+				frame.frameLock.readLock().lock();
+				try {
+					// removed frames are closed once their readers are done
+					if (frameManager.framesTable.get(frame.getURI()) != frame) {
+						continue;
+					}
+
+					out.writeBoolean(true);
+					BinaryRdfCodec.writeString(out, frame.getURI());
+					BinaryRdfCodec.writeString(out, frame.getInferenceProfile().name());
+					out.writeBoolean(frame.frozen);
+					// sems allocated within the current lease are not recorded
+					out.writeLong(frame.semAllocator.peekLeased());
+					out.writeInt(frame.boundFrames.size());
+					for (String boundUri : frame.boundFrames) {
+						BinaryRdfCodec.writeString(out, boundUri);
+					}
+					BinaryRdfCodec.write(frame.getBaseGraph(), out);
+				}
+				finally {
+					frame.frameLock.readLock().unlock();
+				}
+			}
+			out.writeBoolean(false);
+
+			out.flush();
+			file.getChannel().force(true);
+		}
+		finally {
+			file.close();
+		}
+
+		File checkpointFile = new File(directory, CHECKPOINT_FILE);
+		if (! tmpFile.renameTo(checkpointFile))
+		{
+			checkpointFile.delete();
+			if (! tmpFile.renameTo(checkpointFile)) {
+				throw new IOException("Cannot rename checkpoint: " + tmpFile);
+			}
+		}
+	}
+
+	// answers the first segment to replay
+	private long readCheckpoint(File checkpointFile) throws IOException
+	{
+		DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(checkpointFile), 1 << 16));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Invalid checkpoint: " + checkpointFile);
+			}
+			int version = in.readByte();
+			if ( (version != VERSION) && (version != VERSION_1) ) {
+				throw new IOException("Invalid checkpoint: " + checkpointFile);
+			}
+
+			long first = in.readLong();
+			MemFrameManager.frameAllocator.skipTo(in.readLong());
+
+			Map<BaseFrame, List<String>> bindings = new LinkedHashMap<BaseFrame, List<String>>();
+			while (in.readBoolean())
+			{
+				String frameUri = BinaryRdfCodec.readString(in);
+				InferenceProfile profile = (version != VERSION_1) ?
+						InferenceProfile.valueOf(BinaryRdfCodec.readString(in))
+						: InferenceProfile.RDFS;
+				BaseFrame frame = frameManager.restoreFrame(frameUri, profile);
+				boolean frozen = in.readBoolean();
+				frame.semAllocator.skipTo(in.readLong());
+
+				List<String> boundUris = new ArrayList<String>();
+				for (int k = in.readInt() ; k > 0 ; k--) {
+					boundUris.add(BinaryRdfCodec.readString(in));
+				}
+				bindings.put(frame, boundUris);
+
+				BinaryRdfCodec.read(in, frame.getBaseGraph());
+				if (frozen) {
+					frame.freeze();
+				}
+			}
+
+			for (Map.Entry<BaseFrame, List<String>> entry : bindings.entrySet()) {
+				for (String boundUri : entry.getValue()) {
+					entry.getKey().bindKnowledge(boundUri);
+				}
+			}
+
+			return first;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															Replay
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	private void replaySegment(long s) throws IOException
+	{
+		File file = segmentFile(s);
+		DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try {
+			if (in.readInt() != MAGIC) {
+				return;
+			}
+			int version = in.readByte();
+			if ( (version != VERSION) && (version != VERSION_1) ) {
+				return;
+			}
+
+			List<Node> nodes = new ArrayList<Node>();
+			CRC32 checksum = new CRC32();
+			while (true)
+			{
+				byte[] record;
+				try {
+					int length = in.readInt();
+					if ( (length <= 0) || (length > file.length()) ) {
+						// torn length
+						return;
+					}
+					record = new byte[length];
+					in.readFully(record);
+					checksum.reset();
+					checksum.update(record, 0, record.length);
+					if (in.readInt() != (int) checksum.getValue()) {
+						return;
+					}
+				}
+				catch (EOFException e) {
+					// torn record
+					return;
+				}
+
+				replay(new DataInputStream(new ByteArrayInputStream(record)), nodes);
+			}
+		}
+		catch (EOFException e) {
+			// torn header
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private void replay(DataInputStream record, List<Node> nodes) throws IOException
+	{
+		int type = record.readByte();
+		String frameUri = BinaryRdfCodec.readString(record);
+
+		if (type == CREATE)
+		{
+			// records of the first version end with the frame URI
+			InferenceProfile profile = (record.available() > 0) ?
+					InferenceProfile.valueOf(BinaryRdfCodec.readString(record))
+					: InferenceProfile.RDFS;
+			frameManager.restoreFrame(frameUri, profile);
+			return;
+		}
+
+		BaseFrame frame = (BaseFrame) frameManager.framesTable.get(frameUri);
+		switch (type)
+		{
+		case REMOVE:
+			if (frame != null) {
+				frameManager.removeFrame(frameUri);
+			}
+			break;
+		case FREEZE:
+			if (frame != null) {
+				frame.freeze();
+			}
+			break;
+		case BIND:
+		case UNBIND:
+			String boundUri = BinaryRdfCodec.readString(record);
+			if (frame == null) {
+				break;
+			}
+			if (type == BIND) {
+				frame.bindKnowledge(boundUri);
+			}
+			else {
+				frame.unbindKnowledge(boundUri);
+			}
+			break;
+		case LEASE:
+			long limit = BinaryRdfCodec.readVarLong(record);
+			if (frame != null) {
+				frame.semAllocator.skipTo(limit);
+			}
+			break;
+		case ADD:
+		case DELETE:
+			Triple t = Triple.create(BinaryRdfCodec.readNode(record, nodes),
+					BinaryRdfCodec.readNode(record, nodes),
+					BinaryRdfCodec.readNode(record, nodes));
+			// frozen frames already hold the propositions recorded before
+			if ( (frame == null) || frame.frozen ) {
+				break;
+			}
+			if (type == ADD) {
+				frame.getBaseGraph().add(t);
+			}
+			else {
+				frame.getBaseGraph().delete(t);
+			}
+			break;
+		case DELETE_MATCHES:
+			int concrete = record.readByte();
+			Node[] pattern = new Node[3];
+			for (int k = 0 ; k < 3 ; k++) {
+				pattern[k] = (concrete & (1 << k)) != 0 ?
+						BinaryRdfCodec.readNode(record, nodes) : Node.ANY;
+			}
+			if ( (frame != null) && ! frame.frozen ) {
+				frame.getBaseGraph().remove(pattern[0], pattern[1], pattern[2]);
+			}
+			break;
+		default:
+			throw new IOException("Invalid journal record: " + type);
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															POJO
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public String toString() {
+		return new StringBuffer(directory.getPath())
+			.append(" (").append(syncPolicy).append(")").toString();
+	}
+
+	/** Journals the changes of a frame base graph.
+	 */
+	private class FrameListener implements GraphListener {
+
+		private String frameUri;
+
+		FrameListener(String frameUri) {
+			this.frameUri = frameUri;
+		}
+
+		private void added(Iterator<Triple> triples)
+		{
+			while (triples.hasNext()) {
+				tripleChanged(ADD, frameUri, triples.next());
+			}
+		}
+
+		private void deleted(Iterator<Triple> triples)
+		{
+			while (triples.hasNext()) {
+				tripleChanged(DELETE, frameUri, triples.next());
+			}
+		}
+
+		@Override
+		public void notifyAddTriple(Graph g, Triple t) {
+			tripleChanged(ADD, frameUri, t);
+		}
+
+		@Override
+		public void notifyAddArray(Graph g, Triple[] triples) {
+			added(Arrays.asList(triples).iterator());
+		}
+
+		@Override
+		public void notifyAddList(Graph g, List<Triple> triples) {
+			added(triples.iterator());
+		}
+
+		@Override
+		public void notifyAddIterator(Graph g, Iterator<Triple> it) {
+			added(it);
+		}
+
+		@Override
+		public void notifyAddGraph(Graph g, Graph added)
+		{
+			ExtendedIterator<Triple> iterOnTriples = added.find(Triple.ANY);
+			try {
+				added(iterOnTriples);
+			}
+			finally {
+				iterOnTriples.close();
+			}
+		}
+
+		@Override
+		public void notifyDeleteTriple(Graph g, Triple t) {
+			tripleChanged(DELETE, frameUri, t);
+		}
+
+		@Override
+		public void notifyDeleteList(Graph g, List<Triple> triples) {
+			deleted(triples.iterator());
+		}
+
+		@Override
+		public void notifyDeleteArray(Graph g, Triple[] triples) {
+			deleted(Arrays.asList(triples).iterator());
+		}
+
+		@Override
+		public void notifyDeleteIterator(Graph g, Iterator<Triple> it) {
+			deleted(it);
+		}
+
+		@Override
+		public void notifyDeleteGraph(Graph g, Graph removed)
+		{
+			ExtendedIterator<Triple> iterOnTriples = removed.find(Triple.ANY);
+			try {
+				deleted(iterOnTriples);
+			}
+			finally {
+				iterOnTriples.close();
+			}
+		}
+
+		@Override
+		public void notifyEvent(Graph source, Object value)
+		{
+			if (GraphEvents.removeAll.equals(value)) {
+				triplesRemoved(frameUri, Triple.ANY);
+			}
+			else if ( (value instanceof GraphEvents)
+					&& "remove".equals(((GraphEvents) value).getTitle()) ) {
+				triplesRemoved(frameUri, ((GraphEvents) value).getTriple());
+			}
+		}
+	}
+}
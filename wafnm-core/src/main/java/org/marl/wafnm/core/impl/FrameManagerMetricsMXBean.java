@@ -0,0 +1,54 @@
+package org.marl.wafnm.core.impl;
+
+/** Publishes the metrics of a frame manager, and of all its frames
+ * operations, over JMX.
+ *
+ * @author kr1s
+ *
+ * @see MonitoredFrameManager
+ */
+public interface FrameManagerMetricsMXBean {
+
+	/** Answers the count of managed frames.
+	 *
+	 * @return The frame count.
+	 */
+	public long getFrameCount();
+
+	/** Answers the size of the largest frame, including bound frames.
+	 *
+	 * @return The count of propositions.
+	 */
+	public long getMaxFrameSize();
+
+	/** Answers the URI of the largest frame.
+	 *
+	 * @return The frame URI, or <code>null</code> if there is no frame.
+	 */
+	public String getLargestFrame();
+
+	/** Answers the largest count of frames a frame binds.
+	 *
+	 * @return The maximum binding fan-out.
+	 */
+	public int getMaxBoundFrameCount();
+
+	/** Answers the mean count of frames a frame binds.
+	 *
+	 * @return The mean binding fan-out.
+	 */
+	public double getMeanBoundFrameCount();
+
+	/** Answers the total time spent preparing the frames reasoners.
+	 *
+	 * @return The inference time, in milliseconds.
+	 */
+	public double getInferenceMillis();
+
+	/** Answers the statistics of the operations of the manager and of all
+	 * its frames, with latency percentiles.
+	 *
+	 * @return The statistics of the operations called at least once.
+	 */
+	public OperationStatistics[] getOperations();
+}
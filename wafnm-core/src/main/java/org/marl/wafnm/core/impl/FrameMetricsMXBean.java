@@ -0,0 +1,41 @@
+package org.marl.wafnm.core.impl;
+
+/** Publishes the metrics of a frame over JMX.
+ *
+ * @author kr1s
+ *
+ * @see MonitoredFrame
+ */
+public interface FrameMetricsMXBean {
+
+	/** Answers the frame URI.
+	 *
+	 * @return The URI.
+	 */
+	public String getURI();
+
+	/** Answers the frame size, including bound frames.
+	 *
+	 * @return The count of propositions.
+	 */
+	public long getSize();
+
+	/** Answers the count of frames the frame binds.
+	 *
+	 * @return The binding fan-out, or <code>-1</code> if unknown.
+	 */
+	public int getBoundFrameCount();
+
+	/** Answers the total time spent preparing the frame reasoner.
+	 *
+	 * @return The inference time, in milliseconds.
+	 */
+	public double getInferenceMillis();
+
+	/** Answers the statistics of the frame operations, without latency
+	 * percentiles.
+	 *
+	 * @return The statistics of the operations called at least once.
+	 */
+	public OperationStatistics[] getOperations();
+}
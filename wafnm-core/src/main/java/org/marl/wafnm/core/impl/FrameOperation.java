@@ -0,0 +1,57 @@
+package org.marl.wafnm.core.impl;
+
+/** Enumerates the operations measured by {@link MonitoredFrameManager}.
+ *
+ * <p>Overloaded frame methods, such as the <code>learn</code> variants,
+ * are measured as a single operation.
+ *
+ * @author kr1s
+ *
+ */
+public enum FrameOperation {
+
+	// frame operations
+	SIZE("size"),
+	FIND("find"),
+	BIND_KNOWLEDGE("bindKnowledge"),
+	UNBIND_KNOWLEDGE("unbindKnowledge"),
+	KNOWS("knows"),
+	RESOLVE_SEM("resolveSem"),
+	STREAM_SEM("streamSem"),
+	VISIT_SEM("visitSem"),
+	RESOLVE_SMALL_WORLD("resolveSmallWorld"),
+	VISIT_SMALL_WORLD("visitSmallWorld"),
+	CREATE_SEM("createSem"),
+	DROP_SEM("dropSem"),
+	LEARN("learn"),
+	FORGET("forget"),
+	FREEZE("freeze"),
+	SNAPSHOT("snapshot"),
+	EXPORT("export"),
+	PREPARE_QUERY("prepareQuery"),
+
+	// preparing the reasoner of a frame, before a query
+	INFERENCE("inference"),
+
+	// frame manager operations
+	GET_FRAME("getFrame"),
+	CREATE_FRAME("createFrame"),
+	REMOVE_FRAME("removeFrame"),
+	FORK_FRAME("forkFrame"),
+	MERGE_FRAME("mergeFrame"),
+	LIST_FRAMES("listFrames");
+
+	private final String methodName;
+
+	private FrameOperation(String methodName) {
+		this.methodName = methodName;
+	}
+
+	/** Answers the name of the measured API method.
+	 *
+	 * @return The method name.
+	 */
+	public String getMethodName() {
+		return methodName;
+	}
+}
@@ -0,0 +1,399 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.marl.wafnm.core.api.IFrame;
+import org.marl.wafnm.core.api.IFrameManager;
+import org.marl.wafnm.core.api.IStatementVisitor;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+
+/** Searches all frames of a manager at once.
+ *
+ * <p>Frames are searched in parallel, on a fork-join pool. Frames that
+ * cannot match are skipped from their membership summaries, without being
+ * read: see {@link AbstractFrame#mayMatch(Node, Node, Node)}. Results are
+ * merged as frames answer them, so that their order is not defined, and
+ * the search stops as soon as the limit is reached.
+ *
+ * <p>Visitors are never called concurrently, and need not be thread safe.
+ *
+ * @author kr1s
+ *
+ */
+public class FrameSearch {
+
+	// count of frames a task searches without forking
+	static final int FRAMES_PER_TASK = 64;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected AtomicLong searchedCount = new AtomicLong();
+	protected AtomicLong skippedCount = new AtomicLong();
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected IFrameManager frameManager;
+	protected ForkJoinPool pool;
+
+	/** Creates a search over the frames of a manager, which runs on the
+	 * common fork-join pool.
+	 *
+	 * @param frameManager The manager of the searched frames.
+	 */
+	public FrameSearch(IFrameManager frameManager)
+	{
+		this(frameManager, ForkJoinPool.commonPool());
+	}
+
+	/** Creates a search over the frames of a manager.
+	 *
+	 * @param frameManager The manager of the searched frames.
+	 * @param pool The pool searches run on.
+	 */
+	public FrameSearch(IFrameManager frameManager, ForkJoinPool pool)
+	{
+		if ( (frameManager == null) || (pool == null) ) {
+			throw new IllegalArgumentException();
+		}
+
+		this.frameManager = frameManager;
+		this.pool = pool;
+	}
+
+	/** Answers the count of frames searched so far.
+	 *
+	 * @return The searched frame count.
+	 */
+	public long getSearchedCount() {
+		return searchedCount.get();
+	}
+
+	/** Answers the count of frames skipped so far, as they could not match.
+	 *
+	 * @return The skipped frame count.
+	 */
+	public long getSkippedCount() {
+		return skippedCount.get();
+	}
+
+	/** Answers the frames that know a sem.
+	 *
+	 * @param semUri The sem URI.
+	 * @param limit The maximum count of answered frames.
+	 *
+	 * @return The URIs of the frames that know the sem.
+	 */
+	public List<String> findKnowing(final String semUri, long limit)
+	{
+		if ( (semUri == null) || (limit < 0) ) {
+			throw new IllegalArgumentException();
+		}
+
+		final Node sem = NodeFactory.createURI(semUri);
+		final List<String> knowing = new ArrayList<String>();
+		search(new Search(limit) {
+			@Override
+			boolean mayMatch(AbstractFrame frame) {
+				return frame.mayMatch(sem, Node.ANY, Node.ANY)
+						|| frame.mayMatch(Node.ANY, sem, Node.ANY)
+						|| frame.mayMatch(Node.ANY, Node.ANY, sem);
+			}
+
+			@Override
+			void search(IFrame frame)
+			{
+				if (frame.knows(semUri)) {
+					add(frame.getURI());
+				}
+			}
+
+			@Override
+			boolean merge(Object result) {
+				return knowing.add((String) result);
+			}
+		});
+
+		return knowing;
+	}
+
+	/** Answers the propositions that match a pattern, by frame.
+	 *
+	 * @param subjectSemUri The subject, or <code>null</code> for any.
+	 * @param propositionTypeUri The predicate, or <code>null</code> for any.
+	 * @param objectSemUri The object, or <code>null</code> for any.
+	 * @param limit The maximum count of answered propositions.
+	 *
+	 * @return The matching propositions, by URI of the frame that knows them.
+	 */
+	public Map<String, List<Statement>> resolveMatching(String subjectSemUri,
+			String propositionTypeUri,
+			String objectSemUri,
+			long limit)
+	{
+		final Map<String, List<Statement>> matching = new LinkedHashMap<String, List<Statement>>();
+		search(new MatchSearch(subjectSemUri, propositionTypeUri, objectSemUri, limit) {
+			@Override
+			boolean merge(String frameUri, Statement proposition)
+			{
+				List<Statement> propositions = matching.get(frameUri);
+				if (propositions == null)
+				{
+					propositions = new ArrayList<Statement>();
+					matching.put(frameUri, propositions);
+				}
+				return propositions.add(proposition);
+			}
+		});
+
+		return matching;
+	}
+
+	/** Visits the propositions that match a pattern, across all frames.
+	 *
+	 * <p>A proposition known by several frames is visited once per frame.
+	 *
+	 * @param subjectSemUri The subject, or <code>null</code> for any.
+	 * @param propositionTypeUri The predicate, or <code>null</code> for any.
+	 * @param objectSemUri The object, or <code>null</code> for any.
+	 * @param visitor The visitor, which may stop the whole search.
+	 * @param limit The maximum count of visited propositions.
+	 *
+	 * @return The count of visited propositions.
+	 */
+	public long visitMatching(String subjectSemUri,
+			String propositionTypeUri,
+			String objectSemUri,
+			final IStatementVisitor visitor,
+			long limit)
+	{
+		if (visitor == null) {
+			throw new IllegalArgumentException();
+		}
+
+		Search search = new MatchSearch(subjectSemUri, propositionTypeUri, objectSemUri, limit) {
+			@Override
+			boolean merge(String frameUri, Statement proposition) {
+				return visitor.visit(proposition);
+			}
+		};
+		search(search);
+
+		return search.count.get();
+	}
+
+	private void search(Search search)
+	{
+		List<IFrame> frames = frameManager.listFrames();
+		if (search.limit > 0) {
+			pool.invoke(new SearchTask(search, frames, 0, frames.size()));
+		}
+	}
+
+	private static Node node(String uri) {
+		return uri != null ? NodeFactory.createURI(uri) : Node.ANY;
+	}
+
+	private static AbstractFrame unwrap(IFrame frame)
+	{
+		if (frame instanceof MonitoredFrame) {
+			frame = ((MonitoredFrame) frame).getFrame();
+		}
+		return (frame instanceof AbstractFrame) ? (AbstractFrame) frame : null;
+	}
+
+	/** Holds the state of a search, and merges its results.
+	 */
+	abstract class Search {
+
+		final long limit;
+		final AtomicLong count = new AtomicLong();
+		volatile boolean stopped;
+
+		Search(long limit) {
+			this.limit = limit;
+		}
+
+		/** Answers whether a frame may match, from its summaries. */
+		abstract boolean mayMatch(AbstractFrame frame);
+
+		/** Searches a frame, adding its results. */
+		abstract void search(IFrame frame);
+
+		/** Merges a result, while holding the search lock.
+		 *
+		 * @return <code>false</code> to stop the search.
+		 */
+		abstract boolean merge(Object result);
+
+		/** Adds a result, unless the search is over.
+		 *
+		 * @return <code>false</code> once the search is over.
+		 */
+		boolean add(Object result)
+		{
+			synchronized (this)
+			{
+				if (stopped) {
+					return false;
+				}
+				boolean more = merge(result);
+				if ( (count.incrementAndGet() >= limit) || ! more ) {
+					stopped = true;
+				}
+				return ! stopped;
+			}
+		}
+
+		void searchFrame(IFrame frame)
+		{
+			AbstractFrame abstractFrame = unwrap(frame);
+			if ( (abstractFrame != null) && ! mayMatch(abstractFrame) )
+			{
+				skippedCount.incrementAndGet();
+				return;
+			}
+
+			searchedCount.incrementAndGet();
+			search(frame);
+		}
+	}
+
+	/** Searches the propositions that match a pattern.
+	 */
+	abstract class MatchSearch extends Search {
+
+		final String subjectSemUri;
+		final String propositionTypeUri;
+		final String objectSemUri;
+		final Node s;
+		final Node p;
+		final Node o;
+
+		MatchSearch(String subjectSemUri,
+				String propositionTypeUri,
+				String objectSemUri,
+				long limit)
+		{
+			super(limit);
+			if (limit < 0) {
+				throw new IllegalArgumentException();
+			}
+
+			this.subjectSemUri = subjectSemUri;
+			this.propositionTypeUri = propositionTypeUri;
+			this.objectSemUri = objectSemUri;
+			this.s = node(subjectSemUri);
+			this.p = node(propositionTypeUri);
+			this.o = node(objectSemUri);
+		}
+
+		/** Merges a proposition, while holding the search lock.
+		 *
+		 * @return <code>false</code> to stop the search.
+		 */
+		abstract boolean merge(String frameUri, Statement proposition);
+
+		@Override
+		boolean mayMatch(AbstractFrame frame) {
+			return frame.mayMatch(s, p, o);
+		}
+
+		@Override
+		void search(IFrame frame)
+		{
+			final String frameUri = frame.getURI();
+			IStatementVisitor merging = new IStatementVisitor() {
+				@Override
+				public boolean visit(Statement proposition) {
+					return add(new Match(frameUri, proposition));
+				}
+			};
+
+			AbstractFrame abstractFrame = unwrap(frame);
+			if (abstractFrame != null)
+			{
+				abstractFrame.visitMatching(s, p, o, merging, Long.MAX_VALUE);
+				return;
+			}
+
+			Model model = frame.getModel();
+			StmtIterator iterOnProps = model.listStatements(
+					subjectSemUri != null ? model.getResource(subjectSemUri) : null,
+					propositionTypeUri != null ? model.getProperty(propositionTypeUri) : null,
+					objectSemUri != null ? model.getResource(objectSemUri) : null);
+			AbstractFrame.visit(iterOnProps, merging, 0, Long.MAX_VALUE);
+		}
+
+		@Override
+		boolean merge(Object result)
+		{
+			Match match = (Match) result;
+			return merge(match.frameUri, match.proposition);
+		}
+	}
+
+	/** Searches a range of frames, forking while the range is large.
+	 */
+	class SearchTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Search search;
+		private final List<IFrame> frames;
+		private final int from;
+		private final int to;
+
+		SearchTask(Search search, List<IFrame> frames, int from, int to)
+		{
+			this.search = search;
+			this.frames = frames;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (search.stopped) {
+				return;
+			}
+
+			if (to - from > FRAMES_PER_TASK)
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new SearchTask(search, frames, from, middle),
+						new SearchTask(search, frames, middle, to));
+				return;
+			}
+
+			for (int k = from ; (k < to) && ! search.stopped ; k++) {
+				search.searchFrame(frames.get(k));
+			}
+		}
+	}
+
+	/** Holds a proposition, and the frame that knows it.
+	 */
+	static class Match {
+
+		final String frameUri;
+		final Statement proposition;
+
+		Match(String frameUri, Statement proposition)
+		{
+			this.frameUri = frameUri;
+			this.proposition = proposition;
+		}
+	}
+}
@@ -0,0 +1,283 @@
+package org.marl.wafnm.core.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.marl.wafnm.core.api.FrameContent;
+import org.marl.wafnm.core.api.IFrame;
+import org.marl.wafnm.core.api.IPreparedQuery;
+import org.marl.wafnm.core.api.IStatementVisitor;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.compose.MultiUnion;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+
+/** Implements an immutable, point-in-time view of a frame, as answered by
+ * {@link IFrame#snapshot()}.
+ *
+ * <p>A snapshot reads immutable versions of the propositions of a frame and
+ * of the frames it binds: it takes no lock, and is never blocked by these
+ * frames writers. It does not infer any proposition.
+ *
+ * <p>The versions are reclaimed once the snapshot is not referenced anymore.
+ *
+ * @author kr1s
+ *
+ */
+public class FrameSnapshot implements IFrame {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected String frameUri;
+	protected List<Graph> versions = new ArrayList<Graph>();
+	protected Model snapshotModel;
+
+	/** Creates a snapshot.
+	 *
+	 * @param frameUri The URI of the frame.
+	 * @param frameVersion The propositions managed by the frame.
+	 * @param boundVersions The propositions of the frames it binds.
+	 */
+	FrameSnapshot(String frameUri, Graph frameVersion, List<Graph> boundVersions)
+	{
+		if ( (frameUri == null) || (frameVersion == null) || (boundVersions == null) ) {
+			throw new IllegalArgumentException();
+		}
+
+		this.frameUri = frameUri;
+		this.versions.add(frameVersion);
+		this.versions.addAll(boundVersions);
+
+		this.snapshotModel = ModelFactory.createModelForGraph(boundVersions.isEmpty() ?
+				frameVersion
+				: new MultiUnion(versions.toArray(new Graph[versions.size()])));
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															IFrame
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public String getURI() {
+		return frameUri;
+	}
+
+	/** {@inheritDoc}
+	 *
+	 * <p>The model is read-only.
+	 */
+	@Override
+	public Model getModel() {
+		return snapshotModel;
+	}
+
+	/** {@inheritDoc}
+	 *
+	 * <p>Propositions of a frame bound several times are counted once.
+	 */
+	@Override
+	public long size()
+	{
+		long n = 0;
+		for (Graph version : versions) {
+			n += version.size();
+		}
+		return n;
+	}
+
+	@Override
+	public Resource find(String semUri)
+	{
+		if (knows(semUri)) {
+			return snapshotModel.getResource(semUri);
+		}
+		return null;
+	}
+
+	@Override
+	public long bindKnowledge(String frameUri) {
+		throw readOnly();
+	}
+
+	@Override
+	public long unbindKnowledge(String frameUri) {
+		throw readOnly();
+	}
+
+	@Override
+	public boolean knows(String semUri) {
+		return snapshotModel.containsResource(snapshotModel.getResource(semUri));
+	}
+
+	@Override
+	public List<Statement> resolveSem(String semUri)
+	{
+		List<Statement> smallWorld = new ArrayList<Statement>();
+		visitSem(semUri, AbstractFrame.collector(smallWorld), 0, Long.MAX_VALUE);
+
+		return smallWorld;
+	}
+
+	@Override
+	public StmtIterator streamSem(String semUri) {
+		return AbstractFrame.streamSem(snapshotModel, semUri);
+	}
+
+	@Override
+	public long visitSem(String semUri,
+			IStatementVisitor visitor,
+			long offset,
+			long limit)
+	{
+		if ( (visitor == null) || (offset < 0) || (limit < 0) ) {
+			throw new IllegalArgumentException();
+		}
+
+		return AbstractFrame.visit(streamSem(semUri), visitor, offset, limit);
+	}
+
+	@Override
+	public List<Statement> resolveSmallWorld(String query)
+	{
+		List<Statement> smallWorld = new ArrayList<Statement>();
+		visitSmallWorld(query, AbstractFrame.collector(smallWorld));
+
+		return smallWorld;
+	}
+
+	@Override
+	public long visitSmallWorld(String query, IStatementVisitor visitor)
+	{
+		if (visitor == null) {
+			throw new IllegalArgumentException();
+		}
+
+		return new SmallWorldResolver(snapshotModel, SmallWorldQuery.parse(query))
+			.resolve(visitor);
+	}
+
+	@Override
+	public String createSem(String semTypeUri,
+			String label,
+			String comment,
+			String lang) {
+		throw readOnly();
+	}
+
+	@Override
+	public long dropSem(String semUri) {
+		throw readOnly();
+	}
+
+	@Override
+	public long learn(Model someKnowledge) {
+		throw readOnly();
+	}
+
+	@Override
+	public long learn(Iterator<Statement> someKnowledge) {
+		throw readOnly();
+	}
+
+	@Override
+	public long learn(InputStream in, String lang) {
+		throw readOnly();
+	}
+
+	@Override
+	public long learn(String subjectSemUri,
+			String propositionTypeUri,
+			String objectSemUri) {
+		throw readOnly();
+	}
+
+	@Override
+	public long forget(Model someKnowledge) {
+		throw readOnly();
+	}
+
+	@Override
+	public long forget(String subjectSemUri,
+			String propositionTypeUri,
+			String objectSemUri) {
+		throw readOnly();
+	}
+
+	/** {@inheritDoc}
+	 *
+	 * <p>Snapshots are always frozen.
+	 */
+	@Override
+	public long freeze() {
+		return size();
+	}
+
+	@Override
+	public boolean isFrozen() {
+		return true;
+	}
+
+	@Override
+	public IFrame snapshot() {
+		return this;
+	}
+
+	@Override
+	public IPreparedQuery prepareQuery(String query) {
+		return new PreparedQuery(QueryPlanCache.getShared().get(query), snapshotModel, null);
+	}
+
+	/** {@inheritDoc}
+	 *
+	 * <p>A snapshot does not infer any proposition.
+	 */
+	@Override
+	public long export(WritableByteChannel out,
+			String lang,
+			FrameContent content,
+			boolean withBoundKnowledge)
+	{
+		if (content == null) {
+			throw new IllegalArgumentException();
+		}
+
+		try {
+			FrameExporter exporter = new FrameExporter(out, lang);
+			if (content != FrameContent.INFERRED)
+			{
+				List<Graph> exported = withBoundKnowledge ? versions : versions.subList(0, 1);
+				for (Graph version : exported) {
+					exporter.write(version.find(Triple.ANY));
+				}
+			}
+
+			return exporter.finish();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot export snapshot: " + frameUri, e);
+		}
+	}
+
+	private IllegalStateException readOnly() {
+		return new IllegalStateException("Snapshot is read-only: " + frameUri);
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															POJO
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public String toString() {
+		return new StringBuffer(frameUri).append(" (").append(size()).append(" @snapshot)")
+				.toString();
+	}
+}
@@ -7,20 +7,23 @@ package org.marl.wafnm.core.impl;
  */
 public class FrameUtils {
 
-	/** Generate an uri with the given prefix.
+	/** Formats an uri with the given prefix and identifier.
 	 * 
 	 * <p>The prefix should correspond to a valid URI without fragment, this
-	 * function then appends a unique number as fragment as: 
+	 * function then appends the identifier as fragment as: 
 	 * <code><i>prefix</i>#<i>fragment</i></code>.
 	 * 
+	 * <p>Unique identifiers should be obtained from an {@link UriAllocator}.
+	 * 
 	 * @param uriPrefix The requested prefix.
-	 * @return The generated URI.
+	 * @param id The identifier.
+	 * @return The formatted URI.
 	 */
-	public static String generateUri(String uriPrefix) 
+	public static String formatUri(String uriPrefix, long id) 
 	{
 		return new StringBuffer(uriPrefix)
 			.append("#")
-			.append(String.valueOf(System.currentTimeMillis()))
+			.append(String.valueOf(id))
 			.toString();
 	}
 
@@ -0,0 +1,395 @@
+package org.marl.wafnm.core.impl;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.NoSuchElementException;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.NiceIterator;
+
+/** Implements a read-only index of encoded triples, stored off-heap.
+ *
+ * <p>Triples are stored three times, as rows of three node identifiers
+ * sorted in the subject-predicate-object, predicate-object-subject and
+ * object-subject-predicate orders. Any triple pattern is then answered by a
+ * binary search of the rows which start with its known identifiers.
+ *
+ * <p>Rows are held in a direct buffer, which takes 36 bytes per triple
+ * outside of the garbage collected heap, in a heap buffer, or in a
+ * memory-mapped file, as {@link #write(DataOutputStream) written} by an
+ * index.
+ *
+ * <p>This index is immutable, and thus thread-safe.
+ *
+ * @author kr1s
+ *
+ */
+public class FrozenTripleIndex {
+
+	static final int SPO = 0;
+	static final int POS = 1;
+	static final int OSP = 2;
+
+	// positions of subject, predicate and object in the rows of each order
+	private static final int[][] COLUMNS = {
+		{ 0, 1, 2 },
+		{ 2, 0, 1 },
+		{ 1, 2, 0 }
+	};
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected int size;
+	protected IntBuffer[] orders = new IntBuffer[3];
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected NodeDictionary nodeDictionary;
+
+	/** Creates an index.
+	 *
+	 * @param nodeDictionary The dictionary that encoded the triples.
+	 * @param triples The encoded triples, as consecutive subject, predicate
+	 * and object identifiers, without duplicates.
+	 * @param size The count of triples.
+	 */
+	FrozenTripleIndex(NodeDictionary nodeDictionary, int[] triples, int size)
+	{
+		this(nodeDictionary, triples, size, true);
+	}
+
+	/** Creates an index, held in a direct or heap buffer.
+	 *
+	 * <p>Heap buffers suit short-lived indexes, such as the bases of graph
+	 * versions, which are then reclaimed as soon as they are unreachable.
+	 *
+	 * @param nodeDictionary The dictionary that encoded the triples.
+	 * @param triples The encoded triples, as consecutive subject, predicate
+	 * and object identifiers, without duplicates.
+	 * @param size The count of triples.
+	 * @param direct Tells whether rows are held outside of the heap.
+	 */
+	FrozenTripleIndex(NodeDictionary nodeDictionary, int[] triples, int size, boolean direct)
+	{
+		if (size > Integer.MAX_VALUE / (3 * 3 * 4)) {
+			throw new IllegalStateException("Too many triples to freeze: " + size);
+		}
+
+		this.nodeDictionary = nodeDictionary;
+		this.size = size;
+
+		ByteBuffer storage = (direct ? ByteBuffer.allocateDirect(3 * 3 * 4 * size)
+				: ByteBuffer.allocate(3 * 3 * 4 * size)).order(ByteOrder.nativeOrder());
+		int[] rows = new int[3 * size];
+
+		for (int order = SPO ; order <= OSP ; order++)
+		{
+			int[] columns = COLUMNS[order];
+			for (int k = 0 ; k < size ; k++) {
+				for (int c = 0 ; c < 3 ; c++) {
+					rows[3 * k + columns[c]] = triples[3 * k + c];
+				}
+			}
+			sort(rows, 0, size);
+
+			storage.position(order * 3 * 4 * size);
+			IntBuffer ints = storage.slice().order(ByteOrder.nativeOrder()).asIntBuffer();
+			ints.put(rows, 0, 3 * size);
+			ints.limit(3 * size);
+			orders[order] = ints;
+		}
+	}
+
+	/** Creates an index over already sorted rows, such as the ones of a
+	 * memory-mapped file.
+	 *
+	 * @param nodeDictionary The dictionary that encoded the triples.
+	 * @param rows The rows of the triples, sorted in the
+	 * subject-predicate-object, predicate-object-subject and
+	 * object-subject-predicate orders, one after the other.
+	 * @param size The count of triples.
+	 */
+	FrozenTripleIndex(NodeDictionary nodeDictionary, ByteBuffer rows, int size)
+	{
+		if (rows.remaining() != 3 * 3 * 4 * size) {
+			throw new IllegalArgumentException("Invalid rows for " + size + " triples");
+		}
+
+		this.nodeDictionary = nodeDictionary;
+		this.size = size;
+
+		for (int order = SPO ; order <= OSP ; order++)
+		{
+			ByteBuffer slice = rows.duplicate();
+			slice.position(rows.position() + order * 3 * 4 * size);
+			slice.limit(slice.position() + 3 * 4 * size);
+			orders[order] = slice.slice().order(rows.order()).asIntBuffer();
+		}
+	}
+
+	/** Writes the rows of this index, in all three orders, as big-endian
+	 * integers.
+	 *
+	 * @param out The output stream.
+	 *
+	 * @return The count of written bytes.
+	 *
+	 * @throws IOException if the output stream fails.
+	 */
+	public long write(DataOutputStream out) throws IOException
+	{
+		for (IntBuffer rows : orders) {
+			for (int k = 0 ; k < 3 * size ; k++) {
+				out.writeInt(rows.get(k));
+			}
+		}
+		return 3L * 3 * 4 * size;
+	}
+
+	/** Answers the triples of this index.
+	 *
+	 * @return The encoded triples, as consecutive subject, predicate and
+	 * object identifiers.
+	 */
+	public int[] encodedTriples()
+	{
+		int[] triples = new int[3 * size];
+		IntBuffer rows = orders[SPO];
+		for (int k = 0 ; k < 3 * size ; k++) {
+			triples[k] = rows.get(k);
+		}
+		return triples;
+	}
+
+	/** Answers the count of triples.
+	 *
+	 * @return The index size.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/** Answers whether the index contains a triple.
+	 *
+	 * @param s The subject identifier.
+	 * @param p The predicate identifier.
+	 * @param o The object identifier.
+	 *
+	 * @return <code>true</code> if the triple is indexed.
+	 */
+	public boolean contains(int s, int p, int o)
+	{
+		IntBuffer rows = orders[SPO];
+		int k = lowerBound(rows, s, p, o, 3);
+		return (k < size) && (compare(rows, k, s, p, o, 3) == 0);
+	}
+
+	/** Finds the triples matching a pattern.
+	 *
+	 * @param s The subject identifier, or a negative value for any subject.
+	 * @param p The predicate identifier, or a negative value for any predicate.
+	 * @param o The object identifier, or a negative value for any object.
+	 *
+	 * @return An iterator over the decoded triples.
+	 */
+	public ExtendedIterator<Triple> find(int s, int p, int o)
+	{
+		if (s >= 0)
+		{
+			if ( (p < 0) && (o >= 0) ) {
+				return range(OSP, o, s, -1, 2);
+			}
+			return range(SPO, s, p, o, (p < 0) ? 1 : (o < 0) ? 2 : 3);
+		}
+		if (p >= 0) {
+			return range(POS, p, o, -1, (o < 0) ? 1 : 2);
+		}
+		if (o >= 0) {
+			return range(OSP, o, -1, -1, 1);
+		}
+		return new RangeIterator(SPO, 0, size);
+	}
+
+	private ExtendedIterator<Triple> range(int order, int a, int b, int c, int known)
+	{
+		IntBuffer rows = orders[order];
+		int from = lowerBound(rows, a, b, c, known);
+		int to = upperBound(rows, from, a, b, c, known);
+
+		return new RangeIterator(order, from, to);
+	}
+
+	// first row which known columns are not lower than the given ones
+	private int lowerBound(IntBuffer rows, int a, int b, int c, int known)
+	{
+		int lo = 0;
+		int hi = size;
+		while (lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (compare(rows, mid, a, b, c, known) < 0) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	// first row which known columns are greater than the given ones
+	private int upperBound(IntBuffer rows, int from, int a, int b, int c, int known)
+	{
+		int lo = from;
+		int hi = size;
+		while (lo < hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (compare(rows, mid, a, b, c, known) <= 0) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	private static int compare(IntBuffer rows, int k, int a, int b, int c, int known)
+	{
+		int d = compare(rows.get(3 * k), a);
+		if ( (d != 0) || (known == 1) ) {
+			return d;
+		}
+		d = compare(rows.get(3 * k + 1), b);
+		if ( (d != 0) || (known == 2) ) {
+			return d;
+		}
+		return compare(rows.get(3 * k + 2), c);
+	}
+
+	private static int compare(int x, int y) {
+		return (x < y) ? -1 : ((x == y) ? 0 : 1);
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															Sorting
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	// sorts rows [from, to) in lexicographic order, without boxing
+	private static void sort(int[] rows, int from, int to)
+	{
+		while (to - from > 16)
+		{
+			int pivot = medianOfThree(rows, from, (from + to) >>> 1, to - 1);
+			swap(rows, pivot, to - 1);
+
+			int store = from;
+			for (int k = from ; k < to - 1 ; k++) {
+				if (compareRows(rows, k, to - 1) < 0) {
+					swap(rows, k, store++);
+				}
+			}
+			swap(rows, store, to - 1);
+
+			// recurse on the smaller part, loop on the larger one
+			if (store - from < to - store - 1)
+			{
+				sort(rows, from, store);
+				from = store + 1;
+			}
+			else
+			{
+				sort(rows, store + 1, to);
+				to = store;
+			}
+		}
+
+		for (int k = from + 1 ; k < to ; k++) {
+			for (int j = k ; (j > from) && (compareRows(rows, j - 1, j) > 0) ; j--) {
+				swap(rows, j - 1, j);
+			}
+		}
+	}
+
+	private static int medianOfThree(int[] rows, int a, int b, int c)
+	{
+		if (compareRows(rows, a, b) < 0)
+		{
+			if (compareRows(rows, b, c) < 0) {
+				return b;
+			}
+			return compareRows(rows, a, c) < 0 ? c : a;
+		}
+		if (compareRows(rows, a, c) < 0) {
+			return a;
+		}
+		return compareRows(rows, b, c) < 0 ? c : b;
+	}
+
+	private static int compareRows(int[] rows, int i, int j)
+	{
+		for (int c = 0 ; c < 3 ; c++)
+		{
+			int d = compare(rows[3 * i + c], rows[3 * j + c]);
+			if (d != 0) {
+				return d;
+			}
+		}
+		return 0;
+	}
+
+	private static void swap(int[] rows, int i, int j)
+	{
+		for (int c = 0 ; c < 3 ; c++)
+		{
+			int tmp = rows[3 * i + c];
+			rows[3 * i + c] = rows[3 * j + c];
+			rows[3 * j + c] = tmp;
+		}
+	}
+
+	/** Iterates over a range of rows, decoding them into triples.
+	 */
+	private class RangeIterator extends NiceIterator<Triple> {
+
+		private int order;
+		private int next;
+		private int to;
+
+		RangeIterator(int order, int from, int to)
+		{
+			this.order = order;
+			this.next = from;
+			this.to = to;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next < to;
+		}
+
+		@Override
+		public Triple next()
+		{
+			if (next >= to) {
+				throw new NoSuchElementException();
+			}
+
+			IntBuffer rows = orders[order];
+			int[] columns = COLUMNS[order];
+			int k = 3 * next++;
+
+			Node s = nodeDictionary.decode(rows.get(k + columns[0]));
+			Node p = nodeDictionary.decode(rows.get(k + columns[1]));
+			Node o = nodeDictionary.decode(rows.get(k + columns[2]));
+
+			return Triple.create(s, p, o);
+		}
+	}
+}
@@ -0,0 +1,438 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.NiceIterator;
+
+/** Implements the net changes of a versioned graph, relative to the base of
+ * its versions: the triples added to the base, and the base triples
+ * deleted.
+ *
+ * <p>The delta is kept by the writer of the graph, as it changes: each
+ * change either records a new entry, when a triple departs from the base,
+ * or retires the entry of the triple, when it returns to the base. Entries
+ * are appended, and chained by subject, predicate, object and triple, so
+ * that a {@link View} published by the writer reads the prefix of the
+ * entries it was published with, while the writer keeps on appending.
+ *
+ * <p>Published views never change what they answer: an entry is part of a
+ * view if it was appended before the view was published, and was not
+ * retired before. Arrays are replaced when they grow, so that the writes
+ * to shared arrays made after a view is published only concern later
+ * entries and later retirements, which the view ignores.
+ *
+ * <p>The delta is not thread-safe, but its views are.
+ *
+ * @author kr1s
+ *
+ */
+class GraphDelta {
+
+	static final int ADDED = 1;
+	static final int DELETED = 0;
+	static final int UNCHANGED = -1;
+
+	// entry fields: the triple, its operation, the stamp of the change that
+	// retired it, and the next entries of the same subject, predicate,
+	// object and triple; entry references are offset by one, zero ends a chain
+	static final int S = 0;
+	static final int P = 1;
+	static final int O = 2;
+	static final int OP = 3;
+	static final int RETIRED = 4;
+	static final int NEXT_S = 5;
+	static final int NEXT_P = 6;
+	static final int NEXT_O = 7;
+	static final int NEXT_T = 8;
+	static final int LAST_T = 9;
+	static final int ENTRY_SIZE = 10;
+
+	static final int MIN_CAPACITY = 64;
+	static final int NODE_SLOT = 3;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	private int[] entries = new int[ENTRY_SIZE * MIN_CAPACITY];
+	private int length;
+	private int stamp;
+	private int added;
+	private int deleted;
+
+	// the first and last entries of each subject, predicate and object, and
+	// the first entries of each triple, whose last entry they reference
+	private int[][] nodes = {
+		newTable(MIN_CAPACITY), newTable(MIN_CAPACITY), newTable(MIN_CAPACITY)
+	};
+	private int[] nodeCounts = new int[3];
+	private int[] triples = new int[MIN_CAPACITY];
+	private int tripleCount;
+
+	/** Answers the count of entries, including retired ones.
+	 *
+	 * @return The entries length.
+	 */
+	int length() {
+		return length;
+	}
+
+	/** Answers the count of changes recorded so far.
+	 *
+	 * @return The stamp of the last change.
+	 */
+	int stamp() {
+		return stamp;
+	}
+
+	/** Records that a triple was added to, or deleted from, the graph.
+	 *
+	 * <p>This should only be called when the change took effect.
+	 *
+	 * @param s The subject identifier.
+	 * @param p The predicate identifier.
+	 * @param o The object identifier.
+	 * @param operation {@link #ADDED} or {@link #DELETED}.
+	 */
+	void changed(int s, int p, int o, int operation)
+	{
+		stamp++;
+
+		int first = findTriple(triples, entries, length, s, p, o);
+		if (first >= 0)
+		{
+			int last = entries[ENTRY_SIZE * first + LAST_T] - 1;
+			if (entries[ENTRY_SIZE * last + RETIRED] == 0)
+			{
+				// a triple that departed from the base returns to it
+				entries[ENTRY_SIZE * last + RETIRED] = stamp;
+				if (entries[ENTRY_SIZE * last + OP] == ADDED) {
+					added--;
+				}
+				else {
+					deleted--;
+				}
+				return;
+			}
+		}
+
+		if (ENTRY_SIZE * (length + 1) > entries.length) {
+			entries = Arrays.copyOf(entries, 2 * entries.length);
+		}
+		int e = ENTRY_SIZE * length;
+		entries[e + S] = s;
+		entries[e + P] = p;
+		entries[e + O] = o;
+		entries[e + OP] = operation;
+		length++;
+
+		link(S, s, NEXT_S);
+		link(P, p, NEXT_P);
+		link(O, o, NEXT_O);
+		if (first >= 0)
+		{
+			int last = entries[ENTRY_SIZE * first + LAST_T] - 1;
+			entries[ENTRY_SIZE * last + NEXT_T] = length;
+			entries[ENTRY_SIZE * first + LAST_T] = length;
+		}
+		else
+		{
+			entries[e + LAST_T] = length;
+			putTriple(length - 1);
+		}
+
+		if (operation == ADDED) {
+			added++;
+		}
+		else {
+			deleted++;
+		}
+	}
+
+	/** Answers a view of the changes recorded so far.
+	 *
+	 * @return The view, which may be read by any thread once published.
+	 */
+	View view() {
+		return new View(this);
+	}
+
+	// chains an entry after the last one of its node
+	private void link(int position, int node, int next)
+	{
+		int[] table = nodes[position];
+		int k = slot(table, node);
+		if (table[k + 1] != 0)
+		{
+			entries[ENTRY_SIZE * (table[k + 2] - 1) + next] = length;
+			table[k + 2] = length;
+			return;
+		}
+
+		if ((nodeCounts[position] + 1) * 4 > table.length / NODE_SLOT * 3)
+		{
+			table = nodes[position] = resize(table);
+			k = slot(table, node);
+		}
+		table[k] = node;
+		table[k + 2] = length;
+		table[k + 1] = length;
+		nodeCounts[position]++;
+	}
+
+	private void putTriple(int entry)
+	{
+		if ((tripleCount + 1) * 4 > triples.length * 3)
+		{
+			int[] resized = new int[2 * triples.length];
+			for (int ref : triples)
+			{
+				if (ref != 0)
+				{
+					int e = ENTRY_SIZE * (ref - 1);
+					resized[freeSlot(resized, entries[e + S], entries[e + P], entries[e + O])] = ref;
+				}
+			}
+			triples = resized;
+		}
+
+		int e = ENTRY_SIZE * entry;
+		triples[freeSlot(triples, entries[e + S], entries[e + P], entries[e + O])] = entry + 1;
+		tripleCount++;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															Tables
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	// node tables hold slots of a key, and of its first and last entry
+	// references; the triple table holds first entry references
+
+	private static int[] newTable(int capacity) {
+		return new int[NODE_SLOT * capacity];
+	}
+
+	private static int[] resize(int[] table)
+	{
+		int[] resized = newTable(2 * table.length / NODE_SLOT);
+		for (int k = 0 ; k < table.length ; k += NODE_SLOT)
+		{
+			if (table[k + 1] != 0)
+			{
+				int j = slot(resized, table[k]);
+				System.arraycopy(table, k, resized, j, NODE_SLOT);
+			}
+		}
+		return resized;
+	}
+
+	private static int hash(int key)
+	{
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static int hash(int s, int p, int o) {
+		return hash(s ^ hash(p ^ hash(o)));
+	}
+
+	// answers the slot of a key, or the free slot that ends its probe
+	private static int slot(int[] table, int key)
+	{
+		int mask = table.length / NODE_SLOT - 1;
+		int k = hash(key) & mask;
+		while ( (table[NODE_SLOT * k + 1] != 0) && (table[NODE_SLOT * k] != key) ) {
+			k = (k + 1) & mask;
+		}
+		return NODE_SLOT * k;
+	}
+
+	private static int freeSlot(int[] table, int s, int p, int o)
+	{
+		int mask = table.length - 1;
+		int k = hash(s, p, o) & mask;
+		while (table[k] != 0) {
+			k = (k + 1) & mask;
+		}
+		return k;
+	}
+
+	// answers the first entry of a triple, or -1; slots filled after a view
+	// was published were free before, and end the probes of the view
+	private static int findTriple(int[] table, int[] entries, int length, int s, int p, int o)
+	{
+		int mask = table.length - 1;
+		int k = hash(s, p, o) & mask;
+		for (;;)
+		{
+			int ref = table[k];
+			if ( (ref == 0) || (ref > length) ) {
+				return -1;
+			}
+			int e = ENTRY_SIZE * (ref - 1);
+			if ( (entries[e + S] == s) && (entries[e + P] == p) && (entries[e + O] == o) ) {
+				return ref - 1;
+			}
+			k = (k + 1) & mask;
+		}
+	}
+
+	// answers the first entry reference of a node, or zero
+	private static int findFirst(int[] table, int key, int length)
+	{
+		int mask = table.length / NODE_SLOT - 1;
+		int k = hash(key) & mask;
+		for (;;)
+		{
+			int ref = table[NODE_SLOT * k + 1];
+			if ( (ref == 0) || (ref > length) ) {
+				return 0;
+			}
+			if (table[NODE_SLOT * k] == key) {
+				return ref;
+			}
+			k = (k + 1) & mask;
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															View
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	/** Implements a point-in-time view of a delta, which shares its arrays.
+	 *
+	 * <p>A view is immutable, and thus thread-safe once published.
+	 */
+	static class View {
+
+		final int[] entries;
+		final int length;
+		final int stamp;
+		final int added;
+		final int deleted;
+		final int[][] nodes;
+		final int[] triples;
+
+		private View(GraphDelta delta)
+		{
+			this.entries = delta.entries;
+			this.length = delta.length;
+			this.stamp = delta.stamp;
+			this.added = delta.added;
+			this.deleted = delta.deleted;
+			this.nodes = delta.nodes.clone();
+			this.triples = delta.triples;
+		}
+
+		/** Answers how a triple departs from the base.
+		 *
+		 * @param s The subject identifier.
+		 * @param p The predicate identifier.
+		 * @param o The object identifier.
+		 *
+		 * @return {@link #ADDED}, {@link #DELETED}, or {@link #UNCHANGED}.
+		 */
+		int state(int s, int p, int o)
+		{
+			int first = findTriple(triples, entries, length, s, p, o);
+			for (int ref = first + 1 ; (ref != 0) && (ref <= length) ;
+					ref = entries[ENTRY_SIZE * (ref - 1) + NEXT_T])
+			{
+				if (live(ref - 1)) {
+					return entries[ENTRY_SIZE * (ref - 1) + OP];
+				}
+			}
+			return UNCHANGED;
+		}
+
+		/** Answers the added triples which match a pattern.
+		 *
+		 * @param s The subject identifier, or a negative wildcard.
+		 * @param p The predicate identifier, or a negative wildcard.
+		 * @param o The object identifier, or a negative wildcard.
+		 * @param nodeDictionary The dictionary that encoded the triples.
+		 *
+		 * @return The matching triples.
+		 */
+		ExtendedIterator<Triple> findAdded(int s, int p, int o, NodeDictionary nodeDictionary)
+		{
+			if (added == 0) {
+				return NiceIterator.emptyIterator();
+			}
+			if (s >= 0) {
+				return new AddedIterator(findFirst(nodes[S], s, length), NEXT_S, s, p, o, nodeDictionary);
+			}
+			if (o >= 0) {
+				return new AddedIterator(findFirst(nodes[O], o, length), NEXT_O, s, p, o, nodeDictionary);
+			}
+			if (p >= 0) {
+				return new AddedIterator(findFirst(nodes[P], p, length), NEXT_P, s, p, o, nodeDictionary);
+			}
+			return new AddedIterator(length > 0 ? 1 : 0, -1, s, p, o, nodeDictionary);
+		}
+
+		// retirements stamped after this view was published are ignored
+		private boolean live(int entry)
+		{
+			int retired = entries[ENTRY_SIZE * entry + RETIRED];
+			return (retired == 0) || (retired > stamp);
+		}
+
+		/** Iterates over a chain of entries, or over all entries, and answers
+		 * the live added triples which match.
+		 */
+		private class AddedIterator extends NiceIterator<Triple> {
+
+			private int ref;
+			private int next;
+			private int s;
+			private int p;
+			private int o;
+			private NodeDictionary nodeDictionary;
+			private Triple found;
+
+			AddedIterator(int first, int next, int s, int p, int o, NodeDictionary nodeDictionary)
+			{
+				this.ref = first;
+				this.next = next;
+				this.s = s;
+				this.p = p;
+				this.o = o;
+				this.nodeDictionary = nodeDictionary;
+			}
+
+			@Override
+			public boolean hasNext()
+			{
+				while ( (found == null) && (ref != 0) && (ref <= length) )
+				{
+					int e = ENTRY_SIZE * (ref - 1);
+					if ( (entries[e + OP] == ADDED) && live(ref - 1)
+							&& ( (s < 0) || (entries[e + S] == s) )
+							&& ( (p < 0) || (entries[e + P] == p) )
+							&& ( (o < 0) || (entries[e + O] == o) ) )
+					{
+						found = Triple.create(nodeDictionary.decode(entries[e + S]),
+								nodeDictionary.decode(entries[e + P]),
+								nodeDictionary.decode(entries[e + O]));
+					}
+					ref = (next < 0) ? ref + 1 : entries[e + next];
+				}
+				return found != null;
+			}
+
+			@Override
+			public Triple next()
+			{
+				if (! hasNext()) {
+					throw new NoSuchElementException();
+				}
+
+				Triple t = found;
+				found = null;
+				return t;
+			}
+		}
+	}
+}
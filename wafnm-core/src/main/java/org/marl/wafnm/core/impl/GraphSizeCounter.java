@@ -0,0 +1,187 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.Iterator;
+import java.util.List;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphEvents;
+import com.hp.hpl.jena.graph.GraphListener;
+import com.hp.hpl.jena.graph.Triple;
+
+/** Maintains the count of triples of a graph, as it changes.
+ *
+ * <p>The count is incremented or decremented on each single triple
+ * notification. The graph implementations may, or may not, notify bulk
+ * changes triple per triple, and do not tell which triples a bulk removal
+ * has deleted: after such changes, the count is considered stale, and will
+ * be read again from the graph when next requested.
+ *
+ * <p>The graph may be read while it changes, by readers that do not hold
+ * the lock of its writers: each change is stamped, and the count read is
+ * only kept if no change was notified meanwhile.
+ *
+ * <p>The graph implementations also notify changes that did not actually
+ * happen, such as adding a triple that the graph already contains:
+ * the writers that want an exact count should only add absent triples, and
+ * delete present ones.
+ *
+ * @author kr1s
+ *
+ */
+public class GraphSizeCounter implements GraphListener {
+
+	static final long STALE = -1;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected Graph graph;
+	// guarded by this counter
+	protected long count = STALE;
+	protected long changes;
+
+	/** Creates a counter, and registers it as a listener of the given graph.
+	 *
+	 * <p>The graph is not read until the count is first requested.
+	 *
+	 * @param graph The counted graph.
+	 */
+	public GraphSizeCounter(Graph graph)
+	{
+		if (graph == null) {
+			throw new IllegalArgumentException();
+		}
+
+		this.graph = graph;
+		graph.getEventManager().register(this);
+	}
+
+	/** Answers the count of triples of the counted graph.
+	 *
+	 * @return The graph size.
+	 */
+	public long get()
+	{
+		long since;
+		synchronized (this)
+		{
+			if (count != STALE) {
+				return count;
+			}
+			since = changes;
+		}
+
+		long n = graph.size();
+		synchronized (this)
+		{
+			if (changes == since) {
+				count = n;
+			}
+		}
+		return n;
+	}
+
+	/** Unregisters this counter from the counted graph.
+	 */
+	public void detach()
+	{
+		graph.getEventManager().unregister(this);
+	}
+
+	/** Called once the count changed by a single triple notification.
+	 *
+	 * @param delta The change of the count.
+	 */
+	protected void shifted(long delta) {
+	}
+
+	/** Called once the count became stale after a bulk notification.
+	 */
+	protected void staled() {
+	}
+
+	private void shift(long delta)
+	{
+		synchronized (this)
+		{
+			if (count != STALE) {
+				count += delta;
+			}
+			changes++;
+		}
+		shifted(delta);
+	}
+
+	private void stale()
+	{
+		synchronized (this)
+		{
+			count = STALE;
+			changes++;
+		}
+		staled();
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															GraphListener
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public void notifyAddTriple(Graph g, Triple t) {
+		shift(1);
+	}
+
+	@Override
+	public void notifyAddArray(Graph g, Triple[] triples) {
+		stale();
+	}
+
+	@Override
+	public void notifyAddList(Graph g, List<Triple> triples) {
+		stale();
+	}
+
+	@Override
+	public void notifyAddIterator(Graph g, Iterator<Triple> it) {
+		stale();
+	}
+
+	@Override
+	public void notifyAddGraph(Graph g, Graph added) {
+		stale();
+	}
+
+	@Override
+	public void notifyDeleteTriple(Graph g, Triple t) {
+		shift(-1);
+	}
+
+	@Override
+	public void notifyDeleteList(Graph g, List<Triple> L) {
+		stale();
+	}
+
+	@Override
+	public void notifyDeleteArray(Graph g, Triple[] triples) {
+		stale();
+	}
+
+	@Override
+	public void notifyDeleteIterator(Graph g, Iterator<Triple> it) {
+		stale();
+	}
+
+	@Override
+	public void notifyDeleteGraph(Graph g, Graph removed) {
+		stale();
+	}
+
+	@Override
+	public void notifyEvent(Graph source, Object value)
+	{
+		// bulk removals
+		if (! GraphEvents.startRead.equals(value)
+				&& ! GraphEvents.finishRead.equals(value)) {
+			stale();
+		}
+	}
+}
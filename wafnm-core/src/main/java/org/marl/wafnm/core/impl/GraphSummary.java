@@ -0,0 +1,241 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphEvents;
+import com.hp.hpl.jena.graph.GraphListener;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.TripleMatch;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+/** Summarizes the triples of a graph, so that patterns which cannot match
+ * any of them are quickly rejected.
+ *
+ * <p>A summary holds a Bloom filter of subjects, a Bloom filter of objects,
+ * and the set of predicates. It is built when first used, and is then kept
+ * up to date as triples are added. Removed triples are not forgotten until
+ * a bulk removal, or too many additions, require to build the summary
+ * again.
+ *
+ * <p>A summary is conservative: while it cannot be built, because the
+ * graph is being changed, it answers that any pattern may match.
+ *
+ * @author kr1s
+ *
+ */
+public class GraphSummary implements GraphListener {
+
+	static final int MIN_CAPACITY = 1024;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected Graph graph;
+	protected ReadWriteLock graphLock;
+
+	// null while the summary has to be built
+	protected volatile Filters filters;
+
+	/** Creates a summary, and registers it as a listener of the given graph.
+	 *
+	 * <p>The graph is not read until the summary is first used.
+	 *
+	 * @param graph The summarized graph.
+	 * @param graphLock The lock held by the graph writers.
+	 */
+	public GraphSummary(Graph graph, ReadWriteLock graphLock)
+	{
+		if ( (graph == null) || (graphLock == null) ) {
+			throw new IllegalArgumentException();
+		}
+
+		this.graph = graph;
+		this.graphLock = graphLock;
+		graph.getEventManager().register(this);
+	}
+
+	/** Answers whether some triple of the summarized graph may match a
+	 * pattern.
+	 *
+	 * @param m The triple pattern.
+	 *
+	 * @return <code>false</code> if no triple matches the pattern.
+	 */
+	public boolean mayMatch(TripleMatch m)
+	{
+		Filters f = filters;
+		if (f == null)
+		{
+			f = build();
+			if (f == null) {
+				return true;
+			}
+		}
+
+		Node s = m.getMatchSubject();
+		Node p = m.getMatchPredicate();
+		Node o = m.getMatchObject();
+
+		return ( (s == null) || ! s.isConcrete() || f.subjects.mightContain(s) )
+				&& ( (p == null) || ! p.isConcrete() || f.predicates.contains(p) )
+				&& ( (o == null) || ! o.isConcrete() || f.objects.mightContain(o) );
+	}
+
+	/** Drops the summary, which is built again when next used, once the
+	 * triples of the summarized graph are released from memory.
+	 */
+	public void release() {
+		stale();
+	}
+
+	/** Unregisters this summary from the summarized graph.
+	 */
+	public void detach()
+	{
+		graph.getEventManager().unregister(this);
+	}
+
+	// builds the filters, unless the graph is being changed
+	private synchronized Filters build()
+	{
+		if (filters != null) {
+			return filters;
+		}
+
+		Lock readLock = graphLock.readLock();
+		if (! readLock.tryLock()) {
+			return null;
+		}
+		try {
+			Filters f = new Filters(Math.max(MIN_CAPACITY, 2 * graph.size()));
+			ExtendedIterator<Triple> iterOnTriples = graph.find(Triple.ANY);
+			try {
+				while (iterOnTriples.hasNext()) {
+					f.add(iterOnTriples.next());
+				}
+			}
+			finally {
+				iterOnTriples.close();
+			}
+
+			filters = f;
+			return f;
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	private void added(Triple t)
+	{
+		Filters f = filters;
+		if (f != null)
+		{
+			f.add(t);
+			if (f.subjects.isSaturated()) {
+				filters = null;
+			}
+		}
+	}
+
+	private void stale() {
+		filters = null;
+	}
+
+	/** Holds the filters of the summarized triples.
+	 */
+	static class Filters {
+
+		final BloomFilter subjects;
+		final BloomFilter objects;
+		final Set<Node> predicates;
+
+		Filters(int capacity)
+		{
+			this.subjects = new BloomFilter(capacity);
+			this.objects = new BloomFilter(capacity);
+			this.predicates = Collections.newSetFromMap(new ConcurrentHashMap<Node, Boolean>());
+		}
+
+		void add(Triple t)
+		{
+			subjects.add(t.getSubject());
+			predicates.add(t.getPredicate());
+			objects.add(t.getObject());
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															GraphListener
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public void notifyAddTriple(Graph g, Triple t) {
+		added(t);
+	}
+
+	@Override
+	public void notifyAddArray(Graph g, Triple[] triples)
+	{
+		for (Triple t : triples) {
+			added(t);
+		}
+	}
+
+	@Override
+	public void notifyAddList(Graph g, List<Triple> triples)
+	{
+		for (Triple t : triples) {
+			added(t);
+		}
+	}
+
+	@Override
+	public void notifyAddIterator(Graph g, Iterator<Triple> it) {
+		stale();
+	}
+
+	@Override
+	public void notifyAddGraph(Graph g, Graph added) {
+		stale();
+	}
+
+	@Override
+	public void notifyDeleteTriple(Graph g, Triple t) {
+		// removed triples are kept until the summary is built again
+	}
+
+	@Override
+	public void notifyDeleteList(Graph g, List<Triple> L) {
+	}
+
+	@Override
+	public void notifyDeleteArray(Graph g, Triple[] triples) {
+	}
+
+	@Override
+	public void notifyDeleteIterator(Graph g, Iterator<Triple> it) {
+	}
+
+	@Override
+	public void notifyDeleteGraph(Graph g, Graph removed) {
+		stale();
+	}
+
+	@Override
+	public void notifyEvent(Graph source, Object value)
+	{
+		// bulk removals
+		if (! GraphEvents.startRead.equals(value)
+				&& ! GraphEvents.finishRead.equals(value)) {
+			stale();
+		}
+	}
+}
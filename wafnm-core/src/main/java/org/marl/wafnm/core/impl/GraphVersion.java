@@ -0,0 +1,150 @@
+package org.marl.wafnm.core.impl;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.TripleMatch;
+import com.hp.hpl.jena.graph.impl.GraphBase;
+import com.hp.hpl.jena.shared.AddDeniedException;
+import com.hp.hpl.jena.shared.DeleteDeniedException;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.Filter;
+import com.hp.hpl.jena.util.iterator.NiceIterator;
+
+/** Implements an immutable, point-in-time version of an {@link EncodedGraph}.
+ *
+ * <p>A version is made of a {@link FrozenTripleIndex} base, and of a view
+ * of the {@link GraphDelta} kept by the graph since the base was built. The
+ * delta holds the net changes of the graph, so that versions share it, and
+ * opening or reading a version neither copies nor replays anything.
+ *
+ * <p>Versions are reclaimed, with their base and delta, once no reader
+ * references them.
+ *
+ * <p>This graph is thread-safe, and read-only.
+ *
+ * @author kr1s
+ *
+ */
+public class GraphVersion extends GraphBase {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected FrozenTripleIndex base;
+	protected GraphDelta.View delta;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected NodeDictionary nodeDictionary;
+
+	/** Creates a version.
+	 *
+	 * @param nodeDictionary The dictionary that encoded the triples.
+	 * @param base The triples the delta applies to, or <code>null</code>.
+	 * @param delta The net changes of the base, or <code>null</code>.
+	 */
+	GraphVersion(NodeDictionary nodeDictionary, FrozenTripleIndex base, GraphDelta.View delta)
+	{
+		this.nodeDictionary = nodeDictionary;
+		this.base = base;
+		this.delta = delta;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															GraphBase
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	protected ExtendedIterator<Triple> graphBaseFind(TripleMatch m)
+	{
+		int s = matchId(m.getMatchSubject());
+		int p = matchId(m.getMatchPredicate());
+		int o = matchId(m.getMatchObject());
+		if ( (s == NodeDictionary.UNKNOWN)
+				|| (p == NodeDictionary.UNKNOWN)
+				|| (o == NodeDictionary.UNKNOWN) ) {
+			return NiceIterator.emptyIterator();
+		}
+
+		ExtendedIterator<Triple> found = (base != null) ? 
+				base.find(s, p, o) : NiceIterator.<Triple>emptyIterator();
+		if (delta == null) {
+			return found;
+		}
+
+		if (delta.deleted > 0) {
+			found = found.filterDrop(new Filter<Triple>() {
+				@Override
+				public boolean accept(Triple t) {
+					return state(t) == GraphDelta.DELETED;
+				}
+			});
+		}
+		if (delta.added > 0) {
+			found = found.andThen(delta.findAdded(s, p, o, nodeDictionary));
+		}
+		return found;
+	}
+
+	@Override
+	protected boolean graphBaseContains(Triple t)
+	{
+		if (! t.isConcrete()) {
+			return containsByFind(t);
+		}
+
+		int s = nodeDictionary.lookup(t.getSubject());
+		int p = nodeDictionary.lookup(t.getPredicate());
+		int o = nodeDictionary.lookup(t.getObject());
+		if ( (s == NodeDictionary.UNKNOWN)
+				|| (p == NodeDictionary.UNKNOWN)
+				|| (o == NodeDictionary.UNKNOWN) ) {
+			return false;
+		}
+
+		int state = (delta != null) ? delta.state(s, p, o) : GraphDelta.UNCHANGED;
+		if (state != GraphDelta.UNCHANGED) {
+			return state == GraphDelta.ADDED;
+		}
+		return (base != null) && base.contains(s, p, o);
+	}
+
+	@Override
+	protected int graphBaseSize()
+	{
+		int size = (base != null) ? base.size() : 0;
+		if (delta != null) {
+			size += delta.added - delta.deleted;
+		}
+		return size;
+	}
+
+	@Override
+	public void performAdd(Triple t) {
+		throw new AddDeniedException("Graph versions are read-only", t);
+	}
+
+	@Override
+	public void performDelete(Triple t) {
+		throw new DeleteDeniedException("Graph versions are read-only", t);
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															Encoding
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	private int state(Triple t)
+	{
+		return delta.state(nodeDictionary.lookup(t.getSubject()),
+				nodeDictionary.lookup(t.getPredicate()),
+				nodeDictionary.lookup(t.getObject()));
+	}
+
+	// answers the node identifier, a negative wildcard, or UNKNOWN
+	private int matchId(Node node)
+	{
+		if ( (node == null) || ! node.isConcrete() ) {
+			return -2;
+		}
+		return nodeDictionary.lookup(node);
+	}
+}
@@ -0,0 +1,106 @@
+package org.marl.wafnm.core.impl;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphUtil;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.ontology.OntModel;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.reasoner.InfGraph;
+
+/** Implements a frame opened from a {@link FrameImage}.
+ *
+ * <p>The frame is opened frozen, over the propositions of the image, and
+ * answers the propositions inferred when the image was written, without
+ * running inference. Its {@link MembershipIndex} is not built meanwhile:
+ * whether it mentions a node is answered by a search of the frozen index,
+ * which only decodes the nodes of the image that are looked up.
+ *
+ * <p>Its first change thaws it: its propositions are copied into the heap
+ * indexes of their {@link EncodedGraph}, the inferences of the image are
+ * dropped, and the frame model is replaced by a model that infers with the
+ * reasoner of the frame inference profile, over the same propositions and
+ * bound frames. Queries prepared before keep reading the previous model.
+ *
+ * @author kr1s
+ *
+ */
+class ImageFrame extends BaseFrame {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	// whether the frame did not change since opened
+	protected volatile boolean unchanged = true;
+
+	/** Constructor that initialize state.
+	 *
+	 * @param frameUri
+	 * @param frameModel The model of the frame propositions, which holds
+	 * the inferred propositions as a sub-model.
+	 * @param imageInference The inferred propositions.
+	 */
+	ImageFrame(String frameUri, OntModel frameModel, Model imageInference)
+	{
+		super(frameUri, frameModel);
+
+		this.frozenInference = imageInference;
+		this.frozen = true;
+		checkForeignKnowledge();
+	}
+
+	@Override
+	protected Boolean indexedMention(Node node)
+	{
+		Graph baseGraph = getBaseGraph();
+		if (unchanged && (baseGraph instanceof EncodedGraph)) {
+			// versions are immutable, even if the frame is thawed meanwhile
+			return GraphUtil.containsNode(((EncodedGraph) baseGraph).getVersion(), node);
+		}
+		return super.indexedMention(node);
+	}
+
+	/** {@inheritDoc}
+	 *
+	 * <p>A frame which was not changed since opened is thawed instead.
+	 */
+	@Override
+	protected void checkNotFrozen()
+	{
+		if (frozen && unchanged) {
+			thaw();
+		}
+		super.checkNotFrozen();
+	}
+
+	/** Makes this frame accept changes, and infer again from its
+	 * propositions.
+	 *
+	 * <p>This should be called under the frame write lock.
+	 */
+	protected void thaw()
+	{
+		Graph baseGraph = getBaseGraph();
+		if (baseGraph instanceof EncodedGraph) {
+			((EncodedGraph) baseGraph).thaw();
+		}
+
+		OntModel thawed = ModelFactory.createOntologyModel(
+				MemFrameFactory.specify(inferenceProfile, MemFrameFactory.DEFAULT_INFERENCE, baseGraph),
+				frameModel.getBaseModel());
+		for (OntModel subModel : frameModel.listSubModels(false).toList())
+		{
+			Model subBase = subModel.getBaseModel();
+			if (subBase.getGraph() != frozenInference.getGraph()) {
+				thawed.addSubModel(subBase);
+			}
+		}
+
+		frameModel = thawed;
+		semCache.inferring = thawed.getGraph() instanceof InfGraph;
+		semCache.clear();
+		frozenInference = null;
+		unchanged = false;
+		frozen = false;
+		inferenceStale = true;
+	}
+}
@@ -0,0 +1,192 @@
+package org.marl.wafnm.core.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.hp.hpl.jena.graph.Node;
+
+/** Interns nodes to the identifiers of the node table of a
+ * {@link FrameImage}, read from the image as they are looked up.
+ *
+ * <p>The node table holds the encoding of each node of the image, in the
+ * order of their identifiers, with the offset of each of them, and a hash
+ * table of the identifiers keyed by {@link #termHash(Node) term hash}. The
+ * table is memory-mapped: opening it reads nothing, and a node is only
+ * decoded into the heap the first time it is decoded or matched.
+ *
+ * <p>Nodes encoded later on are interned on the heap, as by the base
+ * dictionary, and identified after the nodes of the image.
+ *
+ * <p>This implementation is thread-safe: a node may be decoded twice by
+ * concurrent readers, which then answer equal nodes.
+ *
+ * @author kr1s
+ *
+ */
+public class ImageNodeDictionary extends NodeDictionary {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected int imageSize;
+	protected ByteBuffer terms;
+	protected IntBuffer offsets;
+	protected IntBuffer slots;
+	protected AtomicReferenceArray<Node> decoded;
+
+	/** Creates a dictionary over the node table of an image.
+	 *
+	 * @param imageSize The count of nodes of the image.
+	 * @param terms The encoded nodes, one after the other.
+	 * @param offsets The offset of each node in the encoded nodes, followed
+	 * by the length of the encoded nodes.
+	 * @param slots The hash table of the nodes: each slot holds a node
+	 * identifier plus one, or zero if empty, followed by the node term hash.
+	 * Nodes are probed linearly from the slot of their term hash.
+	 */
+	ImageNodeDictionary(int imageSize, ByteBuffer terms, IntBuffer offsets, IntBuffer slots)
+	{
+		if ( (offsets.limit() != imageSize + 1)
+				|| (slots.limit() < 2) || (Integer.bitCount(slots.limit()) != 1) ) {
+			throw new IllegalArgumentException("Invalid node table for " + imageSize + " nodes");
+		}
+
+		this.imageSize = imageSize;
+		this.terms = terms;
+		this.offsets = offsets;
+		this.slots = slots;
+		this.decoded = new AtomicReferenceArray<Node>(imageSize);
+	}
+
+	/** Answers the count of nodes of the image decoded so far.
+	 *
+	 * @return The count of decoded nodes.
+	 */
+	public int getDecodedCount()
+	{
+		int n = 0;
+		for (int k = 0 ; k < imageSize ; k++) {
+			if (decoded.get(k) != null) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/** Answers a hash of a node, which only depends on its terms, so that
+	 * it is stable across runs.
+	 *
+	 * @param node A concrete node.
+	 *
+	 * @return The node hash.
+	 */
+	static int termHash(Node node)
+	{
+		int h;
+		if (node.isURI()) {
+			h = node.getURI().hashCode();
+		}
+		else if (node.isBlank()) {
+			h = 31 * node.getBlankNodeLabel().hashCode() + BinaryRdfCodec.BLANK;
+		}
+		else {
+			String datatypeUri = node.getLiteralDatatypeURI();
+			h = 31 * (31 * node.getLiteralLexicalForm().hashCode()
+					+ node.getLiteralLanguage().hashCode())
+					+ (datatypeUri != null ? datatypeUri.hashCode() : 0);
+		}
+		return h ^ (h >>> 16);
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															NodeDictionary
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public int encode(Node node)
+	{
+		int id = lookupImage(node);
+		if (id != UNKNOWN) {
+			return id;
+		}
+
+		id = super.encode(node);
+		if (id > Integer.MAX_VALUE - imageSize) {
+			throw new IllegalStateException("Node dictionary is full");
+		}
+		return imageSize + id;
+	}
+
+	@Override
+	public int lookup(Node node)
+	{
+		int id = lookupImage(node);
+		if (id != UNKNOWN) {
+			return id;
+		}
+
+		id = super.lookup(node);
+		return id != UNKNOWN ? imageSize + id : UNKNOWN;
+	}
+
+	@Override
+	public Node decode(int id)
+	{
+		if (id >= imageSize) {
+			return super.decode(id - imageSize);
+		}
+
+		Node node = decoded.get(id);
+		if (node == null)
+		{
+			node = readTerm(id);
+			decoded.set(id, node);
+		}
+		return node;
+	}
+
+	@Override
+	public int size() {
+		return imageSize + super.size();
+	}
+
+	private int lookupImage(Node node)
+	{
+		if ( (imageSize == 0) || ! node.isConcrete() ) {
+			return UNKNOWN;
+		}
+
+		// only nodes of the same hash are decoded
+		int hash = termHash(node);
+		int mask = slots.limit() / 2 - 1;
+		for (int slot = hash & mask ; ; slot = (slot + 1) & mask)
+		{
+			int id = slots.get(2 * slot) - 1;
+			if (id < 0) {
+				return UNKNOWN;
+			}
+			if ( (slots.get(2 * slot + 1) == hash) && decode(id).equals(node) ) {
+				return id;
+			}
+		}
+	}
+
+	private Node readTerm(int id)
+	{
+		int from = offsets.get(id);
+		byte[] bytes = new byte[offsets.get(id + 1) - from];
+		for (int k = 0 ; k < bytes.length ; k++) {
+			bytes[k] = terms.get(from + k);
+		}
+
+		try {
+			return BinaryRdfCodec.readTerm(new DataInputStream(new ByteArrayInputStream(bytes)));
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Invalid node in frame image: " + id, e);
+		}
+	}
+}
@@ -0,0 +1,501 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.hp.hpl.jena.graph.Factory;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphEvents;
+import com.hp.hpl.jena.graph.GraphListener;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.reasoner.BaseInfGraph;
+import com.hp.hpl.jena.reasoner.Finder;
+import com.hp.hpl.jena.reasoner.Reasoner;
+import com.hp.hpl.jena.reasoner.TriplePattern;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.Filter;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+/** Materializes the RDFS inferences of a frame as its propositions change,
+ * as bound by {@link IncrementalRdfsReasoner}.
+ *
+ * <p>The inferred propositions are held apart from the frame ones, and are
+ * maintained by listening to the frame base graph:
+ * <ul>
+ * <li>a learned proposition is joined with the propositions already known,
+ * and its consequences are added, and joined in turn, until nothing new is
+ * derived</li>
+ * <li>a forgotten proposition first retracts all the inferences derived
+ * from it, and then derives again those that another proposition still
+ * entails (delete and re-derive)</li>
+ * </ul>
+ *
+ * <p>The rules are the RDFS entailments of sub-properties, sub-classes,
+ * domains and ranges: resources are neither typed as such, nor are
+ * axiomatic propositions added.
+ *
+ * <p>Bulk changes, of the base graph or of the bound knowledge, cannot be
+ * followed: the inferences are then materialized again, from all
+ * propositions, when next prepared.
+ *
+ * @author kr1s
+ *
+ */
+public class IncrementalRdfsGraph extends BaseInfGraph {
+
+	static final Node TYPE = RDF.type.asNode();
+	static final Node SUB_CLASS_OF = RDFS.subClassOf.asNode();
+	static final Node SUB_PROPERTY_OF = RDFS.subPropertyOf.asNode();
+	static final Node DOMAIN = RDFS.domain.asNode();
+	static final Node RANGE = RDFS.range.asNode();
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected Graph deductions = Factory.createGraphMem();
+	protected GraphListener following = new Following();
+	protected AtomicLong derivedCount = new AtomicLong();
+	protected AtomicLong retractedCount = new AtomicLong();
+	protected AtomicLong materializedCount = new AtomicLong();
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected Graph baseGraph;
+
+	/** Binds the propositions of a frame.
+	 *
+	 * @param data The propositions of the frame, and of its sub-models.
+	 * @param reasoner The reasoner answered as the one of this graph.
+	 * @param baseGraph The base graph of the frame, which changes are
+	 * followed.
+	 */
+	IncrementalRdfsGraph(Graph data, Reasoner reasoner, Graph baseGraph)
+	{
+		super(data, reasoner);
+		if (baseGraph == null) {
+			throw new IllegalArgumentException();
+		}
+
+		this.baseGraph = baseGraph;
+		baseGraph.getEventManager().register(following);
+	}
+
+	/** Answers the count of propositions derived so far.
+	 *
+	 * @return The derived count.
+	 */
+	public long getDerivedCount() {
+		return derivedCount.get();
+	}
+
+	/** Answers the count of inferences retracted so far, including those
+	 * that were derived again.
+	 *
+	 * @return The retracted count.
+	 */
+	public long getRetractedCount() {
+		return retractedCount.get();
+	}
+
+	/** Answers how many times all inferences were materialized from all
+	 * propositions.
+	 *
+	 * @return The materialization count.
+	 */
+	public long getMaterializedCount() {
+		return materializedCount.get();
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															InfGraph
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public synchronized void prepare()
+	{
+		if (isPrepared()) {
+			return;
+		}
+
+		deductions.clear();
+		for (Triple t : listSources()) {
+			derive(t);
+		}
+		materializedCount.incrementAndGet();
+		setPreparedState(true);
+	}
+
+	/** Answers the propositions the inferences are materialized from, which
+	 * are all known propositions unless the others are already closed under
+	 * the rules.
+	 *
+	 * @return The source propositions.
+	 */
+	protected List<Triple> listSources() {
+		return getRawGraph().find(Triple.ANY).toList();
+	}
+
+	@Override
+	public ExtendedIterator<Triple> findWithContinuation(TriplePattern pattern, Finder continuation)
+	{
+		requirePrepared();
+
+		final Graph data = getRawGraph();
+		ExtendedIterator<Triple> inferred = deductions.find(pattern.asTripleMatch())
+				.filterDrop(new Filter<Triple>() {
+					@Override
+					public boolean accept(Triple t) {
+						return data.contains(t);
+					}
+				});
+
+		return continuation != null ?
+				continuation.find(pattern).andThen(inferred)
+				: inferred;
+	}
+
+	/** {@inheritDoc}
+	 *
+	 * <p>The matching propositions are deleted one by one, as when a sem
+	 * type is set, so that their inferences are retracted rather than all
+	 * materialized again.
+	 */
+	@Override
+	public void remove(Node s, Node p, Node o)
+	{
+		for (Triple t : getRawGraph().find(s, p, o).toList()) {
+			delete(t);
+		}
+		getEventManager().notifyEvent(this, GraphEvents.remove(s, p, o));
+	}
+
+	@Override
+	public Graph getSchemaGraph() {
+		return null;
+	}
+
+	@Override
+	public Graph getDeductionsGraph()
+	{
+		requirePrepared();
+		return deductions;
+	}
+
+	@Override
+	public void close()
+	{
+		detach();
+		super.close();
+	}
+
+	/** Stops following the changes of the base graph, without closing the
+	 * graphs this graph reads, as {@link #close()} does.
+	 */
+	void detach() {
+		baseGraph.getEventManager().unregister(following);
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															Rules
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	private boolean knows(Triple t) {
+		return getRawGraph().contains(t) || deductions.contains(t);
+	}
+
+	private List<Triple> match(Node s, Node p, Node o)
+	{
+		List<Triple> matching = getRawGraph().find(s, p, o).toList();
+		matching.addAll(deductions.find(s, p, o).toList());
+		return matching;
+	}
+
+	/** Adds the consequences of a known proposition, until nothing new is
+	 * derived.
+	 */
+	private void derive(Triple t)
+	{
+		Deque<Triple> pending = new ArrayDeque<Triple>();
+		pending.add(t);
+
+		List<Triple> consequences = new ArrayList<Triple>();
+		while (! pending.isEmpty())
+		{
+			consequences.clear();
+			consequencesOf(pending.poll(), consequences);
+			for (Triple c : consequences)
+			{
+				if (! knows(c))
+				{
+					deductions.add(c);
+					derivedCount.incrementAndGet();
+					pending.add(c);
+				}
+			}
+		}
+	}
+
+	/** Retracts the inferences derived from a forgotten proposition, and
+	 * derives again those still entailed.
+	 */
+	private void retract(Triple t)
+	{
+		Graph data = getRawGraph();
+
+		// inferences that may depend on the proposition, the told ones
+		// supporting their own consequences
+		Set<Triple> retracted = new LinkedHashSet<Triple>();
+		retracted.add(t);
+		Deque<Triple> pending = new ArrayDeque<Triple>();
+		pending.add(t);
+
+		List<Triple> consequences = new ArrayList<Triple>();
+		while (! pending.isEmpty())
+		{
+			consequences.clear();
+			consequencesOf(pending.poll(), consequences);
+			for (Triple c : consequences)
+			{
+				if (deductions.contains(c) && retracted.add(c) && ! data.contains(c)) {
+					pending.add(c);
+				}
+			}
+		}
+		for (Triple c : retracted) {
+			deductions.delete(c);
+		}
+		retractedCount.addAndGet(retracted.size() - 1);
+
+		// the forgotten proposition may itself be entailed
+		for (Triple c : retracted)
+		{
+			if (! knows(c) && isEntailed(c))
+			{
+				deductions.add(c);
+				derivedCount.incrementAndGet();
+				derive(c);
+			}
+		}
+	}
+
+	/** Answers the propositions derived in one step from a proposition and
+	 * the known ones.
+	 */
+	private void consequencesOf(Triple t, List<Triple> consequences)
+	{
+		Node s = t.getSubject();
+		Node p = t.getPredicate();
+		Node o = t.getObject();
+
+		// the proposition as an instance of its property
+		for (Triple sp : match(p, SUB_PROPERTY_OF, Node.ANY))
+		{
+			if (sp.getObject().isURI()) {
+				consequences.add(Triple.create(s, sp.getObject(), o));
+			}
+		}
+		for (Triple d : match(p, DOMAIN, Node.ANY)) {
+			consequences.add(Triple.create(s, TYPE, d.getObject()));
+		}
+		if (! o.isLiteral())
+		{
+			for (Triple r : match(p, RANGE, Node.ANY)) {
+				consequences.add(Triple.create(o, TYPE, r.getObject()));
+			}
+		}
+
+		// the proposition as part of the schema
+		if (p.equals(TYPE))
+		{
+			for (Triple sc : match(o, SUB_CLASS_OF, Node.ANY)) {
+				consequences.add(Triple.create(s, TYPE, sc.getObject()));
+			}
+		}
+		else if (p.equals(SUB_CLASS_OF))
+		{
+			for (Triple sc : match(o, SUB_CLASS_OF, Node.ANY)) {
+				consequences.add(Triple.create(s, SUB_CLASS_OF, sc.getObject()));
+			}
+			for (Triple sc : match(Node.ANY, SUB_CLASS_OF, s)) {
+				consequences.add(Triple.create(sc.getSubject(), SUB_CLASS_OF, o));
+			}
+			for (Triple i : match(Node.ANY, TYPE, s)) {
+				consequences.add(Triple.create(i.getSubject(), TYPE, o));
+			}
+		}
+		else if (p.equals(SUB_PROPERTY_OF))
+		{
+			for (Triple sp : match(o, SUB_PROPERTY_OF, Node.ANY)) {
+				consequences.add(Triple.create(s, SUB_PROPERTY_OF, sp.getObject()));
+			}
+			for (Triple sp : match(Node.ANY, SUB_PROPERTY_OF, s)) {
+				consequences.add(Triple.create(sp.getSubject(), SUB_PROPERTY_OF, o));
+			}
+			if (s.isURI() && o.isURI())
+			{
+				for (Triple i : match(Node.ANY, s, Node.ANY)) {
+					consequences.add(Triple.create(i.getSubject(), o, i.getObject()));
+				}
+			}
+		}
+		else if (p.equals(DOMAIN) && s.isURI())
+		{
+			for (Triple i : match(Node.ANY, s, Node.ANY)) {
+				consequences.add(Triple.create(i.getSubject(), TYPE, o));
+			}
+		}
+		else if (p.equals(RANGE) && s.isURI())
+		{
+			for (Triple i : match(Node.ANY, s, Node.ANY))
+			{
+				if (! i.getObject().isLiteral()) {
+					consequences.add(Triple.create(i.getObject(), TYPE, o));
+				}
+			}
+		}
+	}
+
+	/** Answers whether a proposition is derived in one step from the known
+	 * ones.
+	 */
+	private boolean isEntailed(Triple t)
+	{
+		Node s = t.getSubject();
+		Node p = t.getPredicate();
+		Node o = t.getObject();
+
+		for (Triple sp : match(Node.ANY, SUB_PROPERTY_OF, p))
+		{
+			if (sp.getSubject().isURI() && knows(Triple.create(s, sp.getSubject(), o))) {
+				return true;
+			}
+		}
+
+		if (p.equals(TYPE))
+		{
+			for (Triple sc : match(Node.ANY, SUB_CLASS_OF, o))
+			{
+				if (knows(Triple.create(s, TYPE, sc.getSubject()))) {
+					return true;
+				}
+			}
+			for (Triple d : match(Node.ANY, DOMAIN, o))
+			{
+				if (d.getSubject().isURI() && ! match(s, d.getSubject(), Node.ANY).isEmpty()) {
+					return true;
+				}
+			}
+			for (Triple r : match(Node.ANY, RANGE, o))
+			{
+				if (r.getSubject().isURI() && ! match(Node.ANY, r.getSubject(), s).isEmpty()) {
+					return true;
+				}
+			}
+		}
+		else if (p.equals(SUB_CLASS_OF) || p.equals(SUB_PROPERTY_OF))
+		{
+			for (Triple step : match(s, p, Node.ANY))
+			{
+				if (knows(Triple.create(step.getObject(), p, o))) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/** Follows the changes of the frame base graph.
+	 *
+	 * <p>Changes are notified by the thread that holds the frame write lock.
+	 */
+	class Following implements GraphListener {
+
+		@Override
+		public void notifyAddTriple(Graph g, Triple t)
+		{
+			if (isPrepared()) {
+				derive(t);
+			}
+		}
+
+		@Override
+		public void notifyAddArray(Graph g, Triple[] triples)
+		{
+			for (Triple t : triples) {
+				notifyAddTriple(g, t);
+			}
+		}
+
+		@Override
+		public void notifyAddList(Graph g, List<Triple> triples)
+		{
+			for (Triple t : triples) {
+				notifyAddTriple(g, t);
+			}
+		}
+
+		@Override
+		public void notifyAddIterator(Graph g, Iterator<Triple> it) {
+			// the iterator may have been consumed already
+			rebind();
+		}
+
+		@Override
+		public void notifyAddGraph(Graph g, Graph added) {
+			rebind();
+		}
+
+		@Override
+		public void notifyDeleteTriple(Graph g, Triple t)
+		{
+			// deletions of absent propositions are notified too
+			if (isPrepared() && ! getRawGraph().contains(t)) {
+				retract(t);
+			}
+		}
+
+		@Override
+		public void notifyDeleteList(Graph g, List<Triple> triples)
+		{
+			for (Triple t : triples) {
+				notifyDeleteTriple(g, t);
+			}
+		}
+
+		@Override
+		public void notifyDeleteArray(Graph g, Triple[] triples)
+		{
+			for (Triple t : triples) {
+				notifyDeleteTriple(g, t);
+			}
+		}
+
+		@Override
+		public void notifyDeleteIterator(Graph g, Iterator<Triple> it) {
+			rebind();
+		}
+
+		@Override
+		public void notifyDeleteGraph(Graph g, Graph removed) {
+			rebind();
+		}
+
+		@Override
+		public void notifyEvent(Graph source, Object value)
+		{
+			// bulk removals
+			if (! GraphEvents.startRead.equals(value)
+					&& ! GraphEvents.finishRead.equals(value)) {
+				rebind();
+			}
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package org.marl.wafnm.core.impl;
+
+import com.hp.hpl.jena.graph.Capabilities;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.reasoner.InfGraph;
+import com.hp.hpl.jena.reasoner.Reasoner;
+import com.hp.hpl.jena.reasoner.ReasonerException;
+import com.hp.hpl.jena.reasoner.ReasonerRegistry;
+
+/** Binds the model of a frame to an {@link IncrementalRdfsGraph}, which
+ * follows the changes of the frame base graph.
+ *
+ * <p>Descriptions are delegated to the Jena RDFS reasoner. Schemas cannot
+ * be bound, as the ontology of a frame changes with its propositions, and
+ * neither derivations are logged nor parameters set.
+ *
+ * @author kr1s
+ *
+ */
+public class IncrementalRdfsReasoner implements Reasoner {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected Graph baseGraph;
+	protected Reasoner reasoner = ReasonerRegistry.getRDFSReasoner();
+
+	/** Creates the reasoner of a frame model.
+	 *
+	 * @param baseGraph The base graph of the frame.
+	 */
+	public IncrementalRdfsReasoner(Graph baseGraph)
+	{
+		if (baseGraph == null) {
+			throw new IllegalArgumentException();
+		}
+		this.baseGraph = baseGraph;
+	}
+
+	@Override
+	public InfGraph bind(Graph data) throws ReasonerException {
+		return new IncrementalRdfsGraph(data, this, baseGraph);
+	}
+
+	@Override
+	public Reasoner bindSchema(Graph tbox) throws ReasonerException {
+		throw new IllegalStateException("Cannot bind a schema to incremental inference");
+	}
+
+	@Override
+	public Reasoner bindSchema(Model tbox) throws ReasonerException {
+		throw new IllegalStateException("Cannot bind a schema to incremental inference");
+	}
+
+	@Override
+	public void setDerivationLogging(boolean logOn) {
+	}
+
+	@Override
+	public void setParameter(Property parameterUri, Object value) {
+		// the delegate is shared by all models
+	}
+
+	@Override
+	public Model getReasonerCapabilities() {
+		return reasoner.getReasonerCapabilities();
+	}
+
+	@Override
+	public void addDescription(Model configSpec, Resource base) {
+		reasoner.addDescription(configSpec, base);
+	}
+
+	@Override
+	public boolean supportsProperty(Property property) {
+		return reasoner.supportsProperty(property);
+	}
+
+	@Override
+	public Capabilities getGraphCapabilities() {
+		return reasoner.getGraphCapabilities();
+	}
+}
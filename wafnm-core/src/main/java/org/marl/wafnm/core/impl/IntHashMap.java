@@ -0,0 +1,203 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.Arrays;
+
+/** Implements a map keyed by positive int values, without boxing.
+ *
+ * <p>Entries are stored in an open addressing table, as for
+ * {@link LongHashSet}. Removed keys leave a mark until the table is next
+ * resized, so that removing entries never moves the others: a scan of the
+ * table slots may remove the scanned entries.
+ *
+ * <p>This map is not thread-safe.
+ *
+ * @author kr1s
+ *
+ * @param <V> The type of values.
+ */
+class IntHashMap<V> {
+
+	static final int FREE = -1;
+	static final int REMOVED = -2;
+
+	static final int MIN_CAPACITY = 4;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	private int[] keys;
+	private Object[] values;
+	private int size;
+
+	// keys and removal marks
+	private int used;
+
+	IntHashMap()
+	{
+		this.keys = newKeys(MIN_CAPACITY);
+		this.values = new Object[MIN_CAPACITY];
+	}
+
+	/** Answers the value of a key.
+	 *
+	 * @param key A positive key.
+	 *
+	 * @return The value, or <code>null</code> if the map does not contain
+	 * the key.
+	 */
+	@SuppressWarnings("unchecked")
+	V get(int key)
+	{
+		int k = indexOf(key);
+		return keys[k] == key ? (V) values[k] : null;
+	}
+
+	/** Maps a key to a value.
+	 *
+	 * @param key A positive key.
+	 * @param value A value, which is not <code>null</code>.
+	 */
+	void put(int key, V value)
+	{
+		int k = indexOf(key);
+		if (keys[k] == key)
+		{
+			values[k] = value;
+			return;
+		}
+
+		if (keys[k] == FREE)
+		{
+			if ((used + 1) * 4 > keys.length * 3)
+			{
+				resize();
+				k = indexOf(key);
+			}
+			used++;
+		}
+		keys[k] = key;
+		values[k] = value;
+		size++;
+	}
+
+	/** Removes a key.
+	 *
+	 * @param key A positive key.
+	 *
+	 * @return <code>true</code> if the map contained the key.
+	 */
+	boolean remove(int key)
+	{
+		int k = indexOf(key);
+		if (keys[k] != key) {
+			return false;
+		}
+
+		keys[k] = REMOVED;
+		values[k] = null;
+		size--;
+
+		return true;
+	}
+
+	boolean containsKey(int key) {
+		return keys[indexOf(key)] == key;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/** Answers the count of slots, for scanning the map.
+	 *
+	 * @return The table capacity.
+	 */
+	int capacity() {
+		return keys.length;
+	}
+
+	/** Answers the key of a slot.
+	 *
+	 * @param k The slot index.
+	 *
+	 * @return The slot key, or a negative value if the slot is empty.
+	 */
+	int key(int k) {
+		return keys[k];
+	}
+
+	/** Answers the value of a slot.
+	 *
+	 * @param k The slot index.
+	 *
+	 * @return The slot value, or <code>null</code> if the slot is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	V value(int k) {
+		return (V) values[k];
+	}
+
+	/** Answers the keys of this map.
+	 *
+	 * @return A copy of the keys.
+	 */
+	int[] keys()
+	{
+		int[] copy = new int[size];
+		int n = 0;
+		for (int key : keys) {
+			if (key >= 0) {
+				copy[n++] = key;
+			}
+		}
+		return copy;
+	}
+
+	// answers the slot of the key, or the slot where it should be added
+	private int indexOf(int key)
+	{
+		int mask = keys.length - 1;
+		int k = LongHashSet.hash(key) & mask;
+		int firstRemoved = -1;
+
+		while (keys[k] != FREE)
+		{
+			if (keys[k] == key) {
+				return k;
+			}
+			if ( (keys[k] == REMOVED) && (firstRemoved < 0) ) {
+				firstRemoved = k;
+			}
+			k = (k + 1) & mask;
+		}
+
+		return firstRemoved >= 0 ? firstRemoved : k;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void resize()
+	{
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		int capacity = MIN_CAPACITY;
+		while (capacity * 3 <= (size + 1) * 4 * 2) {
+			capacity <<= 1;
+		}
+
+		keys = newKeys(capacity);
+		values = new Object[capacity];
+		used = 0;
+		size = 0;
+		for (int k = 0 ; k < oldKeys.length ; k++) {
+			if (oldKeys[k] >= 0) {
+				put(oldKeys[k], (V) oldValues[k]);
+			}
+		}
+	}
+
+	private static int[] newKeys(int capacity)
+	{
+		int[] keys = new int[capacity];
+		Arrays.fill(keys, FREE);
+		return keys;
+	}
+}
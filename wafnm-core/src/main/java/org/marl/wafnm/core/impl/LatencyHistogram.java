@@ -0,0 +1,97 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Records latencies into log-linear buckets, so that percentiles are
+ * answered within 1/8 of their value.
+ *
+ * <p>Each power of two is split into 8 buckets. Recording only increments a
+ * bucket: it neither allocates nor locks, and may run concurrently with
+ * other recordings and reads. Percentiles are computed when read, and
+ * answer the upper bound of the bucket they fall into.
+ *
+ * @author kr1s
+ *
+ */
+public class LatencyHistogram {
+
+	static final int SUB_BITS = 3;
+	static final int SUB_BUCKETS = 1 << SUB_BITS;
+	static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	/** Records a latency.
+	 *
+	 * @param nanos The latency, in nanoseconds.
+	 */
+	public void record(long nanos) {
+		buckets.incrementAndGet(index(Math.max(0, nanos)));
+	}
+
+	/** Answers a percentile of the recorded latencies.
+	 *
+	 * @param quantile The percentile, between 0 and 1, such as 0.99.
+	 *
+	 * @return The latency, in nanoseconds, or 0 if nothing was recorded.
+	 */
+	public long getPercentile(double quantile)
+	{
+		if ( (quantile < 0) || (quantile > 1) ) {
+			throw new IllegalArgumentException();
+		}
+
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int k = 0 ; k < BUCKETS ; k++) {
+			total += counts[k] = buckets.get(k);
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(quantile * total));
+		long seen = 0;
+		for (int k = 0 ; k < BUCKETS ; k++)
+		{
+			seen += counts[k];
+			if (seen >= rank) {
+				return upperBound(k);
+			}
+		}
+		return upperBound(BUCKETS - 1);
+	}
+
+	/** Forgets all recorded latencies.
+	 */
+	public void reset()
+	{
+		for (int k = 0 ; k < BUCKETS ; k++) {
+			buckets.set(k, 0);
+		}
+	}
+
+	static int index(long value)
+	{
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int msb = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (msb - SUB_BITS)) & (SUB_BUCKETS - 1);
+
+		return (msb - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	static long upperBound(int index)
+	{
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+
+		return lower + (1L << shift) - 1;
+	}
+}
@@ -0,0 +1,75 @@
+package org.marl.wafnm.core.impl;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.reasoner.InfGraph;
+import com.hp.hpl.jena.reasoner.Reasoner;
+import com.hp.hpl.jena.reasoner.ReasonerException;
+import com.hp.hpl.jena.reasoner.rulesys.GenericRuleReasoner;
+import com.hp.hpl.jena.reasoner.rulesys.LPBackwardRuleInfGraph;
+import com.hp.hpl.jena.reasoner.rulesys.Rule;
+import com.hp.hpl.jena.reasoner.rulesys.impl.LPRuleStore;
+
+/** Infers the RDFS propositions of a frame backward, from the patterns of
+ * its queries.
+ *
+ * <p>The rules entail the same propositions as {@link IncrementalRdfsGraph}.
+ * Goals on types, sub-classes and sub-properties are tabled, so that
+ * transitive closures terminate, and tables are dropped once the frame
+ * changes: the Jena backward engine would otherwise keep answering from
+ * them. Types are resolved from the types of the subject first, as queries
+ * mostly bind subjects.
+ *
+ * <p>A reasoner is stateless, and may be shared by all frames.
+ *
+ * @author kr1s
+ *
+ */
+public class LazyRdfsReasoner extends GenericRuleReasoner {
+
+	/** The backward rules of this reasoner.
+	 */
+	public static final String RULES =
+			"-> table(rdf:type).\n"
+			+ "-> table(rdfs:subClassOf).\n"
+			+ "-> table(rdfs:subPropertyOf).\n"
+			+ "[rdfs2: (?x rdf:type ?c) <- (?p rdfs:domain ?c), (?x ?p ?y)]\n"
+			+ "[rdfs3: (?y rdf:type ?c) <- (?p rdfs:range ?c), (?x ?p ?y), notLiteral(?y)]\n"
+			+ "[rdfs5: (?a rdfs:subPropertyOf ?c) <- (?a rdfs:subPropertyOf ?b), notEqual(?a, ?b), (?b rdfs:subPropertyOf ?c)]\n"
+			+ "[rdfs6: (?a ?q ?b) <- (?p rdfs:subPropertyOf ?q), notEqual(?p, ?q), (?a ?p ?b)]\n"
+			+ "[rdfs9: (?a rdf:type ?y) <- (?a rdf:type ?x), (?x rdfs:subClassOf ?y), notEqual(?x, ?y)]\n"
+			+ "[rdfs11: (?a rdfs:subClassOf ?c) <- (?a rdfs:subClassOf ?b), notEqual(?a, ?b), (?b rdfs:subClassOf ?c)]\n";
+
+	/** Creates a reasoner.
+	 */
+	public LazyRdfsReasoner()
+	{
+		super(Rule.parseRules(RULES));
+		setMode(BACKWARD);
+	}
+
+	@Override
+	public InfGraph bind(Graph data) throws ReasonerException
+	{
+		LazyRdfsGraph graph = new LazyRdfsGraph(this, getBruleStore(), data);
+		graph.rebind(data);
+		return graph;
+	}
+
+	/** Drops the tabled goals when prepared again, after a change.
+	 */
+	static class LazyRdfsGraph extends LPBackwardRuleInfGraph {
+
+		LazyRdfsGraph(Reasoner reasoner, LPRuleStore ruleStore, Graph data) {
+			super(reasoner, ruleStore, data, null);
+		}
+
+		@Override
+		public synchronized void prepare()
+		{
+			if (! isPrepared()) {
+				reset();
+			}
+			super.prepare();
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.Arrays;
+
+/** Implements a set of positive long values, without boxing.
+ *
+ * <p>Values are stored in an open addressing table. Removed values leave a
+ * mark until the table is next resized, so that removing values never
+ * moves the others: a scan of the table slots may remove the scanned
+ * values.
+ *
+ * <p>This set is not thread-safe.
+ *
+ * @author kr1s
+ *
+ */
+class LongHashSet {
+
+	static final long FREE = -1;
+	static final long REMOVED = -2;
+
+	static final int MIN_CAPACITY = 4;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	private long[] slots;
+	private int size;
+
+	// values and removal marks
+	private int used;
+
+	LongHashSet()
+	{
+		this.slots = newSlots(MIN_CAPACITY);
+	}
+
+	/** Adds a value.
+	 *
+	 * @param value A positive value.
+	 *
+	 * @return <code>true</code> if the set did not already contain the value.
+	 */
+	boolean add(long value)
+	{
+		int k = indexOf(value);
+		if (slots[k] == value) {
+			return false;
+		}
+
+		if (slots[k] == FREE)
+		{
+			if ((used + 1) * 4 > slots.length * 3)
+			{
+				resize();
+				k = indexOf(value);
+			}
+			used++;
+		}
+		slots[k] = value;
+		size++;
+
+		return true;
+	}
+
+	/** Removes a value.
+	 *
+	 * @param value A positive value.
+	 *
+	 * @return <code>true</code> if the set contained the value.
+	 */
+	boolean remove(long value)
+	{
+		int k = indexOf(value);
+		if (slots[k] != value) {
+			return false;
+		}
+
+		slots[k] = REMOVED;
+		size--;
+
+		return true;
+	}
+
+	boolean contains(long value) {
+		return slots[indexOf(value)] == value;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/** Answers the count of slots, for scanning the set.
+	 *
+	 * @return The table capacity.
+	 */
+	int capacity() {
+		return slots.length;
+	}
+
+	/** Answers the content of a slot.
+	 *
+	 * @param k The slot index.
+	 *
+	 * @return The slot value, or a negative value if the slot is empty.
+	 */
+	long slot(int k) {
+		return slots[k];
+	}
+
+	// answers the slot of the value, or the slot where it should be added
+	private int indexOf(long value)
+	{
+		int mask = slots.length - 1;
+		int k = hash(value) & mask;
+		int firstRemoved = -1;
+
+		while (slots[k] != FREE)
+		{
+			if (slots[k] == value) {
+				return k;
+			}
+			if ( (slots[k] == REMOVED) && (firstRemoved < 0) ) {
+				firstRemoved = k;
+			}
+			k = (k + 1) & mask;
+		}
+
+		return firstRemoved >= 0 ? firstRemoved : k;
+	}
+
+	private void resize()
+	{
+		long[] oldSlots = slots;
+		int capacity = MIN_CAPACITY;
+		while (capacity * 3 <= (size + 1) * 4 * 2) {
+			capacity <<= 1;
+		}
+
+		slots = newSlots(capacity);
+		used = 0;
+		size = 0;
+		for (long value : oldSlots) {
+			if (value >= 0) {
+				add(value);
+			}
+		}
+	}
+
+	private static long[] newSlots(int capacity)
+	{
+		long[] slots = new long[capacity];
+		Arrays.fill(slots, FREE);
+		return slots;
+	}
+
+	static int hash(long value)
+	{
+		long h = value * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -2,11 +2,13 @@ package org.marl.wafnm.core.impl;
 
 import org.marl.wafnm.core.api.IFrame;
 import org.marl.wafnm.core.api.IFrameFactory;
+import org.marl.wafnm.core.api.InferenceProfile;
 
-import com.hp.hpl.jena.ontology.OntModel;
+import com.hp.hpl.jena.graph.Graph;
 import com.hp.hpl.jena.ontology.OntModelSpec;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.reasoner.Reasoner;
 
 /** Produces simple in-memory frames, with
  * base inference capabilities.
@@ -23,16 +25,147 @@ public class MemFrameFactory implements IFrameFactory {
 	public static final OntModelSpec DEFAULT_INFERENCE 
 		= OntModelSpec.OWL_MEM_RDFS_INF;
 	
-	MemFrameFactory() {}
+	private static final Reasoner lazyRdfs = new LazyRdfsReasoner();
 	
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected NodeDictionary nodeDictionary;
+	protected FrameCache frameCache;
+	protected OntModelSpec inference = DEFAULT_INFERENCE;
+	protected OntologyClosureCache ontologyClosures = OntologyClosureCache.getShared();
+	
+	/** Constructor for frames which nodes are encoded by a shared dictionary.
+	 * 
+	 * @param nodeDictionary The dictionary shared by all produced frames.
+	 */
+	MemFrameFactory(NodeDictionary nodeDictionary) 
+	{
+		this(nodeDictionary, (FrameCache) null);
+	}
+	
+	/** Constructor for frames which propositions may be evicted from memory.
+	 * 
+	 * @param nodeDictionary The dictionary shared by all produced frames.
+	 * @param frameCache The cache frames are registered to, or 
+	 * <code>null</code>.
+	 */
+	MemFrameFactory(NodeDictionary nodeDictionary, FrameCache frameCache) 
+	{
+		if (nodeDictionary == null) {
+			throw new IllegalArgumentException();
+		}
+		
+		this.nodeDictionary = nodeDictionary;
+		this.frameCache = frameCache;
+	}
+	
+	/** Constructor for frames with a given inference level.
+	 * 
+	 * @param nodeDictionary The dictionary shared by all produced frames.
+	 * @param inference The Jena ontology specification of the produced 
+	 * frames models.
+	 */
+	MemFrameFactory(NodeDictionary nodeDictionary, OntModelSpec inference) 
+	{
+		this(nodeDictionary, (FrameCache) null);
+		
+		if (inference == null) {
+			throw new IllegalArgumentException();
+		}
+		this.inference = inference;
+	}
+	
+	/** Answers the cache of the closures of the base ontologies.
+	 * 
+	 * @return The ontology closure cache.
+	 */
+	public OntologyClosureCache getOntologyClosures() {
+		return ontologyClosures;
+	}
+	
+	/** Answers the specification of the model of a frame.
+	 * 
+	 * @param profile The inference profile of the frame.
+	 * @param inference The specification of the {@link InferenceProfile#RDFS
+	 * default} profile.
+	 * @param baseGraph The base graph of the frame.
+	 * 
+	 * @return The frame model specification.
+	 */
+	static OntModelSpec specify(InferenceProfile profile, OntModelSpec inference, Graph baseGraph)
+	{
+		OntModelSpec spec;
+		switch (profile)
+		{
+		case NONE:
+			return OntModelSpec.OWL_MEM;
+			
+		case RDFS_INCREMENTAL:
+			spec = new OntModelSpec(inference);
+			spec.setReasoner(new IncrementalRdfsReasoner(baseGraph));
+			return spec;
+			
+		case RDFS_LAZY:
+			spec = new OntModelSpec(inference);
+			spec.setReasoner(lazyRdfs);
+			return spec;
+			
+		default:
+			return inference;
+		}
+	}
+	
+	/** {@inheritDoc}
+	 * 
+	 * <p>Frames are created with the {@link InferenceProfile#RDFS default}
+	 * profile.
+	 */
 	@Override
-	public IFrame createFrame(String uri, Model baseOntology)
+	public IFrame createFrame(String uri, Model baseOntology) {
+		return createFrame(uri, baseOntology, InferenceProfile.RDFS);
+	}
+	
+	/** {@inheritDoc}
+	 * 
+	 * <p>The base ontology is copied into the frame base graph, which only
+	 * stores node identifiers. With the default profile, its inference 
+	 * closure is computed once, and shared by all frames built on an equal 
+	 * ontology: see {@link OntologyClosure}.
+	 */
+	@Override
+	public IFrame createFrame(String uri, Model baseOntology, InferenceProfile profile)
 	{
-		OntModel frameModel = ModelFactory.createOntologyModel(
-				DEFAULT_INFERENCE, 
-				baseOntology);
+		if (profile == null) {
+			throw new IllegalArgumentException();
+		}
+		
+		Graph baseGraph = frameCache != null ?
+				frameCache.createGraph(nodeDictionary) 
+				: new EncodedGraph(nodeDictionary);
+		
+		Model baseModel = ModelFactory.createModelForGraph(baseGraph);
+		if (baseOntology != null) {
+			baseModel.add(baseOntology);
+		}
+		
+		OntModelSpec spec = specify(profile, inference, baseGraph);
+		if ( (profile == InferenceProfile.RDFS) 
+				&& (baseOntology != null) && ! baseOntology.isEmpty()
+				&& (inference.getReasoner() != null) )
+		{
+			OntologyClosure closure = ontologyClosures.get(inference, baseOntology.getGraph());
+			spec = new OntModelSpec(inference);
+			spec.setReasoner(closure.getFrameReasoner(baseGraph));
+		}
+		
+		BaseFrame frame = new BaseFrame(uri, 
+				ModelFactory.createOntologyModel(spec, baseModel));
+		frame.setInferenceProfile(profile);
+		if (frameCache != null) {
+			frameCache.register(frame);
+		}
 		
-		return new BaseFrame(uri, frameModel);
+		return frame;
 	}
 
 }
@@ -1,20 +1,45 @@
 package org.marl.wafnm.core.impl;
 
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.marl.wafnm.core.api.IFrame;
 import org.marl.wafnm.core.api.IFrameFactory;
 import org.marl.wafnm.core.api.IFrameManager;
+import org.marl.wafnm.core.api.InferenceProfile;
 
+import com.hp.hpl.jena.ontology.OntModelSpec;
 import com.hp.hpl.jena.rdf.model.Model;
 
 /** Implements an in-memory frame manager.
  * 
- * <p>All nodes and graph are volatile.
+ * <p>All nodes and graph are volatile. Nodes are interned by a dictionary
+ * shared by all frames of the manager, so that frames built from the same
+ * vocabulary do not duplicate it.
  * 
- * <p>This implementation should be thread-safe.
+ * <p>This implementation is thread-safe: frames are registered in a 
+ * concurrent map, so that retrieving a frame never blocks.
+ * 
+ * <p>Managers created with a {@link FrameCache} keep the propositions of
+ * their least recently used frames on disk, within the cache budget. 
+ * Evicted frames are reloaded when retrieved, or when next accessed.
+ * 
+ * <p>Managers created with a {@link FrameJournal} record the changes of
+ * their frames into it, and recover the frames it holds when created: see
+ * {@link #checkpoint()} and {@link #close()}.
+ * 
+ * <p>Managers created from a {@link FrameImage} only read its directory:
+ * frames are opened, frozen, the first time they are retrieved, and thawed
+ * by their first change.
+ * 
+ * <p>Forks are {@link ForkFrame} frames, which are neither cached nor
+ * journaled: only their merged changes are.
  * 
  * <p>This manager expects a factory that produces {@link BaseFrame} frames.
  * 
@@ -25,7 +50,13 @@ public class MemFrameManager implements IFrameManager {
 
 	/////////////////////////////////////////////////////////////////////////////////////////////
 	// Internal state
-	protected Hashtable<String, IFrame> framesTable;
+	protected ConcurrentMap<String, IFrame> framesTable;
+	protected FrameCache frameCache;
+	protected NodeDictionary nodeDictionary;
+	protected FrameJournal frameJournal;
+	protected FrameImage frameImage;
+	// URIs of the image frames that are neither opened nor removed
+	protected Set<String> imageUris;
 	
 	/////////////////////////////////////////////////////////////////////////////////////////////
 	// Dependencies
@@ -34,14 +65,230 @@ public class MemFrameManager implements IFrameManager {
 	public static final String MEM_FRAME_URI_PREFIX 
 		= "http://wafnm.marl.org/vocabulary/1/memframe"; 
 	
+	// all in-memory managers share the same namespace
+	static final UriAllocator frameAllocator 
+		= new UriAllocator(MEM_FRAME_URI_PREFIX, System.currentTimeMillis());
+	
 	/** Initialize a new frame manager with a default
 	 * {@link MemFrameFactory}.
 	 * 
 	 */
 	public MemFrameManager() 
 	{
-		this.framesTable = new Hashtable<String, IFrame>();
-		this.frameFactory = new MemFrameFactory();
+		this.framesTable = new ConcurrentHashMap<String, IFrame>();
+		this.nodeDictionary = new NodeDictionary();
+		this.frameFactory = new MemFrameFactory(nodeDictionary);
+	}
+
+	/** Initialize a new frame manager with a {@link MemFrameFactory}
+	 * which frames infer propositions as specified.
+	 * 
+	 * @param inference The Jena ontology specification of the frames 
+	 * models, such as {@link MemFrameFactory#DEFAULT_INFERENCE}, or
+	 * {@link OntModelSpec#OWL_MEM} for no inference.
+	 */
+	public MemFrameManager(OntModelSpec inference) 
+	{
+		this.framesTable = new ConcurrentHashMap<String, IFrame>();
+		this.nodeDictionary = new NodeDictionary();
+		this.frameFactory = new MemFrameFactory(nodeDictionary, inference);
+	}
+
+	/** Initialize a new frame manager with a {@link MemFrameFactory} 
+	 * which frames may be evicted from memory.
+	 * 
+	 * @param frameCache The cache frames are registered to.
+	 */
+	public MemFrameManager(FrameCache frameCache) 
+	{
+		this(frameCache, null);
+		
+		if (frameCache == null) {
+			throw new IllegalArgumentException();
+		}
+	}
+	
+	/** Initialize a new frame manager with a {@link MemFrameFactory}, and
+	 * recover the frames held by a journal.
+	 * 
+	 * @param frameCache The cache frames are registered to, or 
+	 * <code>null</code> if frames are never evicted.
+	 * @param frameJournal The journal frames changes are recorded into, or
+	 * <code>null</code> if frames are volatile.
+	 * 
+	 * @throws IllegalStateException if the journal cannot be recovered.
+	 */
+	public MemFrameManager(FrameCache frameCache, FrameJournal frameJournal) 
+	{
+		this.framesTable = new ConcurrentHashMap<String, IFrame>();
+		this.nodeDictionary = new NodeDictionary();
+		this.frameCache = frameCache;
+		this.frameFactory = frameCache != null ?
+				new MemFrameFactory(nodeDictionary, frameCache)
+				: new MemFrameFactory(nodeDictionary);
+		
+		if (frameJournal != null) 
+		{
+			// recovered frames are not journaled again
+			frameJournal.open(this);
+			this.frameJournal = frameJournal;
+		}
+	}
+	
+	/** Initialize a new frame manager with the frames of an image, which are
+	 * opened when first retrieved.
+	 * 
+	 * @param frameImage The image.
+	 */
+	public MemFrameManager(FrameImage frameImage) 
+	{
+		if (frameImage == null) {
+			throw new IllegalArgumentException();
+		}
+		
+		this.framesTable = new ConcurrentHashMap<String, IFrame>();
+		this.nodeDictionary = frameImage.getNodeDictionary();
+		this.frameFactory = new MemFrameFactory(nodeDictionary);
+		this.frameImage = frameImage;
+		this.imageUris = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		
+		for (String frameUri : frameImage.getFrameUris()) 
+		{
+			imageUris.add(frameUri);
+			skipFrameId(frameUri);
+		}
+	}
+	
+	/** Answers the dictionary shared by all frames of this manager.
+	 * 
+	 * @return The node dictionary.
+	 */
+	public NodeDictionary getNodeDictionary() {
+		return nodeDictionary;
+	}
+	
+	/** Answers the cache frames are registered to.
+	 * 
+	 * @return The frame cache, or <code>null</code> if frames are never 
+	 * evicted.
+	 */
+	public FrameCache getFrameCache() {
+		return frameCache;
+	}
+	
+	/** Answers the journal frames changes are recorded into.
+	 * 
+	 * @return The frame journal, or <code>null</code> if frames are 
+	 * volatile.
+	 */
+	public FrameJournal getFrameJournal() {
+		return frameJournal;
+	}
+	
+	/** Writes a checkpoint of all frames into the journal, so that the 
+	 * next recovery only replays the changes made afterwards.
+	 * 
+	 * @throws IllegalStateException if this manager has no journal, or the
+	 * checkpoint cannot be written.
+	 */
+	public void checkpoint()
+	{
+		if (frameJournal == null) {
+			throw new IllegalStateException("Frames are not journaled");
+		}
+		frameJournal.checkpoint();
+	}
+	
+	/** Forces the journal to disk, and closes it.
+	 * 
+	 * <p>Frames remain usable, but their changes are not journaled anymore.
+	 */
+	public void close()
+	{
+		if (frameJournal != null) {
+			frameJournal.close();
+		}
+	}
+	
+	/** Answers a recovered frame, creating it if needed.
+	 * 
+	 * @param frameUri The frame URI.
+	 * @param profile The inference profile the frame was created with.
+	 * 
+	 * @return The frame.
+	 */
+	BaseFrame restoreFrame(String frameUri, InferenceProfile profile)
+	{
+		IFrame frame = framesTable.get(frameUri);
+		
+		if (frame == null)
+		{
+			frame = frameFactory.createFrame(frameUri, null, profile);
+			((BaseFrame) frame).setFrameManager(this);
+			framesTable.put(frameUri, frame);
+			skipFrameId(frameUri);
+		}
+		
+		return (BaseFrame) frame;
+	}
+	
+	/** Opens a frame of the image, and the frames it binds, restoring their
+	 * bindings.
+	 * 
+	 * <p>Opened frames are only published once all bindings are restored.
+	 * 
+	 * @param uri The frame URI.
+	 * 
+	 * @return The opened frame, or <code>null</code> if it has been removed.
+	 */
+	protected synchronized IFrame openFrame(String uri)
+	{
+		Map<String, BaseFrame> opened = new HashMap<String, BaseFrame>();
+		
+		IFrame frame = openFrame(uri, opened);
+		framesTable.putAll(opened);
+		imageUris.removeAll(opened.keySet());
+		
+		return frame;
+	}
+	
+	private IFrame openFrame(String uri, Map<String, BaseFrame> opened)
+	{
+		IFrame frame = framesTable.get(uri);
+		if (frame == null) {
+			frame = opened.get(uri);
+		}
+		
+		if ((frame == null) && imageUris.contains(uri))
+		{
+			BaseFrame imageFrame = frameImage.openFrame(uri);
+			imageFrame.setFrameManager(this);
+			// frame is registered first, so that cyclic bindings terminate
+			opened.put(uri, imageFrame);
+			
+			for (String boundUri : frameImage.getBindings(uri))
+			{
+				IFrame otherFrame = openFrame(boundUri, opened);
+				if (otherFrame != null) {
+					imageFrame.restoreKnowledge(otherFrame);
+				}
+			}
+			frame = imageFrame;
+		}
+		
+		return frame;
+	}
+	
+	private static void skipFrameId(String frameUri)
+	{
+		// restored URIs are never allocated again
+		try {
+			frameAllocator.skipTo(Long.parseLong(
+					frameUri.substring(frameUri.lastIndexOf('#') + 1)) + 1);
+		}
+		catch (NumberFormatException e) {
+			// not allocated by this manager
+		}
 	}
 
 	
@@ -52,14 +299,34 @@ public class MemFrameManager implements IFrameManager {
 	@Override
 	public IFrame getFrame(String uri) 
 	{
-		return framesTable.get(uri) ;
+		IFrame frame = framesTable.get(uri);
+		
+		if ( (frame == null) && (imageUris != null) && imageUris.contains(uri) ) {
+			frame = openFrame(uri);
+		}
+		if ( (frame != null) && (frameCache != null) ) {
+			frameCache.touch(frame instanceof ForkFrame ? 
+					((ForkFrame) frame).getOrigin() : (BaseFrame) frame);
+		}
+		
+		return frame;
 	}
 
 	@Override
-	public IFrame createFrame(Model baseOntology) 
+	public IFrame createFrame(Model baseOntology) {
+		return createFrame(baseOntology, InferenceProfile.RDFS);
+	}
+	
+	/** {@inheritDoc}
+	 * 
+	 * <p>The profile is journaled, so that recovered frames infer as they
+	 * did.
+	 */
+	@Override
+	public IFrame createFrame(Model baseOntology, InferenceProfile profile) 
 	{
-		String frameUri = FrameUtils.generateUri(MEM_FRAME_URI_PREFIX);
-		IFrame frame = frameFactory.createFrame(frameUri, baseOntology);
+		String frameUri = frameAllocator.next();
+		IFrame frame = frameFactory.createFrame(frameUri, baseOntology, profile);
 		
 		if (! (frame instanceof BaseFrame) ) 
 		{
@@ -68,27 +335,124 @@ public class MemFrameManager implements IFrameManager {
 		}
 		
 		((BaseFrame) frame).setFrameManager(this);
-		framesTable.put(frameUri, frame);
+
+		// the frame is registered before it is journaled, so that a checkpoint
+		// either writes it, or keeps the segment of its creation
+		((BaseFrame) frame).frameLock.writeLock().lock();
+		try {
+			if (framesTable.putIfAbsent(frameUri, frame) != null) {
+				throw new IllegalStateException("Frame is already defined: " + frameUri);
+			}
+			if (frameJournal != null) {
+				frameJournal.frameCreated((BaseFrame) frame);
+			}
+		}
+		finally {
+			((BaseFrame) frame).frameLock.writeLock().unlock();
+		}
+		if (frameJournal != null) {
+			frameJournal.sync();
+		}
 		
 		return frame; 
 	}
 	
+	@Override
+	public IFrame forkFrame(String uri) 
+	{
+		IFrame parent = getFrame(uri);
+		if (parent == null) {
+			throw new IllegalStateException("Frame is undefined: " + uri);
+		}
+		
+		String forkUri = frameAllocator.next();
+		ForkFrame fork = ForkFrame.fork(forkUri, (BaseFrame) parent);
+		fork.setFrameManager(this);
+		if (framesTable.putIfAbsent(forkUri, fork) != null) {
+			throw new IllegalStateException("Frame is already defined: " + forkUri);
+		}
+		
+		return fork;
+	}
+	
+	@Override
+	public long mergeFrame(String forkUri) 
+	{
+		IFrame fork = framesTable.get(forkUri);
+		if (! (fork instanceof ForkFrame)) {
+			throw new IllegalStateException("Frame is not a fork: " + forkUri);
+		}
+		
+		long n = ((ForkFrame) fork).merge();
+		removeFrame(forkUri);
+		
+		return n;
+	}
+	
+	/** {@inheritDoc}
+	 * 
+	 * <p>The forks of the frame are removed first.
+	 */
 	@Override
 	public void removeFrame(String uri) 
 	{
-		if (getFrame(uri) == null) {
+		IFrame f;
+		if (imageUris != null) 
+		{
+			// an image frame is either opened, or not
+			synchronized (this) {
+				f = framesTable.remove(uri);
+				if ( (f == null) && imageUris.remove(uri) ) {
+					return;
+				}
+			}
+		}
+		else {
+			f = framesTable.remove(uri);
+		}
+		
+		if (f == null) {
 			throw new IllegalStateException("Frame is undefined: " + uri);
 		}
 		
-		IFrame f = framesTable.get(uri) ;
-		f.getModel().close();
-		framesTable.remove(uri);
+		for (IFrame other : framesTable.values())
+		{
+			if ( (other instanceof ForkFrame) && (((ForkFrame) other).getParent() == f) ) 
+			{
+				try {
+					removeFrame(other.getURI());
+				}
+				catch (IllegalStateException e) {
+					// removed concurrently
+				}
+			}
+		}
+		
+		((BaseFrame) f).close();
+		if (f instanceof ForkFrame) {
+			return;
+		}
+		if (frameCache != null) {
+			frameCache.unregister((BaseFrame) f);
+		}
+		if (frameJournal != null) 
+		{
+			frameJournal.frameRemoved(uri);
+			frameJournal.sync();
+		}
 	}
 
 
 	@Override
 	public List<IFrame> listFrames() 
 	{
+		if ( (imageUris != null) && ! imageUris.isEmpty() ) 
+		{
+			for (String uri : imageUris.toArray(new String[0])) {
+				getFrame(uri);
+			}
+		}
+		
 		ArrayList<IFrame> frames = new ArrayList<IFrame>();
 		frames.addAll(framesTable.values());
 		
@@ -97,7 +461,7 @@ public class MemFrameManager implements IFrameManager {
 
 	@Override
 	public long size() {
-		return framesTable.size();
+		return framesTable.size() + (imageUris != null ? imageUris.size() : 0);
 	}
 
 	
@@ -0,0 +1,298 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphEvents;
+import com.hp.hpl.jena.graph.GraphListener;
+import com.hp.hpl.jena.graph.GraphUtil;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+/** Indexes the nodes mentioned by the triples of a graph, so that whether
+ * the graph mentions a node is answered in constant time.
+ *
+ * <p>The index holds a Bloom filter, which rejects most absent nodes without
+ * probing the set, and the exact set of mentioned nodes. It is built when
+ * first used, and is then kept up to date as triples are added and
+ * removed: the nodes of a removed triple are only forgotten once no other
+ * triple mentions them. Bulk changes, or too many additions, require to
+ * build the index again.
+ *
+ * <p>Graphs which triples are not held in memory may be indexed by the
+ * Bloom filter only, which then never forgets removed nodes: the index
+ * only rejects absent nodes, and does not hold all nodes in memory.
+ *
+ * <p>While the index cannot be built, because the graph is being changed,
+ * or when the filter cannot tell, lookups are left to the caller, which
+ * should read the graph under its lock.
+ *
+ * @author kr1s
+ *
+ */
+public class MembershipIndex implements GraphListener {
+
+	static final int MIN_CAPACITY = 1024;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected Graph graph;
+	protected ReadWriteLock graphLock;
+	protected boolean exact;
+
+	// null while the index has to be built
+	protected volatile Members members;
+
+	/** Creates an index, and registers it as a listener of the given graph.
+	 *
+	 * <p>The graph is not read until the index is first used.
+	 *
+	 * @param graph The indexed graph.
+	 * @param graphLock The lock held by the graph writers.
+	 */
+	public MembershipIndex(Graph graph, ReadWriteLock graphLock)
+	{
+		this(graph, graphLock, true);
+	}
+
+	/** Creates an index, and registers it as a listener of the given graph.
+	 *
+	 * <p>The graph is not read until the index is first used.
+	 *
+	 * @param graph The indexed graph.
+	 * @param graphLock The lock held by the graph writers.
+	 * @param exact Whether the set of mentioned nodes is held, or only
+	 * their Bloom filter.
+	 */
+	public MembershipIndex(Graph graph, ReadWriteLock graphLock, boolean exact)
+	{
+		if ( (graph == null) || (graphLock == null) ) {
+			throw new IllegalArgumentException();
+		}
+
+		this.graph = graph;
+		this.graphLock = graphLock;
+		this.exact = exact;
+		graph.getEventManager().register(this);
+	}
+
+	/** Answers whether some triple of the indexed graph mentions a node, as
+	 * subject, predicate or object.
+	 *
+	 * @param node The node.
+	 *
+	 * @return Whether the node is mentioned, or <code>null</code> if this
+	 * index cannot tell: the graph should then be read.
+	 */
+	public Boolean contains(Node node)
+	{
+		Members m = members;
+		if (m == null)
+		{
+			m = build();
+			if (m == null) {
+				return null;
+			}
+		}
+
+		if (! m.filter.mightContain(node)) {
+			return Boolean.FALSE;
+		}
+		return (m.nodes != null) ? Boolean.valueOf(m.nodes.contains(node)) : null;
+	}
+
+	/** Drops the index, which is built again when next used, once the
+	 * triples of the indexed graph are released from memory.
+	 */
+	public void release() {
+		stale();
+	}
+
+	/** Unregisters this index from the indexed graph.
+	 */
+	public void detach()
+	{
+		graph.getEventManager().unregister(this);
+		members = null;
+	}
+
+	// builds the index, unless the graph is being changed
+	private synchronized Members build()
+	{
+		if (members != null) {
+			return members;
+		}
+
+		Lock readLock = graphLock.readLock();
+		if (! readLock.tryLock()) {
+			return null;
+		}
+		try {
+			Members m = new Members(Math.max(MIN_CAPACITY, 2 * graph.size()), exact);
+			ExtendedIterator<Triple> iterOnTriples = graph.find(Triple.ANY);
+			try {
+				while (iterOnTriples.hasNext()) {
+					m.add(iterOnTriples.next());
+				}
+			}
+			finally {
+				iterOnTriples.close();
+			}
+
+			members = m;
+			return m;
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	private void added(Triple t)
+	{
+		Members m = members;
+		if (m != null)
+		{
+			m.add(t);
+			if (m.filter.isSaturated()) {
+				members = null;
+			}
+		}
+	}
+
+	private void deleted(Triple t)
+	{
+		Members m = members;
+		if ( (m != null) && (m.nodes != null) )
+		{
+			// the triple is already removed from the graph
+			forget(m, t.getSubject());
+			forget(m, t.getPredicate());
+			forget(m, t.getObject());
+		}
+	}
+
+	private void forget(Members m, Node node)
+	{
+		if (m.nodes.contains(node) && ! GraphUtil.containsNode(graph, node)) {
+			m.nodes.remove(node);
+		}
+	}
+
+	private void stale() {
+		members = null;
+	}
+
+	/** Holds the nodes of the indexed triples.
+	 */
+	static class Members {
+
+		final BloomFilter filter;
+		// null if only the filter is held
+		final Set<Node> nodes;
+
+		Members(int capacity, boolean exact)
+		{
+			this.filter = new BloomFilter(3 * capacity);
+			this.nodes = exact ?
+					Collections.newSetFromMap(new ConcurrentHashMap<Node, Boolean>())
+					: null;
+		}
+
+		void add(Triple t)
+		{
+			add(t.getSubject());
+			add(t.getPredicate());
+			add(t.getObject());
+		}
+
+		void add(Node node)
+		{
+			if ( (nodes != null) ? nodes.add(node) : ! filter.mightContain(node) ) {
+				filter.add(node);
+			}
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															GraphListener
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public void notifyAddTriple(Graph g, Triple t) {
+		added(t);
+	}
+
+	@Override
+	public void notifyAddArray(Graph g, Triple[] triples)
+	{
+		for (Triple t : triples) {
+			added(t);
+		}
+	}
+
+	@Override
+	public void notifyAddList(Graph g, List<Triple> triples)
+	{
+		for (Triple t : triples) {
+			added(t);
+		}
+	}
+
+	@Override
+	public void notifyAddIterator(Graph g, Iterator<Triple> it) {
+		stale();
+	}
+
+	@Override
+	public void notifyAddGraph(Graph g, Graph added) {
+		stale();
+	}
+
+	@Override
+	public void notifyDeleteTriple(Graph g, Triple t) {
+		deleted(t);
+	}
+
+	@Override
+	public void notifyDeleteList(Graph g, List<Triple> triples)
+	{
+		for (Triple t : triples) {
+			deleted(t);
+		}
+	}
+
+	@Override
+	public void notifyDeleteArray(Graph g, Triple[] triples)
+	{
+		for (Triple t : triples) {
+			deleted(t);
+		}
+	}
+
+	@Override
+	public void notifyDeleteIterator(Graph g, Iterator<Triple> it) {
+		stale();
+	}
+
+	@Override
+	public void notifyDeleteGraph(Graph g, Graph removed) {
+		stale();
+	}
+
+	@Override
+	public void notifyEvent(Graph source, Object value)
+	{
+		// bulk removals
+		if (! GraphEvents.startRead.equals(value)
+				&& ! GraphEvents.finishRead.equals(value)) {
+			stale();
+		}
+	}
+}
@@ -0,0 +1,518 @@
+package org.marl.wafnm.core.impl;
+
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.List;
+
+import org.marl.wafnm.core.api.FrameContent;
+import org.marl.wafnm.core.api.IFrame;
+import org.marl.wafnm.core.api.IPreparedQuery;
+import org.marl.wafnm.core.api.IStatementVisitor;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+
+/** Measures the operations of a frame, as answered by
+ * {@link MonitoredFrameManager}.
+ *
+ * <p>Each operation is recorded into the metrics of this frame, which only
+ * hold totals, and into the metrics of the manager, which also hold latency
+ * histograms. Before queries, the reasoner of frames implemented by
+ * {@link AbstractFrame} is prepared apart, so that inference time is
+ * recorded as such.
+ *
+ * <p>Operations on the frame model, on the iterators answered by
+ * {@link #streamSem(String)}, and runs of prepared queries, are not 
+ * measured.
+ *
+ * @author kr1s
+ *
+ */
+public class MonitoredFrame implements IFrame, FrameMetricsMXBean {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected OperationMetrics frameMetrics = new OperationMetrics(false);
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected IFrame frame;
+	protected OperationMetrics managerMetrics;
+
+	/** Creates a monitored frame.
+	 *
+	 * @param frame The measured frame.
+	 * @param managerMetrics The metrics of the manager.
+	 */
+	MonitoredFrame(IFrame frame, OperationMetrics managerMetrics)
+	{
+		if ( (frame == null) || (managerMetrics == null) ) {
+			throw new IllegalArgumentException();
+		}
+
+		this.frame = frame;
+		this.managerMetrics = managerMetrics;
+	}
+
+	/** Answers the measured frame.
+	 *
+	 * @return The frame.
+	 */
+	public IFrame getFrame() {
+		return frame;
+	}
+
+	/** Answers the metrics of this frame.
+	 *
+	 * @return The frame metrics.
+	 */
+	public OperationMetrics getFrameMetrics() {
+		return frameMetrics;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															IFrame
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public String getURI() {
+		return frame.getURI();
+	}
+
+	@Override
+	public Model getModel() {
+		return frame.getModel();
+	}
+
+	@Override
+	public long size()
+	{
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			long n = frame.size();
+			succeeded = true;
+			return n;
+		}
+		finally {
+			record(FrameOperation.SIZE, start, succeeded);
+		}
+	}
+
+	@Override
+	public Resource find(String semUri)
+	{
+		prepareInference();
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			Resource sem = frame.find(semUri);
+			succeeded = true;
+			return sem;
+		}
+		finally {
+			record(FrameOperation.FIND, start, succeeded);
+		}
+	}
+
+	@Override
+	public long bindKnowledge(String frameUri)
+	{
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			long n = frame.bindKnowledge(frameUri);
+			succeeded = true;
+			return n;
+		}
+		finally {
+			record(FrameOperation.BIND_KNOWLEDGE, start, succeeded);
+		}
+	}
+
+	@Override
+	public long unbindKnowledge(String frameUri)
+	{
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			long n = frame.unbindKnowledge(frameUri);
+			succeeded = true;
+			return n;
+		}
+		finally {
+			record(FrameOperation.UNBIND_KNOWLEDGE, start, succeeded);
+		}
+	}
+
+	@Override
+	public boolean knows(String semUri)
+	{
+		prepareInference();
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			boolean known = frame.knows(semUri);
+			succeeded = true;
+			return known;
+		}
+		finally {
+			record(FrameOperation.KNOWS, start, succeeded);
+		}
+	}
+
+	@Override
+	public List<Statement> resolveSem(String semUri)
+	{
+		prepareInference();
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			List<Statement> smallWorld = frame.resolveSem(semUri);
+			succeeded = true;
+			return smallWorld;
+		}
+		finally {
+			record(FrameOperation.RESOLVE_SEM, start, succeeded);
+		}
+	}
+
+	@Override
+	public StmtIterator streamSem(String semUri)
+	{
+		prepareInference();
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			StmtIterator iterOnProps = frame.streamSem(semUri);
+			succeeded = true;
+			return iterOnProps;
+		}
+		finally {
+			record(FrameOperation.STREAM_SEM, start, succeeded);
+		}
+	}
+
+	@Override
+	public long visitSem(String semUri,
+			IStatementVisitor visitor,
+			long offset,
+			long limit)
+	{
+		prepareInference();
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			long n = frame.visitSem(semUri, visitor, offset, limit);
+			succeeded = true;
+			return n;
+		}
+		finally {
+			record(FrameOperation.VISIT_SEM, start, succeeded);
+		}
+	}
+
+	@Override
+	public List<Statement> resolveSmallWorld(String query)
+	{
+		prepareInference();
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			List<Statement> smallWorld = frame.resolveSmallWorld(query);
+			succeeded = true;
+			return smallWorld;
+		}
+		finally {
+			record(FrameOperation.RESOLVE_SMALL_WORLD, start, succeeded);
+		}
+	}
+
+	@Override
+	public long visitSmallWorld(String query, IStatementVisitor visitor)
+	{
+		prepareInference();
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			long n = frame.visitSmallWorld(query, visitor);
+			succeeded = true;
+			return n;
+		}
+		finally {
+			record(FrameOperation.VISIT_SMALL_WORLD, start, succeeded);
+		}
+	}
+
+	@Override
+	public String createSem(String semTypeUri,
+			String label,
+			String comment,
+			String lang)
+	{
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			String semUri = frame.createSem(semTypeUri, label, comment, lang);
+			succeeded = true;
+			return semUri;
+		}
+		finally {
+			record(FrameOperation.CREATE_SEM, start, succeeded);
+		}
+	}
+
+	@Override
+	public long dropSem(String semUri)
+	{
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			long n = frame.dropSem(semUri);
+			succeeded = true;
+			return n;
+		}
+		finally {
+			record(FrameOperation.DROP_SEM, start, succeeded);
+		}
+	}
+
+	@Override
+	public long learn(Model someKnowledge)
+	{
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			long n = frame.learn(someKnowledge);
+			succeeded = true;
+			return n;
+		}
+		finally {
+			record(FrameOperation.LEARN, start, succeeded);
+		}
+	}
+
+	@Override
+	public long learn(Iterator<Statement> someKnowledge)
+	{
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			long n = frame.learn(someKnowledge);
+			succeeded = true;
+			return n;
+		}
+		finally {
+			record(FrameOperation.LEARN, start, succeeded);
+		}
+	}
+
+	@Override
+	public long learn(InputStream in, String lang)
+	{
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			long n = frame.learn(in, lang);
+			succeeded = true;
+			return n;
+		}
+		finally {
+			record(FrameOperation.LEARN, start, succeeded);
+		}
+	}
+
+	@Override
+	public long learn(String subjectSemUri,
+			String propositionTypeUri,
+			String objectSemUri)
+	{
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			long n = frame.learn(subjectSemUri, propositionTypeUri, objectSemUri);
+			succeeded = true;
+			return n;
+		}
+		finally {
+			record(FrameOperation.LEARN, start, succeeded);
+		}
+	}
+
+	@Override
+	public long forget(Model someKnowledge)
+	{
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			long n = frame.forget(someKnowledge);
+			succeeded = true;
+			return n;
+		}
+		finally {
+			record(FrameOperation.FORGET, start, succeeded);
+		}
+	}
+
+	@Override
+	public long forget(String subjectSemUri,
+			String propositionTypeUri,
+			String objectSemUri)
+	{
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			long n = frame.forget(subjectSemUri, propositionTypeUri, objectSemUri);
+			succeeded = true;
+			return n;
+		}
+		finally {
+			record(FrameOperation.FORGET, start, succeeded);
+		}
+	}
+
+	@Override
+	public long freeze()
+	{
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			long n = frame.freeze();
+			succeeded = true;
+			return n;
+		}
+		finally {
+			record(FrameOperation.FREEZE, start, succeeded);
+		}
+	}
+
+	@Override
+	public boolean isFrozen() {
+		return frame.isFrozen();
+	}
+
+	@Override
+	public IFrame snapshot()
+	{
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			IFrame snapshot = frame.snapshot();
+			succeeded = true;
+			return snapshot;
+		}
+		finally {
+			record(FrameOperation.SNAPSHOT, start, succeeded);
+		}
+	}
+
+	@Override
+	public IPreparedQuery prepareQuery(String query)
+	{
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			IPreparedQuery prepared = frame.prepareQuery(query);
+			succeeded = true;
+			return prepared;
+		}
+		finally {
+			record(FrameOperation.PREPARE_QUERY, start, succeeded);
+		}
+	}
+
+	@Override
+	public long export(WritableByteChannel out,
+			String lang,
+			FrameContent content,
+			boolean withBoundKnowledge)
+	{
+		if (content != FrameContent.ASSERTED) {
+			prepareInference();
+		}
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			long n = frame.export(out, lang, content, withBoundKnowledge);
+			succeeded = true;
+			return n;
+		}
+		finally {
+			record(FrameOperation.EXPORT, start, succeeded);
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															FrameMetricsMXBean
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public long getSize() {
+		return frame.size();
+	}
+
+	@Override
+	public int getBoundFrameCount()
+	{
+		if (frame instanceof AbstractFrame) {
+			return ((AbstractFrame) frame).getBoundFrameCount();
+		}
+		return -1;
+	}
+
+	@Override
+	public double getInferenceMillis() {
+		return frameMetrics.getTotalNanos(FrameOperation.INFERENCE) / 1000000.0;
+	}
+
+	@Override
+	public OperationStatistics[] getOperations() {
+		return frameMetrics.getStatistics();
+	}
+
+	private void prepareInference()
+	{
+		if (frame instanceof AbstractFrame)
+		{
+			long nanos = ((AbstractFrame) frame).prepareInference();
+			if (nanos > 0) {
+				frameMetrics.record(FrameOperation.INFERENCE, nanos, true);
+				managerMetrics.record(FrameOperation.INFERENCE, nanos, true);
+			}
+		}
+	}
+
+	private void record(FrameOperation operation, long start, boolean succeeded)
+	{
+		long nanos = System.nanoTime() - start;
+		frameMetrics.record(operation, nanos, succeeded);
+		managerMetrics.record(operation, nanos, succeeded);
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															POJO
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public int hashCode() {
+		return frame.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (obj != null && obj instanceof IFrame)
+		{
+			return (obj.hashCode() == hashCode());
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return frame.toString();
+	}
+}
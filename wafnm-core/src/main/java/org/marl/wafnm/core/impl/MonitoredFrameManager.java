@@ -0,0 +1,438 @@
+package org.marl.wafnm.core.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.marl.wafnm.core.api.IFrame;
+import org.marl.wafnm.core.api.IFrameManager;
+import org.marl.wafnm.core.api.InferenceProfile;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/** Measures the operations of a frame manager, and of its frames, and
+ * publishes their metrics as JMX MBeans.
+ *
+ * <p>The manager MBean is named
+ * <code>org.marl.wafnm:type=FrameManager,name=&lt;name&gt;</code>, and
+ * holds latency histograms of all operations. Each frame retrieved through
+ * this manager is wrapped into a {@link MonitoredFrame}, which MBean is
+ * named <code>org.marl.wafnm:type=Frame,manager=&lt;name&gt;,uri=&lt;uri&gt;</code>.
+ *
+ * <p>Recording an operation neither allocates nor locks, so that the
+ * metrics can be left on in production. Frame sizes and binding fan-outs
+ * are only computed when read through JMX.
+ *
+ * @author kr1s
+ *
+ */
+public class MonitoredFrameManager implements IFrameManager, FrameManagerMetricsMXBean {
+
+	public static final String JMX_DOMAIN = "org.marl.wafnm";
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected String name;
+	protected OperationMetrics managerMetrics = new OperationMetrics(true);
+	protected ConcurrentMap<String, MonitoredFrame> monitoredFrames
+		= new ConcurrentHashMap<String, MonitoredFrame>();
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected IFrameManager frameManager;
+	protected MBeanServer mbeanServer;
+
+	/** Creates a monitored manager, and registers its MBean to the platform
+	 * MBean server.
+	 *
+	 * @param frameManager The measured manager.
+	 * @param name The name of the manager MBean.
+	 *
+	 * @throws IllegalStateException if the MBean cannot be registered.
+	 */
+	public MonitoredFrameManager(IFrameManager frameManager, String name)
+	{
+		this(frameManager, name, ManagementFactory.getPlatformMBeanServer());
+	}
+
+	/** Creates a monitored manager, and registers its MBean.
+	 *
+	 * @param frameManager The measured manager.
+	 * @param name The name of the manager MBean.
+	 * @param mbeanServer The MBean server, or <code>null</code> if metrics
+	 * are not published.
+	 *
+	 * @throws IllegalStateException if the MBean cannot be registered.
+	 */
+	public MonitoredFrameManager(IFrameManager frameManager, String name, MBeanServer mbeanServer)
+	{
+		if ( (frameManager == null) || (name == null) ) {
+			throw new IllegalArgumentException();
+		}
+
+		this.frameManager = frameManager;
+		this.name = name;
+		this.mbeanServer = mbeanServer;
+		register(this, getObjectName());
+	}
+
+	/** Answers the measured manager.
+	 *
+	 * @return The frame manager.
+	 */
+	public IFrameManager getFrameManager() {
+		return frameManager;
+	}
+
+	/** Answers the metrics of the operations of this manager and of its
+	 * frames.
+	 *
+	 * @return The manager metrics.
+	 */
+	public OperationMetrics getManagerMetrics() {
+		return managerMetrics;
+	}
+
+	/** Answers the name of the MBean of this manager.
+	 *
+	 * @return The object name.
+	 */
+	public ObjectName getObjectName() {
+		return objectName("type=FrameManager,name=" + ObjectName.quote(name));
+	}
+
+	/** Answers the name of the MBean of a frame.
+	 *
+	 * @param frameUri The frame URI.
+	 *
+	 * @return The object name.
+	 */
+	public ObjectName getObjectName(String frameUri) {
+		return objectName("type=Frame,manager=" + ObjectName.quote(name)
+				+ ",uri=" + ObjectName.quote(frameUri));
+	}
+
+	/** Unregisters the MBeans of this manager and of its frames.
+	 *
+	 * <p>Operations remain measured, but their metrics are not published
+	 * anymore.
+	 */
+	public void unregister()
+	{
+		for (String frameUri : monitoredFrames.keySet()) {
+			unregister(getObjectName(frameUri));
+		}
+		unregister(getObjectName());
+		mbeanServer = null;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 													IFrameManager
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public IFrame getFrame(String uri)
+	{
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			IFrame frame = monitored(frameManager.getFrame(uri));
+			succeeded = true;
+			return frame;
+		}
+		finally {
+			record(FrameOperation.GET_FRAME, start, succeeded);
+		}
+	}
+
+	@Override
+	public IFrame createFrame(Model baseOntology)
+	{
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			IFrame frame = monitored(frameManager.createFrame(baseOntology));
+			succeeded = true;
+			return frame;
+		}
+		finally {
+			record(FrameOperation.CREATE_FRAME, start, succeeded);
+		}
+	}
+
+	@Override
+	public IFrame createFrame(Model baseOntology, InferenceProfile profile)
+	{
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			IFrame frame = monitored(frameManager.createFrame(baseOntology, profile));
+			succeeded = true;
+			return frame;
+		}
+		finally {
+			record(FrameOperation.CREATE_FRAME, start, succeeded);
+		}
+	}
+
+	@Override
+	public IFrame forkFrame(String uri)
+	{
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			IFrame frame = monitored(frameManager.forkFrame(uri));
+			succeeded = true;
+			return frame;
+		}
+		finally {
+			record(FrameOperation.FORK_FRAME, start, succeeded);
+		}
+	}
+
+	@Override
+	public long mergeFrame(String forkUri)
+	{
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			long n = frameManager.mergeFrame(forkUri);
+			succeeded = true;
+			return n;
+		}
+		finally {
+			record(FrameOperation.MERGE_FRAME, start, succeeded);
+			if (succeeded) {
+				unmonitor(forkUri);
+			}
+		}
+	}
+
+	@Override
+	public void removeFrame(String uri)
+	{
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			frameManager.removeFrame(uri);
+			succeeded = true;
+		}
+		finally {
+			record(FrameOperation.REMOVE_FRAME, start, succeeded);
+			unmonitor(uri);
+		}
+	}
+
+	@Override
+	public List<IFrame> listFrames()
+	{
+		long start = System.nanoTime();
+		boolean succeeded = false;
+		try {
+			List<IFrame> frames = new ArrayList<IFrame>();
+			for (IFrame frame : frameManager.listFrames()) {
+				frames.add(monitored(frame));
+			}
+			succeeded = true;
+			return frames;
+		}
+		finally {
+			record(FrameOperation.LIST_FRAMES, start, succeeded);
+		}
+	}
+
+	@Override
+	public long size() {
+		return frameManager.size();
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 													FrameManagerMetricsMXBean
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public long getFrameCount() {
+		return frameManager.size();
+	}
+
+	@Override
+	public long getMaxFrameSize()
+	{
+		long max = 0;
+		for (IFrame frame : frameManager.listFrames()) {
+			max = Math.max(max, frame.size());
+		}
+		return max;
+	}
+
+	@Override
+	public String getLargestFrame()
+	{
+		String largest = null;
+		long max = -1;
+		for (IFrame frame : frameManager.listFrames())
+		{
+			long n = frame.size();
+			if (n > max)
+			{
+				max = n;
+				largest = frame.getURI();
+			}
+		}
+		return largest;
+	}
+
+	@Override
+	public int getMaxBoundFrameCount()
+	{
+		int max = 0;
+		for (IFrame frame : frameManager.listFrames())
+		{
+			if (frame instanceof AbstractFrame) {
+				max = Math.max(max, ((AbstractFrame) frame).getBoundFrameCount());
+			}
+		}
+		return max;
+	}
+
+	@Override
+	public double getMeanBoundFrameCount()
+	{
+		long bindings = 0;
+		long frames = 0;
+		for (IFrame frame : frameManager.listFrames())
+		{
+			if (frame instanceof AbstractFrame)
+			{
+				bindings += ((AbstractFrame) frame).getBoundFrameCount();
+				frames++;
+			}
+		}
+		return frames > 0 ? (double) bindings / frames : 0;
+	}
+
+	@Override
+	public double getInferenceMillis() {
+		return managerMetrics.getTotalNanos(FrameOperation.INFERENCE) / 1000000.0;
+	}
+
+	@Override
+	public OperationStatistics[] getOperations() {
+		return managerMetrics.getStatistics();
+	}
+
+	// wraps a frame, registering its MBean the first time
+	private IFrame monitored(IFrame frame)
+	{
+		if (frame == null) {
+			return null;
+		}
+
+		MonitoredFrame monitored = monitoredFrames.get(frame.getURI());
+		if (monitored == null)
+		{
+			monitored = new MonitoredFrame(frame, managerMetrics);
+			MonitoredFrame previous = monitoredFrames.putIfAbsent(frame.getURI(), monitored);
+			if (previous != null) {
+				return previous;
+			}
+			register(monitored, getObjectName(frame.getURI()));
+		}
+
+		return monitored;
+	}
+
+	// removing a frame also removes its forks
+	private void unmonitor(String uri)
+	{
+		for (String frameUri : monitoredFrames.keySet())
+		{
+			MonitoredFrame monitored = monitoredFrames.get(frameUri);
+			if ( (monitored != null) && (frameUri.equals(uri) || isForkOf(monitored.getFrame(), uri))
+					&& monitoredFrames.remove(frameUri, monitored) ) {
+				unregister(getObjectName(frameUri));
+			}
+		}
+	}
+
+	private static boolean isForkOf(IFrame frame, String uri)
+	{
+		while (frame instanceof ForkFrame)
+		{
+			frame = ((ForkFrame) frame).getParent();
+			if (frame.getURI().equals(uri)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void record(FrameOperation operation, long start, boolean succeeded) {
+		managerMetrics.record(operation, System.nanoTime() - start, succeeded);
+	}
+
+	private void register(Object mbean, ObjectName objectName)
+	{
+		MBeanServer server = mbeanServer;
+		if (server == null) {
+			return;
+		}
+
+		try {
+			server.registerMBean(mbean, objectName);
+		}
+		catch (JMException e) {
+			throw new IllegalStateException("Cannot register MBean: " + objectName, e);
+		}
+	}
+
+	private void unregister(ObjectName objectName)
+	{
+		MBeanServer server = mbeanServer;
+		if ( (server == null) || ! server.isRegistered(objectName) ) {
+			return;
+		}
+
+		try {
+			server.unregisterMBean(objectName);
+		}
+		catch (JMException e) {
+			throw new IllegalStateException("Cannot unregister MBean: " + objectName, e);
+		}
+	}
+
+	private static ObjectName objectName(String properties)
+	{
+		try {
+			return new ObjectName(JMX_DOMAIN + ":" + properties);
+		}
+		catch (JMException e) {
+			throw new IllegalArgumentException("Invalid MBean name: " + properties, e);
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 													POJO
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public int hashCode() {
+		return frameManager.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return frameManager.equals(obj);
+	}
+
+	@Override
+	public String toString() {
+		return frameManager.toString();
+	}
+}
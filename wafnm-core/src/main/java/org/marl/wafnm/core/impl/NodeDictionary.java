@@ -0,0 +1,127 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.hp.hpl.jena.graph.Node;
+
+/** Interns nodes to compact integer identifiers.
+ *
+ * <p>A dictionary is shared by all frames of a manager: each URI or literal
+ * is then held once in memory, whatever the count of frames that reference
+ * it, while frames only store identifiers.
+ *
+ * <p>Identifiers are allocated in sequence from 0, and are never reused:
+ * nodes are kept in the dictionary for its whole life.
+ *
+ * <p>This implementation is thread-safe: encoding a known node, and decoding
+ * an identifier, never block.
+ *
+ * @author kr1s
+ *
+ */
+public class NodeDictionary {
+
+	/** The identifier answered when looking up an unknown node.
+	 */
+	public static final int UNKNOWN = -1;
+
+	static final int INITIAL_CAPACITY = 1024;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected ConcurrentMap<Node, Integer> ids;
+
+	// nodes by identifier, replaced as it grows
+	protected volatile Node[] nodes;
+
+	// guarded by this
+	protected int count;
+
+	/** Creates an empty dictionary.
+	 */
+	public NodeDictionary()
+	{
+		this.ids = new ConcurrentHashMap<Node, Integer>(INITIAL_CAPACITY);
+		this.nodes = new Node[INITIAL_CAPACITY];
+	}
+
+	/** Answers the identifier of a node, interning the node if needed.
+	 *
+	 * @param node A node.
+	 *
+	 * @return The node identifier.
+	 */
+	public int encode(Node node)
+	{
+		Integer id = ids.get(node);
+		if (id != null) {
+			return id;
+		}
+
+		synchronized (this)
+		{
+			id = ids.get(node);
+			if (id != null) {
+				return id;
+			}
+
+			if (count == Integer.MAX_VALUE) {
+				throw new IllegalStateException("Node dictionary is full");
+			}
+			Node[] table = nodes;
+			if (count == table.length)
+			{
+				Node[] grown = new Node[(int) Math.min(2L * table.length, Integer.MAX_VALUE)];
+				System.arraycopy(table, 0, grown, 0, count);
+				table = grown;
+			}
+			table[count] = node;
+			nodes = table;
+
+			// the node is stored before its identifier is published
+			ids.put(node, count);
+			return count++;
+		}
+	}
+
+	/** Answers the identifier of a node, without interning it.
+	 *
+	 * @param node A node.
+	 *
+	 * @return The node identifier, or {@link #UNKNOWN} if the node has never
+	 * been encoded.
+	 */
+	public int lookup(Node node)
+	{
+		Integer id = ids.get(node);
+		return id != null ? id : UNKNOWN;
+	}
+
+	/** Answers the node of an identifier.
+	 *
+	 * @param id An identifier answered by {@link #encode(Node)}.
+	 *
+	 * @return The interned node.
+	 */
+	public Node decode(int id) {
+		return nodes[id];
+	}
+
+	/** Answers the count of interned nodes.
+	 *
+	 * @return The dictionary size.
+	 */
+	public int size() {
+		return ids.size();
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															POJO
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public String toString() {
+		return new StringBuffer("NodeDictionary (").append(size()).append(")").toString();
+	}
+}
@@ -0,0 +1,188 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.hp.hpl.jena.graph.Capabilities;
+import com.hp.hpl.jena.graph.Factory;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphUtil;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.reasoner.InfGraph;
+import com.hp.hpl.jena.reasoner.Reasoner;
+import com.hp.hpl.jena.reasoner.ReasonerException;
+
+/** Holds the inference closure of a base ontology, shared read-only by all
+ * the frames built on it, as answered by {@link OntologyClosureCache}.
+ *
+ * <p>The ontology is bound once as the schema of the reasoner, which
+ * computes its closure. Frames still manage a copy of the ontology, which
+ * they may forget, but it is hidden from their reasoners: rules only fire
+ * for the propositions frames add to the ontology. A frame that forgets a
+ * proposition of the ontology falls back to the unbound reasoner.
+ *
+ * @author kr1s
+ *
+ */
+public class OntologyClosure {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected Graph ontology;
+	protected Reasoner schemaReasoner;
+	protected AtomicLong boundCount = new AtomicLong();
+	protected AtomicLong divergedCount = new AtomicLong();
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected Reasoner reasoner;
+
+	/** Computes the closure of an ontology.
+	 *
+	 * @param reasoner The reasoner of the frames built on the ontology.
+	 * @param ontology The ontology, which is copied.
+	 */
+	OntologyClosure(Reasoner reasoner, Graph ontology)
+	{
+		if ( (reasoner == null) || (ontology == null) ) {
+			throw new IllegalArgumentException();
+		}
+
+		this.reasoner = reasoner;
+		this.ontology = Factory.createGraphMem();
+		GraphUtil.addInto(this.ontology, ontology);
+		this.schemaReasoner = reasoner.bindSchema(this.ontology);
+	}
+
+	/** Answers the copy of the ontology, which must not be changed.
+	 *
+	 * @return The ontology graph.
+	 */
+	public Graph getOntology() {
+		return ontology;
+	}
+
+	/** Answers the count of frames models bound to this closure.
+	 *
+	 * @return The bound count.
+	 */
+	public long getBoundCount() {
+		return boundCount.get();
+	}
+
+	/** Answers the count of frames models that forgot part of the ontology,
+	 * and no longer share this closure.
+	 *
+	 * @return The diverged count.
+	 */
+	public long getDivergedCount() {
+		return divergedCount.get();
+	}
+
+	/** Answers a reasoner for the model of a frame.
+	 *
+	 * @param baseGraph The base graph of the frame, which holds a copy of
+	 * the ontology.
+	 *
+	 * @return The reasoner of the frame model.
+	 */
+	public Reasoner getFrameReasoner(Graph baseGraph)
+	{
+		if (baseGraph == null) {
+			throw new IllegalArgumentException();
+		}
+		return new FrameReasoner(baseGraph);
+	}
+
+	/** Answers whether a triple belongs to the ontology.
+	 *
+	 * @param t The triple.
+	 *
+	 * @return <code>true</code> if the ontology holds the triple.
+	 */
+	boolean contains(Triple t) {
+		return ontology.contains(t);
+	}
+
+	/** Binds the propositions of a frame to the reasoner of this closure,
+	 * the ontology being hidden from them.
+	 *
+	 * @param data The propositions of the frame.
+	 *
+	 * @return The inference graph.
+	 */
+	InfGraph bindShared(Graph data) {
+		return schemaReasoner.bind(new OntologyClosureGraph.Hiding(data, ontology));
+	}
+
+	/** Binds the propositions of a frame to the unbound reasoner.
+	 *
+	 * @param data The propositions of the frame.
+	 *
+	 * @return The inference graph.
+	 */
+	InfGraph bindAlone(Graph data) {
+		return reasoner.bind(data);
+	}
+
+	/** Binds the models of a single frame to the closure, and delegates
+	 * everything else to the unbound reasoner.
+	 */
+	class FrameReasoner implements Reasoner {
+
+		private final Graph baseGraph;
+
+		FrameReasoner(Graph baseGraph) {
+			this.baseGraph = baseGraph;
+		}
+
+		@Override
+		public InfGraph bind(Graph data) throws ReasonerException
+		{
+			boundCount.incrementAndGet();
+			return new OntologyClosureGraph(OntologyClosure.this, this, data, baseGraph);
+		}
+
+		@Override
+		public Reasoner bindSchema(Graph tbox) throws ReasonerException {
+			return reasoner.bindSchema(tbox);
+		}
+
+		@Override
+		public Reasoner bindSchema(Model tbox) throws ReasonerException {
+			return reasoner.bindSchema(tbox);
+		}
+
+		@Override
+		public void setDerivationLogging(boolean logOn) {
+			reasoner.setDerivationLogging(logOn);
+		}
+
+		@Override
+		public void setParameter(Property parameterUri, Object value) {
+			reasoner.setParameter(parameterUri, value);
+		}
+
+		@Override
+		public Model getReasonerCapabilities() {
+			return reasoner.getReasonerCapabilities();
+		}
+
+		@Override
+		public void addDescription(Model configSpec, Resource base) {
+			reasoner.addDescription(configSpec, base);
+		}
+
+		@Override
+		public boolean supportsProperty(Property property) {
+			return reasoner.supportsProperty(property);
+		}
+
+		@Override
+		public Capabilities getGraphCapabilities() {
+			return reasoner.getGraphCapabilities();
+		}
+	}
+}
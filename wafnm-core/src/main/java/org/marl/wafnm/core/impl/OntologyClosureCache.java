@@ -0,0 +1,229 @@
+package org.marl.wafnm.core.impl;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.ontology.OntModelSpec;
+
+/** Caches the inference closures of the base ontologies of frames, by
+ * ontology specification and content hash.
+ *
+ * <p>The content hash of an ontology does not depend on the order of its
+ * triples: frames created from equal ontologies share the same closure,
+ * whatever model holds them. Blank nodes are hashed by identifier, so that
+ * two parses of the same document are not equal.
+ *
+ * <p>The least recently used closures are evicted once the cache holds its
+ * capacity; frames keep the closures they were built on.
+ *
+ * @author kr1s
+ *
+ */
+public class OntologyClosureCache {
+
+	public static final int DEFAULT_CAPACITY = 64;
+
+	private static final OntologyClosureCache shared = new OntologyClosureCache(DEFAULT_CAPACITY);
+
+	private static final byte[] SEPARATOR = { 0 };
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected Map<Key, OntologyClosure> closures;
+	protected AtomicLong hits = new AtomicLong();
+	protected AtomicLong misses = new AtomicLong();
+
+	/** Creates a cache.
+	 *
+	 * @param capacity The maximum count of cached closures.
+	 */
+	public OntologyClosureCache(final int capacity)
+	{
+		if (capacity <= 0) {
+			throw new IllegalArgumentException();
+		}
+
+		this.closures = new LinkedHashMap<Key, OntologyClosure>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, OntologyClosure> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/** Answers the cache shared by all frame factories.
+	 *
+	 * @return The shared cache.
+	 */
+	public static OntologyClosureCache getShared() {
+		return shared;
+	}
+
+	/** Answers the closure of an ontology, computing it unless cached.
+	 *
+	 * <p>The closure is computed while the cache is not locked, so that
+	 * two threads may compute the same closure at once: the first one
+	 * cached is kept.
+	 *
+	 * @param inference The specification of the models of the frames built
+	 * on the ontology, which must have a reasoner.
+	 * @param ontology The ontology, which is copied.
+	 *
+	 * @return The closure.
+	 */
+	public OntologyClosure get(OntModelSpec inference, Graph ontology)
+	{
+		if ( (inference == null) || (inference.getReasoner() == null) || (ontology == null) ) {
+			throw new IllegalArgumentException();
+		}
+
+		Key key = new Key(inference, ontology);
+		synchronized (closures)
+		{
+			OntologyClosure closure = closures.get(key);
+			if (closure != null)
+			{
+				hits.incrementAndGet();
+				return closure;
+			}
+		}
+
+		misses.incrementAndGet();
+		OntologyClosure closure = new OntologyClosure(inference.getReasoner(), ontology);
+		synchronized (closures)
+		{
+			OntologyClosure cached = closures.get(key);
+			if (cached != null) {
+				return cached;
+			}
+			closures.put(key, closure);
+		}
+
+		return closure;
+	}
+
+	/** Answers the count of closures answered from the cache.
+	 *
+	 * @return The hit count.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/** Answers the count of closures computed.
+	 *
+	 * @return The miss count.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/** Answers the count of cached closures.
+	 *
+	 * @return The cache size.
+	 */
+	public int size()
+	{
+		synchronized (closures) {
+			return closures.size();
+		}
+	}
+
+	/** Evicts all closures.
+	 */
+	public void clear()
+	{
+		synchronized (closures) {
+			closures.clear();
+		}
+	}
+
+	/** Identifies an ontology by the sum of the digests of its triples,
+	 * which does not depend on their order.
+	 */
+	static final class Key {
+
+		final OntModelSpec inference;
+		final int size;
+		long high;
+		long low;
+
+		Key(OntModelSpec inference, Graph ontology)
+		{
+			this.inference = inference;
+			this.size = ontology.size();
+
+			MessageDigest digest = newDigest();
+			Iterator<Triple> triples = ontology.find(Node.ANY, Node.ANY, Node.ANY);
+			while (triples.hasNext())
+			{
+				Triple t = triples.next();
+				update(digest, t.getSubject());
+				update(digest, t.getPredicate());
+				update(digest, t.getObject());
+				byte[] d = digest.digest();
+				high += toLong(d, 0);
+				low += toLong(d, 8);
+			}
+		}
+
+		private static MessageDigest newDigest()
+		{
+			try {
+				return MessageDigest.getInstance("MD5");
+			}
+			catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("Cannot hash ontologies : " + e, e);
+			}
+		}
+
+		private static void update(MessageDigest digest, Node node)
+		{
+			if (node.isURI()) {
+				digest.update((byte) 'U');
+			}
+			else if (node.isBlank()) {
+				digest.update((byte) 'B');
+			}
+			else {
+				digest.update((byte) 'L');
+			}
+			digest.update(node.toString(null, true).getBytes(BinaryRdfCodec.UTF8));
+			digest.update(SEPARATOR);
+		}
+
+		private static long toLong(byte[] bytes, int offset)
+		{
+			long l = 0;
+			for (int k = offset ; k < offset + 8 ; k++) {
+				l = (l << 8) | (bytes[k] & 0xff);
+			}
+			return l;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (high ^ (high >>> 32) ^ low) * 31 + size;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (! (obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return (inference == other.inference) && (size == other.size)
+					&& (high == other.high) && (low == other.low);
+		}
+	}
+}
@@ -0,0 +1,304 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.Iterator;
+import java.util.List;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphEvents;
+import com.hp.hpl.jena.graph.GraphListener;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.TripleMatch;
+import com.hp.hpl.jena.graph.impl.GraphBase;
+import com.hp.hpl.jena.graph.impl.WrappedGraph;
+import com.hp.hpl.jena.reasoner.BaseInfGraph;
+import com.hp.hpl.jena.reasoner.Derivation;
+import com.hp.hpl.jena.reasoner.InfGraph;
+import com.hp.hpl.jena.reasoner.Reasoner;
+import com.hp.hpl.jena.reasoner.ValidityReport;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.Filter;
+
+/** Implements the inference graph of a frame built on a shared
+ * {@link OntologyClosure}.
+ *
+ * <p>This graph delegates to an inference graph bound to the closure,
+ * until the frame forgets a proposition of the ontology: it then delegates
+ * to an inference graph bound to the unbound reasoner, which is prepared
+ * again from all the propositions of the frame. Forgetting is watched on
+ * the base graph of the frame, as the frame changes it, so that the
+ * delegate is only replaced under the frame write lock.
+ *
+ * @author kr1s
+ *
+ */
+public class OntologyClosureGraph extends WrappedGraph implements InfGraph {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected Graph data;
+	protected volatile boolean diverged;
+	protected GraphListener forgetting = new Forgetting();
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected OntologyClosure closure;
+	protected Reasoner reasoner;
+	protected Graph baseGraph;
+
+	/** Binds the propositions of a frame to a closure.
+	 *
+	 * @param closure The closure of the frame base ontology.
+	 * @param reasoner The reasoner answered as the one of this graph.
+	 * @param data The propositions of the frame, and of its sub-models.
+	 * @param baseGraph The base graph of the frame.
+	 */
+	OntologyClosureGraph(OntologyClosure closure, Reasoner reasoner, Graph data, Graph baseGraph)
+	{
+		super(closure.bindShared(data));
+
+		this.closure = closure;
+		this.reasoner = reasoner;
+		this.data = data;
+		this.baseGraph = baseGraph;
+		baseGraph.getEventManager().register(forgetting);
+	}
+
+	/** Answers whether this graph still shares the closure of the ontology.
+	 *
+	 * @return <code>false</code> once the frame forgot part of the ontology.
+	 */
+	public boolean isShared() {
+		return ! diverged;
+	}
+
+	/** Answers whether the delegate is prepared.
+	 *
+	 * @return <code>true</code> if queries will not prepare the delegate.
+	 */
+	public boolean isPrepared() {
+		return (base instanceof BaseInfGraph) && ((BaseInfGraph) base).isPrepared();
+	}
+
+	private InfGraph delegate() {
+		return (InfGraph) base;
+	}
+
+	// guarded by the frame write lock
+	private void diverge()
+	{
+		if (diverged) {
+			return;
+		}
+
+		closure.divergedCount.incrementAndGet();
+		base = closure.bindAlone(data);
+		bud = null;
+		diverged = true;
+	}
+
+	private void checkForgotten(Iterator<Triple> forgotten)
+	{
+		while (! diverged && forgotten.hasNext())
+		{
+			if (closure.contains(forgotten.next())) {
+				diverge();
+			}
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															InfGraph
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public Graph getRawGraph() {
+		return data;
+	}
+
+	@Override
+	public Reasoner getReasoner() {
+		return reasoner;
+	}
+
+	@Override
+	public void rebind(Graph data)
+	{
+		this.data = data;
+		base = diverged ? closure.bindAlone(data) : closure.bindShared(data);
+		bud = null;
+	}
+
+	@Override
+	public void rebind() {
+		delegate().rebind();
+	}
+
+	@Override
+	public void prepare() {
+		delegate().prepare();
+	}
+
+	@Override
+	public void reset() {
+		delegate().reset();
+	}
+
+	@Override
+	public Node getGlobalProperty(Node property) {
+		return delegate().getGlobalProperty(property);
+	}
+
+	@Override
+	public boolean testGlobalProperty(Node property) {
+		return delegate().testGlobalProperty(property);
+	}
+
+	@Override
+	public ValidityReport validate() {
+		return delegate().validate();
+	}
+
+	@Override
+	public ExtendedIterator<Triple> find(Node subject, Node property, Node object, Graph param) {
+		return delegate().find(subject, property, object, param);
+	}
+
+	@Override
+	public void setDerivationLogging(boolean logOn) {
+		delegate().setDerivationLogging(logOn);
+	}
+
+	@Override
+	public Iterator<Derivation> getDerivation(Triple triple) {
+		return delegate().getDerivation(triple);
+	}
+
+	@Override
+	public Graph getDeductionsGraph() {
+		return delegate().getDeductionsGraph();
+	}
+
+	@Override
+	public void close()
+	{
+		detach();
+		super.close();
+	}
+
+	/** Stops following the changes of the base graph, without closing the
+	 * graphs this graph reads, as {@link #close()} does.
+	 */
+	void detach() {
+		baseGraph.getEventManager().unregister(forgetting);
+	}
+
+	/** Hides the propositions of the ontology from the reasoner bound to
+	 * the closure, which holds them already.
+	 */
+	static class Hiding extends GraphBase {
+
+		private final Graph data;
+		private final Graph hidden;
+
+		Hiding(Graph data, Graph hidden)
+		{
+			this.data = data;
+			this.hidden = hidden;
+		}
+
+		@Override
+		protected ExtendedIterator<Triple> graphBaseFind(TripleMatch m)
+		{
+			return data.find(m).filterDrop(new Filter<Triple>() {
+				@Override
+				public boolean accept(Triple t) {
+					return hidden.contains(t);
+				}
+			});
+		}
+
+		@Override
+		protected boolean graphBaseContains(Triple t) {
+			return data.contains(t) && ! hidden.contains(t);
+		}
+
+		@Override
+		public void performAdd(Triple t) {
+			data.add(t);
+		}
+
+		@Override
+		public void performDelete(Triple t) {
+			data.delete(t);
+		}
+	}
+
+	/** Watches the base graph of the frame for forgotten propositions of
+	 * the ontology.
+	 */
+	class Forgetting implements GraphListener {
+
+		@Override
+		public void notifyAddTriple(Graph g, Triple t) {
+		}
+
+		@Override
+		public void notifyAddArray(Graph g, Triple[] triples) {
+		}
+
+		@Override
+		public void notifyAddList(Graph g, List<Triple> triples) {
+		}
+
+		@Override
+		public void notifyAddIterator(Graph g, Iterator<Triple> it) {
+		}
+
+		@Override
+		public void notifyAddGraph(Graph g, Graph added) {
+		}
+
+		@Override
+		public void notifyDeleteTriple(Graph g, Triple t)
+		{
+			if (! diverged && closure.contains(t)) {
+				diverge();
+			}
+		}
+
+		@Override
+		public void notifyDeleteList(Graph g, List<Triple> triples) {
+			checkForgotten(triples.iterator());
+		}
+
+		@Override
+		public void notifyDeleteArray(Graph g, Triple[] triples)
+		{
+			for (Triple t : triples) {
+				notifyDeleteTriple(g, t);
+			}
+		}
+
+		@Override
+		public void notifyDeleteIterator(Graph g, Iterator<Triple> it) {
+			// the iterator may have been consumed already
+			diverge();
+		}
+
+		@Override
+		public void notifyDeleteGraph(Graph g, Graph removed) {
+			checkForgotten(removed.find(Node.ANY, Node.ANY, Node.ANY));
+		}
+
+		@Override
+		public void notifyEvent(Graph source, Object value)
+		{
+			// bulk removals
+			if (! GraphEvents.startRead.equals(value)
+					&& ! GraphEvents.finishRead.equals(value)) {
+				diverge();
+			}
+		}
+	}
+}
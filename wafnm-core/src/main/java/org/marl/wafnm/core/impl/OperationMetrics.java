@@ -0,0 +1,138 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Records the count, failures and latencies of each {@link FrameOperation}.
+ *
+ * <p>Recording neither allocates nor locks. Totals and maximum latencies
+ * are always recorded, while latency histograms are optional, as they
+ * take a few kilobytes per operation.
+ *
+ * @author kr1s
+ *
+ */
+public class OperationMetrics {
+
+	static final int OPERATIONS = FrameOperation.values().length;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected AtomicLongArray counts = new AtomicLongArray(OPERATIONS);
+	protected AtomicLongArray errors = new AtomicLongArray(OPERATIONS);
+	protected AtomicLongArray totalNanos = new AtomicLongArray(OPERATIONS);
+	protected AtomicLongArray maxNanos = new AtomicLongArray(OPERATIONS);
+
+	// null when only totals are recorded
+	protected LatencyHistogram[] histograms;
+
+	/** Creates empty metrics.
+	 *
+	 * @param withHistograms Whether latency percentiles are recorded.
+	 */
+	public OperationMetrics(boolean withHistograms)
+	{
+		if (withHistograms)
+		{
+			histograms = new LatencyHistogram[OPERATIONS];
+			for (int k = 0 ; k < OPERATIONS ; k++) {
+				histograms[k] = new LatencyHistogram();
+			}
+		}
+	}
+
+	/** Records an operation.
+	 *
+	 * @param operation The operation.
+	 * @param nanos Its latency, in nanoseconds.
+	 * @param succeeded <code>false</code> if it threw an exception.
+	 */
+	public void record(FrameOperation operation, long nanos, boolean succeeded)
+	{
+		int k = operation.ordinal();
+
+		counts.incrementAndGet(k);
+		if (! succeeded) {
+			errors.incrementAndGet(k);
+		}
+		totalNanos.addAndGet(k, nanos);
+
+		long max = maxNanos.get(k);
+		while ( (nanos > max) && ! maxNanos.compareAndSet(k, max, nanos) ) {
+			max = maxNanos.get(k);
+		}
+
+		if (histograms != null) {
+			histograms[k].record(nanos);
+		}
+	}
+
+	/** Answers how many times an operation was recorded.
+	 *
+	 * @param operation The operation.
+	 *
+	 * @return The count.
+	 */
+	public long getCount(FrameOperation operation) {
+		return counts.get(operation.ordinal());
+	}
+
+	/** Answers the total latency of an operation.
+	 *
+	 * @param operation The operation.
+	 *
+	 * @return The sum of its latencies, in nanoseconds.
+	 */
+	public long getTotalNanos(FrameOperation operation) {
+		return totalNanos.get(operation.ordinal());
+	}
+
+	/** Answers the statistics of an operation.
+	 *
+	 * @param operation The operation.
+	 *
+	 * @return The statistics.
+	 */
+	public OperationStatistics getStatistics(FrameOperation operation)
+	{
+		int k = operation.ordinal();
+		long count = counts.get(k);
+
+		double p50 = -1;
+		double p99 = -1;
+		double p999 = -1;
+		if (histograms != null)
+		{
+			p50 = histograms[k].getPercentile(0.5) / 1000.0;
+			p99 = histograms[k].getPercentile(0.99) / 1000.0;
+			p999 = histograms[k].getPercentile(0.999) / 1000.0;
+		}
+
+		return new OperationStatistics(operation.getMethodName(),
+				count,
+				errors.get(k),
+				count > 0 ? totalNanos.get(k) / 1000.0 / count : 0,
+				maxNanos.get(k) / 1000.0,
+				p50,
+				p99,
+				p999);
+	}
+
+	/** Answers the statistics of the recorded operations.
+	 *
+	 * @return The statistics of the operations recorded at least once.
+	 */
+	public OperationStatistics[] getStatistics()
+	{
+		List<OperationStatistics> statistics = new ArrayList<OperationStatistics>();
+		for (FrameOperation operation : FrameOperation.values())
+		{
+			if (getCount(operation) > 0) {
+				statistics.add(getStatistics(operation));
+			}
+		}
+
+		return statistics.toArray(new OperationStatistics[statistics.size()]);
+	}
+}
@@ -0,0 +1,92 @@
+package org.marl.wafnm.core.impl;
+
+import java.beans.ConstructorProperties;
+
+/** Holds the statistics of an operation, as published over JMX.
+ *
+ * <p>Latencies are in microseconds. Percentiles are <code>-1</code> when
+ * only totals are recorded.
+ *
+ * @author kr1s
+ *
+ */
+public class OperationStatistics {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected String operation;
+	protected long count;
+	protected long errors;
+	protected double meanMicros;
+	protected double maxMicros;
+	protected double p50Micros;
+	protected double p99Micros;
+	protected double p999Micros;
+
+	@ConstructorProperties({ "operation", "count", "errors", "meanMicros", "maxMicros",
+		"p50Micros", "p99Micros", "p999Micros" })
+	public OperationStatistics(String operation,
+			long count,
+			long errors,
+			double meanMicros,
+			double maxMicros,
+			double p50Micros,
+			double p99Micros,
+			double p999Micros)
+	{
+		this.operation = operation;
+		this.count = count;
+		this.errors = errors;
+		this.meanMicros = meanMicros;
+		this.maxMicros = maxMicros;
+		this.p50Micros = p50Micros;
+		this.p99Micros = p99Micros;
+		this.p999Micros = p999Micros;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															POJO
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getErrors() {
+		return errors;
+	}
+
+	public double getMeanMicros() {
+		return meanMicros;
+	}
+
+	public double getMaxMicros() {
+		return maxMicros;
+	}
+
+	public double getP50Micros() {
+		return p50Micros;
+	}
+
+	public double getP99Micros() {
+		return p99Micros;
+	}
+
+	public double getP999Micros() {
+		return p999Micros;
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuffer(operation)
+			.append(" (").append(count)
+			.append(", p50=").append(p50Micros)
+			.append(", p99=").append(p99Micros)
+			.append(", p999=").append(p999Micros)
+			.append(")").toString();
+	}
+}
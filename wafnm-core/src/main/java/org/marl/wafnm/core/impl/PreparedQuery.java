@@ -0,0 +1,218 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+import org.marl.wafnm.core.api.IPreparedQuery;
+import org.marl.wafnm.core.api.ISolutionVisitor;
+import org.marl.wafnm.core.api.IStatementVisitor;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.sparql.algebra.Op;
+import com.hp.hpl.jena.sparql.core.DatasetGraph;
+import com.hp.hpl.jena.sparql.core.DatasetGraphFactory;
+import com.hp.hpl.jena.sparql.core.ResultBinding;
+import com.hp.hpl.jena.sparql.core.Substitute;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingRoot;
+import com.hp.hpl.jena.sparql.engine.binding.BindingUtils;
+import com.hp.hpl.jena.sparql.engine.iterator.QueryIterRoot;
+import com.hp.hpl.jena.sparql.engine.main.QC;
+import com.hp.hpl.jena.sparql.util.Context;
+
+/** Implements a query prepared against the model of a frame, as answered by
+ * {@link org.marl.wafnm.core.api.IFrame#prepareQuery(String)}.
+ *
+ * <p>Runs evaluate the optimized algebra of the shared {@link QueryPlan}
+ * directly, with the given bindings substituted, so that neither parsing
+ * nor optimization is repeated.
+ *
+ * @author kr1s
+ *
+ */
+public class PreparedQuery implements IPreparedQuery {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected QueryPlan plan;
+	protected Model model;
+	protected Lock readLock;
+
+	/** Creates a prepared query.
+	 *
+	 * @param plan The plan of the query.
+	 * @param model The queried model.
+	 * @param readLock The lock held while the query runs, or
+	 * <code>null</code> if the model is immutable.
+	 */
+	PreparedQuery(QueryPlan plan, Model model, Lock readLock)
+	{
+		if ( (plan == null) || (model == null) ) {
+			throw new IllegalArgumentException();
+		}
+
+		this.plan = plan;
+		this.model = model;
+		this.readLock = readLock;
+	}
+
+	/** Answers the plan of this query.
+	 *
+	 * @return The query plan.
+	 */
+	public QueryPlan getPlan() {
+		return plan;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															IPreparedQuery
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public String getQueryString() {
+		return plan.getQueryString();
+	}
+
+	@Override
+	public long select(QuerySolution bindings, ISolutionVisitor visitor)
+	{
+		if (visitor == null) {
+			throw new IllegalArgumentException();
+		}
+		if (! plan.getQuery().isSelectType()) {
+			throw new IllegalStateException("Not a SELECT query: " + getQueryString());
+		}
+
+		lock();
+		try {
+			QueryIterator iterOnSolutions = execute(bindings);
+			try {
+				long n = 0;
+				boolean more = true;
+				while (more && iterOnSolutions.hasNext())
+				{
+					more = visitor.visit(new ResultBinding(model, iterOnSolutions.nextBinding()));
+					n++;
+				}
+				return n;
+			}
+			finally {
+				iterOnSolutions.close();
+			}
+		}
+		finally {
+			unlock();
+		}
+	}
+
+	@Override
+	public long construct(QuerySolution bindings, IStatementVisitor visitor)
+	{
+		if (visitor == null) {
+			throw new IllegalArgumentException();
+		}
+		if (! plan.getQuery().isConstructType()) {
+			throw new IllegalStateException("Not a CONSTRUCT query: " + getQueryString());
+		}
+
+		lock();
+		try {
+			QueryIterator iterOnSolutions = execute(bindings);
+			try {
+				List<Triple> constructed = new ArrayList<Triple>();
+				long n = 0;
+				while (iterOnSolutions.hasNext())
+				{
+					constructed.clear();
+					plan.getQuery().getConstructTemplate().subst(constructed,
+							new HashMap<Node, Node>(),
+							iterOnSolutions.nextBinding());
+
+					for (Triple t : constructed)
+					{
+						n++;
+						if (! visitor.visit(model.asStatement(t))) {
+							return n;
+						}
+					}
+				}
+				return n;
+			}
+			finally {
+				iterOnSolutions.close();
+			}
+		}
+		finally {
+			unlock();
+		}
+	}
+
+	@Override
+	public boolean ask(QuerySolution bindings)
+	{
+		if (! plan.getQuery().isAskType()) {
+			throw new IllegalStateException("Not an ASK query: " + getQueryString());
+		}
+
+		lock();
+		try {
+			QueryIterator iterOnSolutions = execute(bindings);
+			try {
+				return iterOnSolutions.hasNext();
+			}
+			finally {
+				iterOnSolutions.close();
+			}
+		}
+		finally {
+			unlock();
+		}
+	}
+
+	// evaluates the plan, as the ARQ main engine does, but without planning
+	private QueryIterator execute(QuerySolution bindings)
+	{
+		Binding binding = (bindings != null) ?
+				BindingUtils.asBinding(bindings) : BindingRoot.create();
+
+		DatasetGraph dataset = DatasetGraphFactory.createOneGraph(model.getGraph());
+		Context context = Context.setupContext(null, dataset);
+		ExecutionContext execCxt = new ExecutionContext(context,
+				dataset.getDefaultGraph(),
+				dataset,
+				QC.getFactory(context));
+
+		Op op = binding.isEmpty() ? plan.getOp() : Substitute.substitute(plan.getOp(), binding);
+		return QC.execute(op, QueryIterRoot.create(binding, execCxt), execCxt);
+	}
+
+	private void lock()
+	{
+		if (readLock != null) {
+			readLock.lock();
+		}
+	}
+
+	private void unlock()
+	{
+		if (readLock != null) {
+			readLock.unlock();
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															POJO
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public String toString() {
+		return getQueryString();
+	}
+}
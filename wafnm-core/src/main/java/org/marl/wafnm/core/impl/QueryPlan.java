@@ -0,0 +1,75 @@
+package org.marl.wafnm.core.impl;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryException;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.sparql.algebra.Algebra;
+import com.hp.hpl.jena.sparql.algebra.Op;
+
+/** Holds a parsed SPARQL query, and its optimized algebra.
+ *
+ * <p>A plan does not depend on the graph it is run against, and is
+ * shared by the frames that prepare the same query.
+ *
+ * @author kr1s
+ *
+ */
+public class QueryPlan {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected final String queryString;
+	protected final Query query;
+	protected final Op op;
+
+	/** Parses and optimizes a query.
+	 *
+	 * @param queryString The SPARQL query.
+	 *
+	 * @throws IllegalArgumentException if the query is not valid, or is not
+	 * a <code>SELECT</code>, <code>CONSTRUCT</code> or <code>ASK</code> query.
+	 */
+	public QueryPlan(String queryString)
+	{
+		if (queryString == null) {
+			throw new IllegalArgumentException();
+		}
+
+		try {
+			this.query = QueryFactory.create(queryString);
+		}
+		catch (QueryException e) {
+			throw new IllegalArgumentException("Invalid query: " + e.getMessage(), e);
+		}
+		if ( ! query.isSelectType() && ! query.isConstructType() && ! query.isAskType() ) {
+			throw new IllegalArgumentException("Unsupported query form: " + queryString);
+		}
+
+		this.queryString = queryString;
+		this.op = Algebra.optimize(Algebra.compile(query));
+	}
+
+	/** Answers the text of the query.
+	 *
+	 * @return The SPARQL query.
+	 */
+	public String getQueryString() {
+		return queryString;
+	}
+
+	/** Answers the parsed query.
+	 *
+	 * @return The query, which must not be changed.
+	 */
+	public Query getQuery() {
+		return query;
+	}
+
+	/** Answers the optimized algebra of the query.
+	 *
+	 * @return The algebra expression.
+	 */
+	public Op getOp() {
+		return op;
+	}
+}
@@ -0,0 +1,125 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Caches the plans of the queries prepared by frames, by query text.
+ *
+ * <p>The least recently prepared plans are evicted once the cache holds
+ * its capacity. All frames share the same cache by default, so that a
+ * query prepared against each frame in turn is only planned once.
+ *
+ * @author kr1s
+ *
+ */
+public class QueryPlanCache {
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private static final QueryPlanCache shared = new QueryPlanCache(DEFAULT_CAPACITY);
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected Map<String, QueryPlan> plans;
+	protected AtomicLong hits = new AtomicLong();
+	protected AtomicLong misses = new AtomicLong();
+
+	/** Creates a cache.
+	 *
+	 * @param capacity The maximum count of cached plans.
+	 */
+	public QueryPlanCache(final int capacity)
+	{
+		if (capacity <= 0) {
+			throw new IllegalArgumentException();
+		}
+
+		this.plans = new LinkedHashMap<String, QueryPlan>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, QueryPlan> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/** Answers the cache shared by all frames.
+	 *
+	 * @return The shared cache.
+	 */
+	public static QueryPlanCache getShared() {
+		return shared;
+	}
+
+	/** Answers the plan of a query, planning it unless cached.
+	 *
+	 * @param queryString The SPARQL query.
+	 *
+	 * @return The plan.
+	 *
+	 * @throws IllegalArgumentException if the query is not valid.
+	 */
+	public QueryPlan get(String queryString)
+	{
+		if (queryString == null) {
+			throw new IllegalArgumentException();
+		}
+
+		QueryPlan plan;
+		synchronized (plans) {
+			plan = plans.get(queryString);
+		}
+		if (plan != null)
+		{
+			hits.incrementAndGet();
+			return plan;
+		}
+
+		// planned out of the lock: a query may be planned twice
+		misses.incrementAndGet();
+		plan = new QueryPlan(queryString);
+		synchronized (plans) {
+			plans.put(queryString, plan);
+		}
+
+		return plan;
+	}
+
+	/** Answers the count of queries answered from the cache.
+	 *
+	 * @return The hit count.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/** Answers the count of queries planned.
+	 *
+	 * @return The miss count.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/** Answers the count of cached plans.
+	 *
+	 * @return The cached plan count.
+	 */
+	public int size()
+	{
+		synchronized (plans) {
+			return plans.size();
+		}
+	}
+
+	/** Forgets all cached plans.
+	 */
+	public void clear()
+	{
+		synchronized (plans) {
+			plans.clear();
+		}
+	}
+}
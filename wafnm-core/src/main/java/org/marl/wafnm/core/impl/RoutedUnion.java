@@ -0,0 +1,197 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.TripleMatch;
+import com.hp.hpl.jena.graph.compose.CompositionBase;
+import com.hp.hpl.jena.shared.AddDeniedException;
+import com.hp.hpl.jena.shared.DeleteDeniedException;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.NullIterator;
+
+/** Implements the read-only union of the knowledge bound by a frame.
+ *
+ * <p>The union holds the base graphs of the bound frames, and of the frames
+ * they bind in turn. Each lookup is only routed to the graphs which
+ * {@link GraphSummary summary} accepts the looked up pattern, so that its
+ * cost does not grow with the count of bound frames that cannot match it.
+ *
+ * <p>Bound frames inferred knowledge is not part of the union: it is
+ * inferred again by the binding frame. Bound frames are read from their
+ * last published version, as their writers may change them while the
+ * binding frame is read.
+ *
+ * @author kr1s
+ *
+ */
+public class RoutedUnion extends CompositionBase {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected List<AbstractFrame> boundFrames = new CopyOnWriteArrayList<AbstractFrame>();
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected ReadWriteLock binderLock;
+
+	/** Creates an empty union.
+	 *
+	 * @param binderLock The lock of the binding frame, held by its readers.
+	 */
+	public RoutedUnion(ReadWriteLock binderLock)
+	{
+		if (binderLock == null) {
+			throw new IllegalArgumentException();
+		}
+		this.binderLock = binderLock;
+	}
+
+	/** Adds a frame to this union.
+	 *
+	 * @param frame The bound frame.
+	 *
+	 * @return <code>true</code> if the union was empty.
+	 */
+	boolean bind(AbstractFrame frame)
+	{
+		boolean first = boundFrames.isEmpty();
+		boundFrames.add(frame);
+		return first;
+	}
+
+	/** Removes a frame from this union.
+	 *
+	 * @param frame The unbound frame.
+	 *
+	 * @return <code>true</code> if the union is now empty.
+	 */
+	boolean unbind(AbstractFrame frame)
+	{
+		boundFrames.remove(frame);
+		return boundFrames.isEmpty();
+	}
+
+	/** Answers the frames which propositions may match a pattern, from the
+	 * bound frames and the frames they bind in turn.
+	 *
+	 * @param m The triple pattern.
+	 *
+	 * @return The frames to look up.
+	 */
+	protected List<AbstractFrame> route(TripleMatch m)
+	{
+		List<AbstractFrame> routed = new ArrayList<AbstractFrame>();
+		route(m, boundFrames, new HashSet<AbstractFrame>(), routed);
+
+		return routed;
+	}
+
+	private static void route(TripleMatch m,
+			List<AbstractFrame> frames,
+			Set<AbstractFrame> visited,
+			List<AbstractFrame> routed)
+	{
+		for (AbstractFrame frame : frames)
+		{
+			if (! visited.add(frame)) {
+				continue;
+			}
+			if (frame.frameSummary.mayMatch(m)) {
+				routed.add(frame);
+			}
+			route(m, frame.boundKnowledge.boundFrames, visited, routed);
+		}
+	}
+
+	/** Answers the propositions of a bound frame that match a pattern.
+	 *
+	 * <p>Frames sharing the lock of the binding frame are read as they are,
+	 * as its readers already hold their lock. Others are read as
+	 * {@link AbstractFrame#findPublished(TripleMatch) published}, so that
+	 * their writers never change them while they are iterated.
+	 */
+	private ExtendedIterator<Triple> find(AbstractFrame frame, TripleMatch m)
+	{
+		if (frame.frameLock == binderLock) {
+			return frame.getBaseGraph().find(m);
+		}
+		return frame.findPublished(m);
+	}
+
+	/** Answers whether the base graphs of the bound frames, or of the frames
+	 * they bind in turn, mention a node.
+	 *
+	 * @param node The node.
+	 *
+	 * @return <code>true</code> if some bound frame mentions the node.
+	 */
+	protected boolean mentions(Node node)
+	{
+		if (boundFrames.isEmpty()) {
+			return false;
+		}
+		return mentions(node, boundFrames, new HashSet<AbstractFrame>());
+	}
+
+	private boolean mentions(Node node,
+			List<AbstractFrame> frames,
+			Set<AbstractFrame> visited)
+	{
+		for (AbstractFrame frame : frames)
+		{
+			if (visited.add(frame)
+					&& ( mentions(frame, node)
+						|| mentions(node, frame.boundKnowledge.boundFrames, visited) )) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// reads bound frames as find(AbstractFrame, TripleMatch) does
+	private boolean mentions(AbstractFrame frame, Node node)
+	{
+		if (frame.frameLock == binderLock) {
+			return frame.mentions(node);
+		}
+		return frame.mentionsPublished(node);
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															GraphBase
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	protected ExtendedIterator<Triple> graphBaseFind(TripleMatch m)
+	{
+		List<AbstractFrame> frames = route(m);
+		if (frames.size() == 1) {
+			return find(frames.get(0), m);
+		}
+
+		Set<Triple> seen = new HashSet<Triple>();
+		ExtendedIterator<Triple> result = NullIterator.instance();
+		for (AbstractFrame frame : frames) {
+			result = result.andThen(recording(rejecting(find(frame, m), seen), seen));
+		}
+
+		return result;
+	}
+
+	@Override
+	public void performAdd(Triple t) {
+		throw new AddDeniedException("Bound knowledge is read-only", t);
+	}
+
+	@Override
+	public void performDelete(Triple t) {
+		throw new DeleteDeniedException("Bound knowledge is read-only", t);
+	}
+}
@@ -0,0 +1,434 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphEvents;
+import com.hp.hpl.jena.graph.GraphListener;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.vocabulary.OWL;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+/** Caches the neighbourhoods of the sems of a frame, that is the
+ * propositions about a sem, as subject then as object.
+ *
+ * <p>The cache is bounded by the count of cached propositions: the least
+ * recently used neighbourhoods are evicted first, and neighbourhoods larger
+ * than a fraction of the capacity are not cached at all.
+ *
+ * <p>The cache listens to the graph of the propositions managed by its
+ * frame, and is told by the caches of the frames it binds about their own
+ * changes. A changed proposition invalidates the neighbourhoods of its
+ * subject and object. When the frame infers propositions, it also
+ * invalidates the neighbourhoods of classes, which RDFS typing may have
+ * changed. Changes of the vocabulary itself, and bulk changes, clear the
+ * whole cache.
+ *
+ * @author kr1s
+ *
+ */
+public class SemCache implements GraphListener {
+
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	// neighbourhoods larger than capacity / MAX_ENTRY_RATIO are not cached
+	static final int MAX_ENTRY_RATIO = 16;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected Graph graph;
+	protected int capacity;
+	protected boolean inferring;
+
+	// access ordered, guarded by this cache monitor
+	protected Map<Node, List<Statement>> neighbourhoods
+		= new LinkedHashMap<Node, List<Statement>>(64, 0.75f, true);
+	protected Set<Node> classes = new HashSet<Node>();
+	protected long cachedSize;
+	protected long stamp;
+
+	protected long hits;
+	protected long misses;
+	protected long evictions;
+	protected long invalidations;
+
+	// caches of the frames that bind this cache frame
+	protected List<SemCache> dependents = new CopyOnWriteArrayList<SemCache>();
+
+	/** Creates a cache, and registers it as a listener of the given graph.
+	 *
+	 * @param graph The graph of the propositions managed by the frame.
+	 * @param capacity The maximum count of cached propositions.
+	 * @param inferring Whether the frame infers propositions.
+	 */
+	public SemCache(Graph graph, int capacity, boolean inferring)
+	{
+		if ( (graph == null) || (capacity <= 0) ) {
+			throw new IllegalArgumentException();
+		}
+
+		this.graph = graph;
+		this.capacity = capacity;
+		this.inferring = inferring;
+		graph.getEventManager().register(this);
+	}
+
+	/** Answers the cached neighbourhood of a sem.
+	 *
+	 * @param sem The sem node.
+	 *
+	 * @return The read-only propositions, or <code>null</code> if they are
+	 * not cached.
+	 */
+	public synchronized List<Statement> get(Node sem)
+	{
+		List<Statement> neighbourhood = neighbourhoods.get(sem);
+		if (neighbourhood != null) {
+			hits++;
+		}
+		else {
+			misses++;
+		}
+
+		return neighbourhood;
+	}
+
+	/** Answers the current stamp of this cache, to be given back to
+	 * {@link #put(Node, List, long)} once a neighbourhood is resolved.
+	 *
+	 * @return The stamp, which changes on each invalidation.
+	 */
+	public synchronized long stamp() {
+		return stamp;
+	}
+
+	/** Caches the neighbourhood of a sem, unless it was invalidated since it
+	 * began to be resolved.
+	 *
+	 * @param sem The sem node.
+	 * @param neighbourhood The propositions about the sem.
+	 * @param stamp The stamp of this cache when the resolution began.
+	 *
+	 * @return <code>true</code> if the neighbourhood is cached.
+	 */
+	public synchronized boolean put(Node sem, List<Statement> neighbourhood, long stamp)
+	{
+		if ( (stamp != this.stamp)
+				|| (neighbourhood.size() > capacity / MAX_ENTRY_RATIO) ) {
+			return false;
+		}
+
+		List<Statement> previous = neighbourhoods.put(sem,
+				Collections.unmodifiableList(neighbourhood));
+		if (previous != null) {
+			cachedSize -= previous.size();
+		}
+		cachedSize += neighbourhood.size();
+		if (inferring && isClass(sem, neighbourhood)) {
+			classes.add(sem);
+		}
+
+		Iterator<Map.Entry<Node, List<Statement>>> iterOnEntries
+			= neighbourhoods.entrySet().iterator();
+		while ( (cachedSize > capacity) && iterOnEntries.hasNext() )
+		{
+			Map.Entry<Node, List<Statement>> eldest = iterOnEntries.next();
+			iterOnEntries.remove();
+			classes.remove(eldest.getKey());
+			cachedSize -= eldest.getValue().size();
+			evictions++;
+		}
+
+		return true;
+	}
+
+	/** Invalidates the neighbourhoods a proposition change may alter, in
+	 * this cache and in the caches of the frames that bind it.
+	 *
+	 * @param t The added or removed proposition.
+	 */
+	public void invalidate(Triple t)
+	{
+		if (dependents.isEmpty()) {
+			invalidateLocal(t);
+			return;
+		}
+		for (SemCache cache : withDependents()) {
+			cache.invalidateLocal(t);
+		}
+	}
+
+	/** Invalidates all neighbourhoods, in this cache and in the caches of
+	 * the frames that bind it.
+	 */
+	public void clear()
+	{
+		for (SemCache cache : withDependents()) {
+			cache.clearLocal();
+		}
+	}
+
+	/** Adds the cache of a frame that binds this cache frame.
+	 *
+	 * @param dependent The cache of the binding frame.
+	 */
+	void addDependent(SemCache dependent) {
+		dependents.add(dependent);
+	}
+
+	/** Removes the cache of a frame that does not bind this cache frame
+	 * anymore.
+	 *
+	 * @param dependent The cache of the binding frame.
+	 */
+	void removeDependent(SemCache dependent) {
+		dependents.remove(dependent);
+	}
+
+	/** Unregisters this cache from the graph of its frame.
+	 */
+	public void detach()
+	{
+		graph.getEventManager().unregister(this);
+		clearLocal();
+	}
+
+	/** Answers the count of lookups that found a cached neighbourhood.
+	 *
+	 * @return The count of hits.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/** Answers the count of lookups that did not find a cached
+	 * neighbourhood.
+	 *
+	 * @return The count of misses.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/** Answers the ratio of lookups that found a cached neighbourhood.
+	 *
+	 * @return The hit ratio, between 0 and 1.
+	 */
+	public synchronized double getHitRatio() {
+		return hits + misses > 0 ? (double) hits / (hits + misses) : 0;
+	}
+
+	/** Answers the count of neighbourhoods evicted to honour the capacity.
+	 *
+	 * @return The count of evictions.
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/** Answers the count of neighbourhoods invalidated by changes.
+	 *
+	 * @return The count of invalidations.
+	 */
+	public synchronized long getInvalidations() {
+		return invalidations;
+	}
+
+	/** Answers the count of cached propositions.
+	 *
+	 * @return The cached size.
+	 */
+	public synchronized long getCachedSize() {
+		return cachedSize;
+	}
+
+	/** Answers the maximum count of cached propositions.
+	 *
+	 * @return The capacity.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	// this cache and the caches that depend on it, transitively
+	private Set<SemCache> withDependents()
+	{
+		Set<SemCache> caches = new HashSet<SemCache>();
+		collect(this, caches);
+		return caches;
+	}
+
+	private static void collect(SemCache cache, Set<SemCache> caches)
+	{
+		if (caches.add(cache))
+		{
+			for (SemCache dependent : cache.dependents) {
+				collect(dependent, caches);
+			}
+		}
+	}
+
+	private synchronized void invalidateLocal(Triple t)
+	{
+		stamp++;
+		if (neighbourhoods.isEmpty()) {
+			return;
+		}
+		if (isVocabulary(t)) {
+			clearLocal();
+			return;
+		}
+
+		remove(t.getSubject());
+		remove(t.getObject());
+		if (inferring && ! classes.isEmpty())
+		{
+			for (Node c : classes.toArray(new Node[classes.size()])) {
+				remove(c);
+			}
+		}
+	}
+
+	private synchronized void clearLocal()
+	{
+		stamp++;
+		invalidations += neighbourhoods.size();
+		neighbourhoods.clear();
+		classes.clear();
+		cachedSize = 0;
+	}
+
+	private void remove(Node sem)
+	{
+		List<Statement> neighbourhood = neighbourhoods.remove(sem);
+		if (neighbourhood != null)
+		{
+			classes.remove(sem);
+			cachedSize -= neighbourhood.size();
+			invalidations++;
+		}
+	}
+
+	// whether some instance may be typed by the sem through RDFS entailment
+	private static boolean isClass(Node sem, List<Statement> neighbourhood)
+	{
+		for (Statement s : neighbourhood)
+		{
+			Node p = s.getPredicate().asNode();
+			if ( sem.equals(s.getObject().asNode())
+					&& ( p.equals(RDF.type.asNode())
+						|| p.equals(RDFS.subClassOf.asNode())
+						|| p.equals(RDFS.domain.asNode())
+						|| p.equals(RDFS.range.asNode()) ) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// whether a proposition changes the vocabulary, rather than its use
+	private static boolean isVocabulary(Triple t)
+	{
+		Node p = t.getPredicate();
+		if ( p.equals(RDFS.subClassOf.asNode())
+				|| p.equals(RDFS.subPropertyOf.asNode())
+				|| p.equals(RDFS.domain.asNode())
+				|| p.equals(RDFS.range.asNode())
+				|| ( p.isURI() && p.getURI().startsWith(OWL.NS) ) ) {
+			return true;
+		}
+
+		Node o = t.getObject();
+		return p.equals(RDF.type.asNode())
+				&& o.isURI()
+				&& ( o.getURI().startsWith(RDFS.getURI())
+					|| o.getURI().startsWith(RDF.getURI())
+					|| o.getURI().startsWith(OWL.NS) );
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															GraphListener
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public void notifyAddTriple(Graph g, Triple t) {
+		invalidate(t);
+	}
+
+	@Override
+	public void notifyAddArray(Graph g, Triple[] triples)
+	{
+		for (Triple t : triples) {
+			invalidate(t);
+		}
+	}
+
+	@Override
+	public void notifyAddList(Graph g, List<Triple> triples)
+	{
+		for (Triple t : triples) {
+			invalidate(t);
+		}
+	}
+
+	@Override
+	public void notifyAddIterator(Graph g, Iterator<Triple> it) {
+		clear();
+	}
+
+	@Override
+	public void notifyAddGraph(Graph g, Graph added) {
+		clear();
+	}
+
+	@Override
+	public void notifyDeleteTriple(Graph g, Triple t) {
+		invalidate(t);
+	}
+
+	@Override
+	public void notifyDeleteList(Graph g, List<Triple> triples)
+	{
+		for (Triple t : triples) {
+			invalidate(t);
+		}
+	}
+
+	@Override
+	public void notifyDeleteArray(Graph g, Triple[] triples)
+	{
+		for (Triple t : triples) {
+			invalidate(t);
+		}
+	}
+
+	@Override
+	public void notifyDeleteIterator(Graph g, Iterator<Triple> it) {
+		clear();
+	}
+
+	@Override
+	public void notifyDeleteGraph(Graph g, Graph removed) {
+		clear();
+	}
+
+	@Override
+	public void notifyEvent(Graph source, Object value)
+	{
+		// bulk removals
+		if (! GraphEvents.startRead.equals(value)
+				&& ! GraphEvents.finishRead.equals(value)) {
+			clear();
+		}
+	}
+}
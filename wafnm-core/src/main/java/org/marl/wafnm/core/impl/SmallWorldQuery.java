@@ -0,0 +1,173 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** A parsed small world query.
+ * 
+ * <p>A query is a white-space separated list of <code>key=value</code> 
+ * directives, where URIs may be enclosed in angle brackets:
+ * <ul>
+ * <li><code>seed=<i>uri</i></code>: a sem from which to expand the small 
+ * world; may be repeated, at least one is required</li>
+ * <li><code>hops=<i>n</i></code>: the maximum count of propositions between
+ * a seed and any resolved proposition, defaults to <code>1</code></li>
+ * <li><code>allow=<i>uri</i></code>: a proposition kind to follow; may be
+ * repeated, all kinds are followed when omitted</li>
+ * <li><code>deny=<i>uri</i></code>: a proposition kind not to follow; may be
+ * repeated</li>
+ * <li><code>limit=<i>n</i></code>: the maximum count of resolved 
+ * propositions, unbounded when omitted</li>
+ * </ul>
+ * 
+ * <p>Example: <code>seed=&lt;http://ex.org/f#1&gt; hops=2 deny=&lt;http://www.w3.org/1999/02/22-rdf-syntax-ns#type&gt; limit=100</code>
+ * 
+ * @author kr1s
+ *
+ */
+public class SmallWorldQuery {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected List<String> seeds = new ArrayList<String>();
+	protected int maxHops = 1;
+	protected Set<String> allowed = new HashSet<String>();
+	protected Set<String> denied = new HashSet<String>();
+	protected long limit = Long.MAX_VALUE;
+	
+	SmallWorldQuery() {}
+
+	/** Parses a small world query.
+	 * 
+	 * @param query The query text.
+	 * 
+	 * @return The parsed query.
+	 * 
+	 * @throws IllegalArgumentException if the query is not valid.
+	 */
+	public static SmallWorldQuery parse(String query)
+	{
+		if (query == null) {
+			throw new IllegalArgumentException();
+		}
+		
+		SmallWorldQuery parsed = new SmallWorldQuery();
+		
+		for (String directive : query.trim().split("\\s+")) 
+		{
+			if (directive.length() == 0) {
+				continue;
+			}
+			
+			int sep = directive.indexOf('=');
+			if (sep <= 0 || sep == directive.length() - 1) {
+				throw new IllegalArgumentException("Invalid directive: " + directive);
+			}
+			
+			String key = directive.substring(0, sep);
+			String value = directive.substring(sep + 1);
+			
+			if ("seed".equals(key)) {
+				parsed.seeds.add(unbracket(value));
+			}
+			else if ("hops".equals(key)) {
+				parsed.maxHops = (int) parseCount(directive, value);
+			}
+			else if ("allow".equals(key)) {
+				parsed.allowed.add(unbracket(value));
+			}
+			else if ("deny".equals(key)) {
+				parsed.denied.add(unbracket(value));
+			}
+			else if ("limit".equals(key)) {
+				parsed.limit = parseCount(directive, value);
+			}
+			else {
+				throw new IllegalArgumentException("Unknown directive: " + directive);
+			}
+		}
+		
+		if (parsed.seeds.isEmpty()) {
+			throw new IllegalArgumentException("No seed: " + query);
+		}
+		
+		return parsed;
+	}
+	
+	/** Answers the sems from which the small world is expanded.
+	 * 
+	 * @return The seeds URIs.
+	 */
+	public List<String> getSeeds() {
+		return seeds;
+	}
+
+	/** Answers the maximum count of propositions between a seed and any 
+	 * resolved proposition.
+	 * 
+	 * @return The maximum hop count.
+	 */
+	public int getMaxHops() {
+		return maxHops;
+	}
+
+	/** Answers the maximum count of resolved propositions.
+	 * 
+	 * @return The result cap, <code>Long.MAX_VALUE</code> when unbounded.
+	 */
+	public long getLimit() {
+		return limit;
+	}
+
+	/** Answers whether a proposition kind should be followed.
+	 * 
+	 * @param propositionTypeUri The proposition kind.
+	 * 
+	 * @return <code>true</code> if this kind is allowed and not denied.
+	 */
+	public boolean follows(String propositionTypeUri)
+	{
+		if (denied.contains(propositionTypeUri)) {
+			return false;
+		}
+		return allowed.isEmpty() || allowed.contains(propositionTypeUri);
+	}
+
+	static String unbracket(String value)
+	{
+		if (value.startsWith("<") && value.endsWith(">")) {
+			return value.substring(1, value.length() - 1);
+		}
+		return value;
+	}
+	
+	static long parseCount(String directive, String value)
+	{
+		try {
+			long count = Long.parseLong(value);
+			if (count >= 0 && count <= Integer.MAX_VALUE) {
+				return count;
+			}
+		}
+		catch (NumberFormatException e) {
+			// fall through
+		}
+		throw new IllegalArgumentException("Invalid count: " + directive);
+	}
+	
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															POJO
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public String toString() {
+		return new StringBuffer("seeds=").append(seeds)
+				.append(" hops=").append(maxHops)
+				.append(" allow=").append(allowed)
+				.append(" deny=").append(denied)
+				.append(" limit=").append(limit)
+				.toString();
+	}
+}
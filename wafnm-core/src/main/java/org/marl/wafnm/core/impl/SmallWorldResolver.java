@@ -0,0 +1,328 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.marl.wafnm.core.api.IStatementVisitor;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.reasoner.InfGraph;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.Filter;
+import com.hp.hpl.jena.util.iterator.WrappedIterator;
+
+/** Resolves {@link SmallWorldQuery small world queries} against a model.
+ * 
+ * <p>The small world is expanded breadth-first from the query seeds, one 
+ * frontier at a time: each hop resolves all propositions that accept a 
+ * frontier sem as either subject or object, and which kind is followed by 
+ * the query. The sems reached this way make the next frontier.
+ * 
+ * <p>Each proposition is resolved once. The expansion stops as soon as the 
+ * hop count or the result cap is reached.
+ * 
+ * <p>The propositions incident to large frontiers are read in parallel, on 
+ * a fork-join pool, and then resolved in frontier order, as they would be
+ * one sem at a time: the model should then support concurrent readers, as
+ * frame models do under their read lock.
+ * 
+ * <p>A resolver is not thread-safe, and should be used for a single query.
+ * 
+ * @author kr1s
+ *
+ */
+public class SmallWorldResolver {
+
+	// count of frontier sems from which the propositions are read in parallel
+	static final int PARALLEL_FRONTIER = 256;
+	
+	// count of frontier sems a task reads without forking
+	static final int SEMS_PER_TASK = 32;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected Model model;
+	protected Graph graph;
+	protected SmallWorldQuery query;
+
+	// sems are numbered in discovery order
+	protected Map<Node, Integer> semIds = new HashMap<Node, Integer>();
+	protected List<Node> sems = new ArrayList<Node>();
+	protected BitSet expanded = new BitSet();
+	
+	protected IStatementVisitor visitor;
+	protected long resolved;
+	
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected ForkJoinPool pool;
+	
+	/** Constructor that initialize state, which reads large frontiers on the
+	 * common fork-join pool.
+	 * 
+	 * @param model The model to resolve the query against.
+	 * @param query The query.
+	 */
+	public SmallWorldResolver(Model model, SmallWorldQuery query)
+	{
+		this(model, query, ForkJoinPool.commonPool());
+	}
+	
+	/** Constructor that initialize state.
+	 * 
+	 * @param model The model to resolve the query against.
+	 * @param query The query.
+	 * @param pool The pool large frontiers are read on.
+	 */
+	public SmallWorldResolver(Model model, SmallWorldQuery query, ForkJoinPool pool)
+	{
+		if ( (model == null) || (query == null) || (pool == null) ) {
+			throw new IllegalArgumentException();
+		}
+		
+		this.model = model;
+		this.graph = model.getGraph();
+		this.query = query;
+		this.pool = pool;
+	}
+
+	/** Resolves the small world.
+	 * 
+	 * @param visitor The visitor that receives the resolved propositions, 
+	 * in expansion order.
+	 * 
+	 * @return The count of resolved propositions.
+	 */
+	public long resolve(IStatementVisitor visitor)
+	{
+		this.visitor = visitor;
+		
+		if (query.getLimit() == 0) {
+			return resolved;
+		}
+		
+		IntList frontier = new IntList(query.getSeeds().size());
+		for (String seedUri : query.getSeeds())
+		{
+			Node seed = NodeFactory.createURI(seedUri);
+			if (! semIds.containsKey(seed) 
+					&& (graph.contains(seed, Node.ANY, Node.ANY)
+							|| graph.contains(Node.ANY, Node.ANY, seed)) ) {
+				frontier.add(idOf(seed));
+			}
+		}
+		
+		for (int hop = 0; (hop < query.getMaxHops()) && (frontier.size > 0) ; hop++) 
+		{
+			IntList next = new IntList(frontier.size);
+			
+			if (frontier.size >= PARALLEL_FRONTIER) 
+			{
+				if (! expandInParallel(frontier, next)) {
+					return resolved;
+				}
+			}
+			else 
+			{
+				for (int k = 0 ; k < frontier.size ; k++) 
+				{
+					Node sem = sems.get(frontier.ids[k]);
+					expanded.set(frontier.ids[k]);
+					
+					if (! expand(graph.find(sem, Node.ANY, Node.ANY), sem, true, next)
+							|| ! expand(graph.find(Node.ANY, Node.ANY, sem), sem, false, next)) {
+						return resolved;
+					}
+				}
+			}
+			
+			frontier = next;
+		}
+		
+		return resolved;
+	}
+
+	/** Resolves the propositions incident to a large frontier, which are
+	 * read in parallel, a slice of the frontier at a time, so that the 
+	 * expansion does not read much further than the result cap.
+	 * 
+	 * @return <code>false</code> when the result cap has been reached, or the
+	 * visitor stopped the resolution.
+	 */
+	private boolean expandInParallel(IntList frontier, IntList next)
+	{
+		// inferences are prepared once, rather than by concurrent readers
+		if (graph instanceof InfGraph) {
+			((InfGraph) graph).prepare();
+		}
+		
+		for (int from = 0 ; from < frontier.size ; from += PARALLEL_FRONTIER) 
+		{
+			int to = Math.min(frontier.size, from + PARALLEL_FRONTIER);
+			List<List<Triple>> incident = new ArrayList<List<Triple>>(2 * (to - from));
+			for (int k = from ; k < to ; k++) {
+				incident.add(null);
+				incident.add(null);
+			}
+			pool.invoke(new IncidentReading(frontier.ids, from, to, from, incident));
+			
+			for (int k = from ; k < to ; k++) 
+			{
+				Node sem = sems.get(frontier.ids[k]);
+				expanded.set(frontier.ids[k]);
+				
+				int slot = 2 * (k - from);
+				if (! expand(WrappedIterator.create(incident.get(slot).iterator()), sem, true, next)
+						|| ! expand(WrappedIterator.create(incident.get(slot + 1).iterator()), sem, false, next)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/** Resolves the propositions incident to a frontier sem.
+	 * 
+	 * <p>A proposition is resolved unless the other sem has already been 
+	 * expanded, in which case it already has been resolved.
+	 * 
+	 * @return <code>false</code> when the result cap has been reached, or the
+	 * visitor stopped the resolution.
+	 */
+	private boolean expand(ExtendedIterator<Triple> iterOnTriples,
+			Node sem,
+			boolean outgoing,
+			IntList next)
+	{
+		try {
+			while (iterOnTriples.hasNext()) 
+			{
+				Triple t = iterOnTriples.next();
+				Node other = outgoing ? t.getObject() : t.getSubject();
+				
+				if (! query.follows(t.getPredicate().getURI())) {
+					continue;
+				}
+				
+				Integer otherId = semIds.get(other);
+				if (other.equals(sem)) 
+				{
+					// self references are resolved once, as outgoing
+					if (! outgoing) {
+						continue;
+					}
+				}
+				else if ( (otherId != null) && expanded.get(otherId) ) {
+					continue;
+				}
+				
+				resolved++;
+				if (! visitor.visit(model.asStatement(t)) 
+						|| (resolved >= query.getLimit()) ) {
+					return false;
+				}
+				
+				if ( (otherId == null) && ! other.isLiteral() ) {
+					next.add(idOf(other));
+				}
+			}
+		}
+		finally {
+			iterOnTriples.close();
+		}
+		return true;
+	}
+
+	private int idOf(Node sem)
+	{
+		Integer id = semIds.get(sem);
+		if (id == null) {
+			id = sems.size();
+			semIds.put(sem, id);
+			sems.add(sem);
+		}
+		return id;
+	}
+	
+	/** Reads the followed propositions incident to a slice of a frontier,
+	 * outgoing then incoming, for each sem.
+	 */
+	class IncidentReading extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int[] ids;
+		private final int from;
+		private final int to;
+		private final int base;
+		private final List<List<Triple>> incident;
+
+		IncidentReading(int[] ids, int from, int to, int base, List<List<Triple>> incident)
+		{
+			this.ids = ids;
+			this.from = from;
+			this.to = to;
+			this.base = base;
+			this.incident = incident;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from > SEMS_PER_TASK)
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new IncidentReading(ids, from, middle, base, incident),
+						new IncidentReading(ids, middle, to, base, incident));
+				return;
+			}
+
+			Filter<Triple> followed = new Filter<Triple>() {
+				@Override
+				public boolean accept(Triple t) {
+					return query.follows(t.getPredicate().getURI());
+				}
+			};
+			for (int k = from ; k < to ; k++)
+			{
+				// sems are only numbered once the slice is read
+				Node sem = sems.get(ids[k]);
+				incident.set(2 * (k - base),
+						graph.find(sem, Node.ANY, Node.ANY).filterKeep(followed).toList());
+				incident.set(2 * (k - base) + 1,
+						graph.find(Node.ANY, Node.ANY, sem).filterKeep(followed).toList());
+			}
+		}
+	}
+	
+	/** A growable list of sem identifiers.
+	 */
+	static class IntList 
+	{
+		int[] ids;
+		int size;
+		
+		IntList(int capacity) {
+			ids = new int[Math.max(16, capacity)];
+		}
+		
+		void add(int id) 
+		{
+			if (size == ids.length) {
+				int[] grown = new int[ids.length * 2];
+				System.arraycopy(ids, 0, grown, 0, size);
+				ids = grown;
+			}
+			ids[size++] = id;
+		}
+	}
+}
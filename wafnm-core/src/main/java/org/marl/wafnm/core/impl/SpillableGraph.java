@@ -0,0 +1,335 @@
+package org.marl.wafnm.core.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.TripleMatch;
+import com.hp.hpl.jena.graph.impl.GraphBase;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+import com.hp.hpl.jena.util.iterator.NiceIterator;
+
+/** Implements an in-memory graph that can be spilled to a file, and that is
+ * transparently reloaded when next accessed.
+ *
+ * <p>Spilling only drops the reference to the in-memory triples: iterators
+ * that are already open keep on reading them. Writers are expected to hold
+ * the lock of the frame that owns this graph, which {@link FrameCache} also
+ * takes before spilling it.
+ *
+ * @author kr1s
+ *
+ */
+public class SpillableGraph extends GraphBase {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected File spillFile;
+	protected volatile Graph resident;
+	protected volatile long lastAccess;
+
+	// whether the spill file is outdated, guarded by the owning frame lock
+	protected boolean dirty = true;
+
+	// whether reloaded triples should be frozen, or versioned
+	protected volatile boolean frozen;
+	protected volatile boolean versioned;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected FrameCache frameCache;
+	protected NodeDictionary nodeDictionary;
+
+	/** Creates an empty graph.
+	 *
+	 * @param frameCache The cache that accounts for this graph.
+	 * @param spillFile The file this graph is spilled to.
+	 * @param nodeDictionary The dictionary that encodes the in-memory nodes.
+	 */
+	SpillableGraph(FrameCache frameCache, File spillFile, NodeDictionary nodeDictionary)
+	{
+		this.frameCache = frameCache;
+		this.spillFile = spillFile;
+		this.nodeDictionary = nodeDictionary;
+		this.resident = new EncodedGraph(nodeDictionary);
+		this.lastAccess = System.nanoTime();
+	}
+
+	/** Answers the dictionary that encodes nodes.
+	 *
+	 * @return The node dictionary.
+	 */
+	public NodeDictionary getNodeDictionary() {
+		return nodeDictionary;
+	}
+
+	/** Answers whether the triples of this graph are in memory.
+	 *
+	 * @return <code>false</code> if this graph has been spilled.
+	 */
+	public boolean isResident() {
+		return resident != null;
+	}
+
+	/** Answers when this graph was last accessed.
+	 *
+	 * @return A {@link System#nanoTime()} value.
+	 */
+	public long getLastAccess() {
+		return lastAccess;
+	}
+
+	/** Freezes the in-memory triples, and the ones reloaded later.
+	 *
+	 * @see EncodedGraph#freeze()
+	 */
+	public void freeze()
+	{
+		frozen = true;
+		((EncodedGraph) resident()).freeze();
+	}
+
+	/** Starts versioning the in-memory triples, and the ones reloaded later.
+	 *
+	 * @return The current version.
+	 *
+	 * @see EncodedGraph#startVersioning()
+	 */
+	public GraphVersion startVersioning()
+	{
+		versioned = true;
+		return ((EncodedGraph) resident()).startVersioning();
+	}
+
+	/** Publishes the changes of the in-memory triples as a new version.
+	 *
+	 * @see EncodedGraph#commit()
+	 */
+	public void commit()
+	{
+		Graph g = resident;
+		if (g != null) {
+			((EncodedGraph) g).commit();
+		}
+	}
+
+	/** Answers the last published version of the in-memory triples.
+	 *
+	 * <p>This never blocks, nor reloads spilled triples.
+	 *
+	 * @return The version, or <code>null</code> if spilled, or neither
+	 * versioned nor frozen.
+	 */
+	public GraphVersion getVersion()
+	{
+		Graph g = resident;
+		return g != null ? ((EncodedGraph) g).getVersion() : null;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															GraphBase
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	protected ExtendedIterator<Triple> graphBaseFind(TripleMatch m)
+	{
+		return new ResidentIterator(resident().find(m));
+	}
+
+	@Override
+	protected boolean graphBaseContains(Triple t) {
+		return resident().contains(t);
+	}
+
+	@Override
+	protected int graphBaseSize() {
+		return resident().size();
+	}
+
+	@Override
+	public void performAdd(Triple t)
+	{
+		Graph g = resident();
+		int n = g.size();
+		g.add(t);
+		if (g.size() != n) {
+			resized(1);
+		}
+	}
+
+	@Override
+	public void performDelete(Triple t)
+	{
+		Graph g = resident();
+		int n = g.size();
+		g.delete(t);
+		if (g.size() != n) {
+			resized(-1);
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															Spill
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	/** Writes the triples of this graph to its spill file, unless they did
+	 * not change since last spilled, and releases them.
+	 *
+	 * @return The count of released triples.
+	 *
+	 * @throws IllegalStateException if the spill file cannot be written.
+	 */
+	synchronized long spill()
+	{
+		Graph g = resident;
+		if (g == null) {
+			return 0;
+		}
+
+		if (dirty || ! spillFile.exists())
+		{
+			File tmpFile = new File(spillFile.getPath() + ".tmp");
+			try {
+				OutputStream out = new BufferedOutputStream(new FileOutputStream(tmpFile));
+				try {
+					BinaryRdfCodec.write(g, out);
+				}
+				finally {
+					out.close();
+				}
+			}
+			catch (IOException e) {
+				tmpFile.delete();
+				throw new IllegalStateException("Cannot spill graph: " + spillFile, e);
+			}
+
+			spillFile.delete();
+			if (! tmpFile.renameTo(spillFile)) {
+				throw new IllegalStateException("Cannot spill graph: " + spillFile);
+			}
+			dirty = false;
+		}
+
+		resident = null;
+		return g.size();
+	}
+
+	/** Releases the triples of this graph, and deletes its spill file.
+	 *
+	 * @return The count of released triples.
+	 */
+	synchronized long discard()
+	{
+		Graph g = resident;
+		resident = null;
+		spillFile.delete();
+
+		return g != null ? g.size() : 0;
+	}
+
+	/** Answers the in-memory triples, reloading them if needed.
+	 *
+	 * @return The resident graph.
+	 */
+	protected Graph resident()
+	{
+		Graph g = resident;
+		if (g == null) {
+			g = reload();
+		}
+		lastAccess = System.nanoTime();
+
+		return g;
+	}
+
+	private Graph reload()
+	{
+		long start = System.nanoTime();
+		Graph g;
+
+		synchronized (this)
+		{
+			g = resident;
+			if (g != null) {
+				return g;
+			}
+
+			EncodedGraph reloaded = new EncodedGraph(nodeDictionary);
+			if (spillFile.exists())
+			{
+				try {
+					InputStream in = new BufferedInputStream(new FileInputStream(spillFile));
+					try {
+						BinaryRdfCodec.read(in, reloaded);
+					}
+					finally {
+						in.close();
+					}
+				}
+				catch (IOException e) {
+					throw new IllegalStateException("Cannot reload graph: " + spillFile, e);
+				}
+			}
+			if (frozen) {
+				reloaded.freeze();
+			}
+			else if (versioned) {
+				reloaded.startVersioning();
+			}
+			resident = g = reloaded;
+		}
+
+		// accounted outside of the monitor, as it may spill other graphs
+		frameCache.reloaded(this, g.size(), System.nanoTime() - start);
+		return g;
+	}
+
+	private void resized(long delta)
+	{
+		dirty = true;
+		frameCache.resized(this, delta);
+	}
+
+	/** Iterates over the resident triples, keeping this graph informed of
+	 * the triples removed through the iterator.
+	 */
+	private class ResidentIterator extends NiceIterator<Triple> {
+
+		private ExtendedIterator<Triple> triples;
+		private Triple current;
+
+		ResidentIterator(ExtendedIterator<Triple> triples) {
+			this.triples = triples;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return triples.hasNext();
+		}
+
+		@Override
+		public Triple next() {
+			return current = triples.next();
+		}
+
+		@Override
+		public void remove()
+		{
+			triples.remove();
+			resized(-1);
+			getEventManager().notifyDeleteTriple(SpillableGraph.this, current);
+		}
+
+		@Override
+		public void close() {
+			triples.close();
+		}
+	}
+}
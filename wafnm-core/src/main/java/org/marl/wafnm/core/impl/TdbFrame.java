@@ -0,0 +1,90 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.marl.wafnm.core.api.IFrame;
+import org.marl.wafnm.core.api.IFrameManager;
+
+import com.hp.hpl.jena.ontology.OntModel;
+
+/** Implements a frame persisted by a {@link TdbFrameManager}.
+ * 
+ * <p>Bound knowledge is recorded by the frame manager, so that it can be 
+ * restored when the frame is reopened.
+ * 
+ * <p>TDB already stores propositions on disk, as sorted indexes of node
+ * identifiers: freezing a frame only makes it read-only, which is also
+ * recorded by the frame manager.
+ * 
+ * <p>As TDB datasets do not support concurrent readers and writers outside
+ * transactions, all frames of a dataset share the same lock.
+ * 
+ * @author kr1s
+ *
+ */
+public class TdbFrame extends BaseFrame implements IFrame {
+
+	/** Constructor that initialize state.
+	 * 
+	 * @param frameUri
+	 * @param frameModel
+	 * @param datasetLock The lock shared by all frames of the same dataset.
+	 */
+	TdbFrame(String frameUri, OntModel frameModel, ReadWriteLock datasetLock)
+	{
+		super(frameUri, frameModel, datasetLock);
+		
+		// nodes stay on disk: only their Bloom filter is held in memory
+		frameMembers.detach();
+		frameMembers = new MembershipIndex(getBaseGraph(), datasetLock, false);
+	}
+
+	/** Initialize the frame manager dependency.
+	 * 
+	 * @param frameManager A {@link TdbFrameManager}.
+	 * 
+	 * @throws IllegalArgumentException if the frame manager is not a 
+	 * {@link TdbFrameManager}.
+	 * @throws IllegalStateException if the frame manager has already been 
+	 * initialized.
+	 */
+	@Override
+	public void setFrameManager(IFrameManager frameManager) 
+	{
+		if (! (frameManager instanceof TdbFrameManager) ) {
+			throw new IllegalArgumentException("Invalid manager: " + frameManager);
+		}
+		
+		super.setFrameManager(frameManager);
+	}
+
+	@Override
+	public long bindKnowledge(String frameUri) 
+	{
+		long n = super.bindKnowledge(frameUri);
+		
+		if (frameManager.getFrame(frameUri) != null) {
+			((TdbFrameManager) frameManager).recordBinding(getURI(), frameUri);
+		}
+		
+		return n;
+	}
+
+	@Override
+	public long unbindKnowledge(String frameUri) 
+	{
+		long n = super.unbindKnowledge(frameUri);
+		((TdbFrameManager) frameManager).forgetBinding(getURI(), frameUri);
+		
+		return n;
+	}
+
+	@Override
+	public long freeze() 
+	{
+		long n = super.freeze();
+		((TdbFrameManager) frameManager).recordFrozen(getURI());
+		
+		return n;
+	}
+}
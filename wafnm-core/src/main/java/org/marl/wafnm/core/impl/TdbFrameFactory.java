@@ -0,0 +1,92 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.marl.wafnm.core.api.IFrame;
+import org.marl.wafnm.core.api.IFrameFactory;
+import org.marl.wafnm.core.api.InferenceProfile;
+
+import com.hp.hpl.jena.ontology.OntModel;
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/** Produces frames persisted into an Apache Jena TDB dataset, with
+ * base inference capabilities.
+ * 
+ * <p>Each frame is stored as a named graph of the dataset, whose name is the
+ * frame URI. The base ontology, if any, is copied into this graph when the 
+ * frame is created.
+ * 
+ * <p>All frames produced by a factory share the same lock, as the dataset
+ * does not support concurrent readers and writers.
+ * 
+ * @author kr1s
+ *
+ */
+public class TdbFrameFactory implements IFrameFactory {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected Dataset dataset;
+	protected ReadWriteLock datasetLock;
+	
+	TdbFrameFactory(Dataset dataset, ReadWriteLock datasetLock) 
+	{
+		if ( (dataset == null) || (datasetLock == null) ) {
+			throw new IllegalArgumentException();
+		}
+		
+		this.dataset = dataset;
+		this.datasetLock = datasetLock;
+	}
+	
+	@Override
+	public IFrame createFrame(String uri, Model baseOntology) {
+		return createFrame(uri, baseOntology, InferenceProfile.RDFS);
+	}
+	
+	@Override
+	public IFrame createFrame(String uri, Model baseOntology, InferenceProfile profile)
+	{
+		if (profile == null) {
+			throw new IllegalArgumentException();
+		}
+		
+		if (baseOntology != null) 
+		{
+			datasetLock.writeLock().lock();
+			try {
+				dataset.getNamedModel(uri).add(baseOntology);
+			}
+			finally {
+				datasetLock.writeLock().unlock();
+			}
+		}
+		
+		return openFrame(uri, profile);
+	}
+
+	/** Opens a frame previously created by this factory.
+	 * 
+	 * <p>No statement is read at this point: the frame graph is only accessed
+	 * when the frame is actually queried.
+	 * 
+	 * @param uri The frame URI, which is also the name of the frame graph.
+	 * @param profile The inference profile of the frame.
+	 * 
+	 * @return The reopened frame.
+	 */
+	IFrame openFrame(String uri, InferenceProfile profile)
+	{
+		Model baseModel = dataset.getNamedModel(uri);
+		OntModel frameModel = ModelFactory.createOntologyModel(
+				MemFrameFactory.specify(profile, MemFrameFactory.DEFAULT_INFERENCE, baseModel.getGraph()),
+				baseModel);
+		
+		TdbFrame frame = new TdbFrame(uri, frameModel, datasetLock);
+		frame.setInferenceProfile(profile);
+		return frame;
+	}
+
+}
@@ -0,0 +1,472 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.marl.wafnm.core.api.IFrame;
+import org.marl.wafnm.core.api.IFrameManager;
+import org.marl.wafnm.core.api.InferenceProfile;
+
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.ResIterator;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.tdb.TDB;
+import com.hp.hpl.jena.tdb.TDBFactory;
+import com.hp.hpl.jena.vocabulary.RDF;
+
+/** Implements a frame manager persisted into an Apache Jena TDB dataset.
+ *
+ * <p>Each frame is stored as a named graph. The dataset default graph
+ * is used as a registry that records the managed frames and the knowledge
+ * they bind to each other.
+ *
+ * <p>Reopening a dataset only reads the registry: frames are opened, and
+ * their bindings restored, when first retrieved.
+ *
+ * <p>Propositions are written to the dataset as they are learned, but are
+ * only guaranteed to be on disk after {@link #sync()} or {@link #close()}.
+ *
+ * <p>This implementation is thread-safe: retrieving an opened frame never
+ * blocks, while all frames share a lock that serializes writers to the
+ * dataset.
+ *
+ * <p>This manager expects a factory that produces {@link TdbFrame} frames.
+ *
+ * @author kr1s
+ *
+ */
+public class TdbFrameManager implements IFrameManager {
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Internal state
+	protected Dataset dataset;
+	protected ReadWriteLock datasetLock;
+	protected Model registry;
+	protected Set<String> frameUris;
+	protected ConcurrentMap<String, IFrame> framesTable;
+	protected UriAllocator frameAllocator;
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// Dependencies
+	protected TdbFrameFactory frameFactory;
+
+	public static final String TDB_FRAME_URI_PREFIX
+		= "http://wafnm.marl.org/vocabulary/1/tdbframe";
+
+	/** The registry type of managed frames.
+	 */
+	public static final Resource FRAME
+		= ResourceFactory.createResource("http://wafnm.marl.org/vocabulary/1#Frame");
+
+	/** The registry property that records bound knowledge.
+	 */
+	public static final Property BINDS
+		= ResourceFactory.createProperty("http://wafnm.marl.org/vocabulary/1#binds");
+
+	/** The registry property that records the identifiers leased within a
+	 * namespace, either the frames namespace or a frame own namespace.
+	 */
+	public static final Property LEASED
+		= ResourceFactory.createProperty("http://wafnm.marl.org/vocabulary/1#leased");
+
+	/** The registry type of frozen frames.
+	 */
+	public static final Resource FROZEN_FRAME
+		= ResourceFactory.createResource("http://wafnm.marl.org/vocabulary/1#FrozenFrame");
+
+	/** The registry property that records the inference profile of frames,
+	 * unless the default one.
+	 */
+	public static final Property INFERENCE
+		= ResourceFactory.createProperty("http://wafnm.marl.org/vocabulary/1#inference");
+
+	/** Opens, or creates, a frame manager persisted into the given directory.
+	 *
+	 * @param directory The TDB dataset location.
+	 */
+	public TdbFrameManager(String directory)
+	{
+		if (directory == null) {
+			throw new IllegalArgumentException();
+		}
+
+		this.dataset = TDBFactory.createDataset(directory);
+		this.datasetLock = new ReentrantReadWriteLock();
+		this.registry = dataset.getDefaultModel();
+		this.framesTable = new ConcurrentHashMap<String, IFrame>();
+		this.frameFactory = new TdbFrameFactory(dataset, datasetLock);
+
+		this.frameAllocator = leasedAllocator(TDB_FRAME_URI_PREFIX);
+		this.frameUris = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		ResIterator iterOnFrames = registry.listSubjectsWithProperty(RDF.type, FRAME);
+		while (iterOnFrames.hasNext()) {
+			frameUris.add(iterOnFrames.next().getURI());
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 													IFrameManager
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public IFrame getFrame(String uri)
+	{
+		IFrame frame = framesTable.get(uri);
+
+		if ((frame == null) && frameUris.contains(uri)) {
+			frame = openFrame(uri);
+		}
+
+		return frame;
+	}
+
+	@Override
+	public IFrame createFrame(Model baseOntology) {
+		return createFrame(baseOntology, InferenceProfile.RDFS);
+	}
+
+	@Override
+	public synchronized IFrame createFrame(Model baseOntology, InferenceProfile profile)
+	{
+		String frameUri = frameAllocator.next();
+
+		IFrame frame = frameFactory.createFrame(frameUri, baseOntology, profile);
+		((TdbFrame) frame).setFrameManager(this);
+		((TdbFrame) frame).setSemAllocator(leasedAllocator(frameUri));
+
+		datasetLock.writeLock().lock();
+		try {
+			Resource frameResource = registry.getResource(frameUri);
+			registry.add(frameResource, RDF.type, FRAME);
+			if (profile != InferenceProfile.RDFS) {
+				registry.add(frameResource, INFERENCE, profile.name());
+			}
+			TDB.sync(dataset);
+		}
+		finally {
+			datasetLock.writeLock().unlock();
+		}
+		framesTable.put(frameUri, frame);
+		frameUris.add(frameUri);
+
+		return frame;
+	}
+
+	/** {@inheritDoc}
+	 * 
+	 * <p>Persisted frames cannot be forked: forks are only supported by
+	 * in-memory managers.
+	 */
+	@Override
+	public IFrame forkFrame(String uri) {
+		throw new IllegalStateException("Cannot fork persisted frame: " + uri);
+	}
+
+	@Override
+	public long mergeFrame(String forkUri) {
+		throw new IllegalStateException("Frame is not a fork: " + forkUri);
+	}
+
+	@Override
+	public synchronized void removeFrame(String uri)
+	{
+		if (! frameUris.contains(uri)) {
+			throw new IllegalStateException("Frame is undefined: " + uri);
+		}
+
+		Resource frameResource = registry.getResource(uri);
+		List<Resource> binders;
+		datasetLock.readLock().lock();
+		try {
+			binders = registry.listSubjectsWithProperty(BINDS, frameResource).toList();
+		}
+		finally {
+			datasetLock.readLock().unlock();
+		}
+		for (Resource binder : binders)
+		{
+			IFrame boundFrame = framesTable.get(binder.getURI());
+			if (boundFrame != null) {
+				boundFrame.unbindKnowledge(uri);
+			}
+		}
+
+		frameUris.remove(uri);
+		IFrame f = framesTable.remove(uri);
+		if (f != null) {
+			((TdbFrame) f).close();
+		}
+
+		datasetLock.writeLock().lock();
+		try {
+			dataset.getNamedModel(uri).removeAll();
+			registry.removeAll(frameResource, null, null);
+			registry.removeAll(null, BINDS, frameResource);
+			TDB.sync(dataset);
+		}
+		finally {
+			datasetLock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public List<IFrame> listFrames()
+	{
+		ArrayList<IFrame> frames = new ArrayList<IFrame>();
+		for (String uri : frameUris) 
+		{
+			IFrame frame = getFrame(uri);
+			if (frame != null) {
+				frames.add(frame);
+			}
+		}
+
+		return frames;
+	}
+
+	@Override
+	public long size() {
+		return frameUris.size();
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 													TDB
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	/** Opens a frame, and the frames it binds, restoring their bindings.
+	 * 
+	 * <p>Opened frames are only published once all bindings are restored.
+	 * 
+	 * @param uri The frame URI.
+	 * 
+	 * @return The opened frame, or <code>null</code> if it has been removed.
+	 */
+	protected synchronized IFrame openFrame(String uri)
+	{
+		Map<String, IFrame> opened = new HashMap<String, IFrame>();
+		
+		datasetLock.readLock().lock();
+		try {
+			IFrame frame = openFrame(uri, opened);
+			framesTable.putAll(opened);
+			return frame;
+		}
+		finally {
+			datasetLock.readLock().unlock();
+		}
+	}
+	
+	private IFrame openFrame(String uri, Map<String, IFrame> opened)
+	{
+		IFrame frame = framesTable.get(uri);
+		if (frame == null) {
+			frame = opened.get(uri);
+		}
+
+		if ((frame == null) && frameUris.contains(uri))
+		{
+			frame = frameFactory.openFrame(uri, profileOf(uri));
+			((TdbFrame) frame).setFrameManager(this);
+			((TdbFrame) frame).setSemAllocator(leasedAllocator(uri));
+			// frame is registered first, so that cyclic bindings terminate
+			opened.put(uri, frame);
+
+			StmtIterator iterOnBindings = registry.listStatements(
+					registry.getResource(uri),
+					BINDS,
+					(RDFNode) null);
+			for (Statement binding : iterOnBindings.toList())
+			{
+				IFrame otherFrame = openFrame(binding.getResource().getURI(), opened);
+				if (otherFrame != null) {
+					((TdbFrame) frame).restoreKnowledge(otherFrame);
+				}
+			}
+			
+			if (registry.contains(registry.getResource(uri), RDF.type, FROZEN_FRAME)) {
+				((TdbFrame) frame).restoreFrozen();
+			}
+		}
+
+		return frame;
+	}
+
+	/** Answers the inference profile recorded for a frame.
+	 * 
+	 * @param uri The frame URI.
+	 * 
+	 * @return The frame inference profile.
+	 */
+	private InferenceProfile profileOf(String uri)
+	{
+		Statement profile = registry.getProperty(registry.getResource(uri), INFERENCE);
+		return profile != null ? 
+				InferenceProfile.valueOf(profile.getString())
+				: InferenceProfile.RDFS;
+	}
+
+	/** Creates an allocator for a namespace, which leases are recorded in
+	 * the registry.
+	 * 
+	 * @param uriPrefix The namespace prefix.
+	 * 
+	 * @return An allocator that starts from the last recorded lease limit.
+	 */
+	protected UriAllocator leasedAllocator(final String uriPrefix)
+	{
+		final Resource namespace = registry.getResource(uriPrefix);
+		
+		long firstId = 0;
+		datasetLock.readLock().lock();
+		try {
+			Statement lastLease = registry.getProperty(namespace, LEASED);
+			if (lastLease != null) {
+				firstId = lastLease.getLong();
+			}
+		}
+		finally {
+			datasetLock.readLock().unlock();
+		}
+		
+		return new UriAllocator(uriPrefix, firstId, UriAllocator.DEFAULT_LEASE_SIZE) {
+			@Override
+			protected void lease(long limit) 
+			{
+				datasetLock.writeLock().lock();
+				try {
+					registry.removeAll(namespace, LEASED, null);
+					registry.addLiteral(namespace, LEASED, limit);
+					TDB.sync(dataset);
+				}
+				finally {
+					datasetLock.writeLock().unlock();
+				}
+			}
+		};
+	}
+
+	/** Flushes all pending changes to disk.
+	 */
+	public void sync()
+	{
+		datasetLock.writeLock().lock();
+		try {
+			TDB.sync(dataset);
+		}
+		finally {
+			datasetLock.writeLock().unlock();
+		}
+	}
+
+	/** Flushes all pending changes to disk, and releases the dataset.
+	 *
+	 * <p>This manager should not be used anymore afterwards.
+	 */
+	public synchronized void close()
+	{
+		datasetLock.writeLock().lock();
+		try {
+			TDB.sync(dataset);
+			framesTable.clear();
+			frameUris.clear();
+			TDBFactory.release(dataset);
+		}
+		finally {
+			datasetLock.writeLock().unlock();
+		}
+	}
+
+	/** Records that a frame binds knowledge managed by another frame.
+	 *
+	 * @param frameUri The binding frame URI.
+	 * @param otherFrameUri The bound frame URI.
+	 */
+	void recordBinding(String frameUri, String otherFrameUri)
+	{
+		datasetLock.writeLock().lock();
+		try {
+			registry.add(registry.getResource(frameUri),
+					BINDS,
+					registry.getResource(otherFrameUri));
+			TDB.sync(dataset);
+		}
+		finally {
+			datasetLock.writeLock().unlock();
+		}
+	}
+
+	/** Records that a frame is frozen.
+	 *
+	 * @param frameUri The frozen frame URI.
+	 */
+	void recordFrozen(String frameUri)
+	{
+		datasetLock.writeLock().lock();
+		try {
+			registry.add(registry.getResource(frameUri), RDF.type, FROZEN_FRAME);
+			TDB.sync(dataset);
+		}
+		finally {
+			datasetLock.writeLock().unlock();
+		}
+	}
+
+	/** Forgets that a frame binds knowledge managed by another frame.
+	 *
+	 * @param frameUri The binding frame URI.
+	 * @param otherFrameUri The bound frame URI.
+	 */
+	void forgetBinding(String frameUri, String otherFrameUri)
+	{
+		datasetLock.writeLock().lock();
+		try {
+			registry.remove(registry.getResource(frameUri),
+					BINDS,
+					registry.getResource(otherFrameUri));
+			TDB.sync(dataset);
+		}
+		finally {
+			datasetLock.writeLock().unlock();
+		}
+	}
+
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 													POJO
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public int hashCode() {
+		return TDB_FRAME_URI_PREFIX.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (obj != null && obj instanceof IFrameManager)
+		{
+			return (obj.hashCode() == hashCode());
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuffer(TDB_FRAME_URI_PREFIX)
+			.append(" (")
+			.append(size()).append(")").toString();
+	}
+}
@@ -0,0 +1,150 @@
+package org.marl.wafnm.core.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Allocates unique URIs within a namespace.
+ * 
+ * <p>Each allocated URI is made of the namespace prefix and a numeric 
+ * fragment, that grows monotonically: see {@link FrameUtils#formatUri(String, long)}.
+ * 
+ * <p>Allocation is lock-free. Allocators for persistent namespaces may
+ * {@link #lease(long) lease} identifiers by blocks, and record each lease 
+ * before any of its identifiers is used: once restarted from the recorded
+ * lease limit, such allocators never reuse an identifier.
+ * 
+ * @author kr1s
+ *
+ */
+public class UriAllocator {
+
+	/** The default count of identifiers leased at once.
+	 */
+	public static final int DEFAULT_LEASE_SIZE = 4096;
+	
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// State
+	protected String uriPrefix;
+	protected AtomicLong nextId;
+	protected volatile long leaseLimit;
+	protected int leaseSize;
+	
+	/** Creates an allocator that does not lease identifiers.
+	 * 
+	 * @param uriPrefix The namespace prefix.
+	 * @param firstId The first allocated identifier.
+	 */
+	public UriAllocator(String uriPrefix, long firstId)
+	{
+		this(uriPrefix, firstId, DEFAULT_LEASE_SIZE);
+		this.leaseLimit = Long.MAX_VALUE;
+	}
+	
+	/** Creates an allocator that leases identifiers by blocks.
+	 * 
+	 * @param uriPrefix The namespace prefix.
+	 * @param firstId The first allocated identifier, which should be the
+	 * last recorded lease limit.
+	 * @param leaseSize The count of identifiers leased at once.
+	 */
+	protected UriAllocator(String uriPrefix, long firstId, int leaseSize)
+	{
+		if ( (uriPrefix == null) || (firstId < 0) || (leaseSize <= 0) ) {
+			throw new IllegalArgumentException();
+		}
+		
+		this.uriPrefix = uriPrefix;
+		this.nextId = new AtomicLong(firstId);
+		this.leaseLimit = firstId;
+		this.leaseSize = leaseSize;
+	}
+	
+	/** Allocates a new URI.
+	 * 
+	 * @return The allocated URI.
+	 */
+	public String next()
+	{
+		long id = nextId.getAndIncrement();
+		if (id >= leaseLimit) {
+			extendLease(id);
+		}
+		
+		return FrameUtils.formatUri(uriPrefix, id);
+	}
+
+	/** Answers the next identifier this allocator will allocate.
+	 * 
+	 * @return The next identifier.
+	 */
+	public long peek()
+	{
+		return nextId.get();
+	}
+	
+	/** Answers the identifier this allocator should restart from, which is 
+	 * the lease limit of allocators that lease identifiers: identifiers 
+	 * below the limit may be allocated without any lease being recorded.
+	 * 
+	 * @return The lease limit, or the next identifier.
+	 */
+	public long peekLeased()
+	{
+		long limit = leaseLimit;
+		long id = nextId.get();
+		
+		return (limit == Long.MAX_VALUE) ? id : Math.max(limit, id);
+	}
+	
+	/** Makes sure this allocator will not allocate an identifier that is 
+	 * lower than the given one.
+	 * 
+	 * @param id The lowest identifier to allocate.
+	 */
+	public void skipTo(long id)
+	{
+		long n;
+		do {
+			n = nextId.get();
+		}
+		while ( (n < id) && ! nextId.compareAndSet(n, id) );
+	}
+	
+	/** Records a new lease limit.
+	 * 
+	 * <p>This should be overridden by allocators for persistent namespaces,
+	 * which should record the limit before returning. The default 
+	 * implementation does nothing.
+	 * 
+	 * @param limit The new lease limit: no identifier lower than this limit
+	 * should be allocated anymore after a restart.
+	 */
+	protected void lease(long limit) 
+	{
+	}
+	
+	private synchronized void extendLease(long id)
+	{
+		if (id < leaseLimit) {
+			return;
+		}
+		
+		long limit = leaseLimit;
+		while (limit <= id) {
+			limit += leaseSize;
+		}
+		
+		lease(limit);
+		leaseLimit = limit;
+	}
+	
+	/////////////////////////////////////////////////////////////////////////////////////////////
+	// 															POJO
+	/////////////////////////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public String toString() {
+		return new StringBuffer(uriPrefix)
+			.append(" (")
+			.append(nextId.get()).append(")").toString();
+	}
+}
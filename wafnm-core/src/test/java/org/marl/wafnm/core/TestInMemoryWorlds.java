@@ -1,20 +1,106 @@
 package org.marl.wafnm.core;
 
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.management.MBeanServer;
+import javax.management.openmbean.CompositeData;
 
 import org.apache.log4j.Logger;
+import org.marl.wafnm.core.api.FrameContent;
+import org.marl.wafnm.core.api.IAsyncFrame;
 import org.marl.wafnm.core.api.IFrame;
+import org.marl.wafnm.core.api.IPreparedQuery;
+import org.marl.wafnm.core.api.ISolutionVisitor;
+import org.marl.wafnm.core.api.IStatementVisitor;
+import org.marl.wafnm.core.api.InferenceProfile;
+import org.marl.wafnm.core.impl.AbstractFrame;
+import org.marl.wafnm.core.impl.AsyncFrame;
+import org.marl.wafnm.core.impl.AsyncFrameManager;
+import org.marl.wafnm.core.impl.BaseFrame;
+import org.marl.wafnm.core.impl.BinaryRdfCodec;
+import org.marl.wafnm.core.impl.EncodedGraph;
+import org.marl.wafnm.core.impl.FrameCache;
+import org.marl.wafnm.core.impl.FrameImage;
+import org.marl.wafnm.core.impl.FrameJournal;
+import org.marl.wafnm.core.impl.ForkFrame;
+import org.marl.wafnm.core.impl.ForkInferenceGraph;
+import org.marl.wafnm.core.impl.FrameSearch;
+import org.marl.wafnm.core.impl.GraphVersion;
+import org.marl.wafnm.core.impl.ImageNodeDictionary;
+import org.marl.wafnm.core.impl.IncrementalRdfsGraph;
 import org.marl.wafnm.core.impl.MemFrameManager;
+import org.marl.wafnm.core.impl.MonitoredFrameManager;
+import org.marl.wafnm.core.impl.NodeDictionary;
+import org.marl.wafnm.core.impl.OntologyClosureCache;
+import org.marl.wafnm.core.impl.OntologyClosureGraph;
+import org.marl.wafnm.core.impl.OperationStatistics;
+import org.marl.wafnm.core.impl.PreparedQuery;
+import org.marl.wafnm.core.impl.QueryPlanCache;
+import org.marl.wafnm.core.impl.SemCache;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.hp.hpl.jena.graph.Factory;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.QuerySolutionMap;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.reasoner.InfGraph;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
 public class TestInMemoryWorlds {
 
 	static final Logger log = Logger.getLogger(TestInMemoryWorlds.class);
 	
 	public static long FRAME_TABLE_SIZE = 8;
 	
+	public static long BULK_SIZE = 1000;
+	
+	static final String VOCABULARY = "http://example.org/vocabulary#";
+	
+	/** Answers a vocabulary of sub-classes.
+	 * 
+	 * @param subClasses Pairs of class names, in the example vocabulary: 
+	 * a sub-class, followed by its super-class.
+	 * 
+	 * @return The vocabulary.
+	 */
+	static Model vocabulary(String... subClasses)
+	{
+		Model vocabulary = ModelFactory.createDefaultModel();
+		for (int k=0 ; k<subClasses.length ; k+=2) {
+			vocabulary.add(vocabulary.createResource(VOCABULARY + subClasses[k]), 
+					RDFS.subClassOf, 
+					vocabulary.createResource(VOCABULARY + subClasses[k+1]));
+		}
+		return vocabulary;
+	}
+	
 	@Test
 	public void testInMemoryManagerSetup()
 	{
@@ -89,4 +175,1405 @@ public class TestInMemoryWorlds {
 		log.info("managing frames list seems ok for table size: " + FRAME_TABLE_SIZE);
 	}
 	
+	@Test
+	public void testInMemorySmallWorld()
+	{
+		MemFrameManager fm = new MemFrameManager();
+		IFrame f = fm.createFrame(null);
+		
+		String p = "http://example.org/vocabulary#p";
+		String q = "http://example.org/vocabulary#q";
+		String[] chain = new String[5];
+		for (int k=0 ; k<chain.length ; k++)
+			chain[k] = "http://example.org/world#" + k;
+		for (int k=1 ; k<chain.length ; k++)
+			f.learn(chain[k-1], p, chain[k]);
+		f.learn(chain[2], q, chain[0]);
+		f.learn(chain[1], p, chain[1]);
+		
+		List<Statement> world = f.resolveSmallWorld("seed=<" + chain[1] + "> hops=1 allow=" + p);
+		Assert.assertEquals(world.size(), 3);
+		
+		world = f.resolveSmallWorld("seed=<" + chain[0] + "> hops=2 allow=" + p + " allow=" + q);
+		Assert.assertEquals(world.size(), 5);
+		
+		world = f.resolveSmallWorld("seed=<" + chain[0] + "> hops=4 allow=" + p + " deny=" + q);
+		Assert.assertEquals(world.size(), 5);
+		
+		world = f.resolveSmallWorld("seed=<" + chain[0] + "> hops=4 allow=" + p + " limit=2");
+		Assert.assertEquals(world.size(), 2);
+		
+		// large frontiers are read in parallel, and resolved in frontier order
+		IFrame star = fm.createFrame(null);
+		String hub = "http://example.org/world#hub";
+		for (int k=0 ; k<BULK_SIZE ; k++)
+		{
+			String spoke = "http://example.org/world#spoke" + k;
+			star.learn(hub, p, spoke);
+			star.learn(spoke, p, "http://example.org/world#leaf" + k);
+			star.learn("http://example.org/world#leaf" + k, q, spoke);
+		}
+		world = star.resolveSmallWorld("seed=<" + hub + "> hops=2 allow=" + p);
+		Assert.assertEquals(world.size(), 2 * BULK_SIZE);
+		for (int k=0 ; k<BULK_SIZE ; k++) {
+			Assert.assertEquals(world.get((int) BULK_SIZE + k).getSubject(), world.get(k).getObject());
+		}
+		world = star.resolveSmallWorld("seed=<" + hub + "> hops=3 allow=" + p + " allow=" + q);
+		Assert.assertEquals(world.size(), 3 * BULK_SIZE);
+		world = star.resolveSmallWorld("seed=<" + hub + "> hops=3 allow=" + p 
+				+ " limit=" + (BULK_SIZE + 10));
+		Assert.assertEquals(world.size(), BULK_SIZE + 10);
+		
+		try {
+			f.resolveSmallWorld("hops=2");
+			Assert.fail("a query without seed should be rejected");
+		}
+		catch (IllegalArgumentException e) {
+			log.info("rejected query: " + e.getMessage());
+		}
+	}
+	
+	@Test
+	public void testInMemoryStreaming()
+	{
+		MemFrameManager fm = new MemFrameManager();
+		IFrame f = fm.createFrame(null);
+		
+		String p = "http://example.org/vocabulary#p";
+		String hub = "http://example.org/world#hub";
+		for (int k=0 ; k<10 ; k++)
+			f.learn(hub, p, "http://example.org/world#" + k);
+		f.learn(hub, p, hub);
+		
+		List<Statement> world = f.resolveSem(hub);
+		
+		long n = 0;
+		StmtIterator iterOnProps = f.streamSem(hub);
+		while (iterOnProps.hasNext()) {
+			Assert.assertTrue(world.contains(iterOnProps.next()));
+			n++;
+		}
+		Assert.assertEquals(n, world.size());
+		
+		final List<Statement> page = new ArrayList<Statement>();
+		long visited = f.visitSem(hub, new IStatementVisitor() {
+			@Override
+			public boolean visit(Statement proposition) {
+				return page.add(proposition);
+			}
+		}, 2, 5);
+		Assert.assertEquals(visited, 5);
+		Assert.assertEquals(page, world.subList(2, 7));
+		
+		visited = f.visitSmallWorld("seed=" + hub + " allow=" + p, new IStatementVisitor() {
+			@Override
+			public boolean visit(Statement proposition) {
+				return false;
+			}
+		});
+		Assert.assertEquals(visited, 1);
+	}
+	
+	@Test
+	public void testInMemoryCounting()
+	{
+		MemFrameManager fm = new MemFrameManager();
+		IFrame f = fm.createFrame(null);
+		
+		String p = "http://example.org/vocabulary#p";
+		String a = "http://example.org/world#a";
+		String b = "http://example.org/world#b";
+		String c = "http://example.org/world#c";
+		
+		Assert.assertEquals(f.size(), 0);
+		Assert.assertEquals(f.learn(a, p, b), 1);
+		Assert.assertEquals(f.learn(a, p, b), 0);
+		Assert.assertEquals(f.learn(b, p, c), 1);
+		Assert.assertEquals(f.learn(c, p, a), 1);
+		Assert.assertEquals(f.size(), 3);
+		
+		Assert.assertEquals(f.forget(a, p, null), 1);
+		Assert.assertEquals(f.size(), 2);
+		Assert.assertEquals(f.dropSem(c), 2);
+		Assert.assertEquals(f.size(), 0);
+		
+		IFrame other = fm.createFrame(null);
+		other.learn(a, p, c);
+		Assert.assertEquals(f.bindKnowledge(other.getURI()), 1);
+		Assert.assertEquals(f.bindKnowledge(other.getURI()), 0);
+		Assert.assertEquals(f.size(), 1);
+		Assert.assertEquals(f.unbindKnowledge(other.getURI()), 1);
+		Assert.assertEquals(f.size(), 0);
+		
+		// frames bound along several paths, or binding each other, count once
+		IFrame shared = fm.createFrame(null);
+		shared.learn(b, p, c);
+		other.bindKnowledge(shared.getURI());
+		f.learn(a, p, b);
+		Assert.assertEquals(f.bindKnowledge(shared.getURI()), 1);
+		Assert.assertEquals(f.bindKnowledge(other.getURI()), 2);
+		Assert.assertEquals(f.size(), 3);
+		Assert.assertEquals(other.bindKnowledge(f.getURI()), 2);
+		Assert.assertEquals(other.size(), 3);
+		Assert.assertEquals(f.size(), 3);
+		Assert.assertTrue(f.toString().endsWith(" (3)"));
+		
+		// bound counts follow the changes of the bound frames
+		shared.learn(c, p, a);
+		Assert.assertEquals(f.size(), 4);
+		Assert.assertEquals(other.size(), 4);
+		Model more = ModelFactory.createDefaultModel();
+		more.add(more.createResource(c), more.createProperty(p), more.createResource(b));
+		more.add(more.createResource(b), more.createProperty(p), more.createResource(a));
+		shared.learn(more.listStatements());
+		Assert.assertEquals(f.size(), 6);
+		shared.forget(b, p, null);
+		Assert.assertEquals(f.size(), 4);
+		Assert.assertEquals(other.size(), 4);
+		Assert.assertEquals(other.unbindKnowledge(shared.getURI()), 2);
+		Assert.assertEquals(other.size(), 4);
+		f.unbindKnowledge(shared.getURI());
+		Assert.assertEquals(f.size(), 2);
+		Assert.assertEquals(other.size(), 2);
+	}
+	
+	@Test
+	public void testInMemoryBulkLearning()
+	{
+		MemFrameManager fm = new MemFrameManager();
+		IFrame f = fm.createFrame(null);
+		
+		StringBuffer nt = new StringBuffer("<http://example.org/vocabulary#Dog> <")
+			.append(RDFS.subClassOf.getURI())
+			.append("> <http://example.org/vocabulary#Animal> .\n");
+		for (int k=0 ; k<BULK_SIZE ; k++) {
+			nt.append("<http://example.org/world#").append(k).append("> <")
+				.append(RDF.type.getURI())
+				.append("> <http://example.org/vocabulary#Dog> .\n");
+		}
+		
+		long n = f.learn(new ByteArrayInputStream(nt.toString().getBytes()), "N-TRIPLES");
+		Assert.assertEquals(n, BULK_SIZE + 1);
+		Assert.assertEquals(f.size(), BULK_SIZE + 1);
+		Assert.assertTrue(f.getModel().contains(
+				f.find("http://example.org/world#0"),
+				RDF.type,
+				f.find("http://example.org/vocabulary#Animal")));
+		
+		Model more = ModelFactory.createDefaultModel();
+		more.add(more.createResource("http://example.org/world#0"),
+				RDF.type,
+				more.createResource("http://example.org/vocabulary#Dog"));
+		more.add(more.createResource("http://example.org/world#cat"),
+				RDF.type,
+				more.createResource("http://example.org/vocabulary#Animal"));
+		Assert.assertEquals(f.learn(more.listStatements()), 1);
+		
+		// the ingest rate against learning one proposition at a time, into
+		// frames which inferences are prepared
+		StringBuffer corpus = new StringBuffer();
+		for (int k=0 ; k<10 * BULK_SIZE ; k++) {
+			corpus.append("<http://example.org/world#").append(k).append("> <")
+				.append(RDF.type.getURI())
+				.append("> <http://example.org/vocabulary#Dog> .\n");
+		}
+		IFrame single = fm.createFrame(null);
+		IFrame bulk = fm.createFrame(null);
+		for (IFrame frame : new IFrame[] { single, bulk }) 
+		{
+			frame.learn("http://example.org/vocabulary#Dog", RDFS.subClassOf.getURI(), 
+					"http://example.org/vocabulary#Animal");
+			frame.getModel().contains(null, RDF.type, (RDFNode) null);
+		}
+		
+		long start = System.nanoTime();
+		for (int k=0 ; k<10 * BULK_SIZE ; k++) {
+			single.learn("http://example.org/world#" + k, RDF.type.getURI(), 
+					"http://example.org/vocabulary#Dog");
+		}
+		Assert.assertTrue(single.getModel().contains(single.find("http://example.org/world#0"),
+				RDF.type, single.find("http://example.org/vocabulary#Animal")));
+		long perProposition = System.nanoTime() - start;
+		
+		start = System.nanoTime();
+		Assert.assertEquals(bulk.learn(new ByteArrayInputStream(corpus.toString().getBytes()), 
+				"N-TRIPLES"), 10 * BULK_SIZE);
+		Assert.assertTrue(bulk.getModel().contains(bulk.find("http://example.org/world#0"),
+				RDF.type, bulk.find("http://example.org/vocabulary#Animal")));
+		long inBulk = System.nanoTime() - start;
+		log.info("learned " + 10 * BULK_SIZE + " propositions one at a time in " 
+				+ perProposition / 1000 + " us, in bulk in " + inBulk / 1000 + " us ("
+				+ String.format("%.1f", (double) perProposition / inBulk) + "x)");
+		Assert.assertTrue(inBulk < perProposition);
+		
+		try {
+			f.learn(new ByteArrayInputStream("<broken".getBytes()), "N-TRIPLES");
+			Assert.fail("an invalid input should be rejected");
+		}
+		catch (IllegalArgumentException e) {
+			log.info("rejected input: " + e.getMessage());
+		}
+	}
+	
+	@Test
+	public void testInMemoryConcurrentAccess() throws Exception
+	{
+		MemFrameManager fm = new MemFrameManager();
+		final IFrame f = fm.createFrame(null);
+		final IFrame other = fm.createFrame(null);
+		
+		final String p = "http://example.org/vocabulary#p";
+		final String hub = "http://example.org/world#hub";
+		f.learn(hub, p, "http://example.org/world#first");
+		
+		ExecutorService pool = Executors.newFixedThreadPool(5);
+		List<Future<Long>> results = new ArrayList<Future<Long>>();
+		
+		results.add(pool.submit(new Callable<Long>() {
+			@Override
+			public Long call() {
+				long n = 0;
+				for (int k=0 ; k<BULK_SIZE ; k++) {
+					n += f.learn(hub, p, "http://example.org/world#" + k);
+					if (k % 100 == 0) {
+						other.bindKnowledge(f.getURI());
+						other.unbindKnowledge(f.getURI());
+						f.bindKnowledge(other.getURI());
+						f.unbindKnowledge(other.getURI());
+					}
+				}
+				return n;
+			}
+		}));
+		for (int t=0 ; t<4 ; t++) {
+			results.add(pool.submit(new Callable<Long>() {
+				@Override
+				public Long call() {
+					long n = 0;
+					for (int k=0 ; k<BULK_SIZE ; k++) {
+						Assert.assertTrue(f.knows(hub));
+						n += f.resolveSem(hub).size();
+					}
+					return n;
+				}
+			}));
+		}
+		
+		Assert.assertEquals(results.get(0).get().longValue(), BULK_SIZE);
+		for (Future<Long> result : results) {
+			Assert.assertTrue(result.get() > 0);
+		}
+		pool.shutdown();
+		
+		Assert.assertEquals(f.size(), BULK_SIZE + 1);
+	}
+	
+	@Test
+	public void testInMemoryNodeSharing()
+	{
+		MemFrameManager fm = new MemFrameManager();
+		
+		Model vocabulary = ModelFactory.createDefaultModel();
+		for (int k=0 ; k<FRAME_TABLE_SIZE ; k++) {
+			vocabulary.add(vocabulary.createResource("http://example.org/vocabulary#Dog" + k), 
+					RDFS.subClassOf, 
+					vocabulary.createResource("http://example.org/vocabulary#Animal"));
+		}
+		
+		IFrame f = fm.createFrame(vocabulary);
+		int shared = fm.getNodeDictionary().size();
+		IFrame other = fm.createFrame(vocabulary);
+		Assert.assertEquals(fm.getNodeDictionary().size(), shared);
+		Assert.assertEquals(other.size(), f.size());
+		
+		other.forget(null, RDFS.subClassOf.getURI(), null);
+		Assert.assertEquals(other.size(), 0);
+		Assert.assertEquals(f.size(), FRAME_TABLE_SIZE);
+		Assert.assertTrue(f.knows("http://example.org/vocabulary#Animal"));
+		Assert.assertFalse(other.knows("http://example.org/vocabulary#Dog0"));
+	}
+	
+	@Test
+	public void testInMemoryFreezing()
+	{
+		MemFrameManager fm = new MemFrameManager();
+		
+		Model vocabulary = vocabulary("Dog", "Animal");
+		IFrame f = fm.createFrame(vocabulary);
+		String rex = f.createSem("http://example.org/vocabulary#Dog", "rex", "a dog", null);
+		for (int k=0 ; k<BULK_SIZE ; k++) {
+			f.learn(rex, "http://example.org/vocabulary#knows", "http://example.org/world#b" + k);
+		}
+		
+		List<Statement> before = f.resolveSem(rex);
+		Assert.assertFalse(f.isFrozen());
+		Assert.assertEquals(f.freeze(), f.size());
+		Assert.assertTrue(f.isFrozen());
+		Assert.assertFalse(f.getModel().getGraph() instanceof InfGraph);
+		
+		Assert.assertEquals(f.resolveSem(rex).size(), before.size());
+		Assert.assertTrue(f.knows("http://example.org/world#b" + (BULK_SIZE - 1)));
+		Assert.assertFalse(f.knows("http://example.org/world#c"));
+		Assert.assertTrue(f.getModel().contains(
+				f.find(rex), 
+				RDF.type, 
+				f.find("http://example.org/vocabulary#Animal")));
+		
+		try {
+			f.learn(rex, "http://example.org/vocabulary#knows", "http://example.org/world#c");
+			Assert.fail("frozen frame should reject changes");
+		}
+		catch (IllegalStateException e) {
+			log.info("rejected change: " + e.getMessage());
+		}
+	}
+	
+	@Test
+	public void testInMemoryRoutedBindings()
+	{
+		MemFrameManager fm = new MemFrameManager();
+		IFrame f = fm.createFrame(null);
+		
+		List<IFrame> bound = new ArrayList<IFrame>();
+		for (int k=0 ; k<BULK_SIZE / 10 ; k++) 
+		{
+			IFrame other = fm.createFrame(null);
+			other.learn("http://example.org/world#a" + k, 
+					"http://example.org/vocabulary#p", 
+					"http://example.org/world#b" + k);
+			f.bindKnowledge(other.getURI());
+			bound.add(other);
+		}
+		
+		Assert.assertTrue(f.knows("http://example.org/world#a7"));
+		Assert.assertTrue(f.knows("http://example.org/world#b7"));
+		Assert.assertFalse(f.knows("http://example.org/world#c7"));
+		Assert.assertEquals(f.resolveSem("http://example.org/world#a7").size(), 1);
+		
+		// summaries follow the bound frames changes
+		bound.get(7).learn("http://example.org/world#a7", 
+				"http://example.org/vocabulary#q", 
+				"http://example.org/world#c7");
+		Assert.assertTrue(f.knows("http://example.org/world#c7"));
+		Assert.assertEquals(f.resolveSem("http://example.org/world#a7").size(), 2);
+		
+		// bound frames knowledge is bound in turn
+		IFrame binder = fm.createFrame(null);
+		binder.bindKnowledge(f.getURI());
+		Assert.assertTrue(binder.knows("http://example.org/world#c7"));
+		
+		Assert.assertEquals(binder.resolveSem("http://example.org/world#c7").size(), 1);
+		
+		f.unbindKnowledge(bound.get(7).getURI());
+		Assert.assertFalse(f.knows("http://example.org/world#c7"));
+		Assert.assertFalse(binder.knows("http://example.org/world#c7"));
+		Assert.assertTrue(binder.resolveSem("http://example.org/world#c7").isEmpty());
+		Assert.assertTrue(f.knows("http://example.org/world#a8"));
+	}
+	
+	@Test
+	public void testInMemoryFrameCache()
+	{
+		FrameCache cache = new FrameCache(new File("target/test-spill/cache-" + System.nanoTime()), 
+				BULK_SIZE / 10);
+		MemFrameManager fm = new MemFrameManager(cache);
+		
+		Model vocabulary = vocabulary("Dog", "Animal");
+		IFrame vocabularyFrame = fm.createFrame(vocabulary);
+		
+		IFrame f = fm.createFrame(null);
+		String rex = f.createSem("http://example.org/vocabulary#Dog", "rex", "a dog", "en");
+		f.bindKnowledge(vocabularyFrame.getURI());
+		Assert.assertTrue(f.knows(rex));
+		f.resolveSem(rex);
+		SemCache semCache = ((AbstractFrame) f).getSemCache();
+		Assert.assertTrue(semCache.getCachedSize() > 0);
+		
+		for (int k=0 ; k<FRAME_TABLE_SIZE ; k++) 
+		{
+			IFrame other = fm.createFrame(null);
+			for (int i=0 ; i<BULK_SIZE / 20 ; i++) {
+				other.learn("http://example.org/world#a" + i, 
+						"http://example.org/vocabulary#p", 
+						"http://example.org/world#b" + i);
+			}
+		}
+		
+		Assert.assertTrue(cache.getEvictions() > 0);
+		Assert.assertTrue(cache.getResidentSize() <= cache.getBudget());
+		// evicted frames do not keep the neighbourhoods of their sems
+		Assert.assertEquals(semCache.getCachedSize(), 0);
+		
+		long misses = cache.getMisses();
+		IFrame got = fm.getFrame(f.getURI());
+		Assert.assertEquals(cache.getMisses(), misses + 1);
+		Assert.assertEquals(got.size(), 3 + 1);
+		Assert.assertEquals(got.find(rex).getProperty(RDFS.label).getLanguage(), "en");
+		Assert.assertTrue(got.getModel().contains(
+				got.find(rex), 
+				RDF.type, 
+				got.find("http://example.org/vocabulary#Animal")));
+		
+		long hits = cache.getHits();
+		fm.getFrame(f.getURI());
+		Assert.assertEquals(cache.getHits(), hits + 1);
+		
+		log.info("frame cache: " + cache + ", " + cache.getReloads() + " reloads in " 
+				+ cache.getReloadTime() + " ns");
+	}
+	
+	@Test
+	public void testInMemoryConcurrentCreation() throws Exception
+	{
+		final MemFrameManager fm = new MemFrameManager();
+		final IFrame f = fm.createFrame(null);
+		
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		List<Future<List<String>>> results = new ArrayList<Future<List<String>>>();
+		for (int t=0 ; t<4 ; t++) {
+			results.add(pool.submit(new Callable<List<String>>() {
+				@Override
+				public List<String> call() {
+					List<String> uris = new ArrayList<String>();
+					for (int k=0 ; k<FRAME_TABLE_SIZE ; k++) {
+						uris.add(fm.createFrame(null).getURI());
+						uris.add(f.createSem("http://example.org/vocabulary#Dog", "rex", "a dog", null));
+					}
+					return uris;
+				}
+			}));
+		}
+		
+		Set<String> uris = new HashSet<String>();
+		for (Future<List<String>> result : results) {
+			uris.addAll(result.get());
+		}
+		pool.shutdown();
+		
+		Assert.assertEquals(uris.size(), 4 * 2 * FRAME_TABLE_SIZE);
+		Assert.assertEquals(fm.size(), 4 * FRAME_TABLE_SIZE + 1);
+	}
+	
+	@Test
+	public void testInMemorySnapshots()
+	{
+		MemFrameManager fm = new MemFrameManager();
+		IFrame f = fm.createFrame(null);
+		IFrame other = fm.createFrame(null);
+		
+		String rex = f.createSem("http://example.org/vocabulary#Dog", "rex", "a dog", null);
+		other.learn(rex, "http://example.org/vocabulary#owner", "http://example.org/world#alice");
+		f.bindKnowledge(other.getURI());
+		
+		IFrame snapshot = f.snapshot();
+		long before = snapshot.size();
+		int knownBefore = snapshot.resolveSem(rex).size();
+		Assert.assertTrue(snapshot.knows("http://example.org/world#alice"));
+		
+		// enough changes to compact the versions log
+		for (int k=0 ; k<2 * BULK_SIZE ; k++) {
+			f.learn(rex, "http://example.org/vocabulary#knows", "http://example.org/world#b" + k);
+		}
+		f.forget(rex, "http://example.org/vocabulary#knows", null);
+		f.learn(rex, "http://example.org/vocabulary#knows", "http://example.org/world#c");
+		other.forget(null, null, null);
+		
+		Assert.assertEquals(snapshot.size(), before);
+		Assert.assertEquals(snapshot.resolveSem(rex).size(), knownBefore);
+		Assert.assertTrue(snapshot.knows("http://example.org/world#alice"));
+		Assert.assertFalse(snapshot.knows("http://example.org/world#c"));
+		
+		IFrame after = f.snapshot();
+		Assert.assertTrue(after.knows("http://example.org/world#c"));
+		Assert.assertFalse(after.knows("http://example.org/world#b0"));
+		Assert.assertFalse(after.knows("http://example.org/world#alice"));
+		Assert.assertEquals(after.size(), f.size());
+		
+		try {
+			snapshot.learn(rex, "http://example.org/vocabulary#knows", "http://example.org/world#c");
+			Assert.fail("snapshot should reject changes");
+		}
+		catch (IllegalStateException e) {
+			log.info("rejected change: " + e.getMessage());
+		}
+	}
+	
+	@Test
+	public void testInMemoryEncodedStorage()
+	{
+		// frames that share their nodes, as parsed separately
+		int frames = (int) FRAME_TABLE_SIZE;
+		int triples = 20 * (int) BULK_SIZE;
+		List<Graph> graphs = new ArrayList<Graph>();
+		
+		long before = usedHeap();
+		for (int f=0 ; f<frames ; f++) {
+			// the base graph of the former frame models
+			graphs.add(fillStorage(Factory.createGraphMem(), triples));
+		}
+		long plain = usedHeap() - before;
+		graphs.clear();
+		
+		NodeDictionary nodeDictionary = new NodeDictionary();
+		before = usedHeap();
+		for (int f=0 ; f<frames ; f++) {
+			graphs.add(fillStorage(new EncodedGraph(nodeDictionary), triples));
+		}
+		long encoded = usedHeap() - before;
+		
+		log.info(String.format("%d frames of %d propositions: %.1f MB in memory graphs, "
+				+ "%.1f MB in encoded graphs, %.1fx", frames, triples, 
+				plain / 1e6, encoded / 1e6, (double) plain / encoded));
+		Assert.assertEquals(graphs.get(frames - 1).size(), triples);
+		Assert.assertTrue(encoded < plain);
+	}
+	
+	private static Graph fillStorage(Graph g, int triples)
+	{
+		for (int k=0 ; k<triples ; k++) {
+			g.add(Triple.create(NodeFactory.createURI("http://example.org/world#a" + k / 10), 
+					NodeFactory.createURI(VOCABULARY + "p" + k % 10), 
+					k % 2 == 0 ? NodeFactory.createURI("http://example.org/world#b" + k) 
+							: NodeFactory.createLiteral("b" + k, "en", false)));
+		}
+		return g;
+	}
+	
+	private static long usedHeap()
+	{
+		Runtime runtime = Runtime.getRuntime();
+		for (int k=0 ; k<3 ; k++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+	
+	@Test
+	public void testInMemoryVersionReads()
+	{
+		EncodedGraph g = new EncodedGraph(new NodeDictionary());
+		Node rex = NodeFactory.createURI("http://example.org/world#rex");
+		Node knows = NodeFactory.createURI(VOCABULARY + "knows");
+		for (int k=0 ; k<100 * BULK_SIZE ; k++) {
+			g.add(Triple.create(NodeFactory.createURI("http://example.org/world#a" + k), knows, rex));
+		}
+		g.startVersioning();
+		
+		// each read follows a write, as in a burst of learns
+		int rounds = 20 * (int) BULK_SIZE;
+		long[] elapsed = new long[2];
+		for (int k=0 ; k<rounds ; k++)
+		{
+			long start = System.nanoTime();
+			Node b = NodeFactory.createURI("http://example.org/world#b" + k);
+			Node a = NodeFactory.createURI("http://example.org/world#a" + k);
+			g.add(Triple.create(rex, knows, b));
+			g.delete(Triple.create(a, knows, rex));
+			g.commit();
+			
+			GraphVersion version = g.getVersion();
+			Assert.assertTrue(version.contains(rex, knows, b));
+			Assert.assertEquals(version.find(Node.ANY, knows, b).toList().size(), 1);
+			Assert.assertFalse(version.find(a, Node.ANY, Node.ANY).hasNext());
+			Assert.assertEquals(version.size(), 100 * BULK_SIZE);
+			if (k >= rounds - BULK_SIZE) {
+				elapsed[1] += System.nanoTime() - start;
+			}
+			else if ( (k >= BULK_SIZE) && (k < 2 * BULK_SIZE) ) {
+				elapsed[0] += System.nanoTime() - start;
+			}
+		}
+		log.info("read after write in " + elapsed[0] / BULK_SIZE + " ns, then in " 
+				+ elapsed[1] / BULK_SIZE + " ns");
+		
+		// reads do not replay the changes made since the base of the versions,
+		// but for the matching ones
+		Assert.assertTrue(elapsed[1] < 8 * elapsed[0] + 20 * 1000 * 1000);
+	}
+	
+	@Test
+	public void testInMemoryJournal() throws Exception
+	{
+		File directory = new File("target/test-journal/journal-" + System.nanoTime());
+		MemFrameManager fm = new MemFrameManager(null, new FrameJournal(directory));
+		
+		Model vocabulary = vocabulary("Dog", "Animal");
+		IFrame vocabularyFrame = fm.createFrame(vocabulary);
+		vocabularyFrame.freeze();
+		
+		IFrame f = fm.createFrame(null);
+		String rex = f.createSem("http://example.org/vocabulary#Dog", "rex", "a dog", "en");
+		f.bindKnowledge(vocabularyFrame.getURI());
+		IFrame removed = fm.createFrame(null);
+		IFrame plain = fm.createFrame(null, InferenceProfile.NONE);
+		String felix = plain.createSem("http://example.org/vocabulary#Dog", "felix", "a dog", "en");
+		plain.bindKnowledge(vocabularyFrame.getURI());
+		
+		fm.checkpoint();
+		
+		IFrame lazy = fm.createFrame(null, InferenceProfile.RDFS_LAZY);
+		
+		for (int k=0 ; k<BULK_SIZE ; k++) {
+			f.learn(rex, "http://example.org/vocabulary#knows", "http://example.org/world#b" + k);
+		}
+		f.forget(rex, "http://example.org/vocabulary#knows", "http://example.org/world#b0");
+		fm.removeFrame(removed.getURI());
+		long size = f.size();
+		
+		// a crash, which tears the last record
+		File[] segments = directory.listFiles();
+		for (File segment : segments) 
+		{
+			if (segment.getName().endsWith(".log")) 
+			{
+				FileOutputStream out = new FileOutputStream(segment, true);
+				out.write(new byte[] { 0, 0, 1 });
+				out.close();
+			}
+		}
+		
+		MemFrameManager recovered = new MemFrameManager(null, new FrameJournal(directory));
+		Assert.assertEquals(recovered.size(), 4);
+		Assert.assertNull(recovered.getFrame(removed.getURI()));
+		Assert.assertTrue(recovered.getFrame(vocabularyFrame.getURI()).isFrozen());
+		
+		IFrame got = recovered.getFrame(f.getURI());
+		Assert.assertEquals(got.size(), size);
+		Assert.assertFalse(got.knows("http://example.org/world#b0"));
+		Assert.assertTrue(got.knows("http://example.org/world#b1"));
+		Assert.assertTrue(got.getModel().contains(
+				got.find(rex), 
+				RDF.type, 
+				got.find("http://example.org/vocabulary#Animal")));
+		Assert.assertFalse(rex.equals(
+				got.createSem("http://example.org/vocabulary#Dog", "rox", "a dog", "en")));
+		Assert.assertFalse(f.getURI().equals(recovered.createFrame(null).getURI()));
+		
+		// frames infer as they did before the crash
+		IFrame gotPlain = recovered.getFrame(plain.getURI());
+		Assert.assertFalse(gotPlain.getModel().contains(
+				gotPlain.find(felix), 
+				RDF.type, 
+				gotPlain.getModel().getResource("http://example.org/vocabulary#Animal")));
+		Assert.assertEquals(((BaseFrame) gotPlain).getInferenceProfile(), InferenceProfile.NONE);
+		Assert.assertEquals(((BaseFrame) recovered.getFrame(lazy.getURI())).getInferenceProfile(), 
+				InferenceProfile.RDFS_LAZY);
+		recovered.close();
+	}
+	
+	@Test
+	public void testInMemoryJournalLeases() throws Exception
+	{
+		File directory = new File("target/test-journal/journal-" + System.nanoTime());
+		MemFrameManager fm = new MemFrameManager(null, new FrameJournal(directory));
+		
+		IFrame f = fm.createFrame(null);
+		f.createSem("http://example.org/vocabulary#Cat", "tom", "a cat", "en");
+		f.createSem("http://example.org/vocabulary#Mouse", "jerry", "a mouse", "en");
+		
+		fm.checkpoint();
+		
+		// allocated within the lease recorded before the checkpoint
+		String x = f.createSem("http://example.org/vocabulary#Mouse", "x", "a mouse", "en");
+		
+		MemFrameManager recovered = new MemFrameManager(null, new FrameJournal(directory));
+		IFrame got = recovered.getFrame(f.getURI());
+		Assert.assertTrue(got.knows(x));
+		Assert.assertFalse(x.equals(
+				got.createSem("http://example.org/vocabulary#Mouse", "y", "a mouse", "en")));
+		recovered.close();
+	}
+	
+	@Test
+	public void testInMemoryJournalCheckpointedCreation() throws Exception
+	{
+		File directory = new File("target/test-journal/journal-" + System.nanoTime());
+		final MemFrameManager fm = new MemFrameManager(null, new FrameJournal(directory));
+		
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		List<Future<List<String>>> results = new ArrayList<Future<List<String>>>();
+		for (int t=0 ; t<3 ; t++) {
+			results.add(pool.submit(new Callable<List<String>>() {
+				@Override
+				public List<String> call() {
+					List<String> uris = new ArrayList<String>();
+					for (int k=0 ; k<BULK_SIZE ; k++) {
+						IFrame f = fm.createFrame(null);
+						f.learn("http://example.org/world#a", "http://example.org/vocabulary#knows", "http://example.org/world#b");
+						uris.add(f.getURI());
+					}
+					return uris;
+				}
+			}));
+		}
+		Future<?> checkpoints = pool.submit(new Runnable() {
+			@Override
+			public void run() {
+				while (fm.size() < 3 * BULK_SIZE) {
+					fm.checkpoint();
+				}
+			}
+		});
+		
+		List<String> uris = new ArrayList<String>();
+		for (Future<List<String>> result : results) {
+			uris.addAll(result.get());
+		}
+		checkpoints.get();
+		pool.shutdown();
+		
+		MemFrameManager recovered = new MemFrameManager(null, new FrameJournal(directory));
+		Assert.assertEquals(recovered.size(), 3 * BULK_SIZE);
+		for (String uri : uris) {
+			Assert.assertTrue(recovered.getFrame(uri).knows("http://example.org/world#b"), uri);
+		}
+		recovered.close();
+	}
+	
+	@Test
+	public void testInMemoryImage() throws Exception
+	{
+		MemFrameManager fm = new MemFrameManager();
+		
+		Model vocabulary = vocabulary("Dog", "Animal");
+		IFrame vocabularyFrame = fm.createFrame(vocabulary);
+		
+		IFrame f = fm.createFrame(null);
+		String rex = f.createSem("http://example.org/vocabulary#Dog", "rex", "a dog", "en");
+		for (int k=0 ; k<BULK_SIZE ; k++) {
+			f.learn(rex, "http://example.org/vocabulary#knows", "http://example.org/world#b" + k);
+		}
+		f.bindKnowledge(vocabularyFrame.getURI());
+		long size = f.size();
+		
+		File file = new File("target/test-image/image-" + System.nanoTime());
+		file.getParentFile().mkdirs();
+		Assert.assertEquals(FrameImage.write(fm, file), 2);
+		
+		long start = System.nanoTime();
+		MemFrameManager reopened = new MemFrameManager(new FrameImage(file));
+		log.info("reopened image in " + (System.nanoTime() - start) / 1000 + " us");
+		Assert.assertEquals(reopened.size(), 2);
+		
+		IFrame got = reopened.getFrame(f.getURI());
+		Assert.assertTrue(got.isFrozen());
+		Assert.assertEquals(got.size(), size);
+		Assert.assertEquals(got.find(rex).getProperty(RDFS.label).getLanguage(), "en");
+		
+		// nodes are decoded from the image as they are looked up
+		ImageNodeDictionary nodes = (ImageNodeDictionary) reopened.getNodeDictionary();
+		log.info("decoded " + nodes.getDecodedCount() + " of " + nodes.size() + " nodes");
+		Assert.assertTrue(nodes.getDecodedCount() < nodes.size() / 2);
+		
+		Assert.assertTrue(got.knows("http://example.org/world#b1"));
+		Assert.assertEquals(got.find(rex).getProperty(RDFS.label).getLanguage(), "en");
+		Assert.assertTrue(got.getModel().contains(
+				got.find(rex), 
+				RDF.type, 
+				got.find("http://example.org/vocabulary#Animal")));
+		Assert.assertEquals(reopened.listFrames().size(), 2);
+		
+		// the first change thaws the frame, which then infers again
+		got.learn(rex, "http://example.org/vocabulary#knows", "http://example.org/world#c");
+		Assert.assertFalse(got.isFrozen());
+		Assert.assertEquals(got.size(), size + 1);
+		Assert.assertTrue(got.knows("http://example.org/world#c"));
+		Assert.assertTrue(got.getModel().contains(
+				got.find(rex), 
+				RDF.type, 
+				got.find("http://example.org/vocabulary#Animal")));
+		got.forget(rex, RDF.type.getURI(), "http://example.org/vocabulary#Dog");
+		Assert.assertFalse(got.getModel().contains(
+				got.getModel().getResource(rex), 
+				RDF.type, 
+				got.getModel().getResource("http://example.org/vocabulary#Animal")));
+		
+		IFrame created = reopened.createFrame(null);
+		Assert.assertFalse(f.getURI().equals(created.getURI()));
+		created.learn(rex, "http://example.org/vocabulary#knows", "http://example.org/world#c");
+		Assert.assertTrue(created.knows(rex));
+		reopened.removeFrame(vocabularyFrame.getURI());
+		Assert.assertEquals(reopened.size(), 2);
+	}
+	
+	@Test
+	public void testInMemorySemCache() throws Exception
+	{
+		MemFrameManager fm = new MemFrameManager();
+		
+		Model vocabulary = vocabulary("Dog", "Animal");
+		IFrame vocabularyFrame = fm.createFrame(vocabulary);
+		IFrame world = fm.createFrame(null);
+		String alice = world.createSem(null, "alice", "a person", "en");
+		
+		IFrame f = fm.createFrame(null);
+		f.bindKnowledge(vocabularyFrame.getURI());
+		f.bindKnowledge(world.getURI());
+		String rex = f.createSem("http://example.org/vocabulary#Dog", "rex", "a dog", "en");
+		SemCache semCache = ((AbstractFrame) f).getSemCache();
+		
+		int n = f.resolveSem(rex).size();
+		Assert.assertEquals(f.resolveSem(rex).size(), n);
+		Assert.assertEquals(semCache.getHits(), 1);
+		
+		// a change about the sem
+		f.learn(rex, "http://example.org/vocabulary#knows", alice);
+		Assert.assertEquals(f.resolveSem(rex).size(), n + 1);
+		Assert.assertEquals(semCache.getHits(), 1);
+		
+		// an unrelated change keeps the neighbourhood
+		f.learn("http://example.org/world#a", "http://example.org/vocabulary#knows", "http://example.org/world#b");
+		f.resolveSem(rex);
+		Assert.assertEquals(semCache.getHits(), 2);
+		
+		// a change in a bound frame
+		int m = f.resolveSem(alice).size();
+		world.learn(alice, "http://example.org/vocabulary#knows", "http://example.org/world#c");
+		Assert.assertEquals(f.resolveSem(alice).size(), m + 1);
+		
+		// a typing inferred in a class neighbourhood
+		String animal = "http://example.org/vocabulary#Animal";
+		int k = f.resolveSem(animal).size();
+		f.createSem("http://example.org/vocabulary#Dog", "rox", "a dog", "en");
+		Assert.assertEquals(f.resolveSem(animal).size(), k + 1);
+		
+		Assert.assertTrue(semCache.getInvalidations() > 0);
+		Assert.assertTrue(semCache.getHitRatio() > 0);
+	}
+	
+	@Test
+	public void testInMemoryMembership() throws Exception
+	{
+		MemFrameManager fm = new MemFrameManager();
+		
+		Model vocabulary = vocabulary("Dog", "Animal");
+		IFrame vocabularyFrame = fm.createFrame(vocabulary);
+		IFrame world = fm.createFrame(null);
+		world.bindKnowledge(vocabularyFrame.getURI());
+		String alice = world.createSem(null, "alice", "a person", "en");
+		
+		IFrame f = fm.createFrame(null);
+		String rex = f.createSem("http://example.org/vocabulary#Dog", "rex", "a dog", "en");
+		Assert.assertTrue(f.knows(rex));
+		Assert.assertFalse(f.knows(alice));
+		Assert.assertFalse(f.knows("http://example.org/vocabulary#Animal"));
+		
+		// bound frames, and the frames they bind
+		f.bindKnowledge(world.getURI());
+		Assert.assertTrue(f.knows(alice));
+		Assert.assertTrue(f.knows("http://example.org/vocabulary#Animal"));
+		Assert.assertNotNull(f.find("http://example.org/vocabulary#Animal"));
+		Assert.assertTrue(f.knows(RDFS.Resource.getURI()));
+		
+		for (int k=0 ; k<BULK_SIZE ; k++) {
+			Assert.assertFalse(f.knows("http://example.org/world#b" + k));
+		}
+		f.learn(rex, "http://example.org/vocabulary#knows", "http://example.org/world#b1");
+		Assert.assertTrue(f.knows("http://example.org/world#b1"));
+		f.forget(rex, "http://example.org/vocabulary#knows", "http://example.org/world#b1");
+		Assert.assertFalse(f.knows("http://example.org/world#b1"));
+		Assert.assertNull(f.find("http://example.org/world#b1"));
+		
+		f.unbindKnowledge(world.getURI());
+		Assert.assertFalse(f.knows(alice));
+	}
+	
+	@Test
+	public void testInMemoryMetrics() throws Exception
+	{
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		MonitoredFrameManager fm = new MonitoredFrameManager(new MemFrameManager(), "test-metrics");
+		
+		Model vocabulary = vocabulary("Dog", "Animal");
+		IFrame vocabularyFrame = fm.createFrame(vocabulary);
+		IFrame f = fm.createFrame(null);
+		f.bindKnowledge(vocabularyFrame.getURI());
+		
+		String rex = f.createSem("http://example.org/vocabulary#Dog", "rex", "a dog", "en");
+		for (int k=0 ; k<BULK_SIZE ; k++) {
+			f.learn(rex, "http://example.org/vocabulary#knows", "http://example.org/world#b" + k);
+			Assert.assertTrue(f.knows(rex));
+		}
+		f.resolveSem(rex);
+		try {
+			f.bindKnowledge(f.getURI());
+			Assert.fail("a frame should not bind itself");
+		}
+		catch (IllegalArgumentException e) {
+			log.info("rejected binding: " + e.getMessage());
+		}
+		
+		Assert.assertTrue(mbeanServer.isRegistered(fm.getObjectName()));
+		Assert.assertTrue(mbeanServer.isRegistered(fm.getObjectName(f.getURI())));
+		Assert.assertEquals(mbeanServer.getAttribute(fm.getObjectName(), "FrameCount"), 2L);
+		Assert.assertEquals(mbeanServer.getAttribute(fm.getObjectName(), "LargestFrame"), f.getURI());
+		Assert.assertEquals(mbeanServer.getAttribute(fm.getObjectName(f.getURI()), "BoundFrameCount"), 1);
+		
+		CompositeData[] operations = (CompositeData[]) mbeanServer.getAttribute(fm.getObjectName(), "Operations");
+		Assert.assertTrue(operations.length > 0);
+		for (OperationStatistics statistics : fm.getOperations())
+		{
+			log.info(statistics);
+			Assert.assertTrue(statistics.getP50Micros() <= statistics.getP99Micros());
+			Assert.assertTrue(statistics.getP99Micros() <= statistics.getP999Micros());
+			if ("learn".equals(statistics.getOperation())) {
+				Assert.assertEquals(statistics.getCount(), BULK_SIZE);
+			}
+			if ("bindKnowledge".equals(statistics.getOperation())) {
+				Assert.assertEquals(statistics.getCount(), 2);
+				Assert.assertEquals(statistics.getErrors(), 1);
+			}
+		}
+		Assert.assertTrue(fm.getInferenceMillis() > 0);
+		
+		fm.removeFrame(vocabularyFrame.getURI());
+		Assert.assertFalse(mbeanServer.isRegistered(fm.getObjectName(vocabularyFrame.getURI())));
+		fm.unregister();
+		Assert.assertFalse(mbeanServer.isRegistered(fm.getObjectName()));
+	}
+	
+	@Test
+	public void testInMemoryAsync() throws Exception
+	{
+		AsyncFrameManager fm = new AsyncFrameManager(new MemFrameManager());
+		try {
+			IAsyncFrame f = fm.createFrame(null).join();
+			String rex = f.createSem("http://example.org/vocabulary#Dog", "rex", "a dog", "en").join();
+			
+			List<CompletableFuture<Long>> learnt = new ArrayList<CompletableFuture<Long>>();
+			for (int k=0 ; k<BULK_SIZE ; k++) {
+				learnt.add(f.learn(rex, "http://example.org/vocabulary#knows", "http://example.org/world#b" + k));
+			}
+			CompletableFuture.allOf(learnt.toArray(new CompletableFuture<?>[0])).join();
+			for (CompletableFuture<Long> n : learnt) {
+				Assert.assertEquals(n.join().longValue(), 1L);
+			}
+			Assert.assertTrue(f.knows("http://example.org/world#b" + (BULK_SIZE - 1)).join());
+			
+			AsyncFrame asyncFrame = (AsyncFrame) f;
+			log.info(asyncFrame.getChangeCount() + " changes in " + asyncFrame.getBatchCount() + " batches");
+			Assert.assertEquals(asyncFrame.getChangeCount(), BULK_SIZE + 1);
+			Assert.assertTrue(asyncFrame.getBatchCount() <= asyncFrame.getChangeCount());
+			
+			// reads its own change
+			String unknown = "http://example.org/world#unknown";
+			Assert.assertTrue(f.learn(rex, "http://example.org/vocabulary#knows", unknown)
+					.thenCompose(n -> f.knows(unknown)).join());
+			Assert.assertEquals(f.size().join().longValue(), f.getFrame().size());
+			
+			try {
+				f.bindKnowledge(f.getURI()).join();
+				Assert.fail("a frame should not bind itself");
+			}
+			catch (CompletionException e) {
+				Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+			}
+			
+			Assert.assertSame(fm.getFrame(f.getURI()).join(), f);
+			f.learn(rex, "http://example.org/vocabulary#likes", unknown);
+			fm.removeFrame(f.getURI()).join();
+			Assert.assertNull(fm.getFrame(f.getURI()).join());
+			Assert.assertEquals(fm.size().join().longValue(), 0L);
+		}
+		finally {
+			fm.close();
+		}
+	}
+	
+	@Test
+	public void testInMemoryAsyncJournal() throws Exception
+	{
+		File directory = new File("target/test-journal/journal-" + System.nanoTime());
+		AsyncFrameManager fm = new AsyncFrameManager(new MemFrameManager(null, new FrameJournal(directory)));
+		try {
+			IAsyncFrame f = fm.createFrame(null).join();
+			String rex = f.createSem("http://example.org/vocabulary#Dog", "rex", "a dog", "en").join();
+			
+			long start = System.nanoTime();
+			List<CompletableFuture<Long>> learnt = new ArrayList<CompletableFuture<Long>>();
+			for (int k=0 ; k<BULK_SIZE ; k++) {
+				learnt.add(f.learn(rex, "http://example.org/vocabulary#knows", "http://example.org/world#b" + k));
+			}
+			CompletableFuture.allOf(learnt.toArray(new CompletableFuture<?>[0])).join();
+			AsyncFrame asyncFrame = (AsyncFrame) f;
+			log.info(BULK_SIZE + " journaled changes in " + asyncFrame.getBatchCount() + " batches, in " 
+					+ (System.nanoTime() - start) / 1000 + " us");
+			
+			// batched changes are durable once completed
+			MemFrameManager recovered = new MemFrameManager(null, new FrameJournal(directory));
+			Assert.assertEquals(recovered.getFrame(f.getURI()).size(), f.getFrame().size());
+			recovered.close();
+		}
+		finally {
+			fm.close();
+		}
+	}
+	
+	@Test
+	public void testInMemoryExport() throws Exception
+	{
+		MemFrameManager fm = new MemFrameManager();
+		Model vocabulary = vocabulary("Dog", "Animal");
+		IFrame vocabularyFrame = fm.createFrame(vocabulary);
+		IFrame f = fm.createFrame(null);
+		f.bindKnowledge(vocabularyFrame.getURI());
+		
+		String rex = f.createSem("http://example.org/vocabulary#Dog", "rex", "a dog", "en");
+		for (int k=0 ; k<BULK_SIZE ; k++) {
+			f.learn(rex, "http://example.org/vocabulary#knows", "http://example.org/world#b" + k);
+		}
+		long asserted = f.size() - vocabularyFrame.size();
+		
+		// asserted, as N-Triples
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Assert.assertEquals(f.export(Channels.newChannel(out), "N-TRIPLES", FrameContent.ASSERTED, false), 
+				asserted);
+		Model exported = ModelFactory.createDefaultModel();
+		exported.read(new ByteArrayInputStream(out.toByteArray()), null, "N-TRIPLE");
+		Assert.assertEquals(exported.size(), asserted);
+		Assert.assertTrue(exported.contains(exported.getResource(rex), RDFS.label, "rex", "en"));
+		
+		// inferred only
+		out.reset();
+		long inferred = f.export(Channels.newChannel(out), "N-TRIPLES", FrameContent.INFERRED, true);
+		exported = ModelFactory.createDefaultModel();
+		exported.read(new ByteArrayInputStream(out.toByteArray()), null, "N-TRIPLE");
+		Assert.assertEquals(exported.size(), inferred);
+		Assert.assertTrue(exported.contains(exported.getResource(rex), RDF.type, 
+				exported.getResource("http://example.org/vocabulary#Animal")));
+		Assert.assertFalse(exported.contains(exported.getResource(rex), RDFS.label));
+		
+		// everything, as binary
+		out.reset();
+		long all = f.export(Channels.newChannel(out), BinaryRdfCodec.LANG, FrameContent.ALL, true);
+		Assert.assertEquals(all, asserted + vocabularyFrame.size() + inferred);
+		Graph read = Factory.createGraphMem();
+		Assert.assertEquals(BinaryRdfCodec.read(new ByteArrayInputStream(out.toByteArray()), read), all);
+		Assert.assertEquals(read.size(), all);
+		
+		// snapshots do not infer
+		out.reset();
+		Assert.assertEquals(f.snapshot().export(Channels.newChannel(out), "N-TRIPLES", FrameContent.ALL, true), 
+				asserted + vocabularyFrame.size());
+		
+		try {
+			f.export(Channels.newChannel(out), "RDF/XML", FrameContent.ALL, false);
+			Assert.fail("RDF/XML is not streamed");
+		}
+		catch (IllegalArgumentException e) {
+			log.info("rejected language: " + e.getMessage());
+		}
+	}
+	
+	@Test
+	public void testInMemorySearch() throws Exception
+	{
+		MemFrameManager fm = new MemFrameManager();
+		String target = "http://example.org/world#target";
+		Set<String> knowing = new HashSet<String>();
+		for (int k=0 ; k<300 ; k++)
+		{
+			IFrame f = fm.createFrame(null, InferenceProfile.NONE);
+			String rex = f.createSem("http://example.org/vocabulary#Dog", "rex", "a dog", "en");
+			if (k % 10 == 0) 
+			{
+				f.learn(rex, "http://example.org/vocabulary#knows", target);
+				knowing.add(f.getURI());
+			}
+		}
+		
+		FrameSearch search = new FrameSearch(fm);
+		Assert.assertEquals(new HashSet<String>(search.findKnowing(target, Long.MAX_VALUE)), knowing);
+		Assert.assertEquals(search.getSearchedCount(), knowing.size());
+		Assert.assertEquals(search.getSkippedCount(), 300 - knowing.size());
+		Assert.assertEquals(search.findKnowing(target, 3).size(), 3);
+		
+		// known as a predicate only
+		Assert.assertEquals(new HashSet<String>(search.findKnowing(
+				"http://example.org/vocabulary#knows", Long.MAX_VALUE)), knowing);
+		
+		Map<String, List<Statement>> matching = search.resolveMatching(null, 
+				"http://example.org/vocabulary#knows", target, Long.MAX_VALUE);
+		Assert.assertEquals(matching.keySet(), knowing);
+		for (List<Statement> propositions : matching.values()) {
+			Assert.assertEquals(propositions.size(), 1);
+		}
+		Assert.assertEquals(search.resolveMatching(null, RDF.type.getURI(), 
+				"http://example.org/vocabulary#Dog", 5).size(), 5);
+		
+		// stopped by the visitor
+		Assert.assertEquals(search.visitMatching(null, null, target, new IStatementVisitor() {
+			@Override
+			public boolean visit(Statement proposition) {
+				return false;
+			}
+		}, Long.MAX_VALUE), 1);
+	}
+	
+	@Test
+	public void testInMemoryPreparedQueries() throws Exception
+	{
+		MemFrameManager fm = new MemFrameManager();
+		Model vocabulary = vocabulary("Dog", "Animal");
+		IFrame f = fm.createFrame(vocabulary);
+		String rex = f.createSem("http://example.org/vocabulary#Dog", "rex", "a dog", "en");
+		String medor = f.createSem("http://example.org/vocabulary#Dog", "medor", "a dog", "en");
+		for (int k=0 ; k<BULK_SIZE ; k++) {
+			f.learn(rex, "http://example.org/vocabulary#knows", "http://example.org/world#b" + k);
+		}
+		
+		String select = "SELECT ?o WHERE { ?s <http://example.org/vocabulary#knows> ?o }";
+		IPreparedQuery knows = f.prepareQuery(select);
+		QuerySolutionMap bindings = new QuerySolutionMap();
+		bindings.add("s", f.getModel().getResource(rex));
+		final Set<String> known = new HashSet<String>();
+		Assert.assertEquals(knows.select(bindings, new ISolutionVisitor() {
+			@Override
+			public boolean visit(QuerySolution solution) {
+				return known.add(solution.getResource("o").getURI());
+			}
+		}), BULK_SIZE);
+		Assert.assertEquals(known.size(), BULK_SIZE);
+		bindings.add("s", f.getModel().getResource(medor));
+		Assert.assertEquals(knows.select(bindings, new ISolutionVisitor() {
+			@Override
+			public boolean visit(QuerySolution solution) {
+				return true;
+			}
+		}), 0);
+		
+		// inferred propositions
+		IPreparedQuery isAnimal = f.prepareQuery(
+				"ASK { ?s a <http://example.org/vocabulary#Animal> }");
+		Assert.assertTrue(isAnimal.ask(bindings));
+		bindings.add("s", f.getModel().getResource("http://example.org/world#b1"));
+		Assert.assertFalse(isAnimal.ask(bindings));
+		
+		final List<Statement> constructed = new ArrayList<Statement>();
+		Assert.assertEquals(f.prepareQuery("CONSTRUCT { ?o <http://example.org/vocabulary#knownBy> ?s } "
+				+ "WHERE { ?s <http://example.org/vocabulary#knows> ?o }")
+				.construct(null, new IStatementVisitor() {
+					@Override
+					public boolean visit(Statement proposition) {
+						return constructed.add(proposition);
+					}
+				}), BULK_SIZE);
+		Assert.assertEquals(constructed.get(0).getObject().asResource().getURI(), rex);
+		
+		// plans are shared by frames
+		long hits = QueryPlanCache.getShared().getHits();
+		IFrame other = fm.createFrame(null);
+		Assert.assertSame(((PreparedQuery) other.prepareQuery(select)).getPlan(), 
+				((PreparedQuery) knows).getPlan());
+		Assert.assertEquals(QueryPlanCache.getShared().getHits(), hits + 1);
+		
+		try {
+			isAnimal.select(null, new ISolutionVisitor() {
+				@Override
+				public boolean visit(QuerySolution solution) {
+					return true;
+				}
+			});
+			Assert.fail("an ASK query has no solution");
+		}
+		catch (IllegalStateException e) {
+			log.info("rejected form: " + e.getMessage());
+		}
+		try {
+			f.prepareQuery("SELECT WHERE");
+			Assert.fail("the query is not valid");
+		}
+		catch (IllegalArgumentException e) {
+			log.info("rejected query: " + e.getMessage());
+		}
+	}
+		
+	@Test
+	public void testInMemoryOntologyClosures()
+	{
+		MemFrameManager fm = new MemFrameManager();
+		Model vocabulary = vocabulary("Cat", "Feline", "Feline", "Animal");
+		Model copy = ModelFactory.createDefaultModel().add(vocabulary);
+		
+		OntologyClosureCache closures = OntologyClosureCache.getShared();
+		long hits = closures.getHits();
+		long misses = closures.getMisses();
+		IFrame f = fm.createFrame(vocabulary);
+		IFrame other = fm.createFrame(copy);
+		Assert.assertEquals(closures.getMisses(), misses + 1);
+		Assert.assertEquals(closures.getHits(), hits + 1);
+		Assert.assertEquals(other.size(), f.size());
+		
+		// the closure is shared, frames only infer from their own propositions
+		OntologyClosureGraph closureGraph = (OntologyClosureGraph) other.getModel().getGraph();
+		Assert.assertTrue(closureGraph.isShared());
+		String felix = f.createSem("http://example.org/vocabulary#Cat", "felix", "a cat", null);
+		String tom = other.createSem("http://example.org/vocabulary#Cat", "tom", "a cat", null);
+		Assert.assertTrue(f.getModel().contains(f.getModel().getResource(felix), RDF.type, 
+				f.getModel().getResource("http://example.org/vocabulary#Animal")));
+		Assert.assertTrue(other.getModel().contains(other.getModel().getResource(tom), RDF.type, 
+				other.getModel().getResource("http://example.org/vocabulary#Animal")));
+		Assert.assertFalse(f.getModel().contains(f.getModel().getResource(tom), RDF.type, 
+				f.getModel().getResource("http://example.org/vocabulary#Animal")));
+		Assert.assertTrue(f.getModel().contains(f.getModel().getResource("http://example.org/vocabulary#Cat"), 
+				RDFS.subClassOf, f.getModel().getResource("http://example.org/vocabulary#Animal")));
+		
+		// forgetting part of the ontology stops sharing its closure
+		other.forget("http://example.org/vocabulary#Feline", RDFS.subClassOf.getURI(), 
+				"http://example.org/vocabulary#Animal");
+		Assert.assertFalse(closureGraph.isShared());
+		Assert.assertFalse(other.getModel().contains(other.getModel().getResource(tom), RDF.type, 
+				other.getModel().getResource("http://example.org/vocabulary#Animal")));
+		Assert.assertTrue(other.getModel().contains(other.getModel().getResource(tom), RDF.type, 
+				other.getModel().getResource("http://example.org/vocabulary#Feline")));
+		Assert.assertTrue(f.getModel().contains(f.getModel().getResource(felix), RDF.type, 
+				f.getModel().getResource("http://example.org/vocabulary#Animal")));
+	}
+
+	@Test
+	public void testInMemoryInferenceProfiles()
+	{
+		MemFrameManager fm = new MemFrameManager();
+		String v = VOCABULARY;
+		Model vocabulary = vocabulary("Cat", "Feline", "Feline", "Animal", "Pet", "Animal");
+		
+		IFrame none = fm.createFrame(vocabulary, InferenceProfile.NONE);
+		String tom = none.createSem(v + "Cat", "tom", "a cat", null);
+		Assert.assertFalse(none.getModel().contains(none.getModel().getResource(tom), RDF.type, 
+				none.getModel().getResource(v + "Animal")));
+		
+		for (InferenceProfile profile : new InferenceProfile[] { 
+				InferenceProfile.RDFS_INCREMENTAL, InferenceProfile.RDFS_LAZY })
+		{
+			IFrame f = fm.createFrame(vocabulary, profile);
+			Model m = f.getModel();
+			tom = f.createSem(v + "Cat", "tom", "a cat", null);
+			Assert.assertTrue(m.contains(m.getResource(tom), RDF.type, m.getResource(v + "Animal")));
+			Assert.assertTrue(m.contains(m.getResource(v + "Cat"), RDFS.subClassOf, m.getResource(v + "Animal")));
+			
+			// only the inferences without another derivation are retracted
+			f.learn(tom, RDF.type.getURI(), v + "Pet");
+			f.forget(v + "Feline", RDFS.subClassOf.getURI(), v + "Animal");
+			Assert.assertTrue(m.contains(m.getResource(tom), RDF.type, m.getResource(v + "Animal")));
+			Assert.assertTrue(m.contains(m.getResource(tom), RDF.type, m.getResource(v + "Feline")));
+			Assert.assertFalse(m.contains(m.getResource(v + "Cat"), RDFS.subClassOf, m.getResource(v + "Animal")), profile.name());
+			f.forget(tom, RDF.type.getURI(), v + "Pet");
+			Assert.assertFalse(m.contains(m.getResource(tom), RDF.type, m.getResource(v + "Animal")), 
+					profile.name());
+			
+			if (profile == InferenceProfile.RDFS_INCREMENTAL) 
+			{
+				IncrementalRdfsGraph infGraph = (IncrementalRdfsGraph) m.getGraph();
+				String rex = f.createSem(v + "Pet", "rex", "a pet", null);
+				Assert.assertTrue(m.contains(m.getResource(rex), RDF.type, m.getResource(v + "Animal")));
+				Assert.assertEquals(infGraph.getMaterializedCount(), 1);
+				Assert.assertTrue(infGraph.getRetractedCount() > 0);
+			}
+		}
+	}
+
+	@Test
+	public void testInMemoryForks()
+	{
+		MemFrameManager fm = new MemFrameManager();
+		String v = VOCABULARY;
+		Model vocabulary = vocabulary("Cat", "Feline", "Feline", "Animal", "Mouse", "Animal");
+		IFrame f = fm.createFrame(vocabulary);
+		String tom = f.createSem(v + "Cat", "tom", "a cat", null);
+		long size = f.size();
+		
+		// forks read their parent, and only change themselves
+		IFrame fork = fm.forkFrame(f.getURI());
+		Assert.assertTrue(fork instanceof ForkFrame);
+		Assert.assertEquals(fork.size(), size);
+		Assert.assertTrue(fork.getModel().contains(fork.getModel().getResource(tom), RDF.type, 
+				fork.getModel().getResource(v + "Animal")));
+		String jerry = fork.createSem(v + "Feline", "jerry", "a feline", null);
+		fork.forget(tom, RDF.type.getURI(), v + "Cat");
+		Assert.assertFalse(fork.getModel().contains(fork.getModel().getResource(tom), RDF.type, 
+				fork.getModel().getResource(v + "Animal")));
+		Assert.assertTrue(fork.getModel().contains(fork.getModel().getResource(jerry), RDF.type, 
+				fork.getModel().getResource(v + "Animal")));
+		Assert.assertEquals(f.size(), size);
+		Assert.assertFalse(f.knows(jerry));
+		Assert.assertTrue(f.getModel().contains(f.getModel().getResource(tom), RDF.type, 
+				f.getModel().getResource(v + "Animal")));
+		
+		// parent changes remain visible
+		f.learn(v + "felix", RDF.type.getURI(), v + "Cat");
+		Assert.assertTrue(fork.getModel().contains(fork.getModel().getResource(v + "felix"), RDF.type, 
+				fork.getModel().getResource(v + "Animal")));
+		Assert.assertEquals(fork.size(), f.size() - 1 + 3);
+		
+		// discarded forks leave their parent as is
+		IFrame discarded = fm.forkFrame(f.getURI());
+		discarded.learn(v + "garfield", RDF.type.getURI(), v + "Cat");
+		fm.removeFrame(discarded.getURI());
+		Assert.assertFalse(f.knows(v + "garfield"));
+		
+		// merged forks apply their changes at once
+		Assert.assertEquals(fm.mergeFrame(fork.getURI()), 4);
+		Assert.assertNull(fm.getFrame(fork.getURI()));
+		Assert.assertTrue(f.knows(jerry));
+		Assert.assertFalse(f.getModel().contains(f.getModel().getResource(tom), RDF.type, 
+				f.getModel().getResource(v + "Animal")));
+		
+		// removing a parent removes its forks
+		IFrame other = fm.forkFrame(f.getURI());
+		IFrame nested = fm.forkFrame(other.getURI());
+		fm.removeFrame(f.getURI());
+		Assert.assertNull(fm.getFrame(other.getURI()));
+		Assert.assertNull(fm.getFrame(nested.getURI()));
+	}
+
+	@Test
+	public void testInMemoryForkInference()
+	{
+		MemFrameManager fm = new MemFrameManager();
+		String v = VOCABULARY;
+		Model vocabulary = vocabulary("Cat", "Feline", "Feline", "Animal", "Mouse", "Animal");
+		IFrame f = fm.createFrame(vocabulary, InferenceProfile.RDFS_INCREMENTAL);
+		for (int k=0 ; k<10 * BULK_SIZE ; k++) {
+			f.learn("http://example.org/world#cat" + k, RDF.type.getURI(), v + "Cat");
+		}
+		String tom = "http://example.org/world#tom";
+		f.learn(tom, RDF.type.getURI(), v + "Cat");
+		
+		// the time the parent takes to infer from all its propositions
+		IncrementalRdfsGraph parentGraph = (IncrementalRdfsGraph) f.getModel().getGraph();
+		long start = System.nanoTime();
+		parentGraph.rebind();
+		parentGraph.prepare();
+		long inferring = System.nanoTime() - start;
+		
+		// forks only derive from what they learn
+		start = System.nanoTime();
+		IFrame fork = fm.forkFrame(f.getURI());
+		String jerry = fork.createSem(v + "Feline", "jerry", "a feline", null);
+		Model m = fork.getModel();
+		Assert.assertTrue(m.contains(m.getResource(jerry), RDF.type, m.getResource(v + "Animal")));
+		Assert.assertTrue(m.contains(m.getResource(tom), RDF.type, m.getResource(v + "Animal")));
+		long forking = System.nanoTime() - start;
+		log.info("parent inferred in " + inferring / 1000 + " us, fork and query in " 
+				+ forking / 1000 + " us");
+		
+		ForkInferenceGraph forkGraph = (ForkInferenceGraph) m.getGraph();
+		Assert.assertTrue(forkGraph.isLayered());
+		Assert.assertTrue(forkGraph.getDeductionsGraph().size() < 10);
+		Assert.assertTrue(forking < inferring);
+		
+		// parent changes remain visible
+		f.learn(v + "felix", RDF.type.getURI(), v + "Cat");
+		Assert.assertTrue(m.contains(m.getResource(v + "felix"), RDF.type, m.getResource(v + "Animal")));
+		Assert.assertTrue(m.contains(m.getResource(jerry), RDF.type, m.getResource(v + "Animal")));
+		
+		// forks that forget a parent proposition infer from all theirs
+		fork.forget(v + "Feline", RDFS.subClassOf.getURI(), v + "Animal");
+		Assert.assertFalse(forkGraph.isLayered());
+		Assert.assertFalse(m.contains(m.getResource(jerry), RDF.type, m.getResource(v + "Animal")));
+		Assert.assertFalse(m.contains(m.getResource(tom), RDF.type, m.getResource(v + "Animal")));
+		Assert.assertTrue(f.getModel().contains(f.getModel().getResource(tom), RDF.type, 
+				f.getModel().getResource(v + "Animal")));
+	}
+
 }
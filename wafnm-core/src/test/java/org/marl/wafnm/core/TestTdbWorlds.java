@@ -0,0 +1,100 @@
+package org.marl.wafnm.core;
+
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.marl.wafnm.core.api.IFrame;
+import org.marl.wafnm.core.impl.TdbFrameManager;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+public class TestTdbWorlds {
+
+	static final Logger log = Logger.getLogger(TestTdbWorlds.class);
+
+	public static String TDB_TEST_DIR = "target/test-tdb/";
+
+	static String newLocation(String name)
+	{
+		File location = new File(TDB_TEST_DIR + name + "-" + System.nanoTime());
+		location.mkdirs();
+		return location.getPath();
+	}
+
+	@Test
+	public void testTdbManagerSetup()
+	{
+		TdbFrameManager fm = new TdbFrameManager(newLocation("setup"));
+		Assert.assertNotNull(fm);
+
+		IFrame f = fm.createFrame(null);
+		Assert.assertNotNull(f);
+		Assert.assertEquals(fm.getFrame(f.getURI()), f);
+
+		fm.removeFrame(f.getURI());
+		Assert.assertNull(fm.getFrame(f.getURI()));
+		Assert.assertEquals(fm.size(), 0);
+		fm.close();
+
+		log.info("created and removed frame: " + f.getURI());
+	}
+
+	@Test
+	public void testTdbManagerRestart()
+	{
+		String location = newLocation("restart");
+		TdbFrameManager fm = new TdbFrameManager(location);
+
+		Model vocabulary = ModelFactory.createDefaultModel();
+		vocabulary.add(vocabulary.createResource("http://example.org/vocabulary#Dog"),
+				RDFS.subClassOf,
+				vocabulary.createResource("http://example.org/vocabulary#Animal"));
+
+		IFrame vocabularyFrame = fm.createFrame(vocabulary);
+		IFrame f = fm.createFrame(null);
+		String semUri = f.createSem("http://example.org/vocabulary#Dog", "rex", "a dog", null);
+		Assert.assertTrue(f.bindKnowledge(vocabularyFrame.getURI()) >= 0);
+
+		Assert.assertEquals(vocabularyFrame.freeze(), 1);
+		String vocabularyUri = vocabularyFrame.getURI();
+		String frameUri = f.getURI();
+		fm.close();
+
+		fm = new TdbFrameManager(location);
+		Assert.assertEquals(fm.size(), 2);
+
+		IFrame got = fm.getFrame(frameUri);
+		Assert.assertNotNull(got);
+		Assert.assertTrue(got.knows(semUri));
+		Assert.assertTrue(got.knows("http://example.org/vocabulary#Animal"));
+		Assert.assertTrue(got.getModel().contains(
+				got.find(semUri),
+				RDF.type,
+				got.find("http://example.org/vocabulary#Animal")));
+
+		Assert.assertTrue(fm.getFrame(vocabularyUri).isFrozen());
+		Assert.assertFalse(got.isFrozen());
+		String otherSemUri = got.createSem("http://example.org/vocabulary#Dog", "pluto", "another dog", null);
+		Assert.assertNotEquals(otherSemUri, semUri);
+		Assert.assertTrue(got.knows(otherSemUri));
+		got.dropSem(otherSemUri);
+		Assert.assertFalse(got.knows(otherSemUri));
+
+		fm.removeFrame(vocabularyUri);
+		Assert.assertFalse(got.knows("http://example.org/vocabulary#Animal"));
+
+		List<IFrame> gotlist = fm.listFrames();
+		Assert.assertEquals(gotlist.size(), 1);
+		fm.close();
+
+		log.info("reopened frames from: " + location);
+	}
+
+}